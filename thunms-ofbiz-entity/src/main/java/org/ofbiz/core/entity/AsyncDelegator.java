@@ -0,0 +1,324 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.entity.config.ConnectionPoolInfo;
+import org.ofbiz.core.entity.config.DatasourceInfo;
+import org.ofbiz.core.entity.config.EntityConfigUtil;
+import org.ofbiz.core.util.Debug;
+import org.ofbiz.core.util.UtilMisc;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs delegator operations on a bounded pool of worker threads and hands back their results as
+ * {@link CompletableFuture}s, so that several independent reads or writes can be in flight at once.
+ * <p>
+ * The pool has as many threads as the largest connection pool of the delegator's datasources, since a worker can't do
+ * anything useful without a connection. Once the workers are busy the operations queue up, and when the queue is full
+ * the caller runs the operation itself; this holds back a caller fanning out many operations until the pool catches
+ * up, rather than letting the backlog grow without bound.
+ * <p>
+ * Transactions are bound to the thread that began them (see {@link TransactionUtil}), so an operation asked for while
+ * the calling thread has a transaction in progress is run right away on that thread, as part of that transaction, and
+ * the future returned is already complete. An operation run by a worker gets a transaction of its own, or none, just
+ * as the delegator would give it on any other thread.
+ * <p>
+ * Failures complete the future exceptionally with a {@link CompletionException} whose cause is the
+ * {@link GenericEntityException} the delegator threw.
+ */
+public class AsyncDelegator {
+
+    public static final String module = AsyncDelegator.class.getName();
+
+    /** The number of operations per worker that can wait in the queue before callers run them themselves */
+    private static final int QUEUED_OPERATIONS_PER_THREAD = 16;
+
+    /**
+     * An operation on the delegator.
+     *
+     * @param <T> the type of its result
+     */
+    public interface Operation<T> {
+        T run(GenericDelegator delegator) throws GenericEntityException;
+    }
+
+    private final GenericDelegator delegator;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a pool with as many threads as the largest connection pool of the delegator's datasources.
+     */
+    public AsyncDelegator(final GenericDelegator delegator) {
+        this(delegator, getConnectionPoolSize(delegator));
+    }
+
+    public AsyncDelegator(final GenericDelegator delegator, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("An AsyncDelegator needs at least one thread, not " + threads);
+        }
+        this.delegator = delegator;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * QUEUED_OPERATIONS_PER_THREAD),
+                new WorkerThreadFactory(delegator.getDelegatorName()), new CallerRunsUnlessShutdown());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the largest maximum size of the JDBC connection pools used by the delegator's entity groups, or the
+     * default pool size if they all use JNDI datasources
+     */
+    static int getConnectionPoolSize(final GenericDelegator delegator) {
+        int size = 0;
+        final Iterator<String> groups = UtilMisc.toIterator(delegator.getModelGroupReader().getGroupNames());
+        while (groups != null && groups.hasNext()) {
+            final String helperName = delegator.getGroupHelperName(groups.next());
+            final DatasourceInfo datasourceInfo = helperName == null ? null : EntityConfigUtil.getInstance().getDatasourceInfo(helperName);
+            if (datasourceInfo != null && datasourceInfo.getJdbcDatasource() != null
+                    && datasourceInfo.getJdbcDatasource().getConnectionPoolInfo() != null) {
+                size = Math.max(size, datasourceInfo.getJdbcDatasource().getConnectionPoolInfo().getMaxSize());
+            }
+        }
+        return size > 0 ? size : ConnectionPoolInfo.DEFAULT_POOL_MAX_SIZE;
+    }
+
+    public GenericDelegator getDelegator() {
+        return delegator;
+    }
+
+    /**
+     * Runs the given operation on a worker thread, or on this thread if it has a transaction in progress.
+     */
+    public <T> CompletableFuture<T> submit(final Operation<T> operation) {
+        if (TransactionUtil.isTransactionInProgress()) {
+            return runNow(operation);
+        }
+
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        complete(future, operation);
+                    } finally {
+                        clearLeftOverTransaction();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public CompletableFuture<GenericValue> findByPrimaryKeyAsync(final GenericPK primaryKey) {
+        return submit(new Operation<GenericValue>() {
+            public GenericValue run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.findByPrimaryKey(primaryKey);
+            }
+        });
+    }
+
+    public CompletableFuture<GenericValue> findByPrimaryKeyAsync(final String entityName, final Map<String, ?> fields) {
+        return submit(new Operation<GenericValue>() {
+            public GenericValue run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.findByPrimaryKey(entityName, fields);
+            }
+        });
+    }
+
+    public CompletableFuture<GenericValue> findByPrimaryKeyCacheAsync(final String entityName, final Map<String, ?> fields) {
+        return submit(new Operation<GenericValue>() {
+            public GenericValue run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.findByPrimaryKeyCache(entityName, fields);
+            }
+        });
+    }
+
+    public CompletableFuture<List<GenericValue>> findAllByPrimaryKeysAsync(final Collection<? extends GenericPK> primaryKeys) {
+        return submit(new Operation<List<GenericValue>>() {
+            public List<GenericValue> run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.findAllByPrimaryKeys(primaryKeys);
+            }
+        });
+    }
+
+    public CompletableFuture<List<GenericValue>> findAllAsync(final String entityName) {
+        return submit(new Operation<List<GenericValue>>() {
+            public List<GenericValue> run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.findAll(entityName);
+            }
+        });
+    }
+
+    public CompletableFuture<List<GenericValue>> findByAndAsync(final String entityName, final Map<String, ?> fields,
+                                                               final List<String> orderBy) {
+        return submit(new Operation<List<GenericValue>>() {
+            public List<GenericValue> run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.findByAnd(entityName, fields, orderBy);
+            }
+        });
+    }
+
+    public CompletableFuture<List<GenericValue>> findByConditionAsync(final String entityName, final EntityCondition entityCondition,
+                                                                     final Collection<String> fieldsToSelect, final List<String> orderBy) {
+        return submit(new Operation<List<GenericValue>>() {
+            public List<GenericValue> run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.findByCondition(entityName, entityCondition, fieldsToSelect, orderBy);
+            }
+        });
+    }
+
+    public CompletableFuture<List<GenericValue>> findByConditionAsync(final String entityName, final EntityCondition entityCondition,
+                                                                     final Collection<String> fieldsToSelect, final List<String> orderBy,
+                                                                     final EntityFindOptions findOptions) {
+        return submit(new Operation<List<GenericValue>>() {
+            public List<GenericValue> run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.findByCondition(entityName, entityCondition, fieldsToSelect, orderBy, findOptions);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> countByConditionAsync(final String entityName, final String fieldName,
+                                                            final EntityCondition condition, final EntityFindOptions findOptions) {
+        return submit(new Operation<Integer>() {
+            public Integer run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.countByCondition(entityName, fieldName, condition, findOptions);
+            }
+        });
+    }
+
+    public CompletableFuture<GenericValue> createAsync(final GenericValue value) {
+        return submit(new Operation<GenericValue>() {
+            public GenericValue run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.create(value);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> storeAsync(final GenericValue value) {
+        return submit(new Operation<Integer>() {
+            public Integer run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.store(value);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> storeAllAsync(final List<? extends GenericValue> values) {
+        return submit(new Operation<Integer>() {
+            public Integer run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.storeAll(values);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> removeByAndAsync(final String entityName, final Map<String, ?> fields) {
+        return submit(new Operation<Integer>() {
+            public Integer run(GenericDelegator delegator) throws GenericEntityException {
+                return delegator.removeByAnd(entityName, fields);
+            }
+        });
+    }
+
+    /**
+     * Stops taking operations; those already submitted are still run. Operations submitted afterwards fail with a
+     * {@link RejectedExecutionException}.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return true if all of the operations submitted before {@link #shutdown()} have finished
+     */
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Makes sure that an operation that began a local transaction and didn't end it doesn't leave it, and its
+     * connection, to the next operation run by the same worker.
+     */
+    private static void clearLeftOverTransaction() {
+        if (TransactionUtil.isTransactionActive()) {
+            Debug.logWarning("An operation left a transaction in progress on " + Thread.currentThread().getName() + ", closing its connection", module);
+            TransactionUtil.closeAndClearThreadLocalConnection();
+        }
+    }
+
+    private <T> CompletableFuture<T> runNow(final Operation<T> operation) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        complete(future, operation);
+        return future;
+    }
+
+    private <T> void complete(final CompletableFuture<T> future, final Operation<T> operation) {
+        try {
+            future.complete(operation.run(delegator));
+        } catch (Throwable t) {
+            future.completeExceptionally(new CompletionException(t));
+        }
+    }
+
+    /**
+     * Has the caller run the operation itself when the queue is full, which is the back-pressure; once the pool is shut
+     * down the operation is rejected instead, so that its future fails rather than never completing.
+     */
+    private static class CallerRunsUnlessShutdown implements RejectedExecutionHandler {
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("The AsyncDelegator has been shut down");
+            }
+            if (Debug.verboseOn()) Debug.logVerbose("All " + executor.getMaximumPoolSize() + " workers are busy and the queue is full, running the operation on the calling thread", module);
+            runnable.run();
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        WorkerThreadFactory(final String delegatorName) {
+            this.namePrefix = "AsyncDelegator-" + delegatorName + "-";
+        }
+
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
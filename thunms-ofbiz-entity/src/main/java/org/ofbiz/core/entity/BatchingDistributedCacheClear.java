@@ -0,0 +1,398 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.util.Debug;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link DistributedCacheClear} that gathers the cache clears made by its delegator for a short window, then sends
+ * them to the other nodes in one batch through a {@link DistributedCacheClearTransport}.
+ * <p>
+ * Within a window, clearing the same line again is sent once, and an entity with more than
+ * {@link #DEFAULT_CLEAR_ENTITY_THRESHOLD} lines cleared has all of its cache lines cleared instead, so storing
+ * thousands of values sends one small batch rather than thousands of messages. Clearing all caches is sent at once,
+ * in place of whatever was gathered.
+ * <p>
+ * To use it, name it as the <code>distributed-cache-clear-class-name</code> of the delegator. The transport is the
+ * class named by the system property <code>entity.cache.clear.transport</code>, which needs a public no argument
+ * constructor, and is a {@link LoopbackDistributedCacheClearTransport} unless set; the window is given by
+ * <code>entity.cache.clear.window.millis</code> and the threshold by
+ * <code>entity.cache.clear.entity.threshold</code>.
+ */
+public class BatchingDistributedCacheClear implements DistributedCacheClear, DistributedCacheClearTransport.Receiver {
+
+    public static final String module = BatchingDistributedCacheClear.class.getName();
+
+    /** How long cache clears are gathered before they are sent */
+    public static final long DEFAULT_WINDOW_MILLIS = Long.getLong("entity.cache.clear.window.millis", 50L);
+
+    /** The number of lines of one entity cleared in a window above which all of its lines are cleared instead */
+    public static final int DEFAULT_CLEAR_ENTITY_THRESHOLD = Integer.getInteger("entity.cache.clear.entity.threshold", 100);
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final DistributedCacheClearTransport transport;
+    private final long windowMillis;
+    private final int clearEntityThreshold;
+    private ScheduledExecutorService sender;
+    private volatile GenericDelegator delegator;
+
+    /** Held while a batch is sent, so that batches are sent in the order they were gathered */
+    private final Object sendLock = new Object();
+    private final Object pendingLock = new Object();
+    /** The lines to clear by entity name, then by what they clear; guarded by pendingLock */
+    private Map<String, Map<List<Object>, GenericEntity>> pending = new LinkedHashMap<String, Map<List<Object>, GenericEntity>>();
+    /** The entities whose lines are all to be cleared; guarded by pendingLock */
+    private Set<String> pendingEntities = new LinkedHashSet<String>();
+    private long firstQueuedMillis;
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong sentBatchCount = new AtomicLong();
+    private final AtomicLong sentEntityClearCount = new AtomicLong();
+    private final AtomicLong failedBatchCount = new AtomicLong();
+    private final AtomicLong receivedBatchCount = new AtomicLong();
+    private final AtomicLong totalPropagationMillis = new AtomicLong();
+    private volatile long lastPropagationMillis;
+    private volatile long maxPropagationMillis;
+
+    public BatchingDistributedCacheClear() {
+        this(newTransport(System.getProperty("entity.cache.clear.transport")), DEFAULT_WINDOW_MILLIS, DEFAULT_CLEAR_ENTITY_THRESHOLD);
+    }
+
+    public BatchingDistributedCacheClear(final DistributedCacheClearTransport transport, final long windowMillis,
+                                         final int clearEntityThreshold) {
+        this.transport = transport;
+        this.windowMillis = windowMillis;
+        this.clearEntityThreshold = clearEntityThreshold;
+    }
+
+    private static DistributedCacheClearTransport newTransport(final String className) {
+        if (className == null || className.trim().length() == 0) {
+            return new LoopbackDistributedCacheClearTransport();
+        }
+        try {
+            final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            return (DistributedCacheClearTransport) loader.loadClass(className.trim()).newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Could not create the distributed cache clear transport " + className, e);
+        }
+    }
+
+    /**
+     * Starts sending and receiving the cache clears of the given delegator.
+     */
+    public void setDelegator(final GenericDelegator delegator, final String userLoginId) {
+        synchronized (sendLock) {
+            this.delegator = delegator;
+            if (sender == null) {
+                sender = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "BatchingDistributedCacheClear-" + delegator.getDelegatorName());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                sender.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        flushQuietly();
+                    }
+                }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+                transport.start(this);
+            }
+        }
+    }
+
+    public void distributedClearCacheLine(final GenericValue value) {
+        if (value == null) {
+            return;
+        }
+        // a copy, as the value may change before it is sent; the original values tell which "by and" lines to clear
+        final GenericValue copy = new GenericValue(value);
+        copy.modified = value.isModified();
+        if (value.originalDbValues != null) {
+            copy.originalDbValues = new HashMap<String, Object>(value.originalDbValues);
+        }
+        queue(Arrays.<Object>asList("value", copy.fields, copy.originalDbValues, copy.modified), copy);
+    }
+
+    public void distributedClearCacheLineFlexible(final GenericEntity dummyPK) {
+        if (dummyPK == null) {
+            return;
+        }
+        final GenericEntity copy = new GenericEntity(dummyPK);
+        queue(Arrays.<Object>asList("flexible", copy.fields), copy);
+    }
+
+    public void distributedClearCacheLine(final GenericPK primaryKey) {
+        if (primaryKey == null) {
+            return;
+        }
+        final GenericPK copy = new GenericPK(primaryKey);
+        queue(Arrays.<Object>asList("primaryKey", copy.fields), copy);
+    }
+
+    public void clearAllCaches() {
+        synchronized (sendLock) {
+            synchronized (pendingLock) {
+                // clearing everything makes whatever was gathered moot
+                pending = new LinkedHashMap<String, Map<List<Object>, GenericEntity>>();
+                pendingEntities = new LinkedHashSet<String>();
+                firstQueuedMillis = 0;
+            }
+            queuedCount.incrementAndGet();
+            send(new DistributedCacheClearBatch(nodeId, getDelegatorName(), System.currentTimeMillis(), true,
+                    Collections.<String>emptySet(), Collections.<GenericValue>emptyList(),
+                    Collections.<GenericPK>emptyList(), Collections.<GenericEntity>emptyList()));
+        }
+    }
+
+    private void queue(final List<Object> key, final GenericEntity line) {
+        queuedCount.incrementAndGet();
+        synchronized (pendingLock) {
+            if (firstQueuedMillis == 0) {
+                firstQueuedMillis = System.currentTimeMillis();
+            }
+            final String entityName = line.getEntityName();
+            if (pendingEntities.contains(entityName)) {
+                coalescedCount.incrementAndGet();
+                return;
+            }
+            Map<List<Object>, GenericEntity> lines = pending.get(entityName);
+            if (lines == null) {
+                lines = new LinkedHashMap<List<Object>, GenericEntity>();
+                pending.put(entityName, lines);
+            }
+            if (lines.put(key, line) != null) {
+                coalescedCount.incrementAndGet();
+            } else if (lines.size() > clearEntityThreshold) {
+                // too many to send one by one, clear all of the entity's lines instead
+                coalescedCount.addAndGet(lines.size() - 1);
+                pending.remove(entityName);
+                pendingEntities.add(entityName);
+            }
+        }
+    }
+
+    /**
+     * Sends the cache clears gathered so far, if any.
+     *
+     * @return the number of cache clears sent
+     */
+    public int flush() {
+        synchronized (sendLock) {
+            final Map<String, Map<List<Object>, GenericEntity>> lines;
+            final Set<String> entities;
+            final long firstQueued;
+            synchronized (pendingLock) {
+                if (pending.isEmpty() && pendingEntities.isEmpty()) {
+                    return 0;
+                }
+                lines = pending;
+                entities = pendingEntities;
+                firstQueued = firstQueuedMillis;
+                pending = new LinkedHashMap<String, Map<List<Object>, GenericEntity>>();
+                pendingEntities = new LinkedHashSet<String>();
+                firstQueuedMillis = 0;
+            }
+
+            final List<GenericValue> values = new ArrayList<GenericValue>();
+            final List<GenericPK> primaryKeys = new ArrayList<GenericPK>();
+            final List<GenericEntity> dummyPKs = new ArrayList<GenericEntity>();
+            for (Map<List<Object>, GenericEntity> entityLines : lines.values()) {
+                for (Map.Entry<List<Object>, GenericEntity> line : entityLines.entrySet()) {
+                    final Object kind = line.getKey().get(0);
+                    if ("value".equals(kind)) {
+                        values.add((GenericValue) line.getValue());
+                    } else if ("primaryKey".equals(kind)) {
+                        primaryKeys.add((GenericPK) line.getValue());
+                    } else {
+                        dummyPKs.add(line.getValue());
+                    }
+                }
+            }
+            final DistributedCacheClearBatch batch = new DistributedCacheClearBatch(nodeId, getDelegatorName(), firstQueued,
+                    false, entities, values, primaryKeys, dummyPKs);
+            sentEntityClearCount.addAndGet(entities.size());
+            send(batch);
+            return batch.size();
+        }
+    }
+
+    private void send(final DistributedCacheClearBatch batch) {
+        try {
+            transport.send(batch);
+            sentBatchCount.incrementAndGet();
+            if (Debug.verboseOn()) Debug.logVerbose("Sent " + batch, module);
+        } catch (IOException e) {
+            // the other nodes keep stale lines until they expire or are cleared again
+            failedBatchCount.incrementAndGet();
+            Debug.logError(e, "Could not send " + batch, module);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            Debug.logError(e, "Could not send the distributed cache clears", module);
+        }
+    }
+
+    private String getDelegatorName() {
+        final GenericDelegator current = delegator;
+        return current == null ? null : current.getDelegatorName();
+    }
+
+    /**
+     * Clears the lines of a batch sent by another node from the local caches of the delegator, without distributing
+     * them again.
+     */
+    public void receive(final DistributedCacheClearBatch batch) {
+        final GenericDelegator current = delegator;
+        if (current == null || nodeId.equals(batch.getSenderId())
+                || (batch.getDelegatorName() != null && !batch.getDelegatorName().equals(current.getDelegatorName()))) {
+            return;
+        }
+
+        if (batch.isClearAll()) {
+            current.clearAllCaches(false);
+        } else {
+            for (String entityName : batch.getClearedEntities()) {
+                current.clearAllCacheLinesByEntity(entityName);
+            }
+            for (GenericValue value : batch.getValues()) {
+                current.clearCacheLine(value, false);
+            }
+            for (GenericPK primaryKey : batch.getPrimaryKeys()) {
+                current.clearCacheLine(primaryKey, false);
+            }
+            for (GenericEntity dummyPK : batch.getDummyPKs()) {
+                current.clearCacheLineFlexible(dummyPK, false);
+            }
+        }
+
+        final long propagationMillis = Math.max(0, System.currentTimeMillis() - batch.getFirstQueuedMillis());
+        receivedBatchCount.incrementAndGet();
+        totalPropagationMillis.addAndGet(propagationMillis);
+        lastPropagationMillis = propagationMillis;
+        if (propagationMillis > maxPropagationMillis) {
+            maxPropagationMillis = propagationMillis;
+        }
+    }
+
+    /**
+     * Stops sending and receiving, after sending the cache clears gathered so far.
+     */
+    public void close() {
+        synchronized (sendLock) {
+            if (sender != null) {
+                sender.shutdown();
+            }
+        }
+        flushQuietly();
+        transport.close();
+    }
+
+    /**
+     * @return the number of cache clears made by the delegator
+     */
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * @return the number of cache clears that were not sent because they were sent as part of another
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return the number of batches sent
+     */
+    public long getSentBatchCount() {
+        return sentBatchCount.get();
+    }
+
+    /**
+     * @return the number of times all of the lines of an entity were cleared in place of the lines cleared one by one
+     */
+    public long getSentEntityClearCount() {
+        return sentEntityClearCount.get();
+    }
+
+    /**
+     * @return the number of batches that could not be sent
+     */
+    public long getFailedBatchCount() {
+        return failedBatchCount.get();
+    }
+
+    /**
+     * @return the number of batches received from other nodes
+     */
+    public long getReceivedBatchCount() {
+        return receivedBatchCount.get();
+    }
+
+    /**
+     * @return how long after the first of its cache clears was made the last batch received was applied, in ms
+     */
+    public long getLastPropagationMillis() {
+        return lastPropagationMillis;
+    }
+
+    /**
+     * @return the longest it took for a batch received to be applied after the first of its cache clears was made, in ms
+     */
+    public long getMaxPropagationMillis() {
+        return maxPropagationMillis;
+    }
+
+    /**
+     * @return the average time it took for a batch received to be applied after the first of its cache clears was
+     * made, in ms
+     */
+    public long getAveragePropagationMillis() {
+        final long received = receivedBatchCount.get();
+        return received == 0 ? 0 : totalPropagationMillis.get() / received;
+    }
+}
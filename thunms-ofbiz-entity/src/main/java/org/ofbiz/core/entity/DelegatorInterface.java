@@ -289,9 +289,9 @@ public interface DelegatorInterface {
 
     void refreshSequencer();
 
-    UtilCache<GenericEntity, GenericValue> getPrimaryKeyCache();
+    UtilCache<EntityCacheKey, GenericValue> getPrimaryKeyCache();
 
-    UtilCache<GenericPK, List<GenericValue>> getAndCache();
+    UtilCache<EntityCacheKey, List<GenericValue>> getAndCache();
 
     UtilCache<String, List<GenericValue>> getAllCache();
 
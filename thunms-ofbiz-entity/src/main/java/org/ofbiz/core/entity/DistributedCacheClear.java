@@ -41,4 +41,10 @@ public interface DistributedCacheClear {
     public void distributedClearCacheLine(GenericPK primaryKey);
 
     public void clearAllCaches();
+
+    /**
+     * Releases any threads or connections, once the delegator has been removed.
+     */
+    public default void close() {
+    }
 }
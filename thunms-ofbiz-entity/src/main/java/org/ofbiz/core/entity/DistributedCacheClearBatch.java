@@ -0,0 +1,135 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The cache clears gathered by a node in one window of {@link BatchingDistributedCacheClear}, as sent to the other
+ * nodes.
+ */
+public class DistributedCacheClearBatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String senderId;
+    private final String delegatorName;
+    private final long firstQueuedMillis;
+    private final long sentMillis;
+    private final boolean clearAll;
+    private final Set<String> clearedEntities;
+    private final List<GenericValue> values;
+    private final List<GenericPK> primaryKeys;
+    private final List<GenericEntity> dummyPKs;
+
+    public DistributedCacheClearBatch(String senderId, String delegatorName, long firstQueuedMillis, boolean clearAll,
+                                      Collection<String> clearedEntities, Collection<GenericValue> values,
+                                      Collection<GenericPK> primaryKeys, Collection<GenericEntity> dummyPKs) {
+        this.senderId = senderId;
+        this.delegatorName = delegatorName;
+        this.firstQueuedMillis = firstQueuedMillis;
+        this.sentMillis = System.currentTimeMillis();
+        this.clearAll = clearAll;
+        this.clearedEntities = Collections.unmodifiableSet(new LinkedHashSet<String>(clearedEntities));
+        this.values = Collections.unmodifiableList(new ArrayList<GenericValue>(values));
+        this.primaryKeys = Collections.unmodifiableList(new ArrayList<GenericPK>(primaryKeys));
+        this.dummyPKs = Collections.unmodifiableList(new ArrayList<GenericEntity>(dummyPKs));
+    }
+
+    /**
+     * @return the id of the node that sent the batch
+     */
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public String getDelegatorName() {
+        return delegatorName;
+    }
+
+    /**
+     * @return when the oldest clear of the batch was made on the sending node
+     */
+    public long getFirstQueuedMillis() {
+        return firstQueuedMillis;
+    }
+
+    public long getSentMillis() {
+        return sentMillis;
+    }
+
+    /**
+     * @return true if all of the caches are to be cleared, in which case the rest of the batch is empty
+     */
+    public boolean isClearAll() {
+        return clearAll;
+    }
+
+    /**
+     * @return the entities whose cache lines are all to be cleared, because too many of them were cleared one by one
+     */
+    public Set<String> getClearedEntities() {
+        return clearedEntities;
+    }
+
+    /**
+     * @return the values to clear with {@link GenericDelegator#clearCacheLine(GenericValue, boolean)}
+     */
+    public List<GenericValue> getValues() {
+        return values;
+    }
+
+    /**
+     * @return the keys to clear with {@link GenericDelegator#clearCacheLine(GenericPK, boolean)}
+     */
+    public List<GenericPK> getPrimaryKeys() {
+        return primaryKeys;
+    }
+
+    /**
+     * @return the keys to clear with {@link GenericDelegator#clearCacheLineFlexible(GenericEntity, boolean)}
+     */
+    public List<GenericEntity> getDummyPKs() {
+        return dummyPKs;
+    }
+
+    /**
+     * @return the number of cache clears in the batch
+     */
+    public int size() {
+        return (clearAll ? 1 : 0) + clearedEntities.size() + values.size() + primaryKeys.size() + dummyPKs.size();
+    }
+
+    public String toString() {
+        return "DistributedCacheClearBatch[sender=" + senderId + ", delegator=" + delegatorName + ", clearAll=" + clearAll +
+                ", entities=" + clearedEntities + ", values=" + values.size() + ", primaryKeys=" + primaryKeys.size() +
+                ", dummyPKs=" + dummyPKs.size() + "]";
+    }
+}
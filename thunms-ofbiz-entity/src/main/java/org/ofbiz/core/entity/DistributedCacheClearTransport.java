@@ -0,0 +1,61 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import java.io.IOException;
+
+/**
+ * Carries batches of cache clears between the nodes of a cluster for {@link BatchingDistributedCacheClear}.
+ * <p>
+ * An implementation for a network sends each batch to every other node listening on the same channel, which means it
+ * must be able to serialize a {@link DistributedCacheClearBatch}; the values in a batch name their delegator, which
+ * the receiving node looks up by name.
+ */
+public interface DistributedCacheClearTransport {
+
+    /**
+     * Receives the batches sent by the other nodes.
+     */
+    interface Receiver {
+
+        void receive(DistributedCacheClearBatch batch);
+    }
+
+    /**
+     * Starts handing the batches sent by other nodes to the given receiver.
+     */
+    void start(Receiver receiver);
+
+    /**
+     * Sends a batch to the other nodes.
+     *
+     * @throws IOException if the batch could not be sent
+     */
+    void send(DistributedCacheClearBatch batch) throws IOException;
+
+    /**
+     * Stops receiving batches and releases any resources held.
+     */
+    void close();
+}
@@ -0,0 +1,147 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.entity.model.ModelField;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Answers which of a list of values of an entity are active at a moment, according to their from and thru dates, for
+ * {@link EntityUtil#filterByDate} over the lists of an {@link EntityCacheList}.
+ * <p>
+ * The values active at a moment stay the same until the moment reaches the next from or thru date of any of the
+ * values, so the index keeps the from and thru dates, sorted, and the values active between the last two dates it was
+ * asked about. While the moment asked about stays between them, which for "now" is typically until the next value
+ * becomes active or expires, the values are handed out without looking at any of the dates again.
+ * <p>
+ * The dates are read from the values when the index is built, and the list builds a new index once any of its values
+ * has been changed since, see {@link EntityCacheList}.
+ */
+final class EffectiveDateIndex<T extends GenericEntity> {
+
+    private final String fromDateName;
+    private final String thruDateName;
+    private final List<? extends T> values;
+    /** The number of changes of the values of the list when the index was built */
+    private final int changeCount;
+    private final Timestamp[] fromDates;
+    private final Timestamp[] thruDates;
+    /** The distinct from and thru dates of the values, sorted */
+    private final Timestamp[] boundaries;
+    private volatile Interval<T> lastInterval;
+
+    EffectiveDateIndex(final List<? extends T> values, final int changeCount, final String fromDateName, final String thruDateName) {
+        this.fromDateName = fromDateName;
+        this.thruDateName = thruDateName;
+        this.values = values;
+        this.changeCount = changeCount;
+        this.fromDates = new Timestamp[values.size()];
+        this.thruDates = new Timestamp[values.size()];
+
+        final TreeSet<Timestamp> dates = new TreeSet<Timestamp>();
+        if (!values.isEmpty()) {
+            final T first = values.get(0);
+            final ModelField fromDateField = first.getModelEntity().getField(fromDateName);
+            if (fromDateField == null) {
+                throw new IllegalArgumentException("\"" + fromDateName + "\" is not a field of " + first.getEntityName());
+            }
+            final ModelField thruDateField = first.getModelEntity().getField(thruDateName);
+            if (thruDateField == null) {
+                throw new IllegalArgumentException("\"" + thruDateName + "\" is not a field of " + first.getEntityName());
+            }
+            for (int i = 0; i < fromDates.length; i++) {
+                final T value = values.get(i);
+                fromDates[i] = (Timestamp) value.dangerousGetNoCheckButFast(fromDateField);
+                thruDates[i] = (Timestamp) value.dangerousGetNoCheckButFast(thruDateField);
+                if (fromDates[i] != null) {
+                    dates.add(fromDates[i]);
+                }
+                if (thruDates[i] != null) {
+                    dates.add(thruDates[i]);
+                }
+            }
+        }
+        this.boundaries = dates.toArray(new Timestamp[dates.size()]);
+    }
+
+    boolean isFor(final String fromDateName, final String thruDateName) {
+        return this.fromDateName.equals(fromDateName) && this.thruDateName.equals(thruDateName);
+    }
+
+    /**
+     * @return true if the values have not been changed since the index was built from them
+     */
+    boolean isCurrent(final int changeCount) {
+        return this.changeCount == changeCount;
+    }
+
+    /**
+     * @return a new list of the values active at the given moment, in the order of the list indexed
+     */
+    List<T> filterByDate(final Timestamp moment) {
+        Interval<T> interval = lastInterval;
+        if (interval == null || !interval.contains(moment)) {
+            final List<T> active = new ArrayList<T>();
+            for (int i = 0; i < fromDates.length; i++) {
+                if ((thruDates[i] == null || thruDates[i].after(moment)) && (fromDates[i] == null || fromDates[i].before(moment))) {
+                    active.add(values.get(i));
+                }
+            }
+
+            final int found = Arrays.binarySearch(boundaries, moment);
+            if (found >= 0) {
+                // the moment is one of the dates, which only that moment has the same values active as
+                return active;
+            }
+            final int next = -found - 1;
+            interval = new Interval<T>(next == 0 ? null : boundaries[next - 1], next == boundaries.length ? null : boundaries[next], active);
+            lastInterval = interval;
+        }
+        return new ArrayList<T>(interval.active);
+    }
+
+    /**
+     * The values active at any moment strictly between two dates, either of which may be unbounded (null).
+     */
+    private static final class Interval<T> {
+        final Timestamp after;
+        final Timestamp before;
+        final List<T> active;
+
+        Interval(final Timestamp after, final Timestamp before, final List<T> active) {
+            this.after = after;
+            this.before = before;
+            this.active = active;
+        }
+
+        boolean contains(final Timestamp moment) {
+            return (after == null || moment.after(after)) && (before == null || moment.before(before));
+        }
+    }
+}
@@ -0,0 +1,611 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.entity.jdbc.SqlJdbcUtil;
+import org.ofbiz.core.entity.jdbc.SqlJdbcUtil.FieldType;
+import org.ofbiz.core.entity.model.ModelEntity;
+import org.ofbiz.core.entity.model.ModelField;
+import org.ofbiz.core.entity.model.ModelViewEntity;
+import org.ofbiz.core.util.Debug;
+import org.ofbiz.core.util.GeneralRuntimeException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.apache.commons.codec.binary.Base64.decodeBase64;
+import static org.ofbiz.core.entity.jdbc.SerializationUtil.deserialize;
+import static org.ofbiz.core.entity.jdbc.SerializationUtil.serialize;
+
+/**
+ * Compact binary dump and restore of entities, for backups and for moving data between databases.
+ * <p>
+ * A dump is a directory with one file per entity and a manifest listing the entities in the order they were
+ * dumped, with the number of rows of each. An entity file starts with a header naming the entity and each of its
+ * fields with its {@link FieldType}, followed by blocks of rows. Each block holds the row count, the raw and the
+ * compressed length, and the deflated rows. A row is a bitmap of its null fields followed by the other fields in
+ * header order, each written in the binary form of its type; strings and binary data are length prefixed. A block
+ * with no rows ends the file.
+ * <p>
+ * Dumping reads each entity through an {@link EntityListIterator}, and restoring writes batches with
+ * {@link GenericDelegator#createAll(List)}, so neither keeps more than a block of rows in memory. Rows are restored
+ * by field name, so the target model may have added fields, but a dumped field must exist in the target model with
+ * the same field type.
+ */
+public class EntityBinaryDump {
+
+    public static final String module = EntityBinaryDump.class.getName();
+
+    public static final String MANIFEST_FILE = "manifest.properties";
+    public static final String FILE_EXTENSION = ".dump";
+
+    private static final byte[] MAGIC = "OFBZDUMP".getBytes(StandardCharsets.US_ASCII);
+    private static final int FORMAT_VERSION = 1;
+
+    protected final GenericDelegator delegator;
+    protected int fetchSize = 1000;
+    protected int blockSize = 256 * 1024;
+    protected int valuesPerWrite = 500;
+
+    public EntityBinaryDump(GenericDelegator delegator) {
+        this.delegator = delegator;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @param fetchSize the number of rows the JDBC driver is asked to fetch from the database at a time
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @param blockSize the number of uncompressed bytes of rows collected before they are compressed and written
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = Math.max(blockSize, 1024);
+    }
+
+    public int getValuesPerWrite() {
+        return valuesPerWrite;
+    }
+
+    /**
+     * @param valuesPerWrite the number of rows inserted with one batch when restoring
+     */
+    public void setValuesPerWrite(int valuesPerWrite) {
+        this.valuesPerWrite = Math.max(valuesPerWrite, 1);
+    }
+
+    /**
+     * Dumps every non-view entity of the delegator.
+     *
+     * @see #dump(Collection, File)
+     */
+    public Map<String, Long> dumpAll(File directory) throws GenericEntityException {
+        List<String> entityNames = new ArrayList<String>();
+
+        for (String entityName : delegator.getModelReader().getEntityNames()) {
+            if (!(delegator.getModelEntity(entityName) instanceof ModelViewEntity)) {
+                entityNames.add(entityName);
+            }
+        }
+        return dump(entityNames, directory);
+    }
+
+    /**
+     * Dumps the given entities to the given directory, which is created if necessary.
+     *
+     * @return the number of rows dumped for each entity, in the order of the given names
+     */
+    public Map<String, Long> dump(Collection<String> entityNames, File directory) throws GenericEntityException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new GenericEntityException("Could not create dump directory " + directory);
+        }
+
+        long startTime = System.currentTimeMillis();
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (String entityName : entityNames) {
+            counts.put(entityName, dumpEntity(entityName, new File(directory, entityName + FILE_EXTENSION)));
+        }
+
+        Properties manifest = new Properties();
+        manifest.setProperty("format.version", String.valueOf(FORMAT_VERSION));
+        manifest.setProperty("created", String.valueOf(System.currentTimeMillis()));
+        manifest.setProperty("entities", join(counts.keySet()));
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            manifest.setProperty("entity." + entry.getKey() + ".file", entry.getKey() + FILE_EXTENSION);
+            manifest.setProperty("entity." + entry.getKey() + ".rows", String.valueOf(entry.getValue()));
+        }
+        File manifestFile = new File(directory, MANIFEST_FILE);
+        try (OutputStream out = new FileOutputStream(manifestFile)) {
+            manifest.store(out, "Entity dump");
+        } catch (IOException e) {
+            throw new GenericEntityException("Error writing dump manifest " + manifestFile, e);
+        }
+
+        Debug.logImportant("Dumped " + counts.size() + " entities to " + directory + " in " +
+                (System.currentTimeMillis() - startTime) + " ms", module);
+        return counts;
+    }
+
+    /**
+     * Restores all entities of the dump in the given directory, in the order they were dumped. Rows are inserted,
+     * so the tables should be empty.
+     *
+     * @return the number of rows restored for each entity
+     */
+    public Map<String, Long> restore(File directory) throws GenericEntityException {
+        File manifestFile = new File(directory, MANIFEST_FILE);
+        Properties manifest = new Properties();
+        try (InputStream in = new FileInputStream(manifestFile)) {
+            manifest.load(in);
+        } catch (IOException e) {
+            throw new GenericEntityException("Error reading dump manifest " + manifestFile, e);
+        }
+        if (!String.valueOf(FORMAT_VERSION).equals(manifest.getProperty("format.version"))) {
+            throw new GenericEntityException("Unsupported dump format version " + manifest.getProperty("format.version") + " in " + manifestFile);
+        }
+
+        long startTime = System.currentTimeMillis();
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        String entities = manifest.getProperty("entities", "");
+        for (String entityName : entities.isEmpty() ? new String[0] : entities.split(",")) {
+            File file = new File(directory, manifest.getProperty("entity." + entityName + ".file", entityName + FILE_EXTENSION));
+            long count = restoreEntity(file);
+            String expected = manifest.getProperty("entity." + entityName + ".rows");
+
+            if (expected != null && Long.parseLong(expected) != count) {
+                throw new GenericEntityException("Restored " + count + " rows of " + entityName + " but the dump manifest lists " + expected);
+            }
+            counts.put(entityName, count);
+        }
+
+        Debug.logImportant("Restored " + counts.size() + " entities from " + directory + " in " +
+                (System.currentTimeMillis() - startTime) + " ms", module);
+        return counts;
+    }
+
+    /**
+     * Dumps one entity to the given file.
+     *
+     * @return the number of rows dumped
+     */
+    public long dumpEntity(String entityName, File file) throws GenericEntityException {
+        ModelEntity modelEntity = delegator.getModelEntity(entityName);
+        if (modelEntity == null) {
+            throw new GenericModelException("Could not find definition for entity name " + entityName);
+        }
+
+        List<ModelField> fields = modelEntity.getFieldsCopy();
+        FieldType[] fieldTypes = getFieldTypes(modelEntity, fields);
+
+        EntityFindOptions findOptions = EntityFindOptions.findOptions().forwardOnly().readOnly().fetchSize(fetchSize);
+        EntityListIterator iterator = delegator.findListIteratorByCondition(entityName, null, null, null, null, findOptions);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536))) {
+            out.write(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(entityName);
+            out.writeInt(fields.size());
+            for (int i = 0; i < fields.size(); i++) {
+                out.writeUTF(fields.get(i).getName());
+                out.writeUTF(fieldTypes[i].name());
+            }
+
+            BlockWriter blocks = new BlockWriter(out);
+            long count = 0;
+            GenericValue value;
+
+            while ((value = iterator.next()) != null) {
+                writeRow(blocks.rows, value, fields, fieldTypes);
+                count++;
+                blocks.rowAdded();
+            }
+            blocks.finish();
+
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Dumped " + count + " " + entityName + " rows to " + file, module);
+            }
+            return count;
+        } catch (IOException e) {
+            throw new GenericEntityException("Error dumping " + entityName + " to " + file, e);
+        } catch (GeneralRuntimeException e) {
+            // the iterator reports database errors this way
+            throw new GenericEntityException("Error reading " + entityName + " rows", e);
+        } finally {
+            iterator.close();
+        }
+    }
+
+    /**
+     * Restores one entity from the given file, written by {@link #dumpEntity(String, File)}.
+     *
+     * @return the number of rows restored
+     */
+    public long restoreEntity(File file) throws GenericEntityException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != FORMAT_VERSION) {
+                throw new GenericEntityException(file + " is not an entity dump file of a supported version");
+            }
+
+            String entityName = in.readUTF();
+            ModelEntity modelEntity = delegator.getModelEntity(entityName);
+            if (modelEntity == null) {
+                throw new GenericModelException("Could not find definition for entity name " + entityName);
+            }
+
+            int fieldCount = in.readInt();
+            ModelField[] fields = new ModelField[fieldCount];
+            FieldType[] fieldTypes = new FieldType[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                String fieldName = in.readUTF();
+                fields[i] = modelEntity.getField(fieldName);
+                fieldTypes[i] = FieldType.valueOf(in.readUTF());
+                if (fields[i] == null) {
+                    throw new GenericModelException("Field " + fieldName + " of the dump of " + entityName + " is not in the entity model");
+                }
+                FieldType modelType = getFieldType(modelEntity, fields[i]);
+                if (modelType != fieldTypes[i]) {
+                    throw new GenericModelException("Field " + fieldName + " of " + entityName + " is " + fieldTypes[i] +
+                            " in the dump but " + modelType + " in the entity model");
+                }
+            }
+
+            long count = 0;
+            List<GenericValue> values = new ArrayList<GenericValue>(valuesPerWrite);
+            int rowCount;
+            while ((rowCount = in.readInt()) > 0) {
+                DataInputStream rows = readBlock(in);
+                for (int i = 0; i < rowCount; i++) {
+                    values.add(readRow(rows, delegator.makeValue(entityName, null), fields, fieldTypes));
+                    if (values.size() >= valuesPerWrite) {
+                        count += write(values);
+                    }
+                }
+            }
+            count += write(values);
+
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Restored " + count + " " + entityName + " rows from " + file, module);
+            }
+            return count;
+        } catch (IOException e) {
+            throw new GenericEntityException("Error restoring entity dump " + file, e);
+        }
+    }
+
+    private long write(List<GenericValue> values) throws GenericEntityException {
+        int size = values.size();
+        if (size > 0) {
+            delegator.createAll(values, false);
+            values.clear();
+        }
+        return size;
+    }
+
+    private FieldType[] getFieldTypes(ModelEntity modelEntity, List<ModelField> fields) throws GenericEntityException {
+        FieldType[] fieldTypes = new FieldType[fields.size()];
+        for (int i = 0; i < fieldTypes.length; i++) {
+            fieldTypes[i] = getFieldType(modelEntity, fields.get(i));
+        }
+        return fieldTypes;
+    }
+
+    private FieldType getFieldType(ModelEntity modelEntity, ModelField field) throws GenericEntityException {
+        return SqlJdbcUtil.getFieldType(delegator.getEntityFieldType(modelEntity, field.getType()).getJavaType());
+    }
+
+    private static void writeRow(DataOutputStream out, GenericValue value, List<ModelField> fields, FieldType[] fieldTypes) throws IOException {
+        byte[] nulls = new byte[(fields.size() + 7) / 8];
+        Object[] fieldValues = new Object[fields.size()];
+
+        for (int i = 0; i < fieldValues.length; i++) {
+            fieldValues[i] = value.dangerousGetNoCheckButFast(fields.get(i));
+            if (fieldValues[i] == null) {
+                nulls[i >> 3] |= 1 << (i & 7);
+            }
+        }
+        out.write(nulls);
+
+        for (int i = 0; i < fieldValues.length; i++) {
+            Object fieldValue = fieldValues[i];
+            if (fieldValue == null) {
+                continue;
+            }
+            switch (fieldTypes[i]) {
+                case STRING:
+                    writeBytes(out, fieldValue.toString().getBytes(StandardCharsets.UTF_8));
+                    break;
+
+                case TIMESTAMP:
+                    out.writeLong(((Timestamp) fieldValue).getTime());
+                    out.writeInt(((Timestamp) fieldValue).getNanos());
+                    break;
+
+                case TIME:
+                case DATE:
+                    out.writeLong(((java.util.Date) fieldValue).getTime());
+                    break;
+
+                case INTEGER:
+                    out.writeInt(((Number) fieldValue).intValue());
+                    break;
+
+                case LONG:
+                    out.writeLong(((Number) fieldValue).longValue());
+                    break;
+
+                case FLOAT:
+                    out.writeFloat(((Number) fieldValue).floatValue());
+                    break;
+
+                case DOUBLE:
+                    out.writeDouble(((Number) fieldValue).doubleValue());
+                    break;
+
+                case BOOLEAN:
+                    out.writeBoolean((Boolean) fieldValue);
+                    break;
+
+                case OBJECT:
+                    writeBytes(out, serialize(fieldValue));
+                    break;
+
+                case CLOB:
+                    writeBytes(out, clobToString(fieldValue).getBytes(StandardCharsets.UTF_8));
+                    break;
+
+                case BLOB:
+                case BYTE_ARRAY:
+                    writeBytes(out, toBytes(fieldValue));
+                    break;
+            }
+        }
+    }
+
+    private static GenericValue readRow(DataInputStream in, GenericValue value, ModelField[] fields, FieldType[] fieldTypes) throws IOException {
+        byte[] nulls = new byte[(fields.length + 7) / 8];
+        in.readFully(nulls);
+
+        for (int i = 0; i < fields.length; i++) {
+            if ((nulls[i >> 3] & (1 << (i & 7))) != 0) {
+                continue;
+            }
+
+            Object fieldValue;
+            switch (fieldTypes[i]) {
+                case STRING:
+                case CLOB:
+                    fieldValue = new String(readBytes(in), StandardCharsets.UTF_8);
+                    break;
+
+                case TIMESTAMP:
+                    Timestamp timestamp = new Timestamp(in.readLong());
+                    timestamp.setNanos(in.readInt());
+                    fieldValue = timestamp;
+                    break;
+
+                case TIME:
+                    fieldValue = new Time(in.readLong());
+                    break;
+
+                case DATE:
+                    fieldValue = new Date(in.readLong());
+                    break;
+
+                case INTEGER:
+                    fieldValue = in.readInt();
+                    break;
+
+                case LONG:
+                    fieldValue = in.readLong();
+                    break;
+
+                case FLOAT:
+                    fieldValue = in.readFloat();
+                    break;
+
+                case DOUBLE:
+                    fieldValue = in.readDouble();
+                    break;
+
+                case BOOLEAN:
+                    fieldValue = in.readBoolean();
+                    break;
+
+                case OBJECT:
+                    fieldValue = deserialize(readBytes(in));
+                    break;
+
+                default:
+                    fieldValue = readBytes(in);
+                    break;
+            }
+            value.dangerousSetNoCheckButFast(fields[i], fieldValue);
+        }
+        return value;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static String clobToString(Object value) throws IOException {
+        if (value instanceof Clob) {
+            try {
+                Clob clob = (Clob) value;
+                return clob.getSubString(1, (int) clob.length());
+            } catch (SQLException e) {
+                throw new IOException("Error reading CLOB", e);
+            }
+        }
+        return value.toString();
+    }
+
+    private static byte[] toBytes(Object value) throws IOException {
+        if (value instanceof Blob) {
+            try {
+                Blob blob = (Blob) value;
+                return blob.getBytes(1, (int) blob.length());
+            } catch (SQLException e) {
+                throw new IOException("Error reading BLOB", e);
+            }
+        }
+        if (value instanceof String) {
+            // see GenericEntity.writeXmlText, byte array fields can hold their Base64 encoding
+            return decodeBase64((String) value);
+        }
+        return (byte[]) value;
+    }
+
+    private static DataInputStream readBlock(DataInputStream in) throws IOException {
+        byte[] raw = new byte[in.readInt()];
+        byte[] compressed = new byte[in.readInt()];
+        in.readFully(compressed);
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int length = inflater.inflate(raw);
+            if (length != raw.length || !inflater.finished()) {
+                throw new IOException("Corrupt block in entity dump");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block in entity dump", e);
+        } finally {
+            inflater.end();
+        }
+        return new DataInputStream(new ByteArrayInputStream(raw));
+    }
+
+    private static String join(Collection<String> names) {
+        StringBuilder joined = new StringBuilder();
+        for (String name : names) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(name);
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Collects rows in memory and writes them out as a compressed block once the block size is reached.
+     */
+    private class BlockWriter {
+
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(blockSize + 4096);
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final byte[] compressBuffer = new byte[65536];
+        final DataOutputStream rows = new DataOutputStream(buffer);
+        private int rowCount = 0;
+
+        BlockWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void rowAdded() throws IOException {
+            rowCount++;
+            if (buffer.size() >= blockSize) {
+                flush();
+            }
+        }
+
+        void finish() throws IOException {
+            try {
+                flush();
+                out.writeInt(0);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (rowCount == 0) {
+                return;
+            }
+
+            byte[] raw = buffer.toByteArray();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed.write(compressBuffer, 0, deflater.deflate(compressBuffer));
+            }
+
+            out.writeInt(rowCount);
+            out.writeInt(raw.length);
+            out.writeInt(compressed.size());
+            compressed.writeTo(out);
+
+            buffer.reset();
+            rowCount = 0;
+        }
+    }
+}
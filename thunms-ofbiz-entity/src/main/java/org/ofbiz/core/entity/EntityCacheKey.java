@@ -0,0 +1,168 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.entity.model.ModelEntity;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The key of a line in the primary key and "by and" caches of the delegator: the entity name, and the names and values
+ * of the fields looked up, in the order they have in the entity model.
+ * <p>
+ * A key is immutable and its hash code is computed once, when it is made, so looking a key up doesn't rehash the
+ * field map of a {@link GenericEntity} or compare its values one by one through <code>compareTo</code>. Two keys are
+ * equal if they have the same entity name, field names and values, whatever the order the fields were given in.
+ */
+public final class EntityCacheKey {
+
+    private final String entityName;
+    private final String[] fieldNames;
+    private final Object[] values;
+    private final int hash;
+
+    private EntityCacheKey(final String entityName, final String[] fieldNames, final Object[] values) {
+        this.entityName = entityName;
+        this.fieldNames = fieldNames;
+        this.values = values;
+        this.hash = hash(entityName, fieldNames, values);
+    }
+
+    /**
+     * Makes the key of the fields that the given entity holds; for the primary key cache, that is a {@link GenericPK}.
+     */
+    public static EntityCacheKey of(final GenericEntity entity) {
+        return of(null, entity.getModelEntity(), entity.fields, false);
+    }
+
+    /**
+     * Makes the key of the given field values of the given entity, as a {@link GenericPK} of them would hold them.
+     *
+     * @param delegator the delegator of the entity, which knows whether a field given a Boolean stores it as a boolean
+     *                  or as "Y" or "N"; may be null if none of the values is a Boolean
+     * @throws IllegalArgumentException if a name is not one of a field of the entity
+     */
+    public static EntityCacheKey of(final GenericDelegator delegator, final ModelEntity modelEntity, final Map<String, ?> fields) {
+        return of(delegator, modelEntity, fields, true);
+    }
+
+    private static EntityCacheKey of(final GenericDelegator delegator, final ModelEntity modelEntity, final Map<String, ?> fields,
+                                     final boolean convertValues) {
+        final int size = fields.size();
+        final String[] fieldNames = new String[size];
+        final Object[] values = new Object[size];
+        int found = 0;
+        for (int i = 0; i < modelEntity.getFieldsSize() && found < size; i++) {
+            final String fieldName = modelEntity.getField(i).getName();
+            if (fields.containsKey(fieldName)) {
+                final Object value = fields.get(fieldName);
+                fieldNames[found] = fieldName;
+                // a Boolean is held the way the entity holds it once set, which depends on the type of the field
+                values[found] = convertValues && value instanceof Boolean
+                        ? GenericEntity.getValueToPut(delegator, modelEntity, modelEntity.getField(i).getType(), (Boolean) value) : value;
+                found++;
+            }
+        }
+        if (found < size) {
+            for (String fieldName : fields.keySet()) {
+                if (modelEntity.getField(fieldName) == null) {
+                    throw new IllegalArgumentException("[EntityCacheKey.of] \"" + fieldName + "\" is not a field of " + modelEntity.getEntityName());
+                }
+            }
+        }
+        return new EntityCacheKey(modelEntity.getEntityName(), fieldNames, values);
+    }
+
+    /**
+     * Hashes each part of the key in the manner of MurmurHash3, so that keys differing in a single low bit, such as
+     * consecutive numeric ids, spread over the whole table.
+     */
+    private static int hash(final String entityName, final String[] fieldNames, final Object[] values) {
+        int h = mixIn(0, entityName.hashCode());
+        for (int i = 0; i < fieldNames.length; i++) {
+            h = mixIn(h, fieldNames[i].hashCode());
+            h = mixIn(h, values[i] == null ? 0 : values[i].hashCode());
+        }
+        h ^= fieldNames.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mixIn(int h, int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        k *= 0x1b873593;
+        h ^= k;
+        h = Integer.rotateLeft(h, 13);
+        return h * 5 + 0xe6546b64;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    /**
+     * @return the number of fields in the key
+     */
+    public int size() {
+        return fieldNames.length;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof EntityCacheKey)) {
+            return false;
+        }
+        final EntityCacheKey that = (EntityCacheKey) obj;
+        return hash == that.hash
+                && entityName.equals(that.entityName)
+                && Arrays.equals(fieldNames, that.fieldNames)
+                && Arrays.equals(values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("[EntityCacheKey:").append(entityName).append(']');
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(fieldNames[i]).append('=').append(values[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable view of a list of values held by one of the caches of the delegator, which keeps the indexes built
+ * over the values for as long as the list is cached, such as the one {@link EntityUtil#filterByDate} uses.
+ * <p>
+ * The values of a cached list are not meant to be changed, but they can be, so the list observes its values and
+ * counts their changes, and an index is rebuilt when the count has moved on since it was built. Checking that costs
+ * the same however long the list is. Only changes made through {@link GenericEntity#set}, which notifies the
+ * observers of the value, are counted. The indexes live as long as the list, so they go when the cache line holding
+ * it is replaced or cleared.
+ */
+public final class EntityCacheList<T extends GenericEntity> extends AbstractList<T> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<? extends T> values;
+    private transient ChangeCounter changeCounter;
+    private transient volatile EffectiveDateIndex<T> effectiveDateIndex;
+
+    public EntityCacheList(final List<? extends T> values) {
+        this.values = values;
+        observeValues();
+    }
+
+    private void observeValues() {
+        // the values only refer to the counter, so they don't keep a list that is no longer cached, nor its indexes
+        changeCounter = new ChangeCounter();
+        for (T value : values) {
+            value.addObserver(changeCounter);
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        observeValues();
+    }
+
+    public T get(final int index) {
+        return values.get(index);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * @return the index of the values by the given from and thru date fields, built the first time it is asked for and
+     * again whenever one of the values has been changed since
+     */
+    EffectiveDateIndex<T> getEffectiveDateIndex(final String fromDateName, final String thruDateName) {
+        // read before the dates are, so that a change made while the index is built makes it stale
+        final int changeCount = changeCounter.count;
+        EffectiveDateIndex<T> index = effectiveDateIndex;
+        if (index == null || !index.isFor(fromDateName, thruDateName) || !index.isCurrent(changeCount)) {
+            index = new EffectiveDateIndex<T>(this, changeCount, fromDateName, thruDateName);
+            effectiveDateIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Counts the changes of the values of a list.
+     */
+    private static final class ChangeCounter implements Observer {
+        // an increment lost to a concurrent one still moves the count on, which is all the indexes look at
+        volatile int count;
+
+        public void update(final Observable value, final Object field) {
+            count++;
+        }
+    }
+}
@@ -56,6 +56,19 @@ public abstract class EntityCondition implements Serializable {
     public abstract String makeWhereString(
             ModelEntity modelEntity, List<? super EntityConditionParam> entityConditionParams);
 
+    /**
+     * Appends the WHERE clause of this condition to the given writer. The conditions of this package append their
+     * text directly; this implementation appends the string made by {@link #makeWhereString}. The writer only calls
+     * this method for the conditions of this package, and writes any other condition, including a subclass of one of
+     * them, with its {@link #makeWhereString}, so that overriding that method is all a condition defined elsewhere
+     * needs to do.
+     *
+     * @param writer the writer of the tree this condition is part of
+     */
+    protected void writeWhereString(EntityConditionWriter writer) {
+        writer.append(makeWhereString(writer.getModelEntity(), writer.getEntityConditionParams()));
+    }
+
     /**
      * Checks this condition against the given entity.
      *
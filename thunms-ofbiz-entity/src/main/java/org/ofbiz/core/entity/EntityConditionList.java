@@ -66,24 +66,26 @@ public class EntityConditionList extends EntityCondition {
     }
 
     public String makeWhereString(ModelEntity modelEntity, List<? super EntityConditionParam> entityConditionParams) {
-        // if (Debug.verboseOn()) Debug.logVerbose("makeWhereString for entity " + modelEntity.getEntityName());
-        StringBuilder whereStringBuilder = new StringBuilder();
+        final EntityConditionWriter writer = new EntityConditionWriter(modelEntity, entityConditionParams);
+        writeWhereString(writer);
+        return writer.toString();
+    }
 
+    @Override
+    protected void writeWhereString(EntityConditionWriter writer) {
+        // if (Debug.verboseOn()) Debug.logVerbose("writeWhereString for entity " + writer.getModelEntity().getEntityName());
         if (conditionList != null && conditionList.size() > 0) {
             for (int i = 0; i < conditionList.size(); i++) {
-                EntityCondition condition = conditionList.get(i);
-
-                whereStringBuilder.append('(');
-                whereStringBuilder.append(condition.makeWhereString(modelEntity, entityConditionParams));
-                whereStringBuilder.append(')');
+                writer.append('(');
+                writer.write(conditionList.get(i));
+                writer.append(')');
                 if (i < conditionList.size() - 1) {
-                    whereStringBuilder.append(' ');
-                    whereStringBuilder.append(operator.getCode());
-                    whereStringBuilder.append(' ');
+                    writer.append(' ');
+                    writer.append(operator.getCode());
+                    writer.append(' ');
                 }
             }
         }
-        return whereStringBuilder.toString();
     }
 
     public void checkCondition(ModelEntity modelEntity) throws GenericModelException {
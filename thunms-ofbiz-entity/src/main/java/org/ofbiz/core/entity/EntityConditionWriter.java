@@ -0,0 +1,185 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.entity.model.ModelEntity;
+import org.ofbiz.core.entity.model.ModelField;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the WHERE clause of an {@link EntityCondition} tree in a single pass: every condition of the tree appends its
+ * text to the same buffer and its bind values to the same list, rather than building a String of its own for its
+ * parent to copy.
+ * <p>
+ * When asked to with {@link #withShapeKey()}, the writer also builds the shape key of the condition, which is the
+ * clause written in terms of the entity and its field names rather than the table and its column names, with a
+ * <code>?</code> for each bind value. Two conditions with the same shape key make the same SQL for the same entity,
+ * whatever their values, so the key can be used to cache what is derived from the SQL.
+ */
+public final class EntityConditionWriter {
+
+    /**
+     * The conditions that append their own text to the writer; a subclass of one of them may only override
+     * {@link EntityCondition#makeWhereString}, as it had to before there was a writer, so it is written with that
+     */
+    private static final Set<Class<? extends EntityCondition>> WRITING_CONDITIONS = new HashSet<Class<? extends EntityCondition>>(
+            Arrays.<Class<? extends EntityCondition>>asList(EntityConditionList.class, EntityExpr.class, EntityExprList.class,
+                    EntityFieldMap.class, EntityWhereString.class));
+
+    private final ModelEntity modelEntity;
+    private final List<? super EntityConditionParam> entityConditionParams;
+    private final StringBuilder sql;
+    /** The shape of the clause, if asked for */
+    private StringBuilder shape = null;
+
+    /**
+     * @param modelEntity           the entity being queried for (required)
+     * @param entityConditionParams a non-null list to which the bind values will be added
+     */
+    public EntityConditionWriter(final ModelEntity modelEntity, final List<? super EntityConditionParam> entityConditionParams) {
+        this(modelEntity, entityConditionParams, new StringBuilder());
+    }
+
+    /**
+     * @param modelEntity           the entity being queried for (required)
+     * @param entityConditionParams a non-null list to which the bind values will be added
+     * @param sql                   the buffer to append the SQL to, such as that of the statement being built
+     */
+    public EntityConditionWriter(final ModelEntity modelEntity, final List<? super EntityConditionParam> entityConditionParams,
+                                 final StringBuilder sql) {
+        this.modelEntity = modelEntity;
+        this.entityConditionParams = entityConditionParams;
+        this.sql = sql;
+    }
+
+    /**
+     * Makes this writer build the shape key of what it writes from now on, see {@link #getShapeKey()}.
+     */
+    public EntityConditionWriter withShapeKey() {
+        if (shape == null) {
+            shape = new StringBuilder();
+        }
+        return this;
+    }
+
+    /**
+     * Appends the WHERE clause of the given condition: the conditions of this package append their text directly, and
+     * any other condition appends the string made by its {@link EntityCondition#makeWhereString}.
+     */
+    public EntityConditionWriter write(final EntityCondition condition) {
+        if (WRITING_CONDITIONS.contains(condition.getClass())) {
+            condition.writeWhereString(this);
+        } else {
+            append(condition.makeWhereString(modelEntity, entityConditionParams));
+        }
+        return this;
+    }
+
+    /**
+     * Appends SQL text that doesn't depend on the entity, such as an operator or a parenthesis.
+     */
+    public EntityConditionWriter append(final String text) {
+        sql.append(text);
+        if (shape != null) {
+            shape.append(text);
+        }
+        return this;
+    }
+
+    public EntityConditionWriter append(final char c) {
+        sql.append(c);
+        if (shape != null) {
+            shape.append(c);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the column of the given field, in upper case if upper is true.
+     */
+    public EntityConditionWriter appendColumn(final ModelField field, final boolean upper) {
+        if (upper) {
+            sql.append("UPPER(").append(field.getColName()).append(')');
+        } else {
+            sql.append(field.getColName());
+        }
+        if (shape != null) {
+            if (upper) {
+                shape.append("UPPER(").append(field.getName()).append(')');
+            } else {
+                shape.append(field.getName());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends a <code>?</code> and adds its bind value for the given field.
+     */
+    public EntityConditionWriter appendParam(final ModelField field, final Object value) {
+        sql.append('?');
+        if (shape != null) {
+            shape.append('?');
+        }
+        entityConditionParams.add(new EntityConditionParam(field, value));
+        return this;
+    }
+
+    public ModelEntity getModelEntity() {
+        return modelEntity;
+    }
+
+    public List<? super EntityConditionParam> getEntityConditionParams() {
+        return entityConditionParams;
+    }
+
+    /**
+     * @return the entity name and the shape of the clause written since {@link #withShapeKey()} was called
+     * @throws IllegalStateException if {@link #withShapeKey()} was not called
+     */
+    public String getShapeKey() {
+        if (shape == null) {
+            throw new IllegalStateException("The shape key was not asked for");
+        }
+        return modelEntity.getEntityName() + ':' + shape;
+    }
+
+    /**
+     * @return the buffer the SQL is appended to
+     */
+    public StringBuilder getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the SQL in the buffer
+     */
+    public String toString() {
+        return sql.toString();
+    }
+}
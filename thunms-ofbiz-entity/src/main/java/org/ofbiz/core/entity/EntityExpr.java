@@ -28,7 +28,6 @@ import org.ofbiz.core.entity.model.ModelEntity;
 import org.ofbiz.core.entity.model.ModelField;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -114,75 +113,59 @@ public class EntityExpr extends EntityCondition {
     }
 
     public String makeWhereString(ModelEntity modelEntity, List<? super EntityConditionParam> entityConditionParams) {
-        // if (Debug.verboseOn()) Debug.logVerbose("makeWhereString for entity " + modelEntity.getEntityName());
-        StringBuilder whereStringBuilder = new StringBuilder();
+        final EntityConditionWriter writer = new EntityConditionWriter(modelEntity, entityConditionParams);
+        writeWhereString(writer);
+        return writer.toString();
+    }
 
+    @Override
+    protected void writeWhereString(EntityConditionWriter writer) {
+        // if (Debug.verboseOn()) Debug.logVerbose("writeWhereString for entity " + writer.getModelEntity().getEntityName());
         if (lhs instanceof String) {
-            ModelField field = modelEntity.getField((String) this.getLhs());
+            ModelField field = writer.getModelEntity().getField((String) this.getLhs());
 
             if (field != null) {
                 if (this.getRhs() == null) {
-                    whereStringBuilder.append(field.getColName());
+                    writer.appendColumn(field, false);
                     if (EntityOperator.NOT_EQUAL.equals(this.getOperator())) {
-                        whereStringBuilder.append(" IS NOT NULL ");
+                        writer.append(" IS NOT NULL ");
                     } else {
-                        whereStringBuilder.append(" IS NULL ");
+                        writer.append(" IS NULL ");
                     }
                 } else {
-                    if (this.isLUpper()) {
-                        whereStringBuilder.append("UPPER(" + field.getColName() + ")");
-                    } else {
-                        whereStringBuilder.append(field.getColName());
-                    }
-                    whereStringBuilder.append(' ');
-                    whereStringBuilder.append(this.getOperator().toString());
-                    whereStringBuilder.append(' ');
+                    writer.appendColumn(field, this.isLUpper());
+                    writer.append(' ');
+                    writer.append(this.getOperator().toString());
+                    writer.append(' ');
 
                     // treat the IN operator as a special case, especially with a Collection rhs
                     if (EntityOperator.IN.equals(this.getOperator())) {
-                        whereStringBuilder.append('(');
+                        writer.append('(');
 
                         if (rhs instanceof Collection) {
                             Iterator<?> rhsIter = ((Collection<?>) rhs).iterator();
 
                             while (rhsIter.hasNext()) {
-                                Object inObj = rhsIter.next();
-
-                                whereStringBuilder.append('?');
+                                writer.appendParam(field, upperIfRequired(rhsIter.next()));
                                 if (rhsIter.hasNext()) {
-                                    whereStringBuilder.append(", ");
-                                }
-
-                                if (this.isRUpper()) {
-                                    if (inObj instanceof String) {
-                                        inObj = ((String) inObj).toUpperCase();
-                                    }
+                                    writer.append(", ");
                                 }
-                                entityConditionParams.add(new EntityConditionParam(field, inObj));
                             }
                         } else if (rhs instanceof EntityWhereString) {
-                            whereStringBuilder.append(" " + ((EntityWhereString) rhs).makeWhereString(modelEntity, Collections.emptyList()) + " ");
+                            writer.append(' ');
+                            writer.write((EntityWhereString) rhs);
+                            writer.append(' ');
                         } else {
-                            whereStringBuilder.append(" ? ");
-
-                            if (this.isRUpper()) {
-                                if (rhs instanceof String) {
-                                    rhs = ((String) rhs).toUpperCase();
-                                }
-                            }
-                            entityConditionParams.add(new EntityConditionParam(field, rhs));
+                            writer.append(' ');
+                            writer.appendParam(field, upperIfRequired(rhs));
+                            writer.append(' ');
                         }
 
-                        whereStringBuilder.append(") ");
+                        writer.append(") ");
                     } else {
-                        whereStringBuilder.append(" ? ");
-
-                        if (this.isRUpper()) {
-                            if (rhs instanceof String) {
-                                rhs = ((String) rhs).toUpperCase();
-                            }
-                        }
-                        entityConditionParams.add(new EntityConditionParam(field, rhs));
+                        writer.append(' ');
+                        writer.appendParam(field, upperIfRequired(rhs));
+                        writer.append(' ');
                     }
                 }
             } else {
@@ -190,15 +173,21 @@ public class EntityExpr extends EntityCondition {
             }
         } else if (lhs instanceof EntityCondition) {
             // then rhs MUST also be an EntityCondition
-            whereStringBuilder.append('(');
-            whereStringBuilder.append(((EntityCondition) lhs).makeWhereString(modelEntity, entityConditionParams));
-            whereStringBuilder.append(") ");
-            whereStringBuilder.append(this.getOperator().toString());
-            whereStringBuilder.append(" (");
-            whereStringBuilder.append(((EntityCondition) rhs).makeWhereString(modelEntity, entityConditionParams));
-            whereStringBuilder.append(')');
+            writer.append('(');
+            writer.write((EntityCondition) lhs);
+            writer.append(") ");
+            writer.append(this.getOperator().toString());
+            writer.append(" (");
+            writer.write((EntityCondition) rhs);
+            writer.append(')');
+        }
+    }
+
+    private Object upperIfRequired(Object value) {
+        if (this.isRUpper() && value instanceof String) {
+            return ((String) value).toUpperCase();
         }
-        return whereStringBuilder.toString();
+        return value;
     }
 
     public void checkCondition(ModelEntity modelEntity) throws GenericModelException {
@@ -66,24 +66,26 @@ public class EntityExprList extends EntityCondition {
     }
 
     public String makeWhereString(ModelEntity modelEntity, List<? super EntityConditionParam> entityConditionParams) {
-        // if (Debug.verboseOn()) Debug.logVerbose("makeWhereString for entity " + modelEntity.getEntityName());
-        StringBuilder whereStringBuilder = new StringBuilder();
+        final EntityConditionWriter writer = new EntityConditionWriter(modelEntity, entityConditionParams);
+        writeWhereString(writer);
+        return writer.toString();
+    }
 
+    @Override
+    protected void writeWhereString(EntityConditionWriter writer) {
+        // if (Debug.verboseOn()) Debug.logVerbose("writeWhereString for entity " + writer.getModelEntity().getEntityName());
         if (exprList != null && exprList.size() > 0) {
             for (int i = 0; i < exprList.size(); i++) {
-                EntityExpr expr = exprList.get(i);
-
-                whereStringBuilder.append('(');
-                whereStringBuilder.append(expr.makeWhereString(modelEntity, entityConditionParams));
-                whereStringBuilder.append(')');
+                writer.append('(');
+                writer.write(exprList.get(i));
+                writer.append(')');
                 if (i < exprList.size() - 1) {
-                    whereStringBuilder.append(' ');
-                    whereStringBuilder.append(operator.getCode());
-                    whereStringBuilder.append(' ');
+                    writer.append(' ');
+                    writer.append(operator.getCode());
+                    writer.append(' ');
                 }
             }
         }
-        return whereStringBuilder.toString();
     }
 
     public void checkCondition(ModelEntity modelEntity) throws GenericModelException {
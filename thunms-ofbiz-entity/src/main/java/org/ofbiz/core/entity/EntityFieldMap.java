@@ -74,19 +74,44 @@ public class EntityFieldMap extends EntityCondition {
     }
 
     public String makeWhereString(ModelEntity modelEntity, List<? super EntityConditionParam> entityConditionParams) {
-        // if (Debug.verboseOn()) Debug.logVerbose("makeWhereString for entity " + modelEntity.getEntityName());
-        List<ModelField> whereFields = new ArrayList<ModelField>();
-
-        if (fieldMap != null && fieldMap.size() > 0) {
-            for (int fi = 0; fi < modelEntity.getFieldsSize(); fi++) {
-                ModelField curField = modelEntity.getField(fi);
+        final EntityConditionWriter writer = new EntityConditionWriter(modelEntity, entityConditionParams);
+        writeWhereString(writer);
+        return writer.toString();
+    }
 
-                if (fieldMap.containsKey(curField.getName())) {
-                    whereFields.add(curField);
+    /**
+     * Writes "<col name>=?" for each field with a value and "<col name> IS NULL" for each without, in the order of the
+     * fields in the entity, as {@link SqlJdbcUtil#makeWhereStringFromFields} does.
+     */
+    @Override
+    protected void writeWhereString(EntityConditionWriter writer) {
+        // if (Debug.verboseOn()) Debug.logVerbose("writeWhereString for entity " + writer.getModelEntity().getEntityName());
+        if (fieldMap == null || fieldMap.isEmpty()) {
+            return;
+        }
+        final ModelEntity modelEntity = writer.getModelEntity();
+        boolean first = true;
+        for (int fi = 0; fi < modelEntity.getFieldsSize(); fi++) {
+            final ModelField curField = modelEntity.getField(fi);
+
+            if (fieldMap.containsKey(curField.getName())) {
+                if (!first) {
+                    writer.append(' ');
+                    writer.append(operator.getCode());
+                    writer.append(' ');
+                }
+                first = false;
+
+                writer.appendColumn(curField, false);
+                final Object fieldValue = fieldMap.get(curField.getName());
+                if (fieldValue == null) {
+                    writer.append(" IS NULL");
+                } else {
+                    writer.append('=');
+                    writer.appendParam(curField, fieldValue);
                 }
             }
         }
-        return SqlJdbcUtil.makeWhereStringFromFields(whereFields, fieldMap, operator.getCode(), entityConditionParams);
     }
 
     public void checkCondition(ModelEntity modelEntity) throws GenericModelException {
@@ -25,6 +25,9 @@ package org.ofbiz.core.entity;
 
 import java.io.Serializable;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Advanced options for finding entities.
@@ -122,6 +125,8 @@ public class EntityFindOptions implements Serializable {
     protected int maxResults = -1;
     protected int offset;
     protected int fetchSize = Integer.valueOf(System.getProperty("entity.find.options.fetch.size", "-1"));
+    protected List<String> prefetchRelations = new ArrayList<String>();
+    protected List<String> joinRelations = new ArrayList<String>();
 
     /**
      * Default constructor. Defaults are as follows:
@@ -131,6 +136,8 @@ public class EntityFindOptions implements Serializable {
      * distinct = false
      * maxResults = -1  (no limit)
      * fetchSize = -1  (use driver's default setting)
+     * prefetchRelations = none
+     * joinRelations = none
      */
     public EntityFindOptions() {
     }
@@ -458,4 +465,59 @@ public class EntityFindOptions implements Serializable {
         this.offset = offset;
         return this;
     }
+
+    /**
+     * Returns the relations whose related values are read along with the values found.
+     *
+     * @return the relation names, never null
+     * @see #prefetch(String...)
+     */
+    public List<String> getPrefetchRelations() {
+        return Collections.unmodifiableList(prefetchRelations);
+    }
+
+    /**
+     * Specifies relations whose related values should be read, with one query per relation, along with the values
+     * found by {@link GenericDelegator#findByCondition(String, EntityCondition, java.util.Collection, List, EntityFindOptions)},
+     * instead of with one query per value later on. The related values are held in each value's embedded cache, so
+     * are returned by {@link GenericValue#getRelatedEmbeddedCache(String)} and
+     * {@link GenericValue#getRelatedOneEmbeddedCache(String)}.
+     * <p>
+     * This option is ignored when finding a list iterator, whose values are not all in memory at once.
+     * </p>
+     *
+     * @param relationNames the names of relations of the entity being found
+     * @return {@code this}, for convenient use as a chained builder
+     */
+    public EntityFindOptions prefetch(final String... relationNames) {
+        Collections.addAll(prefetchRelations, relationNames);
+        return this;
+    }
+
+    /**
+     * Returns the "one" relations whose related values are read in the same query as the values found.
+     *
+     * @return the relation names, never null
+     * @see #join(String...)
+     */
+    public List<String> getJoinRelations() {
+        return Collections.unmodifiableList(joinRelations);
+    }
+
+    /**
+     * Specifies "one" relations whose related values should be read in the same query as the values found, by
+     * LEFT JOINing the related tables. Each related value found is held in the embedded cache of the value it relates
+     * to, so is returned by {@link GenericValue#getRelatedOneEmbeddedCache(String)}.
+     * <p>
+     * Unlike {@link #prefetch(String...)}, this also works with list iterators, but each row carries the columns of
+     * all the joined entities. It is ignored when finding a view entity.
+     * </p>
+     *
+     * @param relationNames the names of "one" or "one-nofk" relations of the entity being found
+     * @return {@code this}, for convenient use as a chained builder
+     */
+    public EntityFindOptions join(final String... relationNames) {
+        Collections.addAll(joinRelations, relationNames);
+        return this;
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.entity.model.ModelViewEntity;
+import org.ofbiz.core.util.Debug;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A first level cache of the rows read by the current thread within a unit of work, so that reading the same row
+ * again by its primary key, with {@link GenericDelegator#findByPrimaryKey(GenericPK)} or
+ * {@link GenericDelegator#getRelatedOne(String, GenericValue)}, hands back the value already read instead of going to
+ * the database, whether or not the entity is cached by the delegator.
+ * <p>
+ * Using it is opt-in, in the same way as a local transaction:
+ * <pre>
+ * boolean began = EntityIdentityMap.begin();
+ * try {
+ *     ...
+ * } finally {
+ *     EntityIdentityMap.end(began);
+ * }
+ * </pre>
+ * While a scope is in place the values found by primary key are remembered, as are those read by any find that selects
+ * all of the fields of an entity; a key that was not found is remembered as not found. The delegator forgets a value
+ * when it is created, stored, refreshed or removed through it, and forgets all of the values of an entity when rows of
+ * it are removed or transformed by condition. Everything is forgotten when a transaction of the thread is committed or
+ * rolled back, since the rows read before may have been changed by others since.
+ * <p>
+ * The values are handed out as they are, so a change made to a value and not yet stored is seen by whoever gets the
+ * value from the scope next.
+ */
+public final class EntityIdentityMap {
+
+    public static final String module = EntityIdentityMap.class.getName();
+
+    private static final ThreadLocal<EntityIdentityMap> current = new ThreadLocal<EntityIdentityMap>();
+
+    /** The values by delegator name, then entity name, then primary key; a null value means not found */
+    private final Map<String, Map<String, Map<List<String>, GenericValue>>> values =
+            new HashMap<String, Map<String, Map<List<String>, GenericValue>>>();
+    private int hits;
+    private int misses;
+
+    private EntityIdentityMap() {
+    }
+
+    /**
+     * Begins a scope for the current thread if it doesn't have one already.
+     *
+     * @return true if a scope was begun, false if one was in place already
+     */
+    public static boolean begin() {
+        if (current.get() != null) {
+            return false;
+        }
+        current.set(new EntityIdentityMap());
+        return true;
+    }
+
+    /**
+     * Ends the scope of the current thread if began is true, forgetting all of its values.
+     *
+     * @param began what {@link #begin()} returned
+     */
+    public static void end(final boolean began) {
+        if (!began) {
+            return;
+        }
+        final EntityIdentityMap identityMap = current.get();
+        current.remove();
+        if (identityMap != null && Debug.verboseOn()) {
+            Debug.logVerbose("Identity map ended with " + identityMap.hits + " hits and " + identityMap.misses + " misses", module);
+        }
+    }
+
+    /**
+     * @return true if the current thread has a scope
+     */
+    public static boolean isActive() {
+        return current.get() != null;
+    }
+
+    /**
+     * @return the scope of the current thread, or null if there is none
+     */
+    static EntityIdentityMap getCurrent() {
+        return current.get();
+    }
+
+    /**
+     * Forgets all of the values of the scope of the current thread, if it has one; called when a transaction ends.
+     */
+    static void transactionEnded() {
+        final EntityIdentityMap identityMap = current.get();
+        if (identityMap != null) {
+            identityMap.values.clear();
+        }
+    }
+
+    /**
+     * Forgets the value with the primary key of the given entity from the scope of the current thread, if it has one.
+     */
+    static void forget(final GenericDelegator delegator, final GenericEntity entity) {
+        final EntityIdentityMap identityMap = current.get();
+        if (identityMap != null && entity != null) {
+            final Map<List<String>, GenericValue> entityValues = identityMap.valuesOf(delegator, entity.getEntityName(), false);
+            if (entityValues != null) {
+                entityValues.remove(PrimaryKeyLookup.keyOf(entity));
+            }
+        }
+    }
+
+    /**
+     * Forgets all of the values of the given entity from the scope of the current thread, if it has one.
+     */
+    static void forgetEntity(final GenericDelegator delegator, final String entityName) {
+        final EntityIdentityMap identityMap = current.get();
+        if (identityMap != null) {
+            final Map<String, Map<List<String>, GenericValue>> delegatorValues = identityMap.values.get(delegator.getDelegatorName());
+            if (delegatorValues != null) {
+                delegatorValues.remove(entityName);
+            }
+        }
+    }
+
+    /**
+     * @return true if there is a value, or the knowledge that there is none, for the given primary key
+     */
+    boolean contains(final GenericDelegator delegator, final GenericPK primaryKey) {
+        final Map<List<String>, GenericValue> entityValues = valuesOf(delegator, primaryKey.getEntityName(), false);
+        if (entityValues != null && entityValues.containsKey(PrimaryKeyLookup.keyOf(primaryKey))) {
+            hits++;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+    /**
+     * @return the value with the given primary key, or null if there is none or it was not found
+     */
+    GenericValue get(final GenericDelegator delegator, final GenericPK primaryKey) {
+        final Map<List<String>, GenericValue> entityValues = valuesOf(delegator, primaryKey.getEntityName(), false);
+        return entityValues == null ? null : entityValues.get(PrimaryKeyLookup.keyOf(primaryKey));
+    }
+
+    /**
+     * Remembers the result of looking up the given primary key.
+     *
+     * @param value the value found, or null if there was none
+     */
+    void put(final GenericDelegator delegator, final GenericPK primaryKey, final GenericValue value) {
+        valuesOf(delegator, primaryKey.getEntityName(), true).put(PrimaryKeyLookup.keyOf(primaryKey), value);
+    }
+
+    /**
+     * Remembers a value read by a query, unless a value with the same primary key is already known, so that the value
+     * handed out before keeps being the one handed out.
+     *
+     * @param value a value read by a query; it is ignored if the query didn't select all of its fields
+     */
+    void putIfAbsent(final GenericDelegator delegator, final GenericValue value) {
+        if (value.getModelEntity() instanceof ModelViewEntity || value.fields.size() < value.getModelEntity().getFieldsSize()) {
+            // only whole rows of real entities can stand in for a find by primary key
+            return;
+        }
+        final Map<List<String>, GenericValue> entityValues = valuesOf(delegator, value.getEntityName(), true);
+        final List<String> key = PrimaryKeyLookup.keyOf(value);
+        if (entityValues.get(key) == null) {
+            entityValues.put(key, value);
+        }
+    }
+
+    private Map<List<String>, GenericValue> valuesOf(final GenericDelegator delegator, final String entityName, final boolean create) {
+        Map<String, Map<List<String>, GenericValue>> delegatorValues = values.get(delegator.getDelegatorName());
+        if (delegatorValues == null) {
+            if (!create) {
+                return null;
+            }
+            delegatorValues = new HashMap<String, Map<List<String>, GenericValue>>();
+            values.put(delegator.getDelegatorName(), delegatorValues);
+        }
+        Map<List<String>, GenericValue> entityValues = delegatorValues.get(entityName);
+        if (entityValues == null && create) {
+            entityValues = new HashMap<List<String>, GenericValue>();
+            delegatorValues.put(entityName, entityValues);
+        }
+        return entityValues;
+    }
+}
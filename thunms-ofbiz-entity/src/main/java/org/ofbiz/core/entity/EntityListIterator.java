@@ -34,7 +34,6 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 
@@ -44,6 +43,11 @@ import java.util.ListIterator;
  *
  * Note that you should *not* rely on this for streaming large datasets, as the backing ResultSet will pull the entire
  * dataset into memory anyway. For more information, see <a href="https://extranet.atlassian.com/display/JIRADEV/2015/08/04/PSA%3A+OfBizListIterator+Is+Not+Good+Enough">PSA: OfBizListIterator is not good enough</a>
+ * <p>
+ * When the backing ResultSet is {@link ResultSet#TYPE_FORWARD_ONLY} (the default), the iterator only ever moves the
+ * cursor forward: {@link #hasNext()} reads one row ahead instead of asking the driver where the cursor is, and
+ * {@link #getCompleteList()} returns the rows that have not been read yet. Together with a fetch size this lets
+ * drivers that support it stream the results rather than buffer them.
  *
  * @author     <a href="mailto:jonesde@ofbiz.org">David E. Jones</a>
  * @created    July 12, 2002
@@ -59,6 +63,19 @@ public class EntityListIterator implements ListIterator<GenericValue> {
     protected boolean haveMadeValue = false;
     protected GenericDelegator delegator = null;
 
+    /** Lazily detected; whether the ResultSet can only move forward */
+    private Boolean forwardOnly = null;
+    /** For forward only ResultSets, the value read ahead by hasNext() and not yet returned by next() */
+    private GenericValue lookAhead = null;
+    /** For forward only ResultSets, whether the last row has been read */
+    private boolean exhausted = false;
+    /** For forward only ResultSets, the number of values returned by next() so far */
+    private int rowsReturned = 0;
+    /** The number of results expected, if known, used to size the lists returned */
+    private int expectedSize = -1;
+    /** If the query joined "one" relations, how to split each row into the value and its related values */
+    private RelationJoin relationJoin = null;
+
     public EntityListIterator(SQLProcessor sqlp, ModelEntity modelEntity, List<ModelField> selectFields, ModelFieldTypeReader modelFieldTypeReader) {
         this.sqlp = sqlp;
         this.resultSet = sqlp.getResultSet();
@@ -71,6 +88,35 @@ public class EntityListIterator implements ListIterator<GenericValue> {
         this.delegator = delegator;
     }
 
+    /**
+     * Hints at the number of results, so that the lists returned by {@link #getCompleteList()} don't need to grow
+     * as much. The list is allocated at this size up front, so this should not be a loose upper bound.
+     *
+     * @param expectedSize the expected number of results, or a negative number if not known
+     */
+    public void setExpectedSize(int expectedSize) {
+        this.expectedSize = expectedSize;
+    }
+
+    void setRelationJoin(RelationJoin relationJoin) {
+        this.relationJoin = relationJoin;
+    }
+
+    /**
+     * @return true if the backing ResultSet is {@link ResultSet#TYPE_FORWARD_ONLY}
+     */
+    protected boolean isForwardOnly() {
+        if (forwardOnly == null) {
+            try {
+                forwardOnly = resultSet.getType() == ResultSet.TYPE_FORWARD_ONLY;
+            } catch (SQLException e) {
+                // assume the worst, the scrolling methods will fail anyway if the driver can't tell
+                forwardOnly = Boolean.TRUE;
+            }
+        }
+        return forwardOnly;
+    }
+
     /**
      * Detect whether or not the column data is case sensitive.
      *
@@ -173,6 +219,11 @@ public class EntityListIterator implements ListIterator<GenericValue> {
         if (closed)
             throw new GenericResultSetClosedException("This EntityListIterator has been closed, this operation cannot be performed");
 
+        if (relationJoin != null) {
+            this.haveMadeValue = true;
+            return relationJoin.makeValue(resultSet, modelFieldTypeReader, this.delegator);
+        }
+
         GenericValue value = new GenericValue(modelEntity);
 
         for (int j = 0; j < selectFields.size(); j++) {
@@ -185,6 +236,11 @@ public class EntityListIterator implements ListIterator<GenericValue> {
         value.copyOriginalDbValues();
         value.setDelegator(this.delegator);
         this.haveMadeValue = true;
+
+        final EntityIdentityMap identityMap = EntityIdentityMap.getCurrent();
+        if (identityMap != null && this.delegator != null) {
+            identityMap.putIfAbsent(this.delegator, value);
+        }
         return value;
     }
 
@@ -192,6 +248,10 @@ public class EntityListIterator implements ListIterator<GenericValue> {
         if (closed)
             throw new GenericResultSetClosedException("This EntityListIterator has been closed, this operation cannot be performed");
 
+        if (isForwardOnly()) {
+            // getRow() is optional for forward only ResultSets, and is off by one while a row has been read ahead
+            return rowsReturned;
+        }
         try {
             return resultSet.getRow();
         } catch (SQLException e) {
@@ -217,9 +277,20 @@ public class EntityListIterator implements ListIterator<GenericValue> {
     }
 
     /**
-     * PLEASE NOTE: Because of the nature of the JDBC ResultSet interface this method can be very inefficient; it is much better to just use next() until it returns null
+     * PLEASE NOTE: For scrollable ResultSets this method can be very inefficient because of the nature of the JDBC
+     * ResultSet interface; it is much better to just use next() until it returns null. For forward only ResultSets it
+     * reads the next row ahead, which is cheap.
      */
     public boolean hasNext() {
+        if (isForwardOnly()) {
+            try {
+                return readAhead() != null;
+            } catch (SQLException e) {
+                throw new GeneralRuntimeException("Error while checking to see if this is the last result", e);
+            } catch (GenericEntityException e) {
+                throw new GeneralRuntimeException("Error creating GenericValue", e);
+            }
+        }
         try {
             if (resultSet.isLast() || resultSet.isAfterLast()) {
                 return false;
@@ -263,6 +334,14 @@ public class EntityListIterator implements ListIterator<GenericValue> {
      */
     public GenericValue next() {
         try {
+            if (isForwardOnly()) {
+                final GenericValue value = readAhead();
+                if (value != null) {
+                    lookAhead = null;
+                    rowsReturned++;
+                }
+                return value;
+            }
             if (resultSet.next()) {
                 return currentGenericValue();
             } else {
@@ -275,6 +354,22 @@ public class EntityListIterator implements ListIterator<GenericValue> {
         }
     }
 
+    /**
+     * For forward only ResultSets, makes the next value available without handing it out.
+     *
+     * @return the next value, or null if there are no more results
+     */
+    private GenericValue readAhead() throws SQLException, GenericEntityException {
+        if (lookAhead == null && !exhausted) {
+            if (resultSet.next()) {
+                lookAhead = currentGenericValue();
+            } else {
+                exhausted = true;
+            }
+        }
+        return lookAhead;
+    }
+
     /**
      * Returns the index of the next result, but does not guarantee that there will be a next result
      */
@@ -322,14 +417,20 @@ public class EntityListIterator implements ListIterator<GenericValue> {
         }
     }
 
+    /**
+     * Gets all the results. For forward only ResultSets, which can't go back to the beginning, these are only the
+     * results that have not already been returned by {@link #next()} (it used to try to rewind the ResultSet, which
+     * drivers reject for forward only ones); to get every result, call this before {@link #next()}, or ask for a
+     * scrollable result set type in the find options.
+     */
     public List<GenericValue> getCompleteList() throws GenericEntityException {
         try {
             // if the resultSet has been moved forward at all, move back to the beginning
-            if (haveMadeValue && !resultSet.isBeforeFirst()) {
+            if (!isForwardOnly() && haveMadeValue && !resultSet.isBeforeFirst()) {
                 // do a quick check to see if the ResultSet is empty
                 resultSet.beforeFirst();
             }
-            List<GenericValue> list = new LinkedList<GenericValue>();
+            List<GenericValue> list = new ArrayList<GenericValue>(expectedSize > 0 ? expectedSize : 10);
             GenericValue nextValue = null;
 
             while ((nextValue = this.next()) != null) {
@@ -350,6 +451,9 @@ public class EntityListIterator implements ListIterator<GenericValue> {
     public List<GenericValue> getPartialList(int start, int number) throws GenericEntityException {
         try {
             if (number == 0) return new ArrayList<GenericValue>();
+            if (isForwardOnly()) {
+                return getPartialListForwardOnly(start, number);
+            }
             List<GenericValue> list = new ArrayList<GenericValue>(number);
 
             // if can't reposition to desired index, throw exception
@@ -377,6 +481,36 @@ public class EntityListIterator implements ListIterator<GenericValue> {
         }
     }
 
+    private List<GenericValue> getPartialListForwardOnly(int start, int number) throws GenericEntityException {
+        if (start <= rowsReturned) {
+            throw new GenericEntityException("Could not move back to the start position of " + start + ", the results are forward only and " + rowsReturned + " have already been read.");
+        }
+        // skip to just before the start, without making values for the skipped rows
+        try {
+            while (rowsReturned < start - 1) {
+                if (lookAhead != null) {
+                    lookAhead = null;
+                } else if (exhausted || !resultSet.next()) {
+                    exhausted = true;
+                    throw new GenericEntityException("Could not move to the start position of " + start + ", there are probably not that many results for this find.");
+                }
+                rowsReturned++;
+            }
+        } catch (SQLException e) {
+            throw new GenericEntityException("Error getting results", e);
+        }
+
+        final List<GenericValue> list = new ArrayList<GenericValue>(number);
+        GenericValue nextValue = null;
+        while (number > list.size() && (nextValue = this.next()) != null) {
+            list.add(nextValue);
+        }
+        if (list.isEmpty()) {
+            throw new GenericEntityException("Could not move to the start position of " + start + ", there are probably not that many results for this find.");
+        }
+        return list;
+    }
+
     public void add(GenericValue obj) {
         throw new GeneralRuntimeException("CursorListIterator currently only supports read-only access");
     }
@@ -0,0 +1,238 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.entity.model.ModelEntity;
+import org.ofbiz.core.entity.model.ModelField;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * An order by list compiled against an entity: the field names are looked up once, rather than for each comparison,
+ * and a field may be followed by " ASC" for ascending or " DESC" for descending order. As in the database, a null value
+ * is greater than any other value.
+ * <p>
+ * {@link #sort(List)} compares the values directly if there are few of them. Otherwise it reads the fields being
+ * ordered by from each value once, into an array per field, with numbers and dates (other than timestamps) held as
+ * primitives, then sorts on those; in parallel, if there are more than {@link #PARALLEL_SORT_THRESHOLD} values. Either
+ * way the sort is stable.
+ */
+public final class EntityOrderBy implements Comparator<GenericEntity> {
+
+    /** The number of values from which {@link #sort(List)} reads the fields once per value */
+    public static final int DECORATE_THRESHOLD = Integer.getInteger("entity.order.by.decorate.threshold", 256);
+
+    /** The number of values from which {@link #sort(List)} sorts in parallel */
+    public static final int PARALLEL_SORT_THRESHOLD = Integer.getInteger("entity.order.by.parallel.threshold", 50000);
+
+    private static final int LONG = 0;
+    private static final int DOUBLE = 1;
+    private static final int OBJECT = 2;
+
+    private final ModelField[] fields;
+    private final boolean[] descending;
+
+    private EntityOrderBy(final ModelField[] fields, final boolean[] descending) {
+        this.fields = fields;
+        this.descending = descending;
+    }
+
+    /**
+     * @param modelEntity the entity of the values to order
+     * @param orderBy     the fields of the entity to order by; optionally add a " ASC" for ascending or " DESC" for
+     *                    descending
+     * @throws IllegalArgumentException if orderBy is empty or names a field the entity doesn't have
+     */
+    public static EntityOrderBy compile(final ModelEntity modelEntity, final List<String> orderBy) {
+        if (orderBy == null || orderBy.isEmpty()) {
+            throw new IllegalArgumentException("orderBy may not be empty");
+        }
+        final ModelField[] fields = new ModelField[orderBy.size()];
+        final boolean[] descending = new boolean[orderBy.size()];
+        for (int i = 0; i < fields.length; i++) {
+            final String fieldAndDirection = orderBy.get(i);
+            final String upper = fieldAndDirection.trim().toUpperCase();
+            final String field;
+            if (upper.endsWith(" DESC")) {
+                descending[i] = true;
+                field = fieldAndDirection.substring(0, fieldAndDirection.length() - 5);
+            } else if (upper.endsWith(" ASC")) {
+                field = fieldAndDirection.substring(0, fieldAndDirection.length() - 4);
+            } else {
+                field = fieldAndDirection;
+            }
+            fields[i] = modelEntity.getField(field);
+            if (fields[i] == null) {
+                throw new IllegalArgumentException("The field " + field + " could not be found in the entity " + modelEntity.getEntityName());
+            }
+        }
+        return new EntityOrderBy(fields, descending);
+    }
+
+    public int compare(final GenericEntity value, final GenericEntity value2) {
+        for (int i = 0; i < fields.length; i++) {
+            final int result = compareAsc(value.dangerousGetNoCheckButFast(fields[i]), value2.dangerousGetNoCheckButFast(fields[i]));
+            if (result != 0) {
+                return descending[i] ? -result : result;
+            }
+        }
+        return 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareAsc(final Object value, final Object value2) {
+        // null is defined as the largest possible value
+        if (value == null) return value2 == null ? 0 : 1;
+        if (value2 == null) return -1;
+        return ((Comparable<Object>) value).compareTo(value2);
+    }
+
+    /**
+     * Sorts the given values in place.
+     */
+    public <T extends GenericEntity> void sort(final List<T> values) {
+        if (values.size() < DECORATE_THRESHOLD) {
+            values.sort(this);
+            return;
+        }
+
+        final Keys[] keys = new Keys[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            keys[i] = new Keys(values, fields[i], descending[i]);
+        }
+        final Row[] rows = new Row[values.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Row(i, values.get(i));
+        }
+        final Comparator<Row> comparator = new Comparator<Row>() {
+            public int compare(final Row row, final Row row2) {
+                for (Keys column : keys) {
+                    final int result = column.compare(row.index, row2.index);
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                return 0;
+            }
+        };
+        if (rows.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(rows, comparator);
+        } else {
+            Arrays.sort(rows, comparator);
+        }
+
+        for (int i = 0; i < rows.length; i++) {
+            @SuppressWarnings("unchecked")
+            final T value = (T) rows[i].value;
+            values.set(i, value);
+        }
+    }
+
+    private static final class Row {
+        final int index;
+        final GenericEntity value;
+
+        Row(final int index, final GenericEntity value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    /**
+     * The values of one of the fields ordered by, by row; as longs if they are all integral numbers or dates, as doubles
+     * if they are all floating point numbers, or else as they are.
+     */
+    private static final class Keys {
+        private final boolean descending;
+        private final int kind;
+        private final boolean[] nulls;
+        private long[] longs;
+        private double[] doubles;
+        private Object[] objects;
+
+        Keys(final List<? extends GenericEntity> values, final ModelField field, final boolean descending) {
+            this.descending = descending;
+            final Object[] fieldValues = new Object[values.size()];
+            boolean integral = true;
+            boolean floating = true;
+            for (int i = 0; i < fieldValues.length; i++) {
+                final Object value = values.get(i).dangerousGetNoCheckButFast(field);
+                fieldValues[i] = value;
+                if (value != null) {
+                    integral &= value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                            || (value instanceof Date && !(value instanceof Timestamp));
+                    floating &= value instanceof Double || value instanceof Float;
+                }
+            }
+
+            nulls = new boolean[fieldValues.length];
+            if (integral) {
+                kind = LONG;
+                longs = new long[fieldValues.length];
+                for (int i = 0; i < fieldValues.length; i++) {
+                    final Object value = fieldValues[i];
+                    nulls[i] = value == null;
+                    if (value instanceof Date) {
+                        longs[i] = ((Date) value).getTime();
+                    } else if (value != null) {
+                        longs[i] = ((Number) value).longValue();
+                    }
+                }
+            } else if (floating) {
+                kind = DOUBLE;
+                doubles = new double[fieldValues.length];
+                for (int i = 0; i < fieldValues.length; i++) {
+                    nulls[i] = fieldValues[i] == null;
+                    if (!nulls[i]) {
+                        doubles[i] = ((Number) fieldValues[i]).doubleValue();
+                    }
+                }
+            } else {
+                kind = OBJECT;
+                objects = fieldValues;
+                for (int i = 0; i < fieldValues.length; i++) {
+                    nulls[i] = fieldValues[i] == null;
+                }
+            }
+        }
+
+        int compare(final int row, final int row2) {
+            final int result;
+            if (nulls[row] || nulls[row2]) {
+                result = nulls[row] == nulls[row2] ? 0 : nulls[row] ? 1 : -1;
+            } else if (kind == LONG) {
+                result = Long.compare(longs[row], longs[row2]);
+            } else if (kind == DOUBLE) {
+                result = Double.compare(doubles[row], doubles[row2]);
+            } else {
+                result = compareAsc(objects[row], objects[row2]);
+            }
+            return descending ? -result : result;
+        }
+    }
+}
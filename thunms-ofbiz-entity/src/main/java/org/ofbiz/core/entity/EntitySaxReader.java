@@ -24,6 +24,7 @@
  */
 package org.ofbiz.core.entity;
 
+import org.ofbiz.core.entity.model.ModelRelation;
 import org.ofbiz.core.util.Debug;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
@@ -33,13 +34,43 @@ import org.xml.sax.XMLReader;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * SAX XML Parser Content Handler for Entity Engine XML files
+ * <p>
+ * By default the whole document is written in one transaction from the parsing thread. When more than one writer
+ * thread or a commit interval is configured, the parsing thread instead hands batches of values to the writer threads
+ * through a bounded queue, and each writer commits its own transaction every {@link #getValuesPerCommit()} values.
+ * A batch holding values that have foreign keys to an entity is not written until the earlier batches holding values
+ * of that entity have been committed, so that related values are written in document order.
+ * With a checkpoint file such an import can be resumed after a failure: the batches that were already committed
+ * are read again but not written.
  *
  * @author <a href="mailto:jonesde@ofbiz.org">David E. Jones</a>
  * @version $Revision: 1.1 $
@@ -53,15 +84,26 @@ public class EntitySaxReader implements org.xml.sax.ContentHandler, ErrorHandler
     protected GenericDelegator delegator;
     protected GenericValue currentValue = null;
     protected String currentFieldName = null;
-    protected String currentFieldValue = null;
+    protected StringBuilder currentFieldValue = new StringBuilder();
     protected long numberRead = 0;
 
     protected int valuesPerWrite = 100;
     protected int valuesPerMessage = 1000;
     protected int transactionTimeout = 7200;
+    protected int writerThreads = 1;
+    protected int queueCapacity = 16;
+    protected int valuesPerCommit = 0;
+    protected boolean useBatchInsert = false;
+    protected File checkpointFile = null;
 
     protected List<GenericValue> valuesToWrite = new ArrayList<GenericValue>(valuesPerWrite);
 
+    private final AtomicLong numberWritten = new AtomicLong();
+    private long numberSkipped = 0;
+    private long startTime = 0;
+    private long elapsedTime = 0;
+    private volatile ImportPipeline pipeline = null;
+
     protected EntitySaxReader() {
     }
 
@@ -96,6 +138,102 @@ public class EntitySaxReader implements org.xml.sax.ContentHandler, ErrorHandler
         }
     }
 
+    public int getWriterThreads() {
+        return this.writerThreads;
+    }
+
+    /**
+     * @param writerThreads the number of threads writing values to the database while the document is parsed
+     */
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = Math.max(writerThreads, 1);
+    }
+
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity the number of batches of {@link #getValuesPerWrite()} values that can wait for a writer
+     *                      thread before parsing is held up
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(queueCapacity, 1);
+    }
+
+    public int getValuesPerCommit() {
+        return this.valuesPerCommit;
+    }
+
+    /**
+     * @param valuesPerCommit the number of values each writer thread writes before committing its transaction; zero
+     *                        or less to commit only at the end of the document
+     */
+    public void setValuesPerCommit(int valuesPerCommit) {
+        this.valuesPerCommit = valuesPerCommit;
+    }
+
+    public boolean isUseBatchInsert() {
+        return this.useBatchInsert;
+    }
+
+    /**
+     * @param useBatchInsert true to write values with {@link GenericDelegator#createAll(List)}, which is faster but
+     *                       fails on values that already exist; false to use {@link GenericDelegator#storeAll(List)}
+     */
+    public void setUseBatchInsert(boolean useBatchInsert) {
+        this.useBatchInsert = useBatchInsert;
+    }
+
+    public File getCheckpointFile() {
+        return this.checkpointFile;
+    }
+
+    /**
+     * Sets the file that records which batches of the document have been committed, so that a failed import can be
+     * resumed. The file is only used when values are written by writer threads, and is removed once the whole
+     * document has been imported. A resumed import uses the {@link #getValuesPerWrite()} of the checkpoint, so that
+     * its batches are the same.
+     */
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * @return the number of values read from the document by the last parse, including any skipped values
+     */
+    public long getNumberRead() {
+        return this.numberRead;
+    }
+
+    /**
+     * @return the number of values written to the database by the last parse
+     */
+    public long getNumberWritten() {
+        return numberWritten.get();
+    }
+
+    /**
+     * @return the number of values skipped by the last parse because a checkpoint showed them already committed
+     */
+    public long getNumberSkipped() {
+        return this.numberSkipped;
+    }
+
+    /**
+     * @return the time taken by the last parse in milliseconds
+     */
+    public long getElapsedTime() {
+        return this.elapsedTime;
+    }
+
+    /**
+     * @return the number of values written per second by the last parse
+     */
+    public long getValuesPerSecond() {
+        return valuesPerSecond(numberWritten.get(), elapsedTime);
+    }
+
     public long parse(String content) throws SAXException, java.io.IOException {
         if (content == null) {
             Debug.logWarning("content was null, doing nothing", module);
@@ -140,41 +278,184 @@ public class EntitySaxReader implements org.xml.sax.ContentHandler, ErrorHandler
         // reader.setEntityResolver(lr);
 
         numberRead = 0;
-        try {
-            boolean beganTransaction = TransactionUtil.begin();
+        numberWritten.set(0);
+        numberSkipped = 0;
+        valuesToWrite.clear();
+        startTime = System.currentTimeMillis();
+        if (writerThreads > 1 || valuesPerCommit > 0) {
+            parseWithWriters(reader, is, docDescription);
+        } else {
+            try {
+                boolean beganTransaction = TransactionUtil.begin();
 
-            TransactionUtil.setTransactionTimeout(transactionTimeout);
-            Debug.logImportant("Transaction Timeout set to " + transactionTimeout / 3600 + " hours (" + transactionTimeout + " seconds)");
+                TransactionUtil.setTransactionTimeout(transactionTimeout);
+                Debug.logImportant("Transaction Timeout set to " + transactionTimeout / 3600 + " hours (" + transactionTimeout + " seconds)");
+                try {
+                    reader.parse(new InputSource(is));
+                    // make sure all of the values to write got written...
+                    if (valuesToWrite.size() > 0) {
+                        writeValues(valuesToWrite);
+                        valuesToWrite.clear();
+                    }
+                    TransactionUtil.commit(beganTransaction);
+                } catch (Exception e) {
+                    Debug.logError(e, "An error occurred saving the data, rolling back transaction");
+                    TransactionUtil.rollback(beganTransaction);
+                    throw new SAXException("A transaction error occurred reading data", e);
+                }
+            } catch (GenericTransactionException e) {
+                throw new SAXException("A transaction error occurred reading data", e);
+            }
+        }
+        elapsedTime = System.currentTimeMillis() - startTime;
+        Debug.logImportant("Finished writing " + numberWritten.get() + " values to the database from " + docDescription +
+                " in " + elapsedTime + " ms (" + getValuesPerSecond() + " values/s)" +
+                (numberSkipped > 0 ? ", skipped " + numberSkipped + " values committed by an earlier import" : ""));
+        return numberRead;
+    }
+
+    private void parseWithWriters(XMLReader reader, InputStream is, String docDescription) throws SAXException, IOException {
+        SortedSet<Long> committedBatches = readCheckpoint(docDescription);
+        if (!committedBatches.isEmpty()) {
+            Debug.logImportant("Resuming import of " + docDescription + " after " + committedBatches.size() +
+                    " committed batches of " + valuesPerWrite + " values", module);
+        }
+
+        ImportPipeline importPipeline = new ImportPipeline(docDescription, committedBatches);
+        pipeline = importPipeline;
+        try {
+            importPipeline.start();
             try {
                 reader.parse(new InputSource(is));
                 // make sure all of the values to write got written...
                 if (valuesToWrite.size() > 0) {
-                    delegator.storeAll(valuesToWrite);
+                    importPipeline.submit((numberRead - 1) / valuesPerWrite, valuesToWrite);
                     valuesToWrite.clear();
                 }
-                TransactionUtil.commit(beganTransaction);
             } catch (Exception e) {
-                Debug.logError(e, "An error occurred saving the data, rolling back transaction");
-                TransactionUtil.rollback(beganTransaction);
-                throw new SAXException("A transaction error occurred reading data", e);
+                importPipeline.abort(e);
             }
-        } catch (GenericTransactionException e) {
-            throw new SAXException("A transaction error occurred reading data", e);
+            importPipeline.finish();
+        } catch (SAXException e) {
+            Debug.logError(e, "An error occurred saving the data, rolling back uncommitted values", module);
+            throw e;
+        } finally {
+            pipeline = null;
+            valuesToWrite.clear();
         }
-        Debug.logImportant("Finished writing " + numberRead + " values to the database from " + docDescription);
-        return numberRead;
+        deleteCheckpoint();
     }
 
-    public void characters(char[] values, int offset, int count) throws org.xml.sax.SAXException {
-        if (currentValue != null && currentFieldName != null) {
-            String value = new String(values, offset, count);
+    /**
+     * Writes one batch of values to the database in the current thread.
+     */
+    protected void writeValues(List<GenericValue> values) throws GenericEntityException {
+        if (useBatchInsert) {
+            delegator.createAll(values);
+        } else {
+            delegator.storeAll(values);
+        }
+        numberWritten.addAndGet(values.size());
+    }
 
-            // Debug.logInfo("characters: value=" + value);
-            if (currentFieldValue == null) {
-                currentFieldValue = value;
-            } else {
-                currentFieldValue += value;
+    private static long valuesPerSecond(long values, long millis) {
+        return millis > 0 ? values * 1000 / millis : 0;
+    }
+
+    /**
+     * @return the numbers of the batches committed by an earlier import of the document, if any
+     */
+    private SortedSet<Long> readCheckpoint(String docDescription) {
+        SortedSet<Long> committedBatches = new TreeSet<Long>();
+        if (checkpointFile == null || !checkpointFile.exists()) {
+            return committedBatches;
+        }
+
+        Properties checkpoint = new Properties();
+        try (InputStream in = new FileInputStream(checkpointFile)) {
+            checkpoint.load(in);
+        } catch (IOException e) {
+            Debug.logWarning(e, "Could not read import checkpoint " + checkpointFile + ", importing the whole document", module);
+            return committedBatches;
+        }
+        if (!docDescription.equals(checkpoint.getProperty("document"))) {
+            Debug.logWarning("Import checkpoint " + checkpointFile + " is for " + checkpoint.getProperty("document") +
+                    ", not " + docDescription + "; importing the whole document", module);
+            return committedBatches;
+        }
+        try {
+            int checkpointValuesPerWrite = Integer.parseInt(checkpoint.getProperty("valuesPerWrite"));
+            for (String range : checkpoint.getProperty("batches", "").split(",")) {
+                if (range.isEmpty()) {
+                    continue;
+                }
+                int dash = range.indexOf('-');
+                long first = Long.parseLong(dash < 0 ? range : range.substring(0, dash));
+                long last = dash < 0 ? first : Long.parseLong(range.substring(dash + 1));
+                for (long batch = first; batch <= last; batch++) {
+                    committedBatches.add(batch);
+                }
             }
+            if (checkpointValuesPerWrite != valuesPerWrite) {
+                Debug.logWarning("Import checkpoint " + checkpointFile + " has batches of " + checkpointValuesPerWrite +
+                        " values, using that instead of " + valuesPerWrite, module);
+                valuesPerWrite = checkpointValuesPerWrite;
+            }
+            return committedBatches;
+        } catch (NumberFormatException e) {
+            Debug.logWarning(e, "Invalid import checkpoint " + checkpointFile + ", importing the whole document", module);
+            return new TreeSet<Long>();
+        }
+    }
+
+    private void writeCheckpoint(String docDescription, SortedSet<Long> committedBatches) throws IOException {
+        // the batch numbers as ranges, e.g. "0-41,43"
+        StringBuilder batches = new StringBuilder();
+        long first = -1;
+        long last = -2;
+        for (long batch : committedBatches) {
+            if (batch != last + 1) {
+                appendRange(batches, first, last);
+                first = batch;
+            }
+            last = batch;
+        }
+        appendRange(batches, first, last);
+
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("document", docDescription);
+        checkpoint.setProperty("valuesPerWrite", Integer.toString(valuesPerWrite));
+        checkpoint.setProperty("batches", batches.toString());
+
+        File tempFile = new File(checkpointFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+            checkpoint.store(out, "Entity import checkpoint");
+        }
+        Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void appendRange(StringBuilder ranges, long first, long last) {
+        if (first < 0) {
+            return;
+        }
+        if (ranges.length() > 0) {
+            ranges.append(',');
+        }
+        ranges.append(first);
+        if (last != first) {
+            ranges.append('-').append(last);
+        }
+    }
+
+    private void deleteCheckpoint() {
+        if (checkpointFile != null && checkpointFile.exists() && !checkpointFile.delete()) {
+            Debug.logWarning("Could not delete import checkpoint " + checkpointFile, module);
+        }
+    }
+
+    public void characters(char[] values, int offset, int count) throws org.xml.sax.SAXException {
+        if (currentValue != null && currentFieldName != null) {
+            currentFieldValue.append(values, offset, count);
         }
     }
 
@@ -188,21 +469,33 @@ public class EntitySaxReader implements org.xml.sax.ContentHandler, ErrorHandler
         }
         if (currentValue != null) {
             if (currentFieldName != null) {
-                if (currentFieldValue != null && currentFieldValue.length() > 0) {
-                    currentValue.setString(currentFieldName, currentFieldValue);
-                    currentFieldValue = null;
+                if (currentFieldValue.length() > 0) {
+                    currentValue.setString(currentFieldName, currentFieldValue.toString());
+                    currentFieldValue.setLength(0);
                 }
                 currentFieldName = null;
             } else {
                 try {
-                    valuesToWrite.add(currentValue);
-                    if (valuesToWrite.size() >= valuesPerWrite) {
-                        delegator.storeAll(valuesToWrite);
+                    // batches committed by an earlier import are parsed again, but not written
+                    final long batchNumber = numberRead / valuesPerWrite;
+                    final ImportPipeline importPipeline = pipeline;
+                    if (importPipeline != null && importPipeline.isCommitted(batchNumber)) {
+                        numberSkipped++;
+                    } else {
+                        valuesToWrite.add(currentValue);
+                    }
+                    if ((numberRead + 1) % valuesPerWrite == 0 && valuesToWrite.size() > 0) {
+                        if (importPipeline != null) {
+                            importPipeline.submit(batchNumber, valuesToWrite);
+                        } else {
+                            writeValues(valuesToWrite);
+                        }
                         valuesToWrite.clear();
                     }
                     numberRead++;
                     if ((numberRead % valuesPerMessage) == 0) {
-                        Debug.logImportant("Another " + valuesPerMessage + " values imported: now up to " + numberRead);
+                        Debug.logImportant("Another " + valuesPerMessage + " values imported: now up to " + numberRead +
+                                " (" + valuesPerSecond(numberWritten.get(), System.currentTimeMillis() - startTime) + " values/s written)");
                     }
                     currentValue = null;
                 } catch (GenericEntityException e) {
@@ -212,6 +505,257 @@ public class EntitySaxReader implements org.xml.sax.ContentHandler, ErrorHandler
         }
     }
 
+    /**
+     * The writer threads of one parse, and the queue of batches that feeds them.
+     * <p>
+     * Each batch is numbered by its position in the document. Because writers commit independently, the checkpoint
+     * records each committed batch rather than how far the import got. A batch whose values have foreign keys to an
+     * entity waits for the earlier batches holding values of that entity to be committed; the writer commits what it
+     * has written so far before it waits, as the batches it waits for may in turn wait for those.
+     */
+    private class ImportPipeline {
+
+        private final List<GenericValue> endOfInput = new ArrayList<GenericValue>(0);
+        private final String docDescription;
+        private final BlockingQueue<Batch> queue;
+        private final List<Thread> writers = new ArrayList<Thread>();
+        /** The entities that values of an entity have foreign keys to, by entity name; used by the parsing thread */
+        private final Map<String, Set<String>> foreignKeyEntities = new HashMap<String, Set<String>>();
+        /** The entities of the batches submitted but not yet committed, by batch number; guarded by this */
+        private final SortedMap<Long, Set<String>> uncommittedBatches = new TreeMap<Long, Set<String>>();
+        /** The numbers of the batches committed, including those of an earlier import; guarded by this */
+        private final SortedSet<Long> committedBatches;
+        private volatile Throwable failure = null;
+
+        ImportPipeline(String docDescription, SortedSet<Long> committedBatches) {
+            this.docDescription = docDescription;
+            this.committedBatches = committedBatches;
+            this.queue = new ArrayBlockingQueue<Batch>(queueCapacity);
+        }
+
+        void start() {
+            for (int i = 0; i < writerThreads; i++) {
+                Thread writer = new Thread(new Runnable() {
+                    public void run() {
+                        write();
+                    }
+                }, "EntitySaxReader-writer-" + i);
+                writer.setDaemon(true);
+                writers.add(writer);
+                writer.start();
+            }
+        }
+
+        synchronized boolean isCommitted(long batchNumber) {
+            return committedBatches.contains(batchNumber);
+        }
+
+        /**
+         * Hands a copy of the given values to the writers, waiting while the queue is full.
+         */
+        void submit(long batchNumber, List<GenericValue> values) throws GenericEntityException {
+            Set<String> entityNames = new HashSet<String>();
+            Set<String> dependencies = new HashSet<String>();
+            for (GenericValue value : values) {
+                if (entityNames.add(value.getEntityName())) {
+                    dependencies.addAll(getForeignKeyEntities(value));
+                }
+            }
+            synchronized (this) {
+                uncommittedBatches.put(batchNumber, entityNames);
+            }
+            put(new Batch(batchNumber, new ArrayList<GenericValue>(values), dependencies));
+        }
+
+        private Set<String> getForeignKeyEntities(GenericValue value) {
+            Set<String> entityNames = foreignKeyEntities.get(value.getEntityName());
+            if (entityNames == null) {
+                entityNames = new HashSet<String>();
+                Iterator<ModelRelation> relations = value.getModelEntity().getRelationsIterator();
+                while (relations.hasNext()) {
+                    ModelRelation relation = relations.next();
+                    if ("one".equals(relation.getType())) {
+                        entityNames.add(relation.getRelEntityName());
+                    }
+                }
+                foreignKeyEntities.put(value.getEntityName(), entityNames);
+            }
+            return entityNames;
+        }
+
+        void abort(Throwable cause) {
+            if (failure == null) {
+                failure = cause;
+            }
+        }
+
+        /**
+         * Waits for the writers to write everything submitted so far.
+         *
+         * @throws SAXException if parsing or any of the writers failed
+         */
+        void finish() throws SAXException {
+            try {
+                for (int i = 0; i < writers.size(); i++) {
+                    while (!queue.offer(new Batch(-1, endOfInput, Collections.<String>emptySet()), 1, TimeUnit.SECONDS)) {
+                        // writers that have failed no longer take from the queue, so drop what they left behind
+                        if (failure != null) {
+                            queue.clear();
+                        }
+                    }
+                }
+                for (Thread writer : writers) {
+                    writer.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort(e);
+            }
+            if (failure != null) {
+                throw new SAXException("A transaction error occurred reading data", failure instanceof Exception ? (Exception) failure : new Exception(failure));
+            }
+        }
+
+        private void put(Batch batch) throws GenericEntityException {
+            try {
+                while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
+                    if (failure != null) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort(e);
+            }
+            if (failure != null) {
+                throw new GenericEntityException("Import of " + docDescription + " failed", failure);
+            }
+        }
+
+        private void write() {
+            boolean beganTransaction = false;
+            boolean inTransaction = false;
+            List<Batch> uncommitted = new ArrayList<Batch>();
+            int uncommittedValues = 0;
+
+            try {
+                TransactionUtil.setTransactionTimeout(transactionTimeout);
+                while (true) {
+                    Batch batch = queue.take();
+                    if (batch.values == endOfInput || failure != null) {
+                        break;
+                    }
+
+                    if (!isWritable(batch, uncommitted)) {
+                        if (inTransaction) {
+                            TransactionUtil.commit(beganTransaction);
+                            inTransaction = false;
+                            committed(uncommitted);
+                            uncommitted.clear();
+                            uncommittedValues = 0;
+                        }
+                        if (!awaitWritable(batch)) {
+                            break;
+                        }
+                    }
+
+                    if (!inTransaction) {
+                        beganTransaction = TransactionUtil.begin();
+                        inTransaction = true;
+                    }
+                    writeValues(batch.values);
+                    uncommitted.add(batch);
+                    uncommittedValues += batch.values.size();
+
+                    if (valuesPerCommit > 0 && uncommittedValues >= valuesPerCommit) {
+                        TransactionUtil.commit(beganTransaction);
+                        inTransaction = false;
+                        committed(uncommitted);
+                        uncommitted.clear();
+                        uncommittedValues = 0;
+                    }
+                }
+
+                if (inTransaction) {
+                    if (failure != null) {
+                        TransactionUtil.rollback(beganTransaction);
+                    } else {
+                        TransactionUtil.commit(beganTransaction);
+                        committed(uncommitted);
+                    }
+                }
+            } catch (Throwable t) {
+                abort(t);
+                if (inTransaction) {
+                    try {
+                        TransactionUtil.rollback(beganTransaction);
+                    } catch (GenericTransactionException e) {
+                        Debug.logError(e, "Could not roll back import transaction", module);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param ownBatches the batches written but not yet committed by the calling writer, which it can see
+         * @return true if no earlier batch holding values that the given batch has foreign keys to is uncommitted
+         */
+        private synchronized boolean isWritable(Batch batch, List<Batch> ownBatches) {
+            for (Map.Entry<Long, Set<String>> earlier : uncommittedBatches.headMap(batch.number).entrySet()) {
+                if (!Collections.disjoint(earlier.getValue(), batch.dependencies) && !contains(ownBatches, earlier.getKey())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return false if the import failed while waiting
+         */
+        private synchronized boolean awaitWritable(Batch batch) throws InterruptedException {
+            List<Batch> none = Collections.emptyList();
+            while (failure == null && !isWritable(batch, none)) {
+                // abort doesn't notify, so look at failure now and then
+                wait(1000);
+            }
+            return failure == null;
+        }
+
+        private synchronized void committed(List<Batch> batches) throws IOException {
+            for (Batch batch : batches) {
+                uncommittedBatches.remove(batch.number);
+                committedBatches.add(batch.number);
+            }
+            notifyAll();
+            if (checkpointFile != null && !batches.isEmpty()) {
+                writeCheckpoint(docDescription, committedBatches);
+            }
+        }
+    }
+
+    private static boolean contains(List<Batch> batches, long batchNumber) {
+        for (Batch batch : batches) {
+            if (batch.number == batchNumber) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Batch {
+
+        final long number;
+        final List<GenericValue> values;
+        /** The entities that the values have foreign keys to */
+        final Set<String> dependencies;
+
+        Batch(long number, List<GenericValue> values, Set<String> dependencies) {
+            this.number = number;
+            this.values = values;
+            this.dependencies = dependencies;
+        }
+    }
+
     public void endPrefixMapping(String prefix) throws org.xml.sax.SAXException {
     }
 
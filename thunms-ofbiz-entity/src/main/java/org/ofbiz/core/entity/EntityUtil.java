@@ -28,11 +28,8 @@ package org.ofbiz.core.entity;
 import org.ofbiz.core.entity.model.ModelField;
 import org.ofbiz.core.util.UtilDateTime;
 import org.ofbiz.core.util.UtilMisc;
-import org.ofbiz.core.util.UtilValidate;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -131,6 +128,13 @@ public class EntityUtil {
         if (thruDateName == null)
             throw new IllegalArgumentException("You must specify the name of the thruDate field to use this method");
 
+        if (allAreSame && datedValues instanceof EntityCacheList) {
+            // a list from the cache is filtered again and again, so it keeps an index of the dates
+            @SuppressWarnings("unchecked")
+            final EntityCacheList<T> cachedValues = (EntityCacheList<T>) datedValues;
+            return cachedValues.getEffectiveDateIndex(fromDateName, thruDateName).filterByDate(moment);
+        }
+
         List<T> result = new LinkedList<T>();
         Iterator<T> iter = datedValues.iterator();
 
@@ -323,30 +327,43 @@ public class EntityUtil {
     public static <T extends GenericValue> List<T> orderBy(List<T> values, List<String> orderBy) {
         if (values == null) return null;
         if (values.size() == 0) return UtilMisc.toList(values);
+        if (orderBy == null || orderBy.isEmpty()) throw new IllegalArgumentException("orderBy may not be empty");
 
         List<T> result = new ArrayList<T>(values);
 
-        Collections.sort(result, new OrderByComparator(orderBy));
+        if (result.size() > 1) {
+            EntityOrderBy.compile(result.get(0).getModelEntity(), orderBy).sort(result);
+        }
         return result;
     }
 
+    /**
+     * Gets the values related to each of the given values, in the order of the given values. The related values are
+     * read with as few queries as possible, see {@link GenericDelegator#getRelatedForAll(String, java.util.Collection)}.
+     */
     public static List<GenericValue> getRelated(String relationName, List<? extends GenericValue> values) throws GenericEntityException {
         if (values == null) return null;
+        if (values.isEmpty()) return new ArrayList<GenericValue>();
 
-        final List<GenericValue> result = new ArrayList<GenericValue>();
-        for (GenericValue value : values) {
-            result.addAll(value.getRelated(relationName));
-        }
-        return result;
+        return flattenRelated(values.get(0).getDelegator().getRelatedForAll(relationName, values));
     }
 
+    /**
+     * Gets the values related to each of the given values, in the order of the given values, looking first in the
+     * cache; see {@link GenericDelegator#getRelatedCacheForAll(String, java.util.Collection)}.
+     */
     public static List<GenericValue> getRelatedCache(String relationName, List<? extends GenericValue> values) throws GenericEntityException {
         if (values == null) return null;
+        if (values.isEmpty()) return new ArrayList<GenericValue>();
 
+        return flattenRelated(values.get(0).getDelegator().getRelatedCacheForAll(relationName, values));
+    }
+
+    private static List<GenericValue> flattenRelated(List<List<GenericValue>> related) {
         List<GenericValue> result = new ArrayList<GenericValue>();
 
-        for (GenericValue value : values) {
-            result.addAll(value.getRelatedCache(relationName));
+        for (List<GenericValue> relatedValues : related) {
+            result.addAll(relatedValues);
         }
         return result;
     }
@@ -361,81 +378,4 @@ public class EntityUtil {
         }
         return result;
     }
-
-    static class OrderByComparator implements Comparator<GenericValue> {
-
-        private String field;
-        private ModelField modelField = null;
-        private boolean descending;
-        private Comparator<GenericValue> next = null;
-
-        OrderByComparator(List<String> orderBy) {
-            this(orderBy, 0);
-        }
-
-        private OrderByComparator(List<String> orderBy, int startIndex) {
-            if (orderBy == null) throw new IllegalArgumentException("orderBy may not be empty");
-            if (startIndex >= orderBy.size())
-                throw new IllegalArgumentException("startIndex may not be greater than or equal to orderBy size");
-            String fieldAndDirection = orderBy.get(startIndex);
-            String upper = fieldAndDirection.trim().toUpperCase();
-
-            if (upper.endsWith(" DESC")) {
-                this.descending = true;
-                this.field = fieldAndDirection.substring(0, fieldAndDirection.length() - 5);
-            } else if (upper.endsWith(" ASC")) {
-                this.descending = false;
-                this.field = fieldAndDirection.substring(0, fieldAndDirection.length() - 4);
-            } else {
-                this.descending = false;
-                this.field = fieldAndDirection;
-            }
-            if (startIndex + 1 < orderBy.size()) {
-                this.next = new OrderByComparator(orderBy, startIndex + 1);
-            }// else keep null
-        }
-
-        public int compare(GenericValue obj, GenericValue obj1) {
-            int result = compareAsc(obj, obj1);
-
-            if (descending && result != 0) {
-                result = -result;
-            }
-            if ((result == 0) && (next != null)) {
-                return next.compare(obj, obj1);
-            } else {
-                return result;
-            }
-        }
-
-        private int compareAsc(GenericEntity obj, GenericEntity obj2) {
-            if (this.modelField == null) {
-                this.modelField = obj.getModelEntity().getField(field);
-                if (this.modelField == null) {
-                    throw new IllegalArgumentException("The field " + field + " could not be found in the entity " + obj.getEntityName());
-                }
-            }
-            Object value = obj.dangerousGetNoCheckButFast(this.modelField);
-            Object value2 = obj2.dangerousGetNoCheckButFast(this.modelField);
-
-            // null is defined as the largest possible value
-            if (value == null) return value2 == null ? 0 : 1;
-            if (value2 == null) return value == null ? 0 : -1;
-            int result = ((Comparable) value).compareTo(value2);
-
-            // if (Debug.infoOn()) Debug.logInfo("[OrderByComparator.compareAsc] Result is " + result + " for [" + value + "] and [" + value2 + "]");
-            return result;
-        }
-
-        public boolean equals(Object obj) {
-            if ((obj != null) && (obj instanceof OrderByComparator)) {
-                OrderByComparator that = (OrderByComparator) obj;
-
-                return this.field.equals(that.field) && (this.descending == that.descending)
-                        && UtilValidate.areEqual(this.next, that.next);
-            } else {
-                return false;
-            }
-        }
-    }
 }
@@ -57,6 +57,11 @@ public class EntityWhereString extends EntityCondition {
         return sqlString;
     }
 
+    @Override
+    protected void writeWhereString(EntityConditionWriter writer) {
+        writer.append(sqlString);
+    }
+
     @Override
     public int getParameterCount(ModelEntity modelEntity) {
         return 0;
@@ -0,0 +1,288 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.entity.model.ModelEntity;
+import org.ofbiz.core.entity.model.ModelViewEntity;
+import org.ofbiz.core.util.Debug;
+import org.ofbiz.core.util.GeneralRuntimeException;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes entities to Entity Engine XML files, as read by {@link EntitySaxReader}.
+ * <p>
+ * Unlike {@link GenericEntity#makeXmlDocument(Collection)} nothing is held in memory: the values are read through an
+ * {@link EntityListIterator} and written out one at a time with a StAX writer, so a table of any size can be
+ * exported. When exporting to a directory each entity goes to its own file, and several entities can be exported
+ * at the same time; every thread keeps a database connection open while it is exporting an entity.
+ */
+public class EntityXmlExporter {
+
+    public static final String module = EntityXmlExporter.class.getName();
+
+    public static final String ROOT_ELEMENT = "entity-engine-xml";
+
+    private static final String ENCODING = "UTF-8";
+
+    protected final GenericDelegator delegator;
+    protected int fetchSize = 1000;
+    protected int threads = 1;
+    protected boolean compress = false;
+    protected int valuesPerMessage = 10000;
+
+    public EntityXmlExporter(GenericDelegator delegator) {
+        this.delegator = delegator;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @param fetchSize the number of rows the JDBC driver is asked to fetch from the database at a time
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads the number of entities exported at the same time by {@link #exportEntities(Collection, File)}
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(threads, 1);
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * @param compress true to gzip the files written by {@link #exportEntities(Collection, File)}
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public int getValuesPerMessage() {
+        return valuesPerMessage;
+    }
+
+    public void setValuesPerMessage(int valuesPerMessage) {
+        this.valuesPerMessage = valuesPerMessage;
+    }
+
+    /**
+     * Exports every non-view entity of the delegator, one file per entity.
+     *
+     * @see #exportEntities(Collection, File)
+     */
+    public Map<String, Long> exportAll(File directory) throws GenericEntityException {
+        List<String> entityNames = new ArrayList<String>();
+
+        for (String entityName : delegator.getModelReader().getEntityNames()) {
+            if (!(delegator.getModelEntity(entityName) instanceof ModelViewEntity)) {
+                entityNames.add(entityName);
+            }
+        }
+        return exportEntities(entityNames, directory);
+    }
+
+    /**
+     * Exports each of the given entities to its own file in the given directory, named after the entity with a
+     * ".xml" extension, or ".xml.gz" if compressing.
+     *
+     * @param entityNames the entities to export
+     * @param directory   the directory to write to; it is created if necessary
+     * @return the number of values written for each entity, in the order of the given names
+     * @throws GenericEntityException if any of the entities could not be exported
+     */
+    public Map<String, Long> exportEntities(Collection<String> entityNames, final File directory) throws GenericEntityException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new GenericEntityException("Could not create export directory " + directory);
+        }
+
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(entityNames.size(), 1)));
+        Map<String, Future<Long>> futures = new LinkedHashMap<String, Future<Long>>();
+        try {
+            for (final String entityName : entityNames) {
+                futures.put(entityName, executor.submit(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        return exportEntity(entityName, new File(directory, getFileName(entityName)));
+                    }
+                }));
+            }
+
+            Map<String, Long> counts = new LinkedHashMap<String, Long>();
+            long total = 0;
+            for (Map.Entry<String, Future<Long>> entry : futures.entrySet()) {
+                long count = get(entry.getKey(), entry.getValue());
+                counts.put(entry.getKey(), count);
+                total += count;
+            }
+
+            Debug.logImportant("Exported " + total + " values of " + counts.size() + " entities to " + directory + " in " +
+                    (System.currentTimeMillis() - startTime) + " ms", module);
+            return counts;
+        } finally {
+            // on failure don't leave the other exports running
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Exports one entity to the given file, gzipped if compressing.
+     *
+     * @return the number of values written
+     */
+    public long exportEntity(String entityName, File file) throws GenericEntityException {
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            if (compress) {
+                out = new GZIPOutputStream(out, 65536);
+            } else {
+                out = new BufferedOutputStream(out, 65536);
+            }
+            long count = exportEntities(Collections.singletonList(entityName), out);
+            out.close();
+            out = null;
+            return count;
+        } catch (IOException e) {
+            throw new GenericEntityException("Error exporting " + entityName + " to " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Debug.logWarning(e, "Error closing " + file, module);
+                }
+            }
+        }
+    }
+
+    /**
+     * Exports the given entities to one document. The stream is flushed, but not closed.
+     *
+     * @return the number of values written
+     */
+    public long exportEntities(Collection<String> entityNames, OutputStream out) throws GenericEntityException {
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, ENCODING);
+            try {
+                writer.writeStartDocument(ENCODING, "1.0");
+                writer.writeCharacters("\n");
+                writer.writeStartElement(ROOT_ELEMENT);
+
+                long count = 0;
+                for (String entityName : entityNames) {
+                    count += writeEntity(entityName, writer);
+                }
+
+                writer.writeCharacters("\n");
+                writer.writeEndElement();
+                writer.writeEndDocument();
+                writer.flush();
+                return count;
+            } finally {
+                writer.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new GenericEntityException("Error writing XML for " + entityNames, e);
+        }
+    }
+
+    private long writeEntity(String entityName, XMLStreamWriter writer) throws GenericEntityException, XMLStreamException {
+        ModelEntity modelEntity = delegator.getModelEntity(entityName);
+        if (modelEntity == null) {
+            throw new GenericModelException("Could not find definition for entity name " + entityName);
+        }
+
+        EntityFindOptions findOptions = EntityFindOptions.findOptions().forwardOnly().readOnly().fetchSize(fetchSize);
+        EntityListIterator iterator = delegator.findListIteratorByCondition(entityName, null, null, null, null, findOptions);
+        try {
+            long count = 0;
+            GenericValue value;
+
+            while ((value = iterator.next()) != null) {
+                value.writeXmlElement(writer, null);
+                count++;
+                if (valuesPerMessage > 0 && count % valuesPerMessage == 0) {
+                    Debug.logImportant("Exported " + count + " " + entityName + " values so far", module);
+                }
+            }
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Exported " + count + " " + entityName + " values", module);
+            }
+            return count;
+        } catch (GeneralRuntimeException e) {
+            // the iterator reports database errors this way
+            throw new GenericEntityException("Error reading " + entityName + " values", e);
+        } finally {
+            iterator.close();
+        }
+    }
+
+    private String getFileName(String entityName) {
+        return entityName + (compress ? ".xml.gz" : ".xml");
+    }
+
+    private static long get(String entityName, Future<Long> future) throws GenericEntityException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenericEntityException("Interrupted while exporting " + entityName, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GenericEntityException) {
+                throw (GenericEntityException) e.getCause();
+            }
+            throw new GenericEntityException("Error exporting " + entityName, e.getCause());
+        }
+    }
+}
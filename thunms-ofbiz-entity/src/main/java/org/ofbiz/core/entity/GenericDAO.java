@@ -32,7 +32,6 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 import org.apache.log4j.Logger;
 import org.ofbiz.core.entity.config.DatasourceInfo;
 import org.ofbiz.core.entity.config.EntityConfigUtil;
@@ -59,6 +58,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -66,13 +67,15 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Vector;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.ofbiz.core.entity.jdbc.SqlJdbcUtil.makeWhereStringFromFields;
 import static org.ofbiz.core.entity.jdbc.dbtype.DatabaseTypeFactory.MSSQL;
@@ -105,12 +108,30 @@ public class GenericDAO {
     // The maximum amount of time to back off when contending with another thread for an atomic update
     private static final int MAX_BACK_OFF_MILLIS = 30;
 
+    // The bound of the first random back-off; it doubles with each further attempt, up to MAX_BACK_OFF_MILLIS
+    private static final int FIRST_BACK_OFF_MILLIS = 2;
+
+    // Whether transform reads the rows it updates with "SELECT ... FOR UPDATE", where the database type supports it
+    private static final boolean TRANSFORM_SELECTS_FOR_UPDATE = Boolean.getBoolean("entity.transform.select.for.update");
+
+    // Whether IN lists are padded to the next power of two by repeating their last value, so that queries differing
+    // only in the length of their lists share a few statements, and the database a few query plans
+    private static final boolean PAD_IN_LISTS = Boolean.getBoolean("entity.in.list.padding");
+
+    // The fetch size used when reading a whole result into a list, unless the find options give one; the drivers'
+    // own defaults are tuned for cursors that are read a few rows at a time (Oracle's is 10)
+    private static final int LIST_FETCH_SIZE = Integer.getInteger("entity.list.fetch.size", 500);
+
     protected static Map<String, GenericDAO> genericDAOs = CopyOnWriteMap.newHashMap();
     protected String helperName;
     protected ModelFieldTypeReader modelFieldTypeReader;
     protected DatasourceInfo datasourceInfo;
     private final LimitHelper limitHelper;
     private final CountHelper countHelper;
+    private final AtomicLong transformRetryCount = new AtomicLong();
+    private final AtomicLong transformBackOffMillis = new AtomicLong();
+    // Set once the driver has failed to report the row count of a statement in a batch
+    private volatile boolean batchUpdateCountsUnknown;
 
     public static synchronized void removeGenericDAO(String helperName) {
         genericDAOs.remove(helperName);
@@ -429,6 +450,199 @@ public class GenericDAO {
         }
     }
 
+    /**
+     * Inserts the given entities, using one batched INSERT statement per entity type.
+     * <p>
+     * Unlike {@link #storeAll(List)} there is no check for existing rows, so this fails if any of the rows already
+     * exists. View entities are inserted one at a time.
+     *
+     * @param entities the entities to insert
+     * @return the number of rows inserted
+     * @throws GenericEntityException if any of the inserts fails; nothing is committed in that case
+     */
+    public int insertAll(List<? extends GenericEntity> entities) throws GenericEntityException {
+        if (entities == null || entities.isEmpty()) {
+            return 0;
+        }
+
+        // keep the entity types in the order they are first seen, so that the caller controls the insert order
+        final Map<ModelEntity, List<GenericEntity>> entitiesByModel = new LinkedHashMap<ModelEntity, List<GenericEntity>>();
+        for (final GenericEntity entity : entities) {
+            final ModelEntity modelEntity = entity.getModelEntity();
+
+            if (modelEntity == null) {
+                throw new GenericModelException("Could not find ModelEntity record for entityName: " + entity.getEntityName());
+            }
+            List<GenericEntity> sameModel = entitiesByModel.get(modelEntity);
+            if (sameModel == null) {
+                sameModel = new ArrayList<GenericEntity>();
+                entitiesByModel.put(modelEntity, sameModel);
+            }
+            sameModel.add(entity);
+        }
+
+        final SQLProcessor sqlP = new ExplicitCommitSQLProcessor(helperName);
+        try {
+            int totalInserted = 0;
+            for (final Map.Entry<ModelEntity, List<GenericEntity>> entry : entitiesByModel.entrySet()) {
+                totalInserted += batchInsert(entry.getValue(), entry.getKey(), sqlP.getConnection());
+            }
+            return totalInserted;
+        } catch (GenericDataSourceException e) {
+            sqlP.rollback();
+            throw new GenericDataSourceException("Exception occurred in insertAll", e);
+        } finally {
+            closeSafely(entities, sqlP);
+        }
+    }
+
+    private int batchInsert(List<GenericEntity> entities, ModelEntity modelEntity, Connection connection) throws GenericEntityException {
+        final List<ModelField> fieldsToSave = modelEntity.getFieldsCopy();
+
+        if (modelEntity instanceof ModelViewEntity) {
+            int retVal = 0;
+            for (final GenericEntity entity : entities) {
+                retVal += singleInsert(entity, modelEntity, fieldsToSave, connection);
+            }
+            return retVal;
+        }
+
+        final boolean hasStampField = modelEntity.isField(ModelEntity.STAMP_FIELD);
+        final String sql = "INSERT INTO " + modelEntity.getTableName(datasourceInfo) + " (" +
+                modelEntity.colNameString(fieldsToSave) + ") VALUES (" +
+                modelEntity.fieldsStringList(fieldsToSave, "?", ", ") + ')';
+
+        SQLProcessor sqlP = new PassThruSQLProcessor(helperName, connection);
+        try {
+            sqlP.prepareStatement(sql);
+            for (final GenericEntity entity : entities) {
+                // if we have a STAMP_FIELD then set it with NOW.
+                if (hasStampField) {
+                    entity.set(ModelEntity.STAMP_FIELD, UtilDateTime.nowTimestamp());
+                }
+                SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+                sqlP.addBatch();
+            }
+            int retVal = sqlP.executeBatch();
+
+            for (final GenericEntity entity : entities) {
+                entity.modified = false;
+                if (entity instanceof GenericValue) {
+                    ((GenericValue) entity).copyOriginalDbValues();
+                }
+            }
+            return retVal;
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("while inserting " + entities.size() + " " + modelEntity.getEntityName() + " entities", e);
+        } finally {
+            closeSafely(sql, sqlP);
+        }
+    }
+
+    /**
+     * Updates the given entities, using one batched UPDATE statement per entity type and set of fields to save.
+     * <p>
+     * Unlike {@link #storeAll(List)} there is no check for existing rows; the non primary key fields held by each
+     * entity are written whether they have changed or not. View entities and entities with optimistic locking are
+     * updated one at a time.
+     *
+     * @param entities the entities to update
+     * @return the number of rows updated
+     * @throws GenericEntityException if any of the updates fails; nothing is committed in that case
+     */
+    public int updateAll(List<? extends GenericEntity> entities) throws GenericEntityException {
+        if (entities == null || entities.isEmpty()) {
+            return 0;
+        }
+
+        // entities holding different fields need different statements
+        final Map<List<Object>, List<GenericEntity>> entitiesByStatement = new LinkedHashMap<List<Object>, List<GenericEntity>>();
+        for (final GenericEntity entity : entities) {
+            final ModelEntity modelEntity = entity.getModelEntity();
+
+            if (modelEntity == null) {
+                throw new GenericModelException("Could not find ModelEntity record for entityName: " + entity.getEntityName());
+            }
+            final List<Object> statement = new ArrayList<Object>();
+            statement.add(modelEntity);
+            final Collection<String> keys = entity.getAllKeys();
+            for (int fi = 0; fi < modelEntity.getNopksSize(); fi++) {
+                final ModelField curField = modelEntity.getNopk(fi);
+                if (keys.contains(curField.getName())) {
+                    statement.add(curField);
+                }
+            }
+            List<GenericEntity> sameStatement = entitiesByStatement.get(statement);
+            if (sameStatement == null) {
+                sameStatement = new ArrayList<GenericEntity>();
+                entitiesByStatement.put(statement, sameStatement);
+            }
+            sameStatement.add(entity);
+        }
+
+        final SQLProcessor sqlP = new ExplicitCommitSQLProcessor(helperName);
+        try {
+            int totalUpdated = 0;
+            for (final Map.Entry<List<Object>, List<GenericEntity>> entry : entitiesByStatement.entrySet()) {
+                final ModelEntity modelEntity = (ModelEntity) entry.getKey().get(0);
+                final List<ModelField> fieldsToSave = new ArrayList<ModelField>(entry.getKey().size() - 1);
+                for (Object field : entry.getKey().subList(1, entry.getKey().size())) {
+                    fieldsToSave.add((ModelField) field);
+                }
+                totalUpdated += batchUpdate(entry.getValue(), modelEntity, fieldsToSave, sqlP.getConnection());
+            }
+            return totalUpdated;
+        } catch (GenericDataSourceException e) {
+            sqlP.rollback();
+            throw new GenericDataSourceException("Exception occurred in updateAll", e);
+        } finally {
+            closeSafely(entities, sqlP);
+        }
+    }
+
+    private int batchUpdate(List<GenericEntity> entities, ModelEntity modelEntity, List<ModelField> fieldsToSave,
+                            Connection connection) throws GenericEntityException {
+        if (modelEntity instanceof ModelViewEntity || modelEntity.lock() || fieldsToSave.isEmpty()) {
+            int retVal = 0;
+            for (final GenericEntity entity : entities) {
+                retVal += singleUpdate(entity, modelEntity, fieldsToSave, connection, null);
+            }
+            return retVal;
+        }
+
+        final boolean hasStampField = modelEntity.isField(ModelEntity.STAMP_FIELD);
+        final String sql = "UPDATE " + modelEntity.getTableName(datasourceInfo) + " SET " +
+                modelEntity.colNameString(fieldsToSave, "=?, ", "=?") + " WHERE " +
+                modelEntity.colNameString(modelEntity.getPksCopy(), "=? AND ", "=?");
+
+        SQLProcessor sqlP = new PassThruSQLProcessor(helperName, connection);
+        try {
+            sqlP.prepareStatement(sql);
+            for (final GenericEntity entity : entities) {
+                // if we have a STAMP_FIELD then update it with NOW.
+                if (hasStampField) {
+                    entity.set(ModelEntity.STAMP_FIELD, UtilDateTime.nowTimestamp());
+                }
+                SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+                SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
+                sqlP.addBatch();
+            }
+            int retVal = sqlP.executeBatch();
+
+            for (final GenericEntity entity : entities) {
+                entity.modified = false;
+                if (entity instanceof GenericValue) {
+                    ((GenericValue) entity).copyOriginalDbValues();
+                }
+            }
+            return retVal;
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("while updating " + entities.size() + " " + modelEntity.getEntityName() + " entities", e);
+        } finally {
+            closeSafely(sql, sqlP);
+        }
+    }
+
     /**
      * Try to update the given ModelViewEntity by trying to insert/update on the entities of which the view is composed.
      * <p>
@@ -641,6 +855,189 @@ public class GenericDAO {
         }
     }
 
+    /**
+     * Selects the values with the given primary keys using as few queries as possible. The keys are grouped by
+     * entity, and each entity's keys are looked up in chunks with an IN list on the primary key, or for composite
+     * keys a row value IN list or OR-ed conditions, depending on what the database supports. The chunks are kept
+     * within the list and parameter limits of Oracle, SQL Server and PostgreSQL.
+     *
+     * @param primaryKeys the keys to look up; may contain keys of different entities
+     * @return the values found, in the order of the given keys; keys that are not found are left out
+     */
+    public List<GenericValue> selectByPrimaryKeys(List<? extends GenericPK> primaryKeys) throws GenericEntityException {
+        final Map<ModelEntity, Set<GenericPK>> keysByEntity = new LinkedHashMap<ModelEntity, Set<GenericPK>>();
+        for (final GenericPK primaryKey : primaryKeys) {
+            final ModelEntity modelEntity = primaryKey.getModelEntity();
+
+            if (modelEntity == null) {
+                throw new GenericModelException("Could not find ModelEntity record for entityName: " + primaryKey.getEntityName());
+            }
+            if (modelEntity.getPksSize() <= 0) {
+                throw new GenericEntityException("Entity has no primary keys, cannot select by primary key");
+            }
+            Set<GenericPK> keys = keysByEntity.get(modelEntity);
+            if (keys == null) {
+                keys = new LinkedHashSet<GenericPK>();
+                keysByEntity.put(modelEntity, keys);
+            }
+            keys.add(primaryKey);
+        }
+
+        final PrimaryKeyLookup found = new PrimaryKeyLookup();
+        final SQLProcessor sqlP = new ReadOnlySQLProcessor(helperName);
+        try {
+            final Connection connection = sqlP.getConnection();
+            for (final Map.Entry<ModelEntity, Set<GenericPK>> entry : keysByEntity.entrySet()) {
+                if (entry.getKey() instanceof ModelViewEntity) {
+                    selectOneByOne(entry.getValue(), connection, found);
+                } else {
+                    selectByPrimaryKeys(entry.getKey(), new ArrayList<GenericPK>(entry.getValue()),
+                            DatabaseType.STANDARD_SELECT_SYNTAX, connection, found);
+                }
+            }
+        } finally {
+            closeSafely(primaryKeys, sqlP);
+        }
+        return found.inOrderOf(primaryKeys);
+    }
+
+    /**
+     * Selects the rows of a (non view) entity with the given primary keys, in as few queries as the database allows.
+     *
+     * @param selectSyntax the {@link DatabaseType#getSimpleSelectSqlSyntax(boolean)} to use
+     */
+    private void selectByPrimaryKeys(ModelEntity modelEntity, List<? extends GenericEntity> keys, String selectSyntax,
+                                     Connection connection, PrimaryKeyLookup found) throws GenericEntityException {
+        final List<ModelField> pks = modelEntity.getPksCopy();
+        final List<ModelField> fields = modelEntity.getFieldsCopy();
+        final DatabaseType databaseType = datasourceInfo.getDatabaseTypeFromJDBCConnection();
+        final int chunkSize = getPrimaryKeyChunkSize(databaseType, pks.size());
+        final boolean rowValues = databaseType != null && databaseType.supportsRowValueInList();
+        final String columns = modelEntity.colNameString(fields, ", ", "");
+        final String tableName = modelEntity.getTableName(datasourceInfo);
+
+        for (int start = 0; start < keys.size(); start += chunkSize) {
+            final List<? extends GenericEntity> chunk = keys.subList(start, Math.min(start + chunkSize, keys.size()));
+            final int keyCount = PAD_IN_LISTS ? getPaddedListSize(chunk.size(), chunkSize) : chunk.size();
+            final String sql = MessageFormat.format(selectSyntax, columns, tableName,
+                    makePrimaryKeyInCondition(pks, keyCount, rowValues));
+            final SQLProcessor sqlP = new PassThruSQLProcessor(helperName, connection);
+            int rows = 0;
+            try {
+                sqlP.prepareStatement(sql, true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                for (int i = 0; i < keyCount; i++) {
+                    // the padding repeats the last key
+                    final GenericEntity primaryKey = chunk.get(Math.min(i, chunk.size() - 1));
+                    for (final ModelField pk : pks) {
+                        SqlJdbcUtil.setValue(sqlP, pk, primaryKey, modelFieldTypeReader);
+                    }
+                }
+                sqlP.executeQuery();
+
+                while (sqlP.next()) {
+                    // copying a key carries over its delegator name, whether or not it has one; every field is
+                    // then read from the row
+                    final GenericValue value = copyOf(chunk.get(0));
+                    for (int j = 0; j < fields.size(); j++) {
+                        SqlJdbcUtil.getValue(sqlP.getResultSet(), j + 1, fields.get(j), value, modelFieldTypeReader);
+                    }
+                    value.modified = false;
+                    value.copyOriginalDbValues();
+                    found.add(value);
+                    rows++;
+                }
+            } finally {
+                closeSafely(sql, sqlP);
+            }
+
+            // a row that matches none of the keys means the database compares keys differently than we do (e.g.
+            // case insensitively), so let it decide for the keys that are still missing
+            final List<GenericPK> missing = new ArrayList<GenericPK>();
+            for (final GenericEntity primaryKey : chunk) {
+                if (found.get(primaryKey) == null) {
+                    missing.add(primaryKey instanceof GenericPK ? (GenericPK) primaryKey : primaryKey.getPrimaryKey());
+                }
+            }
+            if (rows > chunk.size() - missing.size()) {
+                selectOneByOne(missing, connection, found);
+            }
+        }
+    }
+
+    private static GenericValue copyOf(GenericEntity entity) {
+        return entity instanceof GenericValue ? new GenericValue((GenericValue) entity) : new GenericValue((GenericPK) entity);
+    }
+
+    private void selectOneByOne(Collection<GenericPK> keys, Connection connection, PrimaryKeyLookup found) throws GenericEntityException {
+        for (final GenericPK primaryKey : keys) {
+            final GenericValue value = new GenericValue(primaryKey);
+            try {
+                select(value, connection);
+                found.add(value);
+            } catch (GenericEntityNotFoundException e) {
+                // keys that are not found are left out
+            }
+        }
+    }
+
+    /**
+     * @return the number of primary keys to look up with one statement
+     */
+    static int getPrimaryKeyChunkSize(DatabaseType databaseType, int pkFieldCount) {
+        final int maxParameters;
+        if (databaseType == MSSQL) {
+            maxParameters = MS_SQL_MAX_PARAMETER_COUNT;
+        } else if (databaseType == POSTGRES_7_3) {
+            maxParameters = POSTGRESQL_MAX_PARAMETER_COUNT;
+        } else {
+            maxParameters = Integer.MAX_VALUE;
+        }
+        // Oracle's list limit applies to row value lists too, and keeps the statements reasonably sized elsewhere
+        return Math.max(1, Math.min(ORACLE_MAX_LIST_SIZE, maxParameters / pkFieldCount));
+    }
+
+    /**
+     * Makes the condition matching any of the given number of primary keys, with one parameter per key field.
+     *
+     * @param rowValues whether the database supports lists of row values, as in {@code (a, b) IN ((?, ?), (?, ?))}
+     */
+    static String makePrimaryKeyInCondition(List<ModelField> pks, int keyCount, boolean rowValues) {
+        final StringBuilder condition = new StringBuilder(32 + keyCount * 8 * pks.size());
+
+        if (pks.size() == 1) {
+            condition.append(pks.get(0).getColName()).append(" IN (");
+            for (int i = 0; i < keyCount; i++) {
+                condition.append(i == 0 ? "?" : ", ?");
+            }
+            return condition.append(')').toString();
+        }
+
+        if (rowValues) {
+            condition.append('(');
+            for (int j = 0; j < pks.size(); j++) {
+                condition.append(j == 0 ? "" : ", ").append(pks.get(j).getColName());
+            }
+            condition.append(") IN (");
+            for (int i = 0; i < keyCount; i++) {
+                condition.append(i == 0 ? "(" : ", (");
+                for (int j = 0; j < pks.size(); j++) {
+                    condition.append(j == 0 ? "?" : ", ?");
+                }
+                condition.append(')');
+            }
+            return condition.append(')').toString();
+        }
+
+        for (int i = 0; i < keyCount; i++) {
+            condition.append(i == 0 ? "(" : " OR (");
+            for (int j = 0; j < pks.size(); j++) {
+                condition.append(j == 0 ? "" : " AND ").append(pks.get(j).getColName()).append(" = ?");
+            }
+            condition.append(')');
+        }
+        return condition.toString();
+    }
+
     public void partialSelect(GenericEntity entity, Set<String> keys) throws GenericEntityException {
         ModelEntity modelEntity = entity.getModelEntity();
 
@@ -723,16 +1120,7 @@ public class GenericDAO {
             entityCondition = new EntityFieldMap(fields, EntityOperator.AND);
         }
 
-        EntityListIterator entityListIterator = null;
-
-        try {
-            entityListIterator = selectListIteratorByCondition(modelEntity, entityCondition, null, null, orderBy, null);
-            return entityListIterator.getCompleteList();
-        } finally {
-            if (entityListIterator != null) {
-                entityListIterator.close();
-            }
-        }
+        return selectListByCondition(modelEntity, entityCondition, null, orderBy, null);
     }
 
     public List<GenericValue> selectByOr(ModelEntity modelEntity, Map<String, ?> fields, List<String> orderBy) throws GenericEntityException {
@@ -746,16 +1134,7 @@ public class GenericDAO {
             entityCondition = new EntityFieldMap(fields, EntityOperator.OR);
         }
 
-        EntityListIterator entityListIterator = null;
-
-        try {
-            entityListIterator = selectListIteratorByCondition(modelEntity, entityCondition, null, null, orderBy, null);
-            return entityListIterator.getCompleteList();
-        } finally {
-            if (entityListIterator != null) {
-                entityListIterator.close();
-            }
-        }
+        return selectListByCondition(modelEntity, entityCondition, null, orderBy, null);
     }
 
     /**
@@ -790,10 +1169,26 @@ public class GenericDAO {
     public List<GenericValue> selectByCondition(final ModelEntity modelEntity, final EntityCondition entityCondition,
                                                 final Collection<String> fieldsToSelect, final List<String> orderBy, final EntityFindOptions findOptions)
             throws GenericEntityException {
+        return selectListByCondition(modelEntity, entityCondition, fieldsToSelect, orderBy, findOptions);
+    }
+
+    /**
+     * Reads all the results of the query into a list, in one forward pass over the cursor with a fetch size suited to
+     * reading the whole result.
+     */
+    private List<GenericValue> selectListByCondition(final ModelEntity modelEntity, final EntityCondition entityCondition,
+                                                     final Collection<String> fieldsToSelect, final List<String> orderBy,
+                                                     final EntityFindOptions findOptions)
+            throws GenericEntityException {
         EntityListIterator entityListIterator = null;
         try {
             entityListIterator = selectListIteratorByCondition(
-                    modelEntity, entityCondition, null, fieldsToSelect, orderBy, findOptions);
+                    modelEntity, entityCondition, null, fieldsToSelect, orderBy, findOptions, LIST_FETCH_SIZE);
+            if (findOptions != null && findOptions.getMaxResults() > 0) {
+                // the maximum is often far above the actual number of results, so don't reserve more than a fetch
+                final int fetchSize = findOptions.getFetchSize() > 0 ? findOptions.getFetchSize() : LIST_FETCH_SIZE;
+                entityListIterator.setExpectedSize(Math.min(findOptions.getMaxResults(), fetchSize));
+            }
             return entityListIterator.getCompleteList();
         } finally {
             if (entityListIterator != null) {
@@ -818,11 +1213,38 @@ public class GenericDAO {
                                                             final EntityCondition havingEntityCondition, final Collection<String> fieldsToSelect,
                                                             final List<String> orderBy, final EntityFindOptions findOptions)
             throws GenericEntityException {
+        return selectListIteratorByCondition(modelEntity, whereEntityCondition, havingEntityCondition, fieldsToSelect,
+                orderBy, findOptions, -1);
+    }
+
+    /**
+     * @param defaultFetchSize the fetch size to use if the find options don't give one, or -1 for the driver's default
+     */
+    private EntityListIterator selectListIteratorByCondition(final ModelEntity modelEntity, EntityCondition whereEntityCondition,
+                                                             final EntityCondition havingEntityCondition, final Collection<String> fieldsToSelect,
+                                                             final List<String> orderBy, final EntityFindOptions findOptions,
+                                                             final int defaultFetchSize)
+            throws GenericEntityException {
         if (modelEntity == null) {
             return null;
         }
         final EntityFindOptions nonNullFindOptions = findOptions == null ? new EntityFindOptions() : findOptions;
 
+        // "one" relations to read in the same query are LEFT JOINed through a view entity made for the purpose
+        final List<ModelField> entitySelectFields = getSelectFields(modelEntity, fieldsToSelect);
+        final RelationJoin relationJoin;
+        final ModelEntity queryEntity;
+        final List<ModelField> selectFields;
+        if (nonNullFindOptions.getJoinRelations().isEmpty() || modelEntity instanceof ModelViewEntity) {
+            relationJoin = null;
+            queryEntity = modelEntity;
+            selectFields = entitySelectFields;
+        } else {
+            relationJoin = RelationJoin.get(modelEntity, entitySelectFields, nonNullFindOptions.getJoinRelations());
+            queryEntity = relationJoin.getViewEntity();
+            selectFields = relationJoin.getSelectFields();
+        }
+
         //JRA-19317: Oracle does not allow lists with more than 1000 elements ORA-01795
         // if we are on Oracle we split such long lists into equivalent expression
         // e.g. pid in (1, 2, 3, ..., 1000, 1001, 1002, ...) will be split into (pid in (1, 2, 3, ..., 1000) or pid in (1001, 1002, ...))
@@ -830,19 +1252,22 @@ public class GenericDAO {
         if (databaseType == ORACLE_8I || databaseType == ORACLE_10G) {
             whereEntityCondition = rewriteConditionToSplitListsLargerThan(whereEntityCondition, ORACLE_MAX_LIST_SIZE);
         }
+        if (PAD_IN_LISTS) {
+            final int havingParameterCount = havingEntityCondition == null ? 0 : havingEntityCondition.getParameterCount(queryEntity);
+            whereEntityCondition = rewriteConditionToPadLists(whereEntityCondition, databaseType, queryEntity, havingParameterCount);
+        }
 
-        final InQueryRewritter inQueryRewritter = new InQueryRewritter(databaseType, whereEntityCondition, modelEntity);
+        final InQueryRewritter inQueryRewritter = new InQueryRewritter(databaseType, whereEntityCondition, queryEntity);
         whereEntityCondition = inQueryRewritter.rewriteIfNeeded();
 
         if (Debug.verboseOn()) {
             Debug.logVerbose("Doing selectListIteratorByCondition with whereEntityCondition: " + whereEntityCondition);
         }
 
-        final List<ModelField> selectFields = getSelectFields(modelEntity, fieldsToSelect);
-        final List<EntityConditionParam> whereEntityConditionParams = new LinkedList<EntityConditionParam>();
-        final List<EntityConditionParam> havingEntityConditionParams = new LinkedList<EntityConditionParam>();
+        final List<EntityConditionParam> whereEntityConditionParams = new ArrayList<EntityConditionParam>();
+        final List<EntityConditionParam> havingEntityConditionParams = new ArrayList<EntityConditionParam>();
 
-        final String sql = getSelectQuery(selectFields, nonNullFindOptions, modelEntity, orderBy, whereEntityCondition,
+        final String sql = getSelectQuery(selectFields, nonNullFindOptions, queryEntity, orderBy, whereEntityCondition,
                 havingEntityCondition, whereEntityConditionParams, havingEntityConditionParams, databaseType);
 
         final SQLProcessor sqlP;
@@ -854,8 +1279,11 @@ public class GenericDAO {
 
         inQueryRewritter.createTemporaryTablesIfNeeded(sqlP);
 
-        return createEntityListIterator(sqlP, sql, nonNullFindOptions, modelEntity, selectFields, whereEntityConditionParams, havingEntityConditionParams,
-                inQueryRewritter.getTableCleanUpHandler());
+        final EntityListIterator entityListIterator = createEntityListIterator(sqlP, sql, nonNullFindOptions, queryEntity,
+                selectFields, whereEntityConditionParams, havingEntityConditionParams, inQueryRewritter.getTableCleanUpHandler(),
+                defaultFetchSize);
+        entityListIterator.setRelationJoin(relationJoin);
+        return entityListIterator;
     }
 
     @VisibleForTesting
@@ -865,6 +1293,16 @@ public class GenericDAO {
                                                 final List<EntityConditionParam> havingEntityConditionParams,
                                                 final TableCleanUp tableCleanUp)
             throws GenericEntityException {
+        return createEntityListIterator(sqlP, sql, nonNullFindOptions, modelEntity, selectFields,
+                whereEntityConditionParams, havingEntityConditionParams, tableCleanUp, -1);
+    }
+
+    private EntityListIterator createEntityListIterator(final SQLProcessor sqlP, final String sql,
+                                                        final EntityFindOptions nonNullFindOptions, final ModelEntity modelEntity,
+                                                        final List<ModelField> selectFields, final List<EntityConditionParam> whereEntityConditionParams,
+                                                        final List<EntityConditionParam> havingEntityConditionParams,
+                                                        final TableCleanUp tableCleanUp, final int defaultFetchSize)
+            throws GenericEntityException {
         try {
             // A data base connection is open when the call to prepareStatement is done (SQLProcessor's constructor does not open the connection)
             sqlP.prepareStatement(sql, nonNullFindOptions.isCustomResultSetTypeAndConcurrency(),
@@ -873,7 +1311,8 @@ public class GenericDAO {
             bindParameterValues(sqlP, modelEntity, whereEntityConditionParams, "where");
             bindParameterValues(sqlP, modelEntity, havingEntityConditionParams, "having");
 
-            setFetchSize(sqlP, nonNullFindOptions.getFetchSize());
+            final int fetchSize = nonNullFindOptions.getFetchSize();
+            setFetchSize(sqlP, fetchSize == -1 ? defaultFetchSize : fetchSize);
             sqlP.executeQuery();
 
             //If we have any temporary tables they can be dropped after the list iterator is closed
@@ -943,7 +1382,11 @@ public class GenericDAO {
         }
 
         if (selectFields != null && !selectFields.isEmpty()) {
-            sqlBuilder.append(modelEntity.colNameString(selectFields, ", ", ""));
+            if (modelEntity instanceof ModelViewEntity) {
+                sqlBuilder.append(((ModelViewEntity) modelEntity).selectColNameString(selectFields));
+            } else {
+                sqlBuilder.append(modelEntity.colNameString(selectFields, ", ", ""));
+            }
         } else {
             sqlBuilder.append("*");
         }
@@ -951,30 +1394,13 @@ public class GenericDAO {
         // FROM clause and when necessary the JOIN or LEFT JOIN clause(s) as well
         sqlBuilder.append(SqlJdbcUtil.makeFromClause(modelEntity, datasourceInfo));
 
-        // WHERE clause
-        final StringBuilder whereString = new StringBuilder();
-        String entityCondWhereString = "";
-        if (whereEntityCondition != null) {
-            entityCondWhereString = whereEntityCondition.makeWhereString(modelEntity, whereEntityConditionParams);
-        }
-
+        // WHERE clause, written straight into the statement
         final String viewClause = SqlJdbcUtil.makeViewWhereClause(modelEntity, datasourceInfo.getJoinStyle());
-
+        final boolean conditionWritten = appendCondition(sqlBuilder, " WHERE ", whereEntityCondition, viewClause.length() > 0,
+                modelEntity, whereEntityConditionParams);
         if (viewClause.length() > 0) {
-            if (entityCondWhereString.length() > 0) {
-                whereString.append("(");
-                whereString.append(entityCondWhereString);
-                whereString.append(") AND ");
-            }
-
-            whereString.append(viewClause);
-        } else {
-            whereString.append(entityCondWhereString);
-        }
-
-        if (whereString.length() > 0) {
-            sqlBuilder.append(" WHERE ");
-            sqlBuilder.append(whereString.toString());
+            sqlBuilder.append(conditionWritten ? " AND " : " WHERE ");
+            sqlBuilder.append(viewClause);
         }
 
         // GROUP BY clause for view-entity
@@ -988,14 +1414,7 @@ public class GenericDAO {
         }
 
         // HAVING clause
-        String entityCondHavingString = "";
-        if (havingEntityCondition != null) {
-            entityCondHavingString = havingEntityCondition.makeWhereString(modelEntity, havingEntityConditionParams);
-        }
-        if (entityCondHavingString.length() > 0) {
-            sqlBuilder.append(" HAVING ");
-            sqlBuilder.append(entityCondHavingString);
-        }
+        appendCondition(sqlBuilder, " HAVING ", havingEntityCondition, false, modelEntity, havingEntityConditionParams);
 
         // ORDER BY clause
         sqlBuilder.append(SqlJdbcUtil.makeOrderByClause(modelEntity, orderBy, datasourceInfo));
@@ -1007,6 +1426,35 @@ public class GenericDAO {
         return sql;
     }
 
+    /**
+     * Writes the given condition into the statement being built, after the given keyword, and in parentheses if
+     * asked to; writes nothing if the condition is null or makes an empty clause.
+     *
+     * @return true if the condition was written
+     */
+    private static boolean appendCondition(final StringBuilder sql, final String keyword, final EntityCondition condition,
+                                           final boolean parenthesize, final ModelEntity modelEntity,
+                                           final List<EntityConditionParam> conditionParams) {
+        if (condition == null) {
+            return false;
+        }
+        final int start = sql.length();
+        sql.append(keyword);
+        if (parenthesize) {
+            sql.append('(');
+        }
+        final int conditionStart = sql.length();
+        new EntityConditionWriter(modelEntity, conditionParams, sql).write(condition);
+        if (sql.length() == conditionStart) {
+            sql.setLength(start);
+            return false;
+        }
+        if (parenthesize) {
+            sql.append(')');
+        }
+        return true;
+    }
+
     static private EntityCondition rewriteConditionToSplitListsLargerThan(
             final EntityCondition whereEntityCondition, final int maxListSize) {
         if (conditionContainsInClauseWithListOfSizeGreaterThanMaxSize(whereEntityCondition, maxListSize)) {
@@ -1046,6 +1494,113 @@ public class GenericDAO {
         });
     }
 
+    /**
+     * @return the longest IN list the database accepts
+     */
+    static int getMaxListSize(DatabaseType databaseType) {
+        return databaseType == ORACLE_8I || databaseType == ORACLE_10G ? ORACLE_MAX_LIST_SIZE : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the most parameters the database accepts in one statement
+     */
+    static int getMaxParameterCount(DatabaseType databaseType) {
+        if (databaseType == MSSQL) {
+            return MS_SQL_MAX_PARAMETER_COUNT;
+        }
+        if (databaseType == POSTGRES_7_3) {
+            return POSTGRESQL_MAX_PARAMETER_COUNT;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the length to pad an IN list of the given length to: the next power of two, but no more than
+     * maxListSize; a list that long or longer is left as it is
+     */
+    static int getPaddedListSize(final int listSize, final int maxListSize) {
+        if (listSize <= 1 || listSize >= maxListSize) {
+            return listSize;
+        }
+        return Math.min(Integer.highestOneBit(listSize - 1) << 1, maxListSize);
+    }
+
+    /**
+     * Pads the IN lists of the given condition, as far as the parameters added keep the statement within the limit of
+     * the database. A statement over the limit already is left for the {@link InQueryRewritter} as it is.
+     *
+     * @param otherParameterCount the number of parameters of the statement outside of the condition
+     */
+    static private EntityCondition rewriteConditionToPadLists(final EntityCondition whereEntityCondition,
+            final DatabaseType databaseType, final ModelEntity modelEntity, final int otherParameterCount) {
+        final int maxListSize = getMaxListSize(databaseType);
+        if (whereEntityCondition == null || !conditionContainsInClauseWithListToPad(whereEntityCondition, maxListSize)) {
+            return whereEntityCondition;
+        }
+        final int maxParameterCount = getMaxParameterCount(databaseType);
+        if (maxParameterCount == Integer.MAX_VALUE) {
+            return transformConditionPaddingInClauseLists(whereEntityCondition, maxListSize);
+        }
+        final int spareParameterCount = maxParameterCount - otherParameterCount - whereEntityCondition.getParameterCount(modelEntity);
+        if (spareParameterCount <= 0) {
+            return whereEntityCondition;
+        }
+        return transformConditionPaddingInClauseLists(whereEntityCondition, maxListSize, spareParameterCount);
+    }
+
+    @VisibleForTesting
+    static boolean conditionContainsInClauseWithListToPad(EntityCondition whereEntityCondition, final int maxListSize) {
+        return !EntityConditionHelper.predicateTrueForEachLeafExpression(whereEntityCondition, Predicates.not(new Predicate<EntityExpr>() {
+            public boolean apply(EntityExpr input) {
+                return isInClauseWithListToPad(input, maxListSize);
+            }
+        }));
+    }
+
+    @VisibleForTesting
+    static EntityCondition transformConditionPaddingInClauseLists(EntityCondition whereEntityCondition, final int maxListSize) {
+        return transformConditionPaddingInClauseLists(whereEntityCondition, maxListSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param spareParameterCount the number of values all of the lists together may be padded with; a list whose
+     *                            padding doesn't fit in what is left of it is not padded
+     */
+    @VisibleForTesting
+    static EntityCondition transformConditionPaddingInClauseLists(EntityCondition whereEntityCondition, final int maxListSize,
+                                                                  final int spareParameterCount) {
+        final int[] spare = {spareParameterCount};
+        return EntityConditionHelper.transformCondition(whereEntityCondition, new Function<EntityExpr, EntityCondition>() {
+            public EntityCondition apply(final EntityExpr input) {
+                if (isInClauseWithListToPad(input, maxListSize)) {
+                    final Collection<?> list = (Collection<?>) input.getRhs();
+                    final int paddedSize = getPaddedListSize(list.size(), maxListSize);
+                    if (paddedSize - list.size() > spare[0]) {
+                        return input;
+                    }
+                    spare[0] -= paddedSize - list.size();
+                    final List<Object> paddedList = new ArrayList<Object>(paddedSize);
+                    paddedList.addAll(list);
+                    final Object lastValue = paddedList.get(paddedList.size() - 1);
+                    while (paddedList.size() < paddedSize) {
+                        paddedList.add(lastValue);
+                    }
+                    return new EntityExpr((String) input.getLhs(), input.isLUpper(), input.getOperator(), paddedList, input.isRUpper());
+                } else {
+                    return input;
+                }
+            }
+        });
+    }
+
+    private static boolean isInClauseWithListToPad(final EntityExpr input, final int maxListSize) {
+        if (input.getOperator().equals(EntityOperator.IN) && input.getRhs() instanceof Collection) {
+            final int listSize = ((Collection<?>) input.getRhs()).size();
+            return getPaddedListSize(listSize, maxListSize) > listSize;
+        }
+        return false;
+    }
+
     private void setFetchSize(final SQLProcessor sqlP, final int fetchSize) {
         if (fetchSize != -1) {
             try {
@@ -1219,13 +1774,11 @@ public class GenericDAO {
         if (modelEntity instanceof ModelViewEntity) {
             throw new org.ofbiz.core.entity.GenericNotImplementedException("Operation delete not supported yet for view entities");
         }
-        String whereClause = "";
-        final List<EntityConditionParam> whereConditionParams = Lists.newLinkedList();
-        if (whereCondition != null) {
-            whereClause = " WHERE " + whereCondition.makeWhereString(modelEntity, whereConditionParams);
-        }
+        final StringBuilder sqlBuilder = new StringBuilder("DELETE FROM ").append(modelEntity.getTableName(datasourceInfo));
+        final List<EntityConditionParam> whereConditionParams = new ArrayList<EntityConditionParam>();
+        appendCondition(sqlBuilder, " WHERE ", whereCondition, false, modelEntity, whereConditionParams);
 
-        String sql = "DELETE FROM " + modelEntity.getTableName(datasourceInfo) + whereClause;
+        String sql = sqlBuilder.toString();
         SQLProcessor sqlP = new AutoCommitSQLProcessor(helperName);
         int retVal;
         try {
@@ -1370,10 +1923,13 @@ public class GenericDAO {
         }
         final String tableName = modelEntity.getTableName(datasourceInfo);
         String entityCondWhereString = null;
-        List<EntityConditionParam> whereEntityConditionParams = new LinkedList<EntityConditionParam>();
+        List<EntityConditionParam> whereEntityConditionParams = new ArrayList<EntityConditionParam>();
 
         if (entityCondition != null) {
-            entityCondWhereString = entityCondition.makeWhereString(modelEntity, whereEntityConditionParams);
+            final EntityCondition whereEntityCondition = PAD_IN_LISTS
+                    ? rewriteConditionToPadLists(entityCondition, datasourceInfo.getDatabaseTypeFromJDBCConnection(), modelEntity, 0)
+                    : entityCondition;
+            entityCondWhereString = whereEntityCondition.makeWhereString(modelEntity, whereEntityConditionParams);
         }
         final String sql = countHelper.buildCountSelectStatement(tableName, columnName, entityCondWhereString, distinct);
 
@@ -1410,11 +1966,17 @@ public class GenericDAO {
 
     /**
      * Applies the given transformation to any entities matching the given
-     * condition, by performing a SELECT followed by an UPDATE. Does NOT do
-     * this using "SELECT ... FOR UPDATE" semantics (because of inconsistent
-     * and/or missing support for this across database types), and therefore
-     * does not guarantee that another transaction has not updated the relevant
-     * row(s) between the SELECT and the UPDATE.
+     * condition, by performing a SELECT followed by a batched UPDATE. Does NOT
+     * do this using "SELECT ... FOR UPDATE" semantics by default (because of
+     * inconsistent and/or missing support for this across database types), and
+     * therefore does not guarantee that another transaction has not updated
+     * the relevant row(s) between the SELECT and the UPDATE; the rows that
+     * were updated in the meantime are selected again, after a random
+     * back-off that grows with each attempt, and only those are transformed
+     * and updated again. Setting the system property
+     * <code>entity.transform.select.for.update</code> to true makes the rows
+     * be selected again with "SELECT ... FOR UPDATE" before they are
+     * transformed, on the databases whose {@link DatabaseType} supports it.
      *
      * @param modelEntity     the type of entity to transform (required)
      * @param entityCondition the condition that selects the entities to
@@ -1439,8 +2001,13 @@ public class GenericDAO {
         try {
             final List<GenericValue> targetEntities =
                     selectByCondition(modelEntity, entityCondition, null, orderBy, findOptions);
-            for (final GenericValue entity : targetEntities) {
-                transformOne(modelEntity, transformation, lockFieldName, lockField, entity);
+            if (modelEntity instanceof ModelViewEntity || modelEntity.lock() || !batchUpdateCountsAreReported()) {
+                // these are checked by singleUpdate as they are updated, or we can't tell which rows a batch updated
+                for (final GenericValue entity : targetEntities) {
+                    transformOne(modelEntity, transformation, lockFieldName, lockField, entity);
+                }
+            } else if (!targetEntities.isEmpty()) {
+                transformAll(modelEntity, transformation, lockField, targetEntities);
             }
             return targetEntities;
         } catch (final Exception e) {
@@ -1455,6 +2022,7 @@ public class GenericDAO {
                               final String lockFieldName, final ModelField lockField, final GenericValue entity)
             throws GenericEntityException, InterruptedException {
         long totalBackOffMillis = 0;
+        int attempt = 0;
         while (true) {
             final Object lockValue = entity.get(lockFieldName);
             transformation.transform(entity);
@@ -1464,19 +2032,227 @@ public class GenericDAO {
                     LOGGER.debug(String.format("Total back-off time for %s.%s = %d",
                             modelEntity.getEntityName(), lockFieldName, totalBackOffMillis));
                 }
+                transformBackOffMillis.addAndGet(totalBackOffMillis);
                 return;
             } catch (final GenericEntityNotFoundException notFound) {
                 // We know this is because the nonPkCondition failed, because we only enter
                 // this method for entities that were found by the original select operation.
-                totalBackOffMillis += sleepForRandomAmountOfTime();
+                transformRetryCount.incrementAndGet();
+                totalBackOffMillis += backOff(++attempt);
                 select(entity);
             }
         }
     }
 
+    /**
+     * Transforms the given entities and updates them in one batch, then does the same for those that were updated by
+     * someone else in the meantime, until there are none left.
+     */
+    private void transformAll(final ModelEntity modelEntity, final Transformation transformation,
+                              final ModelField lockField, final List<GenericValue> targetEntities)
+            throws GenericEntityException, InterruptedException {
+        final String lockingSelectSyntax = getLockingSelectSyntax();
+        List<GenericValue> pending = targetEntities;
+        long totalBackOffMillis = 0;
+        int attempt = 0;
+        while (true) {
+            final SQLProcessor sqlP = new ExplicitCommitSQLProcessor(helperName);
+            List<GenericValue> changed;
+            try {
+                if (lockingSelectSyntax != null) {
+                    reselect(modelEntity, pending, lockingSelectSyntax, sqlP.getConnection());
+                } else if (attempt > 0) {
+                    reselect(modelEntity, pending, DatabaseType.STANDARD_SELECT_SYNTAX, sqlP.getConnection());
+                }
+                changed = updateUnlessChanged(modelEntity, transformation, lockField, pending, sqlP.getConnection());
+                if (changed == null) {
+                    // there's no telling which rows the batch updated, so undo it
+                    sqlP.rollback();
+                }
+            } catch (GenericDataSourceException e) {
+                sqlP.rollback();
+                throw new GenericDataSourceException("Exception while transforming " + modelEntity.getEntityName() + " entities", e);
+            } finally {
+                closeSafely("transformAll", sqlP);
+            }
+
+            if (changed == null) {
+                // update the rest one at a time, starting again from what they hold in the database
+                for (final GenericValue entity : pending) {
+                    select(entity);
+                    transformOne(modelEntity, transformation, lockField.getName(), lockField, entity);
+                }
+                break;
+            }
+            pending = changed;
+            if (pending.isEmpty()) {
+                break;
+            }
+            transformRetryCount.addAndGet(pending.size());
+            totalBackOffMillis += backOff(++attempt);
+        }
+
+        transformBackOffMillis.addAndGet(totalBackOffMillis);
+        if (attempt > 0 && LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("Transformed %d %s entities in %d attempts; total back-off time for %s = %d",
+                    targetEntities.size(), modelEntity.getEntityName(), attempt + 1, lockField.getName(), totalBackOffMillis));
+        }
+    }
+
+    private boolean batchUpdateCountsAreReported() {
+        if (batchUpdateCountsUnknown) {
+            return false;
+        }
+        // the drivers of these report SUCCESS_NO_INFO for each statement of a batch
+        final DatabaseType databaseType = datasourceInfo.getDatabaseTypeFromJDBCConnection();
+        return databaseType != ORACLE_8I && databaseType != ORACLE_10G;
+    }
+
+    /**
+     * @return the syntax of a SELECT that locks the rows it reads, or null if transform should not use one
+     */
+    private String getLockingSelectSyntax() {
+        if (!TRANSFORM_SELECTS_FOR_UPDATE) {
+            return null;
+        }
+        final DatabaseType databaseType = datasourceInfo.getDatabaseTypeFromJDBCConnection();
+        if (databaseType == null) {
+            return null;
+        }
+        final String lockingSelectSyntax = databaseType.getSimpleSelectSqlSyntax(true);
+        return lockingSelectSyntax.equals(databaseType.getSimpleSelectSqlSyntax(false)) ? null : lockingSelectSyntax;
+    }
+
+    /**
+     * Reads the given entities again by their primary keys, replacing the values they hold.
+     *
+     * @throws GenericEntityNotFoundException if one of them no longer exists
+     */
+    private void reselect(final ModelEntity modelEntity, final List<GenericValue> entities, final String selectSyntax,
+                          final Connection connection) throws GenericEntityException {
+        final PrimaryKeyLookup found = new PrimaryKeyLookup();
+        selectByPrimaryKeys(modelEntity, entities, selectSyntax, connection, found);
+        for (final GenericValue entity : entities) {
+            final GenericValue current = found.get(entity);
+            if (current == null) {
+                select(entity, connection);
+            } else {
+                entity.setFields(current.getAllFields());
+                entity.modified = false;
+                entity.copyOriginalDbValues();
+            }
+        }
+    }
+
+    /**
+     * Transforms the given entities and updates them with one batched UPDATE per kind of lock value (null or not), on
+     * the condition that their lock field still holds the value it held before the transformation.
+     *
+     * @return the entities that were not updated because their lock field had changed, or null if the JDBC driver
+     * didn't report which of them were updated
+     */
+    private List<GenericValue> updateUnlessChanged(final ModelEntity modelEntity, final Transformation transformation,
+                                                   final ModelField lockField, final List<GenericValue> entities,
+                                                   final Connection connection) throws GenericEntityException {
+        final List<GenericValue> nullLock = new ArrayList<GenericValue>();
+        final List<GenericValue> nonNullLock = new ArrayList<GenericValue>();
+        final List<Object> lockValues = new ArrayList<Object>();
+        for (final GenericValue entity : entities) {
+            final Object lockValue = entity.get(lockField.getName());
+            transformation.transform(entity);
+            if (lockValue == null) {
+                nullLock.add(entity);
+            } else {
+                nonNullLock.add(entity);
+                lockValues.add(lockValue);
+            }
+        }
+
+        final List<GenericValue> changed = new ArrayList<GenericValue>();
+        if (batchUpdateUnlessChanged(modelEntity, lockField, nonNullLock, lockValues, connection, changed) &&
+                batchUpdateUnlessChanged(modelEntity, lockField, nullLock, null, connection, changed)) {
+            return changed;
+        }
+        return null;
+    }
+
+    /**
+     * @param lockValues the values of the lock field to update the entities on, or null to update them on the lock
+     *                   field being null
+     * @return false if the JDBC driver didn't report the row counts of the batch, so that it's not known which of
+     * the entities were updated
+     */
+    private boolean batchUpdateUnlessChanged(final ModelEntity modelEntity, final ModelField lockField,
+                                          final List<GenericValue> entities, final List<Object> lockValues,
+                                          final Connection connection, final List<GenericValue> changed)
+            throws GenericEntityException {
+        if (entities.isEmpty()) {
+            return true;
+        }
+
+        // the entities were selected with all of their fields
+        final List<ModelField> fieldsToSave = modelEntity.getNopksCopy();
+        final boolean hasStampField = modelEntity.isField(ModelEntity.STAMP_FIELD);
+        final String sql = "UPDATE " + modelEntity.getTableName(datasourceInfo) + " SET " +
+                modelEntity.colNameString(fieldsToSave, "=?, ", "=?") + " WHERE " +
+                modelEntity.colNameString(modelEntity.getPksCopy(), "=? AND ", "=?") + " AND " +
+                lockField.getColName() + (lockValues == null ? " IS NULL" : "=?");
+
+        final SQLProcessor sqlP = new PassThruSQLProcessor(helperName, connection);
+        try {
+            sqlP.prepareStatement(sql);
+            for (int i = 0; i < entities.size(); i++) {
+                final GenericValue entity = entities.get(i);
+                // if we have a STAMP_FIELD then update it with NOW.
+                if (hasStampField) {
+                    entity.set(ModelEntity.STAMP_FIELD, UtilDateTime.nowTimestamp());
+                }
+                SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+                SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
+                if (lockValues != null) {
+                    SqlJdbcUtil.setValue(sqlP, lockField, modelEntity.getEntityName(), lockValues.get(i), modelFieldTypeReader);
+                }
+                sqlP.addBatch();
+            }
+
+            final int[] updateCounts = sqlP.executeBatchForUpdateCounts();
+            for (final int updateCount : updateCounts) {
+                if (updateCount == Statement.SUCCESS_NO_INFO) {
+                    if (!batchUpdateCountsUnknown) {
+                        batchUpdateCountsUnknown = true;
+                        Debug.logWarning("The JDBC driver of " + helperName + " doesn't report the row counts of "
+                                + "batched updates; transforms will update one row at a time", module);
+                    }
+                    return false;
+                }
+            }
+            for (int i = 0; i < entities.size(); i++) {
+                final GenericValue entity = entities.get(i);
+                if (updateCounts[i] == 0) {
+                    changed.add(entity);
+                    continue;
+                }
+                entity.modified = false;
+                entity.copyOriginalDbValues();
+            }
+            return true;
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("while transforming " + entities.size() + " " + modelEntity.getEntityName() + " entities", e);
+        } finally {
+            closeSafely(sql, sqlP);
+        }
+    }
+
     // While sleeping is bad, it greatly reduces contention between threads trying to update the same column
-    private long sleepForRandomAmountOfTime() throws InterruptedException {
-        final long backOffMillis = zeroTo(MAX_BACK_OFF_MILLIS);
+    /**
+     * Sleeps for a random time up to a bound that doubles with each attempt, up to {@link #MAX_BACK_OFF_MILLIS}.
+     *
+     * @param attempt the number of attempts that have failed so far (from 1)
+     * @return how long we slept, in ms
+     */
+    private long backOff(final int attempt) throws InterruptedException {
+        final long bound = Math.min(MAX_BACK_OFF_MILLIS, (long) FIRST_BACK_OFF_MILLIS << Math.min(attempt - 1, 16));
+        final long backOffMillis = zeroTo(bound + 1);
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("Backing off for " + backOffMillis + "ms");
         }
@@ -1484,6 +2260,21 @@ public class GenericDAO {
         return backOffMillis;
     }
 
+    /**
+     * @return the number of times an entity had to be transformed again because its lock field was changed by someone
+     * else between the SELECT and the UPDATE of a transform
+     */
+    public long getTransformRetryCount() {
+        return transformRetryCount.get();
+    }
+
+    /**
+     * @return the total time transforms have spent backing off before trying again, in ms
+     */
+    public long getTransformBackOffMillis() {
+        return transformBackOffMillis.get();
+    }
+
     /**
      * Closes a SQLProcessor with exceptions logged and discarded.
      *
@@ -1670,10 +2461,7 @@ public class GenericDAO {
         }
 
         private boolean shouldRewrite() {
-            final int parameterCount = whereEntityCondition.getParameterCount(modelEntity);
-            return
-                    (databaseType == MSSQL && parameterCount > MS_SQL_MAX_PARAMETER_COUNT)
-                            || (databaseType == POSTGRES_7_3 && parameterCount > POSTGRESQL_MAX_PARAMETER_COUNT);
+            return whereEntityCondition.getParameterCount(modelEntity) > getMaxParameterCount(databaseType);
         }
 
         private String generateTemporaryTableName(DatabaseType databaseType) {
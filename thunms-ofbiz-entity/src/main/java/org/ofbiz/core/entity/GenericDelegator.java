@@ -46,13 +46,16 @@ import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -62,6 +65,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.util.Optional.ofNullable;
 import static org.ofbiz.core.entity.EntityOperator.AND;
+import static org.ofbiz.core.entity.EntityOperator.IN;
 import static org.ofbiz.core.entity.EntityOperator.LIKE;
 import static org.ofbiz.core.entity.EntityOperator.OR;
 import static org.ofbiz.core.entity.config.EntityConfigUtil.DelegatorInfo;
@@ -114,7 +118,11 @@ public class GenericDelegator implements DelegatorInterface {
      * @param delegatorName the name of the server configuration that corresponds to this delegator
      */
     public static synchronized void removeGenericDelegator(final String delegatorName) {
+        final GenericDelegator delegator = delegatorCache.getIfPresent(delegatorName);
         delegatorCache.invalidate(delegatorName);
+        if (delegator != null) {
+            delegator.close();
+        }
     }
 
     public static void lock() {
@@ -134,8 +142,8 @@ public class GenericDelegator implements DelegatorInterface {
     protected final ModelGroupReader modelGroupReader;
     protected final ModelReader modelReader;
     protected final String delegatorName;
-    protected final UtilCache<GenericEntity, GenericValue> primaryKeyCache;
-    protected final UtilCache<GenericPK, List<GenericValue>> andCache;
+    protected final UtilCache<EntityCacheKey, GenericValue> primaryKeyCache;
+    protected final UtilCache<EntityCacheKey, List<GenericValue>> andCache;
     protected final UtilCache<String, List<GenericValue>> allCache;
 
     // keeps a list of field key sets used in the by and cache, a Set (of Sets of fieldNames) for each entityName
@@ -144,6 +152,7 @@ public class GenericDelegator implements DelegatorInterface {
     protected volatile DelegatorInfo delegatorInfo;
     protected volatile DistributedCacheClear distributedCacheClear;
     protected volatile SequenceUtil sequencer;
+    private volatile WriteBehindBuffer writeBehindBuffer;
 
     // this is really only for testing and the LockedDatabaseGenericDelegator ..... don't use unless know why!
     protected GenericDelegator() {
@@ -167,9 +176,9 @@ public class GenericDelegator implements DelegatorInterface {
         this.delegatorName = delegatorName;
         this.modelReader = ModelReader.getModelReader(delegatorName);
         this.modelGroupReader = ModelGroupReader.getModelGroupReader(delegatorName);
-        this.primaryKeyCache = new UtilCache<GenericEntity, GenericValue>("entity.xFindByPrimaryKey." + delegatorName, 0, 0, true);
+        this.primaryKeyCache = new UtilCache<EntityCacheKey, GenericValue>("entity.xFindByPrimaryKey." + delegatorName, 0, 0, true);
         this.allCache = new UtilCache<String, List<GenericValue>>("entity.FindAll." + delegatorName, 0, 0, true);
-        this.andCache = new UtilCache<GenericPK, List<GenericValue>>("entity.FindByAnd." + delegatorName, 0, 0, true);
+        this.andCache = new UtilCache<EntityCacheKey, List<GenericValue>>("entity.FindByAnd." + delegatorName, 0, 0, true);
 
         if (!isLocked()) {
             initialiseAndCheckDatabase();
@@ -559,6 +568,7 @@ public class GenericDelegator implements DelegatorInterface {
         checkIfLocked();
         final GenericHelper helper = getEntityHelper(value.getEntityName());
         value.setDelegator(this);
+        EntityIdentityMap.forget(this, value);
         value = helper.create(value);
 
         if (value != null) {
@@ -599,7 +609,8 @@ public class GenericDelegator implements DelegatorInterface {
     }
 
     /**
-     * Find a Generic Entity by its Primary Key.
+     * Find a Generic Entity by its Primary Key. If the current thread has an {@link EntityIdentityMap} scope, the value
+     * is taken from there when it was read before in the scope.
      *
      * @param primaryKey The primary key to find by.
      * @return The GenericValue corresponding to the primaryKey
@@ -612,6 +623,10 @@ public class GenericDelegator implements DelegatorInterface {
             throw new IllegalArgumentException(
                     "[GenericDelegator.findByPrimaryKey] Passed primary key is not a valid primary key: " + primaryKey);
         }
+        final EntityIdentityMap identityMap = EntityIdentityMap.getCurrent();
+        if (identityMap != null && identityMap.contains(this, primaryKey)) {
+            return identityMap.get(this, primaryKey);
+        }
         GenericValue value;
         try {
             value = helper.findByPrimaryKey(primaryKey);
@@ -621,6 +636,9 @@ public class GenericDelegator implements DelegatorInterface {
         if (value != null) {
             value.setDelegator(this);
         }
+        if (identityMap != null) {
+            identityMap.put(this, primaryKey, value);
+        }
         return value;
     }
 
@@ -699,10 +717,12 @@ public class GenericDelegator implements DelegatorInterface {
     }
 
     /**
-     * Find a number of Generic Value objects by their Primary Keys, all at once.
+     * Find a number of Generic Value objects by their Primary Keys, all at once. If the current thread has an
+     * {@link EntityIdentityMap} scope, only the keys not read before in the scope are looked up.
      *
      * @param primaryKeys A Collection of primary keys to find by.
-     * @return List of GenericValue objects corresponding to the passed primaryKey objects
+     * @return List of GenericValue objects corresponding to the passed primaryKey objects, in the same order;
+     * keys that are not found are left out
      */
     public List<GenericValue> findAllByPrimaryKeys(final Collection<? extends GenericPK> primaryKeys)
             throws GenericEntityException {
@@ -710,8 +730,15 @@ public class GenericDelegator implements DelegatorInterface {
         if (primaryKeys == null) {
             return null;
         }
-        List<GenericValue> results = new LinkedList<GenericValue>();
+        final EntityIdentityMap identityMap = EntityIdentityMap.getCurrent();
+        if (identityMap != null) {
+            return findAllByPrimaryKeys(primaryKeys, identityMap);
+        }
+        return readAllByPrimaryKeys(primaryKeys);
+    }
 
+    private List<GenericValue> readAllByPrimaryKeys(final Collection<? extends GenericPK> primaryKeys)
+            throws GenericEntityException {
         // from the delegator level this is complicated because different GenericPK
         // objects in the list may correspond to different helpers
         final Map<String, List<GenericPK>> pksPerHelper = new HashMap<String, List<GenericPK>>();
@@ -727,13 +754,46 @@ public class GenericDelegator implements DelegatorInterface {
             pks.add(primaryKey);
         }
 
+        if (pksPerHelper.size() == 1) {
+            // the helper already keeps the order of the keys
+            final Map.Entry<String, List<GenericPK>> entry = pksPerHelper.entrySet().iterator().next();
+            return new LinkedList<GenericValue>(GenericHelperFactory.getHelper(entry.getKey()).findAllByPrimaryKeys(entry.getValue()));
+        }
+
+        final PrimaryKeyLookup found = new PrimaryKeyLookup();
         for (Map.Entry<String, List<GenericPK>> entry : pksPerHelper.entrySet()) {
             String helperName = entry.getKey();
             GenericHelper helper = GenericHelperFactory.getHelper(helperName);
-            List<GenericValue> values = helper.findAllByPrimaryKeys(entry.getValue());
-            results.addAll(values);
+            found.addAll(helper.findAllByPrimaryKeys(entry.getValue()));
         }
-        return results;
+        return new LinkedList<GenericValue>(found.inOrderOf(primaryKeys));
+    }
+
+    /**
+     * Finds the keys not known to the given identity map, and remembers what is found and what is not.
+     */
+    private List<GenericValue> findAllByPrimaryKeys(final Collection<? extends GenericPK> primaryKeys,
+                                                    final EntityIdentityMap identityMap) throws GenericEntityException {
+        final PrimaryKeyLookup found = new PrimaryKeyLookup();
+        final List<GenericPK> unknownKeys = new ArrayList<GenericPK>();
+        for (GenericPK primaryKey : primaryKeys) {
+            if (identityMap.contains(this, primaryKey)) {
+                final GenericValue value = identityMap.get(this, primaryKey);
+                if (value != null) {
+                    found.add(value);
+                }
+            } else {
+                unknownKeys.add(primaryKey);
+            }
+        }
+
+        if (!unknownKeys.isEmpty()) {
+            found.addAll(readAllByPrimaryKeys(unknownKeys));
+            for (GenericPK primaryKey : unknownKeys) {
+                identityMap.put(this, primaryKey, found.get(primaryKey));
+            }
+        }
+        return new LinkedList<GenericValue>(found.inOrderOf(primaryKeys));
     }
 
     /**
@@ -743,7 +803,8 @@ public class GenericDelegator implements DelegatorInterface {
      * send to a given helper.
      *
      * @param primaryKeys A Collection of primary keys to find by.
-     * @return List of GenericValue objects corresponding to the passed primaryKey objects
+     * @return List of GenericValue objects corresponding to the passed primaryKey objects, in the same order;
+     * keys that are not found are left out
      */
     public List<GenericValue> findAllByPrimaryKeysCache(final Collection<? extends GenericPK> primaryKeys)
             throws GenericEntityException {
@@ -751,7 +812,7 @@ public class GenericDelegator implements DelegatorInterface {
         if (primaryKeys == null) {
             return null;
         }
-        final List<GenericValue> results = new LinkedList<GenericValue>();
+        final PrimaryKeyLookup found = new PrimaryKeyLookup();
 
         // from the delegator level this is complicated because different GenericPK
         // objects in the list may correspond to different helpers
@@ -763,7 +824,7 @@ public class GenericDelegator implements DelegatorInterface {
 
             if (value != null) {
                 // it is in the cache, so just put the cached value in the results
-                results.add(value);
+                found.add(value);
             } else {
                 // is not in the cache, so put in a list for a call to the helper
                 final String helperName = getEntityHelperName(primaryKey.getEntityName());
@@ -781,9 +842,9 @@ public class GenericDelegator implements DelegatorInterface {
             final GenericHelper helper = GenericHelperFactory.getHelper(helperName);
             final List<GenericValue> values = helper.findAllByPrimaryKeys(stringListEntry.getValue());
             putAllInPrimaryKeyCache(values);
-            results.addAll(values);
+            found.addAll(values);
         }
-        return results;
+        return new LinkedList<GenericValue>(found.inOrderOf(primaryKeys));
     }
 
     /**
@@ -1093,6 +1154,38 @@ public class GenericDelegator implements DelegatorInterface {
         return list;
     }
 
+    /**
+     * Finds any GenericValues matching the given conditions, reading any relations named by
+     * {@link EntityFindOptions#prefetch(String...)} along with them.
+     *
+     * @param entityName      The Name of the Entity as defined in the entity model XML file
+     * @param entityCondition The EntityCondition object that specifies how to constrain this query
+     * @param fieldsToSelect  The fields of the named entity to get from the
+     *                        database; if empty or null all fields will be retreived
+     * @param orderBy         The fields of the named entity by which to order the
+     *                        query; optionally add " ASC" for ascending or " DESC" for descending
+     * @param findOptions     An instance of EntityFindOptions that specifies advanced query options; may be null
+     * @return any matching values
+     */
+    public List<GenericValue> findByCondition(final String entityName, final EntityCondition entityCondition,
+                                              final Collection<String> fieldsToSelect, final List<String> orderBy,
+                                              final EntityFindOptions findOptions)
+            throws GenericEntityException {
+        checkIfLocked();
+        final List<GenericValue> list;
+        final EntityListIterator eli = findListIteratorByCondition(
+                entityName, entityCondition, null, fieldsToSelect, orderBy, findOptions);
+        try {
+            list = eli.getCompleteList();
+        } finally {
+            eli.close();
+        }
+        if (findOptions != null && !findOptions.getPrefetchRelations().isEmpty()) {
+            prefetchRelated(list, findOptions.getPrefetchRelations());
+        }
+        return list;
+    }
+
     /**
      * Returns the count of the results that match all of the specified expressions (i.e. combined using AND).
      *
@@ -1270,6 +1363,8 @@ public class GenericDelegator implements DelegatorInterface {
             // always clear cache before the operation
             clearCacheLine(primaryKey);
         }
+        EntityIdentityMap.forget(this, primaryKey);
+        flushWrittenBehind(primaryKey);
         final GenericHelper helper = getEntityHelper(primaryKey.getEntityName());
         return helper.removeByPrimaryKey(primaryKey);
     }
@@ -1298,6 +1393,8 @@ public class GenericDelegator implements DelegatorInterface {
         if (doCacheClear) {
             clearCacheLine(value);
         }
+        EntityIdentityMap.forget(this, value);
+        flushWrittenBehind(value);
         return helper.removeByPrimaryKey(value.getPrimaryKey());
     }
 
@@ -1331,6 +1428,8 @@ public class GenericDelegator implements DelegatorInterface {
             // always clear cache before the operation
             clearCacheLine(entityName, fields);
         }
+        EntityIdentityMap.forgetEntity(this, entityName);
+        flushWrittenBehind(entityName);
         return helper.removeByAnd(modelEntity, dummyValue.getAllFields());
     }
 
@@ -1367,6 +1466,8 @@ public class GenericDelegator implements DelegatorInterface {
             Collection<GenericValue> toBeDeleted = helper.findByCondition(modelEntity, whereCondition, null, null);
             clearAllCacheLinesByValue(toBeDeleted);
         }
+        EntityIdentityMap.forgetEntity(this, entityName);
+        flushWrittenBehind(entityName);
         return helper.removeByCondition(modelEntity, whereCondition);
     }
 
@@ -1572,6 +1673,242 @@ public class GenericDelegator implements DelegatorInterface {
         return findByAndCache(relation.getRelEntityName(), fields, null);
     }
 
+    /**
+     * Gets the named Related Entity for each of the given GenericValues from the persistent store, with one query
+     * per thousand or so distinct keys rather than one query per value.
+     *
+     * @param relationName String containing the relation name which is the
+     *                     combination of relation.title and relation.rel-entity-name as
+     *                     specified in the entity XML definition file
+     * @param values       the values whose related values to get; may be of different entities having a relation of
+     *                     that name
+     * @return the related values of each given value, in the order of the given values; a value with no related
+     * values has an empty list
+     */
+    public List<List<GenericValue>> getRelatedForAll(
+            final String relationName, final Collection<? extends GenericValue> values)
+            throws GenericEntityException {
+        checkIfLocked();
+        return getRelatedForAll(relationName, values, false);
+    }
+
+    /**
+     * Gets the named Related Entity for each of the given GenericValues, looking first in the cache and reading the
+     * rest from the persistent store in as few queries as possible. The values read are put in the cache just as
+     * {@link #getRelatedCache(String, GenericValue)} would.
+     *
+     * @param relationName String containing the relation name which is the
+     *                     combination of relation.title and relation.rel-entity-name as
+     *                     specified in the entity XML definition file
+     * @param values       the values whose related values to get
+     * @return the related values of each given value, in the order of the given values; a value with no related
+     * values has an empty list
+     */
+    public List<List<GenericValue>> getRelatedCacheForAll(
+            final String relationName, final Collection<? extends GenericValue> values)
+            throws GenericEntityException {
+        checkIfLocked();
+        return getRelatedForAll(relationName, values, true);
+    }
+
+    /**
+     * Reads the named relations of all the given values, as with {@link #getRelatedForAll(String, Collection)}, and
+     * puts the related values into each value's embedded cache, from where
+     * {@link GenericValue#getRelatedEmbeddedCache(String)} and {@link GenericValue#getRelatedOneEmbeddedCache(String)}
+     * return them without a further query.
+     *
+     * @param values        the values whose relations to read
+     * @param relationNames the names of the relations to read
+     */
+    public void prefetchRelated(final Collection<? extends GenericValue> values, final Collection<String> relationNames)
+            throws GenericEntityException {
+        checkIfLocked();
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        for (final String relationName : relationNames) {
+            final Iterator<List<GenericValue>> related = getRelatedForAll(relationName, values, false).iterator();
+            for (final GenericValue value : values) {
+                final List<GenericValue> relatedValues = related.next();
+                final String type = value.getModelEntity().getRelation(relationName).getType();
+                if ("one".equals(type) || "one-nofk".equals(type)) {
+                    if (!relatedValues.isEmpty()) {
+                        if (value.relatedOneCache == null) value.relatedOneCache = new HashMap<String, GenericValue>();
+                        value.relatedOneCache.put(relationName, relatedValues.get(0));
+                    }
+                } else {
+                    if (value.relatedCache == null) value.relatedCache = new HashMap<String, List<GenericValue>>();
+                    value.relatedCache.put(relationName, relatedValues);
+                }
+            }
+        }
+    }
+
+    private List<List<GenericValue>> getRelatedForAll(
+            final String relationName, final Collection<? extends GenericValue> values, final boolean useCache)
+            throws GenericEntityException {
+        if (values == null || values.isEmpty()) {
+            return new ArrayList<List<GenericValue>>(0);
+        }
+
+        // The key of each value, in the order of the values; values of a view entity, or lacking their primary key,
+        // can't be told apart by their primary key, so they are matched with their keys by position
+        final List<RelatedKey> ownerKeys = new ArrayList<RelatedKey>(values.size());
+        // The values are grouped by the key they share with their related values, so that each key is read once
+        final Map<List<String>, RelatedKey> keys = new LinkedHashMap<List<String>, RelatedKey>();
+        // ... and the keys are grouped by the related entity and fields, so that they can be read together
+        final Map<List<String>, List<RelatedKey>> keysByRelatedFields = new LinkedHashMap<List<String>, List<RelatedKey>>();
+        for (final GenericValue value : values) {
+            final ModelEntity modelEntity = value.getModelEntity();
+            final ModelRelation relation = modelEntity.getRelation(relationName);
+            if (relation == null) {
+                throw new GenericModelException(
+                        "Could not find relation for relationName: " + relationName + " for value " + value);
+            }
+
+            final Map<String, Object> fields = new HashMap<String, Object>();
+            final List<String> relatedFields = new ArrayList<String>(relation.getKeyMapsSize() + 1);
+            final List<String> keyText = new ArrayList<String>(relation.getKeyMapsSize() * 2 + 1);
+            relatedFields.add(relation.getRelEntityName());
+            keyText.add(relation.getRelEntityName());
+            for (int i = 0; i < relation.getKeyMapsSize(); i++) {
+                final ModelKeyMap keyMap = relation.getKeyMap(i);
+                final Object fieldValue = value.get(keyMap.getFieldName());
+                fields.put(keyMap.getRelFieldName(), fieldValue);
+                relatedFields.add(keyMap.getRelFieldName());
+                keyText.add(keyMap.getRelFieldName());
+                keyText.add(RelatedKey.textOf(fieldValue));
+            }
+
+            RelatedKey key = keys.get(keyText);
+            if (key == null) {
+                key = new RelatedKey(getModelReader().getModelEntity(relation.getRelEntityName()), fields);
+                keys.put(keyText, key);
+                List<RelatedKey> sameFieldKeys = keysByRelatedFields.get(relatedFields);
+                if (sameFieldKeys == null) {
+                    sameFieldKeys = new ArrayList<RelatedKey>();
+                    keysByRelatedFields.put(relatedFields, sameFieldKeys);
+                }
+                sameFieldKeys.add(key);
+            }
+            ownerKeys.add(key);
+        }
+
+        for (final Map.Entry<List<String>, List<RelatedKey>> entry : keysByRelatedFields.entrySet()) {
+            final List<String> relatedFields = entry.getKey();
+            readRelated(entry.getValue(), relatedFields.subList(1, relatedFields.size()), useCache);
+        }
+
+        final List<List<GenericValue>> results = new ArrayList<List<GenericValue>>(ownerKeys.size());
+        for (final RelatedKey key : ownerKeys) {
+            results.add(useCache ? key.related : new ArrayList<GenericValue>(key.related));
+        }
+        return results;
+    }
+
+    /**
+     * Reads the related values matching each of the given keys, which are all of the same related entity and
+     * fields, from the cache if asked to, otherwise with one IN (or OR) query per chunk of keys.
+     */
+    private void readRelated(final List<RelatedKey> keys, final List<String> relFieldNames, final boolean useCache)
+            throws GenericEntityException {
+        final ModelEntity relatedEntity = keys.get(0).relatedEntity;
+        final List<RelatedKey> toRead = new ArrayList<RelatedKey>(keys.size());
+        for (final RelatedKey key : keys) {
+            if (useCache) {
+                key.related = getFromAndCache(relatedEntity, key.fields);
+                if (key.related != null) {
+                    continue;
+                }
+            }
+            if (key.fields.containsValue(null)) {
+                // nulls can't be matched with IN, so find these as getRelated does
+                key.related = useCache ? findByAndCache(relatedEntity.getEntityName(), key.fields, null)
+                        : findByAnd(relatedEntity, key.fields, null);
+            } else {
+                toRead.add(key);
+            }
+        }
+        if (toRead.isEmpty()) {
+            return;
+        }
+
+        final int chunkSize = Math.max(1, GenericDAO.ORACLE_MAX_LIST_SIZE / relFieldNames.size());
+        final Map<Map<String, String>, RelatedKey> keysByText = new HashMap<Map<String, String>, RelatedKey>();
+        for (int start = 0; start < toRead.size(); start += chunkSize) {
+            final List<RelatedKey> chunk = toRead.subList(start, Math.min(start + chunkSize, toRead.size()));
+            final EntityCondition condition;
+            if (relFieldNames.size() == 1) {
+                final String relFieldName = relFieldNames.get(0);
+                final List<Object> fieldValues = new ArrayList<Object>(chunk.size());
+                for (final RelatedKey key : chunk) {
+                    fieldValues.add(key.fields.get(relFieldName));
+                }
+                condition = new EntityExpr(relFieldName, IN, fieldValues);
+            } else {
+                final List<EntityCondition> conditions = new ArrayList<EntityCondition>(chunk.size());
+                for (final RelatedKey key : chunk) {
+                    conditions.add(new EntityFieldMap(key.fields, AND));
+                }
+                condition = new EntityConditionList(conditions, OR);
+            }
+
+            for (final RelatedKey key : chunk) {
+                key.related = new ArrayList<GenericValue>();
+                keysByText.put(RelatedKey.textOf(key.fields, relFieldNames), key);
+            }
+            for (final GenericValue related : findByCondition(relatedEntity.getEntityName(), condition, null, null)) {
+                final RelatedKey key = keysByText.get(RelatedKey.textOf(related, relFieldNames));
+                if (key != null) {
+                    key.related.add(related);
+                }
+            }
+            keysByText.clear();
+        }
+
+        if (useCache) {
+            for (final RelatedKey key : toRead) {
+                if (!relatedEntity.getNeverCache()) {
+                    putInAndCache(relatedEntity, key.fields, key.related);
+                }
+                key.related = Collections.unmodifiableList(key.related);
+            }
+        }
+    }
+
+    /**
+     * The fields that values share with their related values, and the related values read.
+     */
+    private static final class RelatedKey {
+        final ModelEntity relatedEntity;
+        final Map<String, Object> fields;
+        List<GenericValue> related;
+
+        RelatedKey(final ModelEntity relatedEntity, final Map<String, Object> fields) {
+            this.relatedEntity = relatedEntity;
+            this.fields = fields;
+        }
+
+        /**
+         * Matches key values by their text, as the values read from the database may be of another type than the
+         * values of the fields they relate to, such as a Long for an Integer.
+         */
+        static Map<String, String> textOf(final Map<String, ?> fields, final List<String> fieldNames) {
+            final Map<String, String> text = new HashMap<String, String>();
+            for (final String fieldName : fieldNames) {
+                text.put(fieldName, textOf(fields.get(fieldName)));
+            }
+            return text;
+        }
+
+        /**
+         * @return the text of the given field value, or null if it is null, so that null doesn't match "null"
+         */
+        static String textOf(final Object fieldValue) {
+            return fieldValue == null ? null : fieldValue.toString();
+        }
+    }
+
     /**
      * Get related entity where relation is of type one, uses findByPrimaryKey.
      *
@@ -1700,6 +2037,8 @@ public class GenericDelegator implements DelegatorInterface {
             clearCacheLine(value);
         }
         GenericPK pk = value.getPrimaryKey();
+        EntityIdentityMap.forget(this, pk);
+        flushWrittenBehind(value.getEntityName());
         GenericValue newValue = findByPrimaryKey(pk);
 
         if (newValue == null) {
@@ -1722,7 +2061,9 @@ public class GenericDelegator implements DelegatorInterface {
     }
 
     /**
-     * Store the Entity from the GenericValue to the persistent store.
+     * Store the Entity from the GenericValue to the persistent store. If the entity is marked write-behind and the
+     * current thread has no transaction in progress, the value is only held by the {@link WriteBehindBuffer} and
+     * written later.
      *
      * @param value        GenericValue instance containing the entity
      * @param doCacheClear whether to automatically clear cache entries related to this operation
@@ -1736,6 +2077,18 @@ public class GenericDelegator implements DelegatorInterface {
             // always clear cache before the operation
             clearCacheLine(value);
         }
+        EntityIdentityMap.forget(this, value);
+
+        if (isWrittenBehind(value)) {
+            getWriteBehindBuffer().add(value);
+            final ModelEntity modelEntity = value.getModelEntity();
+            if (!modelEntity.getNeverCache() && value.fields.size() == modelEntity.getFieldsSize()) {
+                // the database is behind, so the cache has to hold what it will have
+                putInPrimaryKeyCache(value.getPrimaryKey(), (GenericValue) value.clone());
+            }
+            return 1;
+        }
+        flushWrittenBehind(value);
 
         final int retVal = helper.store(value);
         // refresh the valueObject to get the new version
@@ -1817,6 +2170,10 @@ public class GenericDelegator implements DelegatorInterface {
                 if (doCacheClear) {
                     clearAllCacheLinesByValue(stringListEntry.getValue());
                 }
+                for (GenericValue value : stringListEntry.getValue()) {
+                    EntityIdentityMap.forget(this, value);
+                    flushWrittenBehind(value);
+                }
                 numberChanged += helper.storeAll(stringListEntry.getValue());
             }
 
@@ -1846,6 +2203,99 @@ public class GenericDelegator implements DelegatorInterface {
         return numberChanged;
     }
 
+    /**
+     * Creates the Entities from the List of GenericValue instances in the persistent store.
+     * <br>This is different than the storeAll method in that there is no check for existing
+     * entities; the values of each entity type are written with one batched insert, so this
+     * is much faster for loading new data but fails if any of the entities already exists.
+     * <br>These inserts all happen in one transaction, so they will either all succeed or all fail,
+     * if the data source supports transactions.
+     *
+     * @param values List of GenericValue instances containing the entities to create
+     * @return int representing number of rows affected by this operation
+     */
+    public int createAll(final List<? extends GenericValue> values) throws GenericEntityException {
+        return createAll(values, true);
+    }
+
+    /**
+     * Creates the Entities from the List of GenericValue instances in the persistent store.
+     * <br>This is different than the storeAll method in that there is no check for existing
+     * entities; the values of each entity type are written with one batched insert, so this
+     * is much faster for loading new data but fails if any of the entities already exists.
+     * <br>These inserts all happen in one transaction, so they will either all succeed or all fail,
+     * if the data source supports transactions.
+     *
+     * @param values       List of GenericValue instances containing the entities to create
+     * @param doCacheClear whether to automatically clear cache entries related to this operation
+     * @return int representing number of rows affected by this operation
+     */
+    public int createAll(final List<? extends GenericValue> values, final boolean doCacheClear)
+            throws GenericEntityException {
+        checkIfLocked();
+        if (values == null) {
+            return 0;
+        }
+
+        // as with storeAll, different GenericValue objects in the list may correspond to different helpers
+        Map<String, List<GenericValue>> valuesPerHelper = new HashMap<String, List<GenericValue>>();
+
+        for (GenericValue value : values) {
+            String helperName = getEntityHelperName(value.getEntityName());
+            List<GenericValue> helperValues = valuesPerHelper.get(helperName);
+            if (helperValues == null) {
+                helperValues = new ArrayList<GenericValue>();
+                valuesPerHelper.put(helperName, helperValues);
+            }
+            value.setDelegator(this);
+            helperValues.add(value);
+        }
+
+        boolean beganTransaction = false;
+        int numberChanged = 0;
+
+        try {
+            // see storeAll, with a single helper it is up to the SQLProcessors to do the committing
+            if (valuesPerHelper.size() > 1) {
+                beganTransaction = TransactionUtil.begin();
+            }
+
+            for (Map.Entry<String, List<GenericValue>> stringListEntry : valuesPerHelper.entrySet()) {
+                GenericHelper helper = GenericHelperFactory.getHelper(stringListEntry.getKey());
+
+                if (doCacheClear) {
+                    clearAllCacheLinesByValue(stringListEntry.getValue());
+                }
+                for (GenericValue value : stringListEntry.getValue()) {
+                    EntityIdentityMap.forget(this, value);
+                }
+                numberChanged += helper.createAll(stringListEntry.getValue());
+            }
+
+            // only commit the transaction if we started one...
+            TransactionUtil.commit(beganTransaction);
+        } catch (GenericEntityException e) {
+            try {
+                // only rollback the transaction if we started one...
+                TransactionUtil.rollback(beganTransaction);
+            } catch (GenericEntityException e2) {
+                Debug.logError("[GenericDelegator.createAll] Could not rollback transaction: ", module);
+                Debug.logError(e2, module);
+            }
+            // after rolling back, rethrow the exception
+            throw e;
+        }
+
+        // Refresh the valueObjects to get the new version
+        for (GenericValue value : values) {
+            if (value.lockEnabled()) {
+                refresh(value);
+            }
+        }
+
+        return numberChanged;
+    }
+
     /**
      * Remove the Entities from the List from the persistent store.
      * <br>The List contains GenericEntity objects, can be either GenericPK or GenericValue.
@@ -1915,6 +2365,15 @@ public class GenericDelegator implements DelegatorInterface {
                 if (doCacheClear) {
                     clearAllCacheLinesByDummyPK(entry.getValue());
                 }
+                for (GenericEntity dummyPK : entry.getValue()) {
+                    if (dummyPK.containsPrimaryKey()) {
+                        EntityIdentityMap.forget(this, dummyPK);
+                        flushWrittenBehind(dummyPK);
+                    } else {
+                        EntityIdentityMap.forgetEntity(this, dummyPK.getEntityName());
+                        flushWrittenBehind(dummyPK.getEntityName());
+                    }
+                }
                 numRemoved += helper.removeAll(entry.getValue());
             }
 
@@ -1956,6 +2415,27 @@ public class GenericDelegator implements DelegatorInterface {
         }
     }
 
+    /**
+     * Removes all of the CACHED values of the given entity, from all of the caches, without distributing the clear.
+     *
+     * @param entityName The Name of the Entity as defined in the entity XML file
+     */
+    public void clearAllCacheLinesByEntity(final String entityName) {
+        checkIfLocked();
+        if (allCache != null) {
+            allCache.remove(entityName);
+        }
+        removeCacheLinesByEntity(primaryKeyCache, entityName);
+        removeCacheLinesByEntity(andCache, entityName);
+    }
+
+    private static void removeCacheLinesByEntity(final UtilCache<EntityCacheKey, ?> cache, final String entityName) {
+        if (cache == null) {
+            return;
+        }
+        cache.removeIf(key -> entityName.equals(key.getEntityName()));
+    }
+
     /**
      * Remove a CACHED Generic Entity (List) from the cache, either a PK, ByAnd, or All
      *
@@ -2011,13 +2491,13 @@ public class GenericDelegator implements DelegatorInterface {
             if (dummyPK.isPrimaryKey()) {
                 // findByPrimaryKey
                 if (primaryKeyCache != null) {
-                    primaryKeyCache.remove(dummyPK);
+                    primaryKeyCache.remove(EntityCacheKey.of(dummyPK));
                 }
             } else {
                 if (dummyPK.size() > 0) {
                     // findByAnd
                     if (andCache != null) {
-                        andCache.remove(dummyPK);
+                        andCache.remove(EntityCacheKey.of(dummyPK));
                     }
                 }
             }
@@ -2057,7 +2537,7 @@ public class GenericDelegator implements DelegatorInterface {
         }
 
         if (primaryKeyCache != null) {
-            primaryKeyCache.remove(primaryKey);
+            primaryKeyCache.remove(EntityCacheKey.of(primaryKey));
         }
 
         if (distribute && distributedCacheClear != null) {
@@ -2100,7 +2580,7 @@ public class GenericDelegator implements DelegatorInterface {
         }
 
         if (primaryKeyCache != null) {
-            primaryKeyCache.remove(value.getPrimaryKey());
+            primaryKeyCache.remove(EntityCacheKey.of(value.getPrimaryKey()));
         }
 
         // now for the tricky part, automatically clearing from the by and cache
@@ -2150,14 +2630,10 @@ public class GenericDelegator implements DelegatorInterface {
                 }
 
                 // now we have a map of values for this field set for this entity, so clear the by and line...
-                GenericPK dummyPK = new GenericPK(value.getModelEntity(), fieldValues);
-
-                andCache.remove(dummyPK);
+                andCache.remove(EntityCacheKey.of(this, value.getModelEntity(), fieldValues));
 
                 if (originalFieldValues != null && !originalFieldValues.equals(fieldValues)) {
-                    GenericPK dummyPKOriginal = new GenericPK(value.getModelEntity(), originalFieldValues);
-
-                    andCache.remove(dummyPKOriginal);
+                    andCache.remove(EntityCacheKey.of(this, value.getModelEntity(), originalFieldValues));
                 }
             }
         }
@@ -2213,7 +2689,7 @@ public class GenericDelegator implements DelegatorInterface {
         if (primaryKey == null) {
             return null;
         }
-        return primaryKeyCache.get(primaryKey);
+        return primaryKeyCache.get(EntityCacheKey.of(primaryKey));
     }
 
     public List<GenericValue> getFromAllCache(final String entityName) {
@@ -2239,8 +2715,7 @@ public class GenericDelegator implements DelegatorInterface {
         if (entity == null || fields == null) {
             return null;
         }
-        final GenericPK tempPK = new GenericPK(entity, fields);
-        return andCache.get(tempPK);
+        return andCache.get(EntityCacheKey.of(this, entity, fields));
     }
 
     public void putInPrimaryKeyCache(final GenericPK primaryKey, final GenericValue value) {
@@ -2255,7 +2730,7 @@ public class GenericDelegator implements DelegatorInterface {
             return;
         }
 
-        primaryKeyCache.put(primaryKey, value);
+        primaryKeyCache.put(EntityCacheKey.of(primaryKey), value);
     }
 
     public void putAllInPrimaryKeyCache(final List<? extends GenericValue> values) {
@@ -2295,7 +2770,7 @@ public class GenericDelegator implements DelegatorInterface {
             makes the list immutable, but not the elements in it, which will
             still be mutable GenericValue objects.
          */
-        allCache.put(entity.getEntityName(), Collections.unmodifiableList(values));
+        allCache.put(entity.getEntityName(), new EntityCacheList<GenericValue>(values));
     }
 
     public void putInAndCache(
@@ -2321,7 +2796,7 @@ public class GenericDelegator implements DelegatorInterface {
             return;
         }
 
-        final GenericPK tempPK = new GenericPK(entity, fields);
+        final EntityCacheKey key = EntityCacheKey.of(this, entity, fields);
 
         /*
             Make the values immutable so that the list can be returned directly
@@ -2329,7 +2804,7 @@ public class GenericDelegator implements DelegatorInterface {
             makes the list immutable, but not the elements in it, which will
             still be mutable GenericValue objects.
          */
-        andCache.put(tempPK, Collections.unmodifiableList(values));
+        andCache.put(key, new EntityCacheList<GenericValue>(values));
 
         // now make sure the fieldName set used for this entry is in the
         // andCacheFieldSets Map which contains a Set of Sets of fieldNames for each entityName
@@ -2403,6 +2878,30 @@ public class GenericDelegator implements DelegatorInterface {
         return values;
     }
 
+    /**
+     * Dumps the given entities in the compact binary format of {@link EntityBinaryDump}.
+     *
+     * @param entityNames the entities to dump
+     * @param directory   the directory to write the dump to; it is created if necessary
+     * @return the number of rows dumped for each entity
+     */
+    public Map<String, Long> dumpEntities(final Collection<String> entityNames, final File directory)
+            throws GenericEntityException {
+        checkIfLocked();
+        return new EntityBinaryDump(this).dump(entityNames, directory);
+    }
+
+    /**
+     * Inserts all entities of a dump written by {@link #dumpEntities(Collection, File)}.
+     *
+     * @param directory the directory holding the dump
+     * @return the number of rows restored for each entity
+     */
+    public Map<String, Long> restoreEntities(final File directory) throws GenericEntityException {
+        checkIfLocked();
+        return new EntityBinaryDump(this).restore(directory);
+    }
+
     @SuppressWarnings("unused")
     public GenericPK makePK(final Element element) {
         checkIfLocked();
@@ -2497,17 +2996,21 @@ public class GenericDelegator implements DelegatorInterface {
         if (lst == null) {
             return;
         }
+        final EntityIdentityMap identityMap = EntityIdentityMap.getCurrent();
         for (GenericValue aLst : lst) {
             aLst.setDelegator(this);
+            if (identityMap != null) {
+                identityMap.putIfAbsent(this, aLst);
+            }
         }
     }
 
-    public UtilCache<GenericEntity, GenericValue> getPrimaryKeyCache() {
+    public UtilCache<EntityCacheKey, GenericValue> getPrimaryKeyCache() {
         checkIfLocked();
         return primaryKeyCache;
     }
 
-    public UtilCache<GenericPK, List<GenericValue>> getAndCache() {
+    public UtilCache<EntityCacheKey, List<GenericValue>> getAndCache() {
         checkIfLocked();
         return andCache;
     }
@@ -2524,6 +3027,8 @@ public class GenericDelegator implements DelegatorInterface {
         checkIfLocked();
         final ModelEntity modelEntity = getModelReader().getModelEntity(entityName);
         final GenericHelper entityHelper = getEntityHelper(entityName);
+        EntityIdentityMap.forgetEntity(this, entityName);
+        flushWrittenBehind(entityName);
         final List<GenericValue> transformedEntities =
                 entityHelper.transform(modelEntity, entityCondition, orderBy, lockField, transformation);
         for (final GenericValue genericValue : transformedEntities) {
@@ -2532,6 +3037,65 @@ public class GenericDelegator implements DelegatorInterface {
         return transformedEntities;
     }
 
+    /**
+     * @return the buffer holding back the stores of the entities marked write-behind; it is created on first use
+     */
+    public WriteBehindBuffer getWriteBehindBuffer() {
+        checkIfLocked();
+        WriteBehindBuffer buffer = writeBehindBuffer;
+        if (buffer == null) {
+            synchronized (this) {
+                buffer = writeBehindBuffer;
+                if (buffer == null) {
+                    buffer = new WriteBehindBuffer(this);
+                    writeBehindBuffer = buffer;
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Releases what this delegator holds beyond its caches, once it has been removed.
+     */
+    private void close() {
+        final WriteBehindBuffer buffer;
+        synchronized (this) {
+            buffer = writeBehindBuffer;
+            writeBehindBuffer = null;
+        }
+        if (buffer != null) {
+            buffer.close();
+        }
+        if (distributedCacheClear != null) {
+            distributedCacheClear.close();
+        }
+    }
+
+    private static boolean isWrittenBehind(final GenericValue value) {
+        return value.getModelEntity().getWriteBehind() && !value.lockEnabled() && !TransactionUtil.isTransactionInProgress();
+    }
+
+    /**
+     * Writes any value held back for the key of the given entity, before the key is written or removed.
+     */
+    private void flushWrittenBehind(final GenericEntity entity) {
+        final WriteBehindBuffer buffer = writeBehindBuffer;
+        if (buffer != null && buffer.hasPending(entity.getEntityName())) {
+            buffer.flush(entity);
+        }
+    }
+
+    /**
+     * Writes any values of the given entity held back, before rows of it are written by condition.
+     */
+    private void flushWrittenBehind(final String entityName) {
+        final WriteBehindBuffer buffer = writeBehindBuffer;
+        if (buffer != null && buffer.hasPending(entityName)) {
+            buffer.flush();
+        }
+    }
+
     private static void checkIfLocked() {
         if (isLocked()) {
             throw new UnsupportedOperationException(MESSAGE);
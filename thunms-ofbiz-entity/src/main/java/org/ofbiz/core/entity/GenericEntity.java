@@ -33,21 +33,28 @@ import org.ofbiz.core.entity.model.ModelField;
 import org.ofbiz.core.entity.model.ModelFieldType;
 import org.ofbiz.core.entity.model.ModelFieldTypeReader;
 import org.ofbiz.core.util.Debug;
+import org.ofbiz.core.util.GeneralRuntimeException;
 import org.ofbiz.core.util.UtilFormatOut;
 import org.ofbiz.core.util.UtilValidate;
 import org.ofbiz.core.util.UtilXml;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.sql.Blob;
 import java.sql.Date;
+import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Set;
@@ -314,18 +321,31 @@ public class GenericEntity extends Observable implements Map<String, Object>, Se
 
     private Object getValueToPut(final Object value, final String fieldType) {
         if (value instanceof Boolean) {
-            final String javaType = getModelFieldType(fieldType).getJavaType();
-            if (!SqlJdbcUtil.isBoolean(javaType)) {
-                return (Boolean) value ? "Y" : "N";
-            }
+            return getValueToPut(getDelegator(), getModelEntity(), fieldType, (Boolean) value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the value a field of the given type holds for the given Boolean: the Boolean itself if the field is a
+     * real boolean, otherwise "Y" or "N"
+     */
+    static Object getValueToPut(final GenericDelegator delegator, final ModelEntity modelEntity, final String fieldType, final Boolean value) {
+        final String javaType = getModelFieldType(delegator, modelEntity, fieldType).getJavaType();
+        if (!SqlJdbcUtil.isBoolean(javaType)) {
+            return value ? "Y" : "N";
         }
         return value;
     }
 
     private ModelFieldType getModelFieldType(final String fieldType) {
+        return getModelFieldType(getDelegator(), getModelEntity(), fieldType);
+    }
+
+    private static ModelFieldType getModelFieldType(final GenericDelegator delegator, final ModelEntity modelEntity, final String fieldType) {
         ModelFieldType type = null;
         try {
-            type = getDelegator().getEntityFieldType(getModelEntity(), fieldType);
+            type = delegator.getEntityFieldType(modelEntity, fieldType);
         } catch (GenericEntityException e) {
             Debug.logWarning(e);
         }
@@ -773,35 +793,12 @@ public class GenericEntity extends Observable implements Map<String, Object>, Se
             ModelFieldType mft = mtr.getModelFieldType(modelField.getType());
             FieldType fieldType = getFieldType(mft.getJavaType());
 
-            switch (fieldType) {
-                case OBJECT: {
-                    value = encodeBase64(serialize(get(name)));
-                    if (value != null) {
-                        cdataMap.put(name, value);
-                    }
-                    continue;
-                }
-
-                case BLOB: {
-                    throw new UnsupportedOperationException("These can't be exported, yet");
-                }
-
-                case BYTE_ARRAY: {
-                    final Object obj = get(name);
-                    // This can only happen if you constructed this GenericEntity using a field map that
-                    // gave a string value for this.  This seems to happen in JIRA's project import, so
-                    // we need a special case for it, here. :P
-                    if (obj instanceof String) {
-                        value = (String) obj;
-                    } else {
-                        // Otherwise, we assume sanity and let it blow up if it has to
-                        value = encodeBase64((byte[]) obj);
-                    }
-                    if (value != null) {
-                        cdataMap.put(name, value);
-                    }
-                    continue;
+            if (isEncodedXmlField(fieldType)) {
+                value = getEncodedXmlText(name, fieldType);
+                if (value != null) {
+                    cdataMap.put(name, value);
                 }
+                continue;
             }
 
             value = getString(name);
@@ -844,6 +841,119 @@ public class GenericEntity extends Observable implements Map<String, Object>, Se
         }
     }
 
+    /**
+     * Writes an element with an attribute or CDATA element for each field of the entity; this writes the same
+     * content as {@link #writeXmlText(PrintWriter, String)}, but as part of a document being streamed out with StAX.
+     *
+     * @param writer The XMLStreamWriter to write to, positioned inside the root element
+     * @param prefix A prefix to put in front of the entity name in the tag name
+     */
+    public void writeXmlElement(XMLStreamWriter writer, String prefix) throws XMLStreamException {
+        if (prefix == null) prefix = "";
+        ModelEntity modelEntity = this.getModelEntity();
+        ModelFieldTypeReader mtr = ModelFieldTypeReader.getModelFieldTypeReader(getDelegator().getEntityHelperName(modelEntity));
+
+        // attributes have to be written before any child elements, so hold on to the CDATA values for now
+        List<String> cdataNames = null;
+        List<String> cdataValues = null;
+
+        writer.writeCharacters("\n    ");
+        writer.writeStartElement(prefix + entityName);
+
+        Iterator<ModelField> modelFields = modelEntity.getFieldsIterator();
+        while (modelFields.hasNext()) {
+            ModelField modelField = modelFields.next();
+            String name = modelField.getName();
+            FieldType fieldType = getFieldType(mtr.getModelFieldType(modelField.getType()).getJavaType());
+            boolean encoded = isEncodedXmlField(fieldType);
+            String value = encoded ? getEncodedXmlText(name, fieldType) : getString(name);
+
+            if (value == null) {
+                continue;
+            }
+            if (encoded || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                if (cdataNames == null) {
+                    cdataNames = new ArrayList<String>();
+                    cdataValues = new ArrayList<String>();
+                }
+                cdataNames.add(name);
+                cdataValues.add(value);
+            } else {
+                writer.writeAttribute(name, value);
+            }
+        }
+
+        if (cdataNames != null) {
+            for (int i = 0; i < cdataNames.size(); i++) {
+                writer.writeCharacters("\n        ");
+                writer.writeStartElement(cdataNames.get(i));
+                writeCData(writer, cdataValues.get(i));
+                writer.writeEndElement();
+            }
+            writer.writeCharacters("\n    ");
+        }
+        writer.writeEndElement();
+    }
+
+    /**
+     * @return true if fields of the given type are written to XML in encoded form, always as a CDATA element
+     */
+    private static boolean isEncodedXmlField(FieldType fieldType) {
+        return fieldType == FieldType.OBJECT || fieldType == FieldType.BLOB || fieldType == FieldType.BYTE_ARRAY;
+    }
+
+    /**
+     * @return the Base64 encoded XML text for a field for which {@link #isEncodedXmlField(FieldType)} is true, or
+     * null if the field is null
+     */
+    private String getEncodedXmlText(String name, FieldType fieldType) {
+        switch (fieldType) {
+            case OBJECT: {
+                return encodeBase64(serialize(get(name)));
+            }
+
+            case BLOB: {
+                // a value read from the database holds the Blob itself, one set in code or read from XML the bytes
+                final Object obj = get(name);
+                if (obj instanceof Blob) {
+                    final Blob blob = (Blob) obj;
+                    try {
+                        return encodeBase64(blob.getBytes(1L, (int) blob.length()));
+                    } catch (SQLException e) {
+                        throw new GeneralRuntimeException("Error reading the BLOB of field " + name + " of " + entityName, e);
+                    }
+                }
+                return encodeBase64((byte[]) obj);
+            }
+
+            default: {
+                final Object obj = get(name);
+                // This can only happen if you constructed this GenericEntity using a field map that
+                // gave a string value for this.  This seems to happen in JIRA's project import, so
+                // we need a special case for it, here. :P
+                if (obj instanceof String) {
+                    return (String) obj;
+                }
+                // Otherwise, we assume sanity and let it blow up if it has to
+                return encodeBase64((byte[]) obj);
+            }
+        }
+    }
+
+    /**
+     * Writes the value as CDATA, split into several sections where it contains the CDATA end marker.
+     */
+    private static void writeCData(XMLStreamWriter writer, String s) throws XMLStreamException {
+        int mark = 0;
+        int index = s.indexOf("]]>");
+        while (index != -1) {
+            writer.writeCData(s.substring(mark, index + 2));
+            mark = index + 2;
+            index = s.indexOf("]]>", mark);
+        }
+        writer.writeCData(s.substring(mark));
+    }
+
     private static String escapeCData(String s) {
         if (s == null) {
             return null;
@@ -909,7 +1019,7 @@ public class GenericEntity extends Observable implements Map<String, Object>, Se
      */
     public int hashCode() {
         // divide both by two (shift to right one bit) to maintain scale and add together
-        return getEntityName().hashCode() >> 1 + fields.hashCode() >> 1;
+        return (getEntityName().hashCode() >> 1) + (fields.hashCode() >> 1);
     }
 
     /**
@@ -188,6 +188,40 @@ public interface GenericHelper {
      */
     int storeAll(List<? extends GenericValue> values) throws GenericEntityException;
 
+    /**
+     * Creates the Entities from the List of GenericValue instances in the persistent store. Unlike storeAll there is
+     * no check for existing entities, so this fails if any of them already exists. These inserts all happen in one
+     * transaction, so they will either all succeed or all fail, if the data source supports transactions.
+     *
+     * @param values List of GenericValue instances containing the entities to create
+     * @return int representing number of rows effected by this operation
+     */
+    default int createAll(List<? extends GenericValue> values) throws GenericEntityException {
+        int count = 0;
+        for (GenericValue value : values) {
+            if (create(value) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Updates the Entities from the List of GenericValue instances in the persistent store. Unlike storeAll there is
+     * no check for existing entities, so entities that don't exist are not written. These updates all happen in one
+     * transaction, so they will either all succeed or all fail, if the data source supports transactions.
+     *
+     * @param values List of GenericValue instances containing the entities to update
+     * @return int representing number of rows effected by this operation
+     */
+    default int updateAll(List<? extends GenericValue> values) throws GenericEntityException {
+        int count = 0;
+        for (GenericValue value : values) {
+            count += store(value);
+        }
+        return count;
+    }
+
     /**
      * Remove the Entities from the List from the persistent store. <br>The List contains GenericEntity objects, can be
      * either GenericPK or GenericValue. <br>If a certain entity contains a complete primary key, the entity in the
@@ -127,19 +127,17 @@ public class GenericHelperDAO implements GenericHelper {
      * Find a number of Generic Value objects by their Primary Keys, all at once
      * This is done here for the DAO GenericHelper; for a client-server helper it
      * would be done on the server side to reduce network round trips.
+     * The keys of each entity are looked up with one query per chunk of keys.
      *
      * @param primaryKeys A List of primary keys to find by.
-     * @return List of GenericValue objects corresponding to the passed primaryKey objects
+     * @return List of GenericValue objects corresponding to the passed primaryKey objects, in the same order;
+     * keys that are not found are left out
      */
     public List<GenericValue> findAllByPrimaryKeys(List<? extends GenericPK> primaryKeys) throws GenericEntityException {
         if (primaryKeys == null) return null;
-        List<GenericValue> results = new LinkedList<GenericValue>();
+        if (primaryKeys.isEmpty()) return new LinkedList<GenericValue>();
 
-        for (GenericPK pk : primaryKeys) {
-            GenericValue result = this.findByPrimaryKey(pk);
-            if (result != null) results.add(result);
-        }
-        return results;
+        return genericDAO.selectByPrimaryKeys(primaryKeys);
     }
 
     /**
@@ -273,6 +271,29 @@ public class GenericHelperDAO implements GenericHelper {
         return genericDAO.storeAll(values);
     }
 
+    /**
+     * Creates the Entities from the List of GenericValue instances in the persistent store, using one batched
+     * insert per entity type. Unlike storeAll there is no check for existing entities, so this fails if any of
+     * them already exists.
+     *
+     * @param values List of GenericValue instances containing the entities to create
+     * @return int representing number of rows effected by this operation
+     */
+    public int createAll(List<? extends GenericValue> values) throws GenericEntityException {
+        return genericDAO.insertAll(values);
+    }
+
+    /**
+     * Updates the Entities from the List of GenericValue instances in the persistent store, using one batched
+     * update per entity type. Unlike storeAll there is no check for existing entities.
+     *
+     * @param values List of GenericValue instances containing the entities to update
+     * @return int representing number of rows effected by this operation
+     */
+    public int updateAll(List<? extends GenericValue> values) throws GenericEntityException {
+        return genericDAO.updateAll(values);
+    }
+
     /**
      * Remove the Entities from the List from the persistent store.
      * <br>The List contains GenericEntity objects, can be either GenericPK or GenericValue.
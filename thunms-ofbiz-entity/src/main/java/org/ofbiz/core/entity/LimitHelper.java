@@ -85,18 +85,20 @@ public class LimitHelper {
         } else {
             int i = 0;
             for (; i < modelFields.size() - 1; i++) {
-                sqlBuilder.append(createQualifiedColumnName(modelFields.get(i).getColName(), useSubQueryVariable));
+                sqlBuilder.append(createQualifiedColumnName(modelFields.get(i), useSubQueryVariable));
                 sqlBuilder.append(",");
             }
-            sqlBuilder.append(createQualifiedColumnName(modelFields.get(i).getColName(), useSubQueryVariable));
+            sqlBuilder.append(createQualifiedColumnName(modelFields.get(i), useSubQueryVariable));
         }
         sqlBuilder.append(" FROM (");
         return sqlBuilder.toString();
     }
 
-    private String createQualifiedColumnName(final String colName, boolean useSubQueryVariable) {
+    private String createQualifiedColumnName(final ModelField modelField, boolean useSubQueryVariable) {
         final String subQueryPrefix = useSubQueryVariable ? SUBQUERY_VARIABLE + "." : "";
-        return subQueryPrefix + stripTableName(colName);
+        // a column given an alias is known by that alias outside of the sub query
+        final String colAlias = modelField.getColAlias();
+        return subQueryPrefix + (colAlias != null ? colAlias : stripTableName(modelField.getColName()));
     }
 
     private String stripTableName(String columnName) {
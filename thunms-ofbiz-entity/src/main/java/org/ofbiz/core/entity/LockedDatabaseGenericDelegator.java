@@ -231,7 +231,7 @@ public class LockedDatabaseGenericDelegator extends GenericDelegator {
         throw new UnsupportedOperationException(MESSAGE);
     }
 
-    public UtilCache<GenericPK, List<GenericValue>> getAndCache() {
+    public UtilCache<EntityCacheKey, List<GenericValue>> getAndCache() {
         throw new UnsupportedOperationException(MESSAGE);
     }
 
@@ -335,7 +335,7 @@ public class LockedDatabaseGenericDelegator extends GenericDelegator {
         throw new UnsupportedOperationException(MESSAGE);
     }
 
-    public UtilCache<GenericEntity, GenericValue> getPrimaryKeyCache() {
+    public UtilCache<EntityCacheKey, GenericValue> getPrimaryKeyCache() {
         throw new UnsupportedOperationException(MESSAGE);
     }
 
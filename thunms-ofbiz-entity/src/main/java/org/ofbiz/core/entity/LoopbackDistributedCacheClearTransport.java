@@ -0,0 +1,86 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.util.Debug;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A transport that hands each batch to the other transports of the same channel in this JVM, on the sending thread;
+ * for tests, and for running several delegators of one cluster in a single JVM.
+ */
+public class LoopbackDistributedCacheClearTransport implements DistributedCacheClearTransport {
+
+    public static final String module = LoopbackDistributedCacheClearTransport.class.getName();
+
+    public static final String DEFAULT_CHANNEL = "default";
+
+    private static final Map<String, CopyOnWriteArrayList<LoopbackDistributedCacheClearTransport>> channels =
+            new ConcurrentHashMap<String, CopyOnWriteArrayList<LoopbackDistributedCacheClearTransport>>();
+
+    private final String channel;
+    private volatile Receiver receiver;
+
+    public LoopbackDistributedCacheClearTransport() {
+        this(DEFAULT_CHANNEL);
+    }
+
+    public LoopbackDistributedCacheClearTransport(String channel) {
+        this.channel = channel;
+    }
+
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        channels.computeIfAbsent(channel, key -> new CopyOnWriteArrayList<LoopbackDistributedCacheClearTransport>()).addIfAbsent(this);
+    }
+
+    public void send(DistributedCacheClearBatch batch) {
+        final List<LoopbackDistributedCacheClearTransport> transports = channels.get(channel);
+        if (transports == null) {
+            return;
+        }
+        for (LoopbackDistributedCacheClearTransport transport : transports) {
+            final Receiver other = transport.receiver;
+            if (transport != this && other != null) {
+                try {
+                    other.receive(batch);
+                } catch (RuntimeException e) {
+                    Debug.logError(e, "Could not deliver " + batch + " on channel " + channel, module);
+                }
+            }
+        }
+    }
+
+    public void close() {
+        final List<LoopbackDistributedCacheClearTransport> transports = channels.get(channel);
+        if (transports != null) {
+            transports.remove(this);
+        }
+        receiver = null;
+    }
+}
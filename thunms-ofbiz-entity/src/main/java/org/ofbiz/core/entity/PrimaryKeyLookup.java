@@ -0,0 +1,92 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.entity.model.ModelEntity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values found by a batched primary key lookup, indexed so that they can be handed back in the order the keys
+ * were asked for.
+ * <p>
+ * The values are matched on the text of their primary key fields rather than with {@link GenericPK#equals(Object)},
+ * because a key built by the caller may hold, say, an Integer where the value read from the database holds a Long.
+ */
+final class PrimaryKeyLookup {
+
+    private final Map<List<String>, GenericValue> values = new HashMap<List<String>, GenericValue>();
+
+    /**
+     * @return true if the value was added, false if a value with the same primary key was already there
+     */
+    boolean add(GenericValue value) {
+        return values.put(keyOf(value), value) == null;
+    }
+
+    void addAll(Collection<GenericValue> values) {
+        for (GenericValue value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * @return the value with the given primary key, or null if there is none
+     */
+    GenericValue get(GenericEntity primaryKey) {
+        return values.get(keyOf(primaryKey));
+    }
+
+    /**
+     * @return the values for the given keys that were found, in the order of the keys
+     */
+    List<GenericValue> inOrderOf(Collection<? extends GenericPK> primaryKeys) {
+        List<GenericValue> results = new ArrayList<GenericValue>(Math.min(primaryKeys.size(), values.size()));
+        for (GenericPK primaryKey : primaryKeys) {
+            GenericValue value = get(primaryKey);
+            if (value != null) {
+                results.add(value);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return the entity name and the text of each primary key field of the given entity
+     */
+    static List<String> keyOf(GenericEntity entity) {
+        ModelEntity modelEntity = entity.getModelEntity();
+        List<String> key = new ArrayList<String>(modelEntity.getPksSize() + 1);
+
+        key.add(entity.getEntityName());
+        for (int i = 0; i < modelEntity.getPksSize(); i++) {
+            key.add(String.valueOf(entity.dangerousGetNoCheckButFast(modelEntity.getPk(i))));
+        }
+        return key;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.ofbiz.core.entity.jdbc.SqlJdbcUtil;
+import org.ofbiz.core.entity.model.ModelEntity;
+import org.ofbiz.core.entity.model.ModelField;
+import org.ofbiz.core.entity.model.ModelFieldTypeReader;
+import org.ofbiz.core.entity.model.ModelKeyMap;
+import org.ofbiz.core.entity.model.ModelReader;
+import org.ofbiz.core.entity.model.ModelRelation;
+import org.ofbiz.core.entity.model.ModelViewEntity;
+import org.ofbiz.core.entity.model.ModelViewEntity.ModelAlias;
+import org.ofbiz.core.entity.model.ModelViewEntity.ModelViewLink;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reads the values of "one" relations in the same SELECT as the values they relate to, by LEFT JOINing the related
+ * tables.
+ * <p>
+ * The query is made against a view entity put together for the purpose: its main member has an alias for every field
+ * of the entity being found, under the same name, so that the conditions and order by of the find work unchanged, and
+ * each joined relation adds its entity's fields. The related columns are given aliases of their own in the select list
+ * so that they can't be confused with the main entity's columns when a limit wraps the query in a sub query.
+ * <p>
+ * The joins are cached per entity, by the relations joined and the fields selected, so the view entity is only put
+ * together once. The entities are held weakly, so the joins of a model that has been reloaded are dropped with it.
+ */
+final class RelationJoin {
+
+    private static final String MAIN_ALIAS = "T0";
+
+    private static final Cache<ModelEntity, ConcurrentMap<List<List<String>>, RelationJoin>> joinCache =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    private final ModelEntity modelEntity;
+    private final ModelViewEntity viewEntity;
+    private final List<ModelField> mainSelectFields;
+    private final List<String> relationNames;
+    private final List<ModelEntity> relatedEntities;
+    private final List<ModelField> selectFields;
+
+    private RelationJoin(ModelEntity modelEntity, ModelViewEntity viewEntity, List<ModelField> mainSelectFields,
+                         List<String> relationNames, List<ModelEntity> relatedEntities, List<ModelField> selectFields) {
+        this.modelEntity = modelEntity;
+        this.viewEntity = viewEntity;
+        this.mainSelectFields = mainSelectFields;
+        this.relationNames = relationNames;
+        this.relatedEntities = relatedEntities;
+        this.selectFields = selectFields;
+    }
+
+    /**
+     * @param modelEntity      the entity being found; not a view entity
+     * @param mainSelectFields the fields of that entity to select
+     * @param relationNames    the names of its "one" relations to join
+     */
+    static RelationJoin get(ModelEntity modelEntity, List<ModelField> mainSelectFields, List<String> relationNames)
+            throws GenericEntityException {
+        final ConcurrentMap<List<List<String>>, RelationJoin> joins;
+        try {
+            joins = joinCache.get(modelEntity, new Callable<ConcurrentMap<List<List<String>>, RelationJoin>>() {
+                public ConcurrentMap<List<List<String>>, RelationJoin> call() {
+                    return new ConcurrentHashMap<List<List<String>>, RelationJoin>();
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        final List<String> fieldNames = new ArrayList<String>(mainSelectFields.size());
+        for (ModelField field : mainSelectFields) {
+            fieldNames.add(field.getName());
+        }
+        final List<List<String>> key = Arrays.asList(new ArrayList<String>(relationNames), fieldNames);
+        RelationJoin join = joins.get(key);
+        if (join == null) {
+            // two threads may both make the join, which does no harm
+            join = create(modelEntity, mainSelectFields, relationNames);
+            joins.put(key, join);
+        }
+        return join;
+    }
+
+    private static RelationJoin create(ModelEntity modelEntity, List<ModelField> mainSelectFields, List<String> relationNames)
+            throws GenericEntityException {
+        final ModelReader reader = modelEntity.getModelReader();
+        if (reader == null) {
+            throw new GenericModelException("Can't join the relations of " + modelEntity.getEntityName() + ", it was not read by a ModelReader");
+        }
+
+        final ModelViewEntity viewEntity = new ModelViewEntity(reader, modelEntity.getEntityName() + "With" + relationNames.size() + "Joins");
+        final Map<String, ModelEntity> members = new HashMap<String, ModelEntity>();
+        members.put(modelEntity.getEntityName(), modelEntity);
+        viewEntity.addMemberModelMemberEntity(new ModelViewEntity.ModelMemberEntity(MAIN_ALIAS, modelEntity.getEntityName()));
+        for (Iterator<ModelField> fields = modelEntity.getFieldsIterator(); fields.hasNext(); ) {
+            final String fieldName = fields.next().getName();
+            viewEntity.addAlias(new ModelAlias(MAIN_ALIAS, fieldName, fieldName, null, false, null));
+        }
+
+        final List<ModelEntity> relatedEntities = new ArrayList<ModelEntity>(relationNames.size());
+        for (int i = 0; i < relationNames.size(); i++) {
+            final String relationName = relationNames.get(i);
+            final ModelRelation relation = modelEntity.getRelation(relationName);
+            if (relation == null) {
+                throw new GenericModelException("Could not find relation for relationName: " + relationName + " for entity " + modelEntity.getEntityName());
+            }
+            if (!"one".equals(relation.getType()) && !"one-nofk".equals(relation.getType())) {
+                throw new GenericModelException("Only 'one' and 'one-nofk' relations can be joined, not " + relationName + " of entity " + modelEntity.getEntityName());
+            }
+
+            final ModelEntity relatedEntity = reader.getModelEntity(relation.getRelEntityName());
+            final String alias = "T" + (i + 1);
+            relatedEntities.add(relatedEntity);
+            members.put(relatedEntity.getEntityName(), relatedEntity);
+            viewEntity.addMemberModelMemberEntity(new ModelViewEntity.ModelMemberEntity(alias, relatedEntity.getEntityName()));
+            for (int j = 0; j < relatedEntity.getFieldsSize(); j++) {
+                final String fieldName = relatedEntity.getField(j).getName();
+                viewEntity.addAlias(new ModelAlias(alias, relatedFieldName(relationName, fieldName), fieldName, Boolean.FALSE, false, null,
+                        "J" + (i + 1) + "_" + j));
+            }
+
+            final List<ModelKeyMap> keyMaps = new ArrayList<ModelKeyMap>(relation.getKeyMapsSize());
+            for (int j = 0; j < relation.getKeyMapsSize(); j++) {
+                keyMaps.add(relation.getKeyMap(j));
+            }
+            viewEntity.addViewLink(new ModelViewLink(MAIN_ALIAS, alias, true, keyMaps));
+        }
+        viewEntity.populateFields(members);
+
+        // the fields to select, from the view: the selected fields of the main entity then those of each relation
+        final List<ModelField> selectFields = new ArrayList<ModelField>();
+        for (ModelField field : mainSelectFields) {
+            selectFields.add(viewEntity.getField(field.getName()));
+        }
+        for (int i = 0; i < relationNames.size(); i++) {
+            final ModelEntity relatedEntity = relatedEntities.get(i);
+            for (int j = 0; j < relatedEntity.getFieldsSize(); j++) {
+                selectFields.add(viewEntity.getField(relatedFieldName(relationNames.get(i), relatedEntity.getField(j).getName())));
+            }
+        }
+        return new RelationJoin(modelEntity, viewEntity, new ArrayList<ModelField>(mainSelectFields),
+                new ArrayList<String>(relationNames), relatedEntities, Collections.unmodifiableList(selectFields));
+    }
+
+    private static String relatedFieldName(String relationName, String fieldName) {
+        return relationName + "." + fieldName;
+    }
+
+    /**
+     * @return the view entity to query
+     */
+    ModelViewEntity getViewEntity() {
+        return viewEntity;
+    }
+
+    /**
+     * @return the fields of the view entity to select
+     */
+    List<ModelField> getSelectFields() {
+        return selectFields;
+    }
+
+    /**
+     * Makes the value of the current row, with the related values it joined to in its embedded cache, see
+     * {@link GenericValue#getRelatedOneEmbeddedCache(String)}.
+     */
+    GenericValue makeValue(ResultSet resultSet, ModelFieldTypeReader modelFieldTypeReader, GenericDelegator delegator)
+            throws GenericEntityException {
+        final GenericValue value = readValue(resultSet, 1, modelEntity, mainSelectFields, modelFieldTypeReader, delegator);
+
+        int column = mainSelectFields.size() + 1;
+        for (int i = 0; i < relationNames.size(); i++) {
+            final ModelEntity relatedEntity = relatedEntities.get(i);
+            final GenericValue related = readValue(resultSet, column, relatedEntity, relatedEntity.getFieldsCopy(), modelFieldTypeReader, delegator);
+            column += relatedEntity.getFieldsSize();
+
+            // with a LEFT JOIN, a row without a related value has nulls for all of the related columns
+            if (isFound(related)) {
+                if (value.relatedOneCache == null) value.relatedOneCache = new HashMap<String, GenericValue>();
+                value.relatedOneCache.put(relationNames.get(i), related);
+            }
+        }
+        return value;
+    }
+
+    private static GenericValue readValue(ResultSet resultSet, int firstColumn, ModelEntity entity, List<ModelField> fields,
+                                          ModelFieldTypeReader modelFieldTypeReader, GenericDelegator delegator)
+            throws GenericEntityException {
+        final GenericValue value = new GenericValue(delegator, entity);
+        for (int j = 0; j < fields.size(); j++) {
+            SqlJdbcUtil.getValue(resultSet, firstColumn + j, fields.get(j), value, modelFieldTypeReader);
+        }
+        value.modified = false;
+        value.copyOriginalDbValues();
+        return value;
+    }
+
+    private static boolean isFound(GenericValue related) {
+        final ModelEntity entity = related.getModelEntity();
+        for (int i = 0; i < entity.getPksSize(); i++) {
+            if (related.dangerousGetNoCheckButFast(entity.getPk(i)) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -23,6 +23,7 @@
  */
 package org.ofbiz.core.entity;
 
+import org.ofbiz.core.entity.config.EntityConfigUtil;
 import org.ofbiz.core.entity.jdbc.dbtype.DatabaseType;
 import org.ofbiz.core.entity.jdbc.dbtype.DatabaseTypeFactory;
 import org.ofbiz.core.entity.model.ModelEntity;
@@ -39,12 +40,23 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.util.Hashtable;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Sequence Utility to get unique sequences from named sequence banks
  * Uses a collision detection approach to safely get unique sequenced ids in banks from the database
+ * <p>
+ * How the banks are filled is chosen per sequence name, see {@link Strategy}. The strategy of a sequence is given by
+ * {@link #setStrategy(String, Strategy)}, else by the system property <code>entity.sequence.strategy.&lt;name&gt;</code>,
+ * else by the default strategy. That is given by {@link #setDefaultStrategy(Strategy)} or the system property
+ * <code>entity.sequence.strategy</code>, and unless set, it depends on the database type of the datasource:
+ * {@link Strategy#NATIVE} where the database type has native sequences, else {@link Strategy#TABLE}. Nodes of an
+ * older version, which only know the sequence table, must not share the database with nodes using native sequences,
+ * so set the property to <code>TABLE</code> until every node has been upgraded.
  *
  * @author <a href="mailto:jonesde@ofbiz.org">David E. Jones</a>
  * @version $Revision: 1.4 $
@@ -54,13 +66,46 @@ public class SequenceUtil {
 
     public static final String module = SequenceUtil.class.getName();
 
-    private final Map<String, SequenceBank> sequences = new Hashtable<>();
+    /** The number of ids the {@link Strategy#HILO} strategy reserves at a time */
+    public static final long HILO_BLOCK_SIZE = Long.getLong("entity.sequence.hilo.block.size", 1000L);
+
+    /**
+     * The ways to fill the bank of a sequence. Whichever is used, the ids of a sequence carry on from the last one
+     * handed out by the sequence table, but ids handed out by a native sequence are not recorded in the table, so a
+     * sequence that has used {@link #NATIVE} can't go back to the other strategies without its row being updated.
+     */
+    public enum Strategy {
+        /**
+         * Banks of {@link SequenceBank#bankSize} ids are reserved by updating the row of the sequence in the sequence
+         * table, which is how sequences have always been done.
+         */
+        TABLE,
+
+        /**
+         * Banks of {@link SequenceBank#bankSize} ids are taken from a native database sequence that is incremented
+         * by the bank size, which is created when first used. Where the database type has no native sequences, or
+         * one can't be created, the sequence table is used instead.
+         */
+        NATIVE,
+
+        /**
+         * Blocks of {@link #HILO_BLOCK_SIZE} ids are reserved from the sequence table, and handed out to the threads
+         * of this node without locking; for sequences of entities that are inserted by many threads at once.
+         */
+        HILO
+    }
+
+    private final Map<String, Bank> sequences = new Hashtable<>();
+    private final Map<String, Strategy> strategies = new ConcurrentHashMap<>();
     private final String helperName;
     private final String tableName;
     private final String nameColName;
     private final String idColName;
     private final boolean clustering;
 
+    /** The default strategy given by the system property or {@link #setDefaultStrategy}, if any */
+    private volatile Strategy defaultStrategy = parseStrategy(System.getProperty("entity.sequence.strategy"), null);
+
     private volatile DatabaseType databaseType;
 
     public SequenceUtil(String helperName, ModelEntity seqEntity, String nameFieldName, String idFieldName, boolean clustering) {
@@ -88,7 +133,7 @@ public class SequenceUtil {
     }
 
     public Long getNextSeqId(String seqName) {
-        SequenceBank bank = sequences.get(seqName);
+        Bank bank = sequences.get(seqName);
 
         if (bank == null) {
             bank = constructSequenceBank(seqName);
@@ -97,12 +142,111 @@ public class SequenceUtil {
         return bank.getNextSeqId();
     }
 
+    /**
+     * Sets the strategy of the given sequence; a sequence that has handed out ids already keeps its strategy.
+     *
+     * @param seqName  the name of the sequence
+     * @param strategy the strategy to use, or null for the default strategy
+     */
+    public void setStrategy(final String seqName, final Strategy strategy) {
+        if (strategy == null) {
+            strategies.remove(seqName);
+        } else {
+            strategies.put(seqName, strategy);
+        }
+    }
+
+    /**
+     * Sets the strategy of the sequences that have none of their own, in place of the one chosen by the database type;
+     * sequences that have handed out ids already keep their strategy.
+     *
+     * @param strategy the strategy to use (required)
+     */
+    public void setDefaultStrategy(final Strategy strategy) {
+        if (strategy == null) {
+            throw new IllegalArgumentException("The default strategy is required.");
+        }
+        this.defaultStrategy = strategy;
+    }
+
+    /**
+     * @return the strategy the given sequence uses, or will use when it is first used
+     */
+    public Strategy getStrategy(final String seqName) {
+        final Strategy strategy = strategies.get(seqName);
+        if (strategy != null) {
+            return strategy;
+        }
+        return parseStrategy(System.getProperty("entity.sequence.strategy." + seqName), getDefaultStrategy(seqName));
+    }
+
+    /**
+     * @return the default strategy if one is set, else the one the database type of the datasource calls for
+     */
+    private Strategy getDefaultStrategy(final String seqName) {
+        final Strategy strategy = defaultStrategy;
+        if (strategy != null) {
+            return strategy;
+        }
+        final DatabaseType type;
+        try {
+            type = EntityConfigUtil.getInstance().getDatasourceInfo(helperName).getDatabaseTypeFromJDBCConnection();
+        } catch (RuntimeException e) {
+            Debug.logWarning(e, "Could not determine the database type of " + helperName + ", using the sequence table for " + seqName, module);
+            return Strategy.TABLE;
+        }
+        return type != null && type.getNextSequenceValueSQL(getNativeSequenceName(seqName, type)) != null
+                ? Strategy.NATIVE : Strategy.TABLE;
+    }
+
+    private static Strategy parseStrategy(final String name, final Strategy defaultValue) {
+        if (name == null || name.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Strategy.valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            Debug.logWarning("Unknown sequence strategy '" + name + "', using " + defaultValue, module);
+            return defaultValue;
+        }
+    }
+
     /**
      * this is hit if we can't get one from the cache, must be synchronized
      */
-    private synchronized SequenceBank constructSequenceBank(final String seqName) {
+    private synchronized Bank constructSequenceBank(final String seqName) {
         // check the cache first in-case someone has already populated 
-        return sequences.computeIfAbsent(seqName, key -> new SequenceBank(key, this, clustering));
+        return sequences.computeIfAbsent(seqName, this::newBank);
+    }
+
+    private Bank newBank(final String seqName) {
+        switch (getStrategy(seqName)) {
+            case HILO:
+                return new HiLoBank(seqName, clustering);
+            case NATIVE:
+                final NativeSequenceBank nativeBank = new NativeSequenceBank(seqName);
+                if (nativeBank.open()) {
+                    return nativeBank;
+                }
+                Debug.logWarning("Could not use a native sequence for " + seqName + ", using the sequence table instead", module);
+                return new SequenceBank(seqName, this, clustering);
+            default:
+                return new SequenceBank(seqName, this, clustering);
+        }
+    }
+
+    /**
+     * @return the name of the native sequence for the given sequence, in the schema of the sequence table
+     */
+    String getNativeSequenceName(final String seqName, final DatabaseType databaseType) {
+        final int dot = tableName.lastIndexOf('.');
+        final String schemaPrefix = dot < 0 ? "" : tableName.substring(0, dot + 1);
+        String name = "SEQ_" + seqName.toUpperCase(Locale.ENGLISH).replaceAll("[^A-Z0-9_]", "_");
+        final int clipLength = databaseType.getConstraintNameClipLength();
+        if (clipLength > 0 && name.length() > clipLength) {
+            name = name.substring(0, clipLength);
+        }
+        return schemaPrefix + name;
     }
 
     private Optional<DatabaseType> getDatabaseTypeSingleton(final Connection connection) {
@@ -113,7 +257,18 @@ public class SequenceUtil {
         return Optional.ofNullable(databaseType);
     }
 
-    class SequenceBank {
+    /**
+     * Hands out the ids of one sequence.
+     */
+    interface Bank {
+
+        /**
+         * @return the next id, or null if the bank could not be filled
+         */
+        Long getNextSeqId();
+    }
+
+    class SequenceBank implements Bank {
 
         public static final long bankSize = 100;
         public static final long startSeqId = 10000;
@@ -127,11 +282,17 @@ public class SequenceUtil {
         private final String seqName;
         private final SequenceUtil parentUtil;
         private final boolean clusterMode;
+        private final long blockSize;
 
         public SequenceBank(String seqName, SequenceUtil parentUtil, boolean clusterMode) {
+            this(seqName, parentUtil, clusterMode, bankSize);
+        }
+
+        SequenceBank(String seqName, SequenceUtil parentUtil, boolean clusterMode, long blockSize) {
             this.seqName = seqName;
             this.parentUtil = parentUtil;
             this.clusterMode = clusterMode;
+            this.blockSize = blockSize;
             curSeqId = 0;
             maxSeqId = 0;
             fillBank();
@@ -157,6 +318,21 @@ public class SequenceUtil {
             }
         }
 
+        /**
+         * Takes all of the ids left in the bank, filling it first if it is empty.
+         *
+         * @return the first id and the id after the last one, or null if the bank could not be filled
+         */
+        synchronized long[] takeBlock() {
+            fillBank();
+            if (curSeqId >= maxSeqId) {
+                return null;
+            }
+            final long[] block = {curSeqId, maxSeqId};
+            curSeqId = maxSeqId;
+            return block;
+        }
+
         protected synchronized void fillBank() {
             // no need to get a new bank, SeqIds available
             if (curSeqId < maxSeqId) return;
@@ -210,13 +386,13 @@ public class SequenceUtil {
 
                 int numTries = 0;
 
-                while (val1 + bankSize != val2) {
+                while (val1 + blockSize != val2) {
                     ResultSet rs1 = null;
                     ResultSet rs2 = null;
                     try {
                         if (Debug.verboseOn())
                             Debug.logVerbose("[SequenceUtil.SequenceBank.fillBank] Trying to get a bank of sequenced ids for " +
-                                    this.seqName + "; start of loop val1=" + val1 + ", val2=" + val2 + ", bankSize=" + bankSize, module);
+                                    this.seqName + "; start of loop val1=" + val1 + ", val2=" + val2 + ", bankSize=" + blockSize, module);
 
                         // try 1: SELECT the next id
                         if (selectPstmt == null) {
@@ -235,7 +411,7 @@ public class SequenceUtil {
                         if (rs1.next()) {
                             val1 = rs1.getLong(parentUtil.idColName);
                         } else {
-                            Debug.logVerbose("[SequenceUtil.SequenceBank.fillBank] first select failed: trying to add " +
+                            Debug.logVerbose(() -> "[SequenceUtil.SequenceBank.fillBank] first select failed: trying to add " +
                                     "row, result set was empty for sequence: " + seqName, module);
 
                             // INSERT the row if it doesn't exist
@@ -250,9 +426,9 @@ public class SequenceUtil {
                             continue;
                         }
 
-                        // UPDATE the next id by adding bankSize
+                        // UPDATE the next id by adding blockSize
                         if (updatePstmt == null) {
-                            updatePstmt = connection.prepareStatement("UPDATE " + parentUtil.tableName + " SET " + parentUtil.idColName + "=" + parentUtil.idColName + "+" + SequenceBank.bankSize + " WHERE " + parentUtil.nameColName + "=?");
+                            updatePstmt = connection.prepareStatement("UPDATE " + parentUtil.tableName + " SET " + parentUtil.idColName + "=" + parentUtil.idColName + "+" + blockSize + " WHERE " + parentUtil.nameColName + "=?");
                         }
                         updatePstmt.setString(1, this.seqName);
                         updatePstmt.execute();
@@ -284,7 +460,7 @@ public class SequenceUtil {
                             connection.commit();
                         }
 
-                        if (val1 + bankSize != val2) {
+                        if (val1 + blockSize != val2) {
                             if (numTries >= maxTries) {
                                 Debug.logError("[SequenceUtil.SequenceBank.fillBank] maxTries (" + maxTries + ") reached, giving up.", module);
                                 return;
@@ -310,7 +486,7 @@ public class SequenceUtil {
                 maxSeqId = val2;
                 if (Debug.verboseOn())
                     Debug.logVerbose("[SequenceUtil.SequenceBank.fillBank] Successfully got a bank of sequenced ids for " +
-                            this.seqName + "; curSeqId=" + curSeqId + ", maxSeqId=" + maxSeqId + ", bankSize=" + bankSize, module);
+                            this.seqName + "; curSeqId=" + curSeqId + ", maxSeqId=" + maxSeqId + ", bankSize=" + blockSize, module);
             } catch (SQLException sqle) {
                 Debug.logWarning(sqle, "[SequenceUtil.SequenceBank.fillBank] SQL Exception", module);
                 return;
@@ -341,6 +517,240 @@ public class SequenceUtil {
         }
     }
 
+    /**
+     * The first id of a block and the id after its last one.
+     */
+    static final class Block {
+        final AtomicLong next;
+        final long max;
+
+        Block(final long first, final long max) {
+            this.next = new AtomicLong(first);
+            this.max = max;
+        }
+    }
+
+    /**
+     * A bank that hands out the ids of the block it holds without locking, and only locks to fetch the next block.
+     */
+    abstract class BlockBank implements Bank {
+
+        private volatile Block block = new Block(0, 0);
+
+        public Long getNextSeqId() {
+            while (true) {
+                final Block current = block;
+                final long seqId = current.next.getAndIncrement();
+                if (seqId < current.max) {
+                    return seqId;
+                }
+                synchronized (this) {
+                    // another thread may have fetched the next block while we waited
+                    if (block == current) {
+                        final Block next = fetchBlock();
+                        if (next == null) {
+                            Debug.logError("[SequenceUtil.BlockBank.getNextSeqId] Fetching a block failed, returning null", module);
+                            return null;
+                        }
+                        block = next;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return true if the first block could be fetched
+         */
+        synchronized boolean open() {
+            final Block first = fetchBlock();
+            if (first == null) {
+                return false;
+            }
+            block = first;
+            return true;
+        }
+
+        /**
+         * @return the next block of ids, or null if it could not be fetched
+         */
+        protected abstract Block fetchBlock();
+    }
+
+    /**
+     * Reserves large blocks of ids from the sequence table.
+     */
+    class HiLoBank extends BlockBank {
+
+        private final SequenceBank reserver;
+
+        HiLoBank(final String seqName, final boolean clusterMode) {
+            this.reserver = new SequenceBank(seqName, SequenceUtil.this, clusterMode, HILO_BLOCK_SIZE);
+        }
+
+        @Override
+        protected Block fetchBlock() {
+            final long[] reserved = reserver.takeBlock();
+            return reserved == null ? null : new Block(reserved[0], reserved[1]);
+        }
+    }
+
+    /**
+     * Takes banks of ids from a native sequence that is incremented by the bank size.
+     */
+    class NativeSequenceBank extends BlockBank {
+
+        private final String seqName;
+        // guarded by this, like fetchBlock
+        private String nextValueSql;
+
+        NativeSequenceBank(final String seqName) {
+            this.seqName = seqName;
+        }
+
+        /**
+         * Fetches the block outside of any transaction in progress, which is suspended like {@link
+         * SequenceBank#fillBank()} does: selecting from a sequence that doesn't exist yet aborts the transaction on
+         * some databases, and creating it commits the transaction on others.
+         */
+        @Override
+        protected Block fetchBlock() {
+            TransactionManager transactionManager = null;
+            Transaction suspendedTransaction = null;
+            try {
+                if (TransactionUtil.getStatus() == TransactionUtil.STATUS_ACTIVE) {
+                    transactionManager = TransactionFactory.getTransactionManager();
+                    if (transactionManager == null) {
+                        Debug.logWarning("[SequenceUtil.NativeSequenceBank.fetchBlock] Can't suspend the transaction " +
+                                "in progress to use the native sequence for " + seqName, module);
+                        return null;
+                    }
+                    suspendedTransaction = transactionManager.suspend();
+                }
+            } catch (GenericTransactionException | SystemException e) {
+                Debug.logWarning(e, "[SequenceUtil.NativeSequenceBank.fetchBlock] Could not suspend the transaction " +
+                        "in progress to use the native sequence for " + seqName, module);
+                return null;
+            }
+
+            try {
+                return fetchBlockOutsideTransaction();
+            } finally {
+                if (suspendedTransaction != null) {
+                    try {
+                        transactionManager.resume(suspendedTransaction);
+                    } catch (InvalidTransactionException e) {
+                        Debug.logError(e, "InvalidTransaction Error resuming suspended transaction in sequence util");
+                    } catch (IllegalStateException e) {
+                        Debug.logError(e, "IllegalState Error resuming suspended transaction in sequence util");
+                    } catch (SystemException e) {
+                        Debug.logError(e, "System Error resuming suspended transaction in sequence util");
+                    }
+                }
+            }
+        }
+
+        private Block fetchBlockOutsideTransaction() {
+            Connection connection = null;
+            boolean autoCommitSet = false;
+            try {
+                connection = ConnectionFactory.getConnection(helperName);
+                // the sequence is not transactional, but the statements that create it may end a transaction
+                if (!connection.getAutoCommit()) {
+                    connection.setAutoCommit(true);
+                    autoCommitSet = true;
+                }
+
+                if (nextValueSql == null) {
+                    // first use, find out whether and how the database does sequences
+                    final DatabaseType databaseType = getDatabaseTypeSingleton(connection).orElse(null);
+                    if (databaseType == null) {
+                        return null;
+                    }
+                    final String sequenceName = getNativeSequenceName(seqName, databaseType);
+                    final String sql = databaseType.getNextSequenceValueSQL(sequenceName);
+                    if (sql == null) {
+                        return null;
+                    }
+                    try {
+                        final long first = selectNextValue(connection, sql);
+                        nextValueSql = sql;
+                        return new Block(first, first + SequenceBank.bankSize);
+                    } catch (SQLException notCreatedYet) {
+                        createSequence(connection, databaseType, sequenceName);
+                    }
+                    nextValueSql = sql;
+                }
+
+                final long first = selectNextValue(connection, nextValueSql);
+                if (Debug.verboseOn())
+                    Debug.logVerbose("[SequenceUtil.NativeSequenceBank.fetchBlock] Got a bank of sequenced ids for " +
+                            seqName + " starting at " + first, module);
+                return new Block(first, first + SequenceBank.bankSize);
+            } catch (SQLException | GenericEntityException e) {
+                Debug.logWarning(e, "[SequenceUtil.NativeSequenceBank.fetchBlock] Could not get the next value of the " +
+                        "native sequence for " + seqName, module);
+                return null;
+            } finally {
+                if (autoCommitSet) {
+                    // the connection may go back to a pool, which expects it as it was handed out
+                    try {
+                        connection.setAutoCommit(false);
+                    } catch (SQLException e) {
+                        Debug.logWarning(e, "[SequenceUtil.NativeSequenceBank.fetchBlock] Could not restore the auto-commit " +
+                                "mode of the connection", module);
+                    }
+                }
+                closeQuietly(connection);
+            }
+        }
+
+        private long selectNextValue(final Connection connection, final String sql) throws SQLException {
+            PreparedStatement stmt = null;
+            ResultSet rs = null;
+            try {
+                stmt = connection.prepareStatement(sql);
+                rs = stmt.executeQuery();
+                if (!rs.next()) {
+                    throw new SQLException("No value returned by " + sql);
+                }
+                return rs.getLong(1);
+            } finally {
+                closeQuietly(rs);
+                closeQuietly(stmt);
+            }
+        }
+
+        /**
+         * Creates the native sequence, starting from the next id of the sequence table so that the ids it hands out
+         * are new ones. Another node may be creating it at the same time, which is fine.
+         */
+        private void createSequence(final Connection connection, final DatabaseType databaseType, final String sequenceName) {
+            PreparedStatement selectPstmt = null;
+            PreparedStatement createPstmt = null;
+            ResultSet rs = null;
+            try {
+                long startValue = SequenceBank.startSeqId;
+                selectPstmt = connection.prepareStatement("SELECT " + idColName + " FROM " + tableName + " WHERE " + nameColName + "=?");
+                selectPstmt.setString(1, seqName);
+                rs = selectPstmt.executeQuery();
+                if (rs.next()) {
+                    startValue = Math.max(startValue, rs.getLong(1));
+                }
+
+                createPstmt = connection.prepareStatement(databaseType.getCreateSequenceSQL(sequenceName, startValue, SequenceBank.bankSize));
+                createPstmt.execute();
+                Debug.logInfo("Created the native sequence " + sequenceName + " for " + seqName + " starting at " + startValue, module);
+            } catch (SQLException sqle) {
+                Debug.logWarning("[SequenceUtil.NativeSequenceBank.createSequence] Could not create the native sequence " +
+                        sequenceName + ", it may have been created by someone else: " + sqle, module);
+            } finally {
+                closeQuietly(rs);
+                closeQuietly(createPstmt);
+                closeQuietly(selectPstmt);
+            }
+        }
+    }
+
     private void closeQuietly(Connection connection) {
         try {
             if (connection != null) {
@@ -114,6 +114,8 @@ public class TransactionUtil implements javax.transaction.Status {
      * Commits the transaction in the current thread IF transactions are available
      */
     public static void commit() throws GenericTransactionException {
+        // whatever the outcome, the rows read in the transaction may be changed by others from now on
+        EntityIdentityMap.transactionEnded();
         UserTransaction ut = TransactionFactory.getUserTransaction();
 
         if (ut != null) {
@@ -161,6 +163,7 @@ public class TransactionUtil implements javax.transaction.Status {
      * Rolls back transaction in the current thread IF transactions are available
      */
     public static void rollback() throws GenericTransactionException {
+        EntityIdentityMap.transactionEnded();
         UserTransaction ut = TransactionFactory.getUserTransaction();
 
         if (ut != null) {
@@ -316,6 +319,24 @@ public class TransactionUtil implements javax.transaction.Status {
         return (getLocalTransactionConnection() != null);
     }
 
+    /**
+     * Checks if the current thread has either a local transaction (see {@link #isTransactionActive()}) or an active
+     * JTA transaction. Work done by another thread can't be part of such a transaction.
+     *
+     * @return true if there is a transaction in progress for the current thread
+     */
+    public static boolean isTransactionInProgress() {
+        if (isTransactionActive()) {
+            return true;
+        }
+        try {
+            return getStatus() == STATUS_ACTIVE;
+        } catch (GenericTransactionException e) {
+            Debug.logWarning(e, "Could not get the transaction status, assuming there is no transaction", module);
+            return false;
+        }
+    }
+
     /**
      * Commits a transaction if beganTransaction is true and there is an active transaction. See {@link #isTransactionActive()}.
      * If beganTransaction is false or if there is no active transaction this method does nothing.
@@ -421,6 +442,7 @@ public class TransactionUtil implements javax.transaction.Status {
         } finally {
             // No matter what happens reset the thread local.
             clearTransactionThreadLocal();
+            EntityIdentityMap.transactionEnded();
         }
     }
 
@@ -0,0 +1,410 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity;
+
+import org.ofbiz.core.util.Debug;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds back the stores of entities marked <code>write-behind="true"</code> in the entity model, and writes them later
+ * with batched UPDATE statements.
+ * <p>
+ * Storing the same primary key again before the buffer is flushed replaces the value held for it, so an entity that
+ * is stored many times a second, such as a counter or a last access time, costs one UPDATE per flush rather than one
+ * per store. The buffer is flushed by a background thread every {@link #DEFAULT_FLUSH_INTERVAL_MILLIS} ms, by the
+ * storing thread once {@link #DEFAULT_MAX_PENDING} values are held, and when it is closed or the JVM shuts down. The
+ * delegator closes its buffer when it is removed.
+ * <p>
+ * Only plain stores are held back: a store made while the thread has a transaction in progress is written right away
+ * so that it is part of that transaction, as are stores of entities with optimistic locking. The delegator writes the
+ * value held for a key before the key is written through or removed, and flushes the buffer before removing or
+ * transforming rows by condition. Until a value is flushed, the primary key cache holds it, but finds that go to the
+ * database see the row as it was.
+ * <p>
+ * Held back values are never part of a transaction: when a thread with a transaction in progress flushes the buffer,
+ * the background thread writes the values while it waits, so that they are not lost if the transaction is rolled
+ * back. That write waits for the locks the transaction holds, so a transaction must not have written the rows of a
+ * write-behind entity by condition before it writes them by key.
+ * <p>
+ * A value that can't be written, or whose row no longer exists, is dropped, logged and counted, see
+ * {@link #getDroppedCount()}.
+ */
+public class WriteBehindBuffer {
+
+    public static final String module = WriteBehindBuffer.class.getName();
+
+    /** The number of values held back that makes the storing thread flush the buffer */
+    public static final int DEFAULT_MAX_PENDING = Integer.getInteger("entity.write.behind.max.pending", 1000);
+
+    /** How often the background thread flushes the buffer */
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = Long.getLong("entity.write.behind.flush.millis", 1000L);
+
+    private final GenericDelegator delegator;
+    private final int maxPending;
+    /** The buffers that have not been closed, which are flushed by one shutdown hook */
+    private static final Set<WriteBehindBuffer> openBuffers =
+            Collections.newSetFromMap(new ConcurrentHashMap<WriteBehindBuffer, Boolean>());
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                for (WriteBehindBuffer buffer : openBuffers) {
+                    buffer.flushQuietly();
+                }
+            }
+        }, "WriteBehindBuffer-shutdown"));
+    }
+
+    private final ScheduledExecutorService flusher;
+
+    /** Held while the values are written, so that a flush can't overtake the one before it */
+    private final Object flushLock = new Object();
+    private final Object pendingLock = new Object();
+    /** The values held back by entity name, then primary key; guarded by pendingLock */
+    private Map<String, Map<List<String>, GenericValue>> pending = new LinkedHashMap<String, Map<List<String>, GenericValue>>();
+    private int pendingCount;
+    private long oldestPendingTime;
+
+    private final AtomicLong storeCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private volatile long lastFlushLagMillis;
+    private volatile long maxFlushLagMillis;
+
+    public WriteBehindBuffer(final GenericDelegator delegator) {
+        this(delegator, DEFAULT_MAX_PENDING, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public WriteBehindBuffer(final GenericDelegator delegator, final int maxPending, final long flushIntervalMillis) {
+        this.delegator = delegator;
+        this.maxPending = maxPending;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "WriteBehindBuffer-" + delegator.getDelegatorName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flushQuietly();
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        openBuffers.add(this);
+    }
+
+    /**
+     * Holds back a copy of the given value, in place of any value held for the same primary key; flushes the buffer if
+     * it is full.
+     */
+    public void add(final GenericValue value) {
+        final GenericValue copy = (GenericValue) value.clone();
+        final boolean full;
+        synchronized (pendingLock) {
+            Map<List<String>, GenericValue> entityValues = pending.get(copy.getEntityName());
+            if (entityValues == null) {
+                entityValues = new LinkedHashMap<List<String>, GenericValue>();
+                pending.put(copy.getEntityName(), entityValues);
+            }
+            if (entityValues.put(PrimaryKeyLookup.keyOf(copy), copy) == null) {
+                pendingCount++;
+            } else {
+                coalescedCount.incrementAndGet();
+            }
+            if (oldestPendingTime == 0) {
+                oldestPendingTime = System.currentTimeMillis();
+            }
+            full = pendingCount >= maxPending;
+        }
+        storeCount.incrementAndGet();
+        if (full) {
+            flushQuietly();
+        }
+    }
+
+    /**
+     * Writes the value held for the primary key of the given entity, if any, because the key is about to be written or
+     * removed by other means. Dropping the value instead would lose it if that write only sets some of the fields, or
+     * is rolled back with its transaction. If a flush is writing the values, this waits for it to finish first.
+     *
+     * @return the number of values written, 0 or 1
+     */
+    public int flush(final GenericEntity entity) {
+        return writeOutsideTransaction(new Callable<Integer>() {
+            public Integer call() {
+                synchronized (flushLock) {
+                    final GenericValue value;
+                    synchronized (pendingLock) {
+                        final Map<List<String>, GenericValue> entityValues = pending.get(entity.getEntityName());
+                        value = entityValues == null ? null : entityValues.remove(PrimaryKeyLookup.keyOf(entity));
+                        if (value == null) {
+                            return 0;
+                        }
+                        if (--pendingCount == 0) {
+                            oldestPendingTime = 0;
+                        }
+                    }
+                    return write(entity.getEntityName(), Collections.singletonList(value));
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if values of the given entity are held back
+     */
+    public boolean hasPending(final String entityName) {
+        synchronized (pendingLock) {
+            final Map<List<String>, GenericValue> entityValues = pending.get(entityName);
+            return entityValues != null && !entityValues.isEmpty();
+        }
+    }
+
+    /**
+     * Writes all of the values held back, with one batch per entity; if a batch fails, its values are written one at a
+     * time and those that still fail are dropped.
+     *
+     * @return the number of values written
+     */
+    public int flush() {
+        return writeOutsideTransaction(new Callable<Integer>() {
+            public Integer call() {
+                return writePending();
+            }
+        });
+    }
+
+    /**
+     * Runs the given writer in this thread, or in the background thread if this thread has a transaction in progress,
+     * see the class comment; once the buffer is closed, there is no background thread and it runs in this thread.
+     */
+    private int writeOutsideTransaction(final Callable<Integer> writer) {
+        final FutureTask<Integer> task = new FutureTask<Integer>(writer);
+        boolean submitted = false;
+        if (TransactionUtil.isTransactionInProgress()) {
+            try {
+                flusher.execute(task);
+                submitted = true;
+            } catch (RejectedExecutionException closed) {
+                if (Debug.verboseOn()) Debug.logVerbose("The buffer is closed, writing the held back values in the transaction", module);
+            }
+        }
+        if (!submitted) {
+            task.run();
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    // the values are being written, and the caller's write has to come after them
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private int writePending() {
+        synchronized (flushLock) {
+            final Map<String, Map<List<String>, GenericValue>> toWrite;
+            final long oldest;
+            synchronized (pendingLock) {
+                if (pendingCount == 0) {
+                    return 0;
+                }
+                toWrite = pending;
+                oldest = oldestPendingTime;
+                pending = new LinkedHashMap<String, Map<List<String>, GenericValue>>();
+                pendingCount = 0;
+                oldestPendingTime = 0;
+            }
+
+            int written = 0;
+            for (Map.Entry<String, Map<List<String>, GenericValue>> entry : toWrite.entrySet()) {
+                written += write(entry.getKey(), new ArrayList<GenericValue>(entry.getValue().values()));
+            }
+
+            final long lag = System.currentTimeMillis() - oldest;
+            lastFlushLagMillis = lag;
+            if (lag > maxFlushLagMillis) {
+                maxFlushLagMillis = lag;
+            }
+            flushCount.incrementAndGet();
+            if (Debug.verboseOn()) Debug.logVerbose("Flushed " + written + " held back values, the oldest after " + lag + " ms", module);
+            return written;
+        }
+    }
+
+    private int write(final String entityName, final List<GenericValue> values) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        try {
+            final int updated = delegator.getEntityHelper(entityName).updateAll(values);
+            writtenCount.addAndGet(updated);
+            if (updated < values.size()) {
+                // the batch doesn't tell which ones, but their rows were removed after they were held back
+                droppedCount.addAndGet(values.size() - updated);
+                Debug.logWarning("Dropped " + (values.size() - updated) + " of " + values.size() + " held back "
+                        + entityName + " values whose rows no longer exist", module);
+            }
+            return updated;
+        } catch (GenericEntityException e) {
+            Debug.logWarning(e, "Could not write " + values.size() + " held back " + entityName + " values in a batch, writing them one at a time", module);
+        }
+
+        int written = 0;
+        for (GenericValue value : values) {
+            try {
+                if (delegator.getEntityHelper(entityName).store(value) > 0) {
+                    written++;
+                } else {
+                    droppedCount.incrementAndGet();
+                    Debug.logWarning("Dropped the held back value " + value + ", its row no longer exists", module);
+                }
+            } catch (GenericEntityException e) {
+                droppedCount.incrementAndGet();
+                Debug.logError(e, "Dropped the held back value " + value, module);
+            }
+        }
+        writtenCount.addAndGet(written);
+        return written;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            Debug.logError(e, "Could not flush the held back values", module);
+        }
+    }
+
+    /**
+     * Stops the background thread and writes the values held back.
+     */
+    public void close() {
+        flusher.shutdown();
+        openBuffers.remove(this);
+        flushQuietly();
+    }
+
+    /**
+     * @return the number of values held back
+     */
+    public int getPendingCount() {
+        synchronized (pendingLock) {
+            return pendingCount;
+        }
+    }
+
+    /**
+     * @return how long the oldest value held back has been waiting, in ms
+     */
+    public long getPendingLagMillis() {
+        synchronized (pendingLock) {
+            return oldestPendingTime == 0 ? 0 : System.currentTimeMillis() - oldestPendingTime;
+        }
+    }
+
+    /**
+     * @return how long the oldest value written by the last flush had waited, in ms
+     */
+    public long getLastFlushLagMillis() {
+        return lastFlushLagMillis;
+    }
+
+    /**
+     * @return the longest any value written so far had waited, in ms
+     */
+    public long getMaxFlushLagMillis() {
+        return maxFlushLagMillis;
+    }
+
+    /**
+     * @return the number of stores held back
+     */
+    public long getStoreCount() {
+        return storeCount.get();
+    }
+
+    /**
+     * @return the number of stores that replaced a value already held for the same primary key
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return the number of values written
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * @return the number of values that could not be written, or whose rows no longer existed
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the number of flushes that wrote at least one value
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+}
@@ -360,10 +360,18 @@ public class EntityConfigUtil {
 
     public static class EntityModelReaderInfo {
         public String name;
+        public String snapshotLocation;
+        public boolean lazyLoad;
         public List<Element> resourceElements;
 
         public EntityModelReaderInfo(Element element) {
             this.name = element.getAttribute("name");
+            this.snapshotLocation = element.getAttribute("snapshot-location");
+            if (UtilValidate.isEmpty(this.snapshotLocation)) {
+                this.snapshotLocation = null;
+            }
+            // this defaults to false, ie anything but true is false
+            this.lazyLoad = "true".equals(element.getAttribute("lazy-load"));
             resourceElements = UtilXml.childElementList(element, "resource");
         }
     }
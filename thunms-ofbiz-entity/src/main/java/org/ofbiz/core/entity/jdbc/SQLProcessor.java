@@ -571,6 +571,65 @@ public class SQLProcessor {
         }
     }
 
+    /**
+     * Adds the values set so far to the batch of the prepared statement and starts a new set of values.
+     *
+     * @throws GenericDataSourceException if an SQLException occurs
+     */
+    public void addBatch() throws GenericDataSourceException {
+        try {
+            _ps.addBatch();
+        } catch (SQLException sqle) {
+            throw new GenericDataSourceException("SQL Exception while adding a batch to the following:" + _sql, sqle);
+        }
+        _parameterValues = new ArrayList<>();
+        _ind = 1;
+    }
+
+    /**
+     * Execute the batch of updates added with {@link #addBatch()}
+     *
+     * @return The total number of rows updated; statements for which the driver reports no row count are counted
+     * as one row
+     * @throws GenericDataSourceException if an SQLException occurs
+     */
+    public int executeBatch() throws GenericDataSourceException {
+        return totalOf(executeBatchForUpdateCounts());
+    }
+
+    /**
+     * Execute the batch of updates added with {@link #addBatch()}
+     *
+     * @return the number of rows updated by each statement of the batch, in the order they were added; a driver may
+     * report {@link Statement#SUCCESS_NO_INFO} instead of a row count
+     * @throws GenericDataSourceException if an SQLException occurs
+     */
+    public int[] executeBatchForUpdateCounts() throws GenericDataSourceException {
+        validateCommitMode();
+
+        try {
+            beforeExecution();
+
+            final int[] updateCounts = _ps.executeBatch();
+
+            afterExecution(totalOf(updateCounts));
+
+            return updateCounts;
+        } catch (SQLException sqle) {
+            onException(sqle);
+
+            throw new GenericDataSourceException("SQL Exception while executing the following batch:" + _sql, sqle);
+        }
+    }
+
+    private static int totalOf(final int[] updateCounts) {
+        int total = 0;
+        for (int rc : updateCounts) {
+            total += rc == Statement.SUCCESS_NO_INFO ? 1 : Math.max(rc, 0);
+        }
+        return total;
+    }
+
     /**
      * Execute update based on the SQL statement given
      *
@@ -74,4 +74,13 @@ public abstract class AbstractPostgresDatabaseType extends AbstractDatabaseType
         }
     }
 
+    @Override
+    public String getNextSequenceValueSQL(String sequenceName) {
+        return "SELECT nextval('" + sequenceName + "')";
+    }
+
+    @Override
+    public boolean supportsRowValueInList() {
+        return true;
+    }
 }
@@ -57,4 +57,37 @@ public interface DatabaseType {
     default String getSimpleSelectSqlSyntax(boolean clusterMode) {
         return STANDARD_SELECT_SYNTAX;
     }
+
+    /**
+     * Whether the database can compare a list of columns with a list of row values, as in
+     * {@code (a, b) IN ((?, ?), (?, ?))}. Databases that cannot are sent the equivalent OR-ed conditions.
+     */
+    default boolean supportsRowValueInList() {
+        return false;
+    }
+
+    /**
+     * Builds a DB-specific SQL query that returns the next value of a native sequence as its only column.
+     *
+     * @param sequenceName the name of the sequence
+     * @return the SQL text, or {@code null}, if the database has no native sequences.
+     */
+    default String getNextSequenceValueSQL(String sequenceName) {
+        return null;
+    }
+
+    /**
+     * Builds a DB-specific SQL statement to create a native sequence.
+     *
+     * @param sequenceName the name of the sequence
+     * @param startValue   the first value of the sequence
+     * @param increment    how much the sequence is incremented by each time its next value is taken
+     * @return the SQL text, or {@code null}, if the database has no native sequences.
+     */
+    default String getCreateSequenceSQL(String sequenceName, long startValue, long increment) {
+        if (getNextSequenceValueSQL(sequenceName) == null) {
+            return null;
+        }
+        return "CREATE SEQUENCE " + sequenceName + " START WITH " + startValue + " INCREMENT BY " + increment;
+    }
 }
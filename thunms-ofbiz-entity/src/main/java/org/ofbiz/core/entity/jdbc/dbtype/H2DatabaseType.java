@@ -24,4 +24,13 @@ public class H2DatabaseType extends SimpleDatabaseType {
         }
     }
 
+    @Override
+    public String getNextSequenceValueSQL(String sequenceName) {
+        return "SELECT NEXT VALUE FOR " + sequenceName;
+    }
+
+    @Override
+    public boolean supportsRowValueInList() {
+        return true;
+    }
 }
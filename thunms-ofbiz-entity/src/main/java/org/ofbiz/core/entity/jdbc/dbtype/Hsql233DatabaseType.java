@@ -24,4 +24,19 @@ public class Hsql233DatabaseType extends AbstractHsqlDatabaseType {
         }
     }
 
+    @Override
+    public String getNextSequenceValueSQL(String sequenceName) {
+        return "CALL NEXT VALUE FOR " + sequenceName;
+    }
+
+    @Override
+    public String getCreateSequenceSQL(String sequenceName, long startValue, long increment) {
+        // sequences are INTEGER unless told otherwise
+        return "CREATE SEQUENCE " + sequenceName + " AS BIGINT START WITH " + startValue + " INCREMENT BY " + increment;
+    }
+
+    @Override
+    public boolean supportsRowValueInList() {
+        return true;
+    }
 }
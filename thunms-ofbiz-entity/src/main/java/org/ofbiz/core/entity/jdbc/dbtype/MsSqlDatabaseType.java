@@ -19,4 +19,12 @@ public class MsSqlDatabaseType extends SimpleDatabaseType {
         }
     }
 
+    /**
+     * Sequences are available from SQL Server 2012 on; creating one fails on earlier versions.
+     */
+    @Override
+    public String getNextSequenceValueSQL(String sequenceName) {
+        return "SELECT NEXT VALUE FOR " + sequenceName;
+    }
+
 }
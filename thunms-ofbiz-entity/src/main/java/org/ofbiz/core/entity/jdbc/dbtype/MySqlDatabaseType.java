@@ -24,4 +24,8 @@ public class MySqlDatabaseType extends SimpleDatabaseType {
         }
     }
 
+    @Override
+    public boolean supportsRowValueInList() {
+        return true;
+    }
 }
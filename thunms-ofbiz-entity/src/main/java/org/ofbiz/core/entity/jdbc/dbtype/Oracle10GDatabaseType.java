@@ -70,4 +70,13 @@ public class Oracle10GDatabaseType extends AbstractDatabaseType {
         }
     }
 
+    @Override
+    public String getNextSequenceValueSQL(String sequenceName) {
+        return "SELECT " + sequenceName + ".NEXTVAL FROM DUAL";
+    }
+
+    @Override
+    public boolean supportsRowValueInList() {
+        return true;
+    }
 }
@@ -75,4 +75,13 @@ class Oracle8IDatabaseType extends AbstractDatabaseType {
         }
     }
 
+    @Override
+    public String getNextSequenceValueSQL(String sequenceName) {
+        return "SELECT " + sequenceName + ".NEXTVAL FROM DUAL";
+    }
+
+    @Override
+    public boolean supportsRowValueInList() {
+        return true;
+    }
 }
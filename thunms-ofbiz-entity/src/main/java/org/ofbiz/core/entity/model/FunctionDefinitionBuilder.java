@@ -4,6 +4,7 @@ import org.ofbiz.core.entity.jdbc.dbtype.DatabaseType;
 import org.ofbiz.core.entity.jdbc.dbtype.DatabaseTypeFactory;
 
 import javax.annotation.Nullable;
+import java.io.Serializable;
 import java.util.List;
 
 /**
@@ -27,8 +28,11 @@ import java.util.List;
  *      }
  *  }
  *  </pre>
+ *  Builders are written into entity model snapshots, so any state added by a subclass must be serializable.
  */
-public abstract class FunctionDefinitionBuilder {
+public abstract class FunctionDefinitionBuilder implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final String virtualColumn;
     private final String type;
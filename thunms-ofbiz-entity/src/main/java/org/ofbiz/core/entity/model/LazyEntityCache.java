@@ -0,0 +1,198 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity.model;
+
+import org.ofbiz.core.entity.GenericEntityException;
+import org.ofbiz.core.util.Debug;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The entity cache of a {@link ModelReader} that knows all entity names up front but only builds each
+ * {@link ModelEntity} the first time it is asked for.
+ * <p>
+ * Entities are built under one of a fixed set of striped locks, so different entities can be built concurrently
+ * while the same entity is only built once. A view entity is resolved against its member entities after its own
+ * lock has been released; the members may live on other stripes, and waiting for them while holding a stripe could
+ * deadlock against a thread resolving a view in the opposite direction.
+ */
+final class LazyEntityCache extends AbstractMap<String, ModelEntity> {
+
+    public static final String module = LazyEntityCache.class.getName();
+
+    private static final int LOCK_STRIPES = 32;
+
+    /**
+     * Source of the entity definitions of a lazy entity cache.
+     */
+    interface Loader {
+
+        /**
+         * @return the names of all entities this loader can provide, in model order; must not change afterwards
+         */
+        Set<String> getEntityNames();
+
+        /**
+         * Builds the definition of one entity; view entities are returned before their member entities have been
+         * resolved.
+         *
+         * @return the entity, or null if it is not known to this loader
+         */
+        ModelEntity loadEntity(String entityName) throws GenericEntityException;
+
+        /**
+         * Resolves a view entity returned by {@link #loadEntity(String)} against its member entities.
+         *
+         * @param members the member entities, keyed by entity name
+         */
+        void resolveView(ModelViewEntity viewEntity, Map<String, ModelEntity> members);
+    }
+
+    private final ModelReader reader;
+    private final Loader loader;
+    private final ConcurrentMap<String, ModelEntity> loaded = new ConcurrentHashMap<String, ModelEntity>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    LazyEntityCache(ModelReader reader, Loader loader) {
+        this.reader = reader;
+        this.loader = loader;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return the number of entities that have been built so far
+     */
+    int getLoadedCount() {
+        return loaded.size();
+    }
+
+    ModelEntity getEntity(String entityName) throws GenericEntityException {
+        ModelEntity entity = loaded.get(entityName);
+
+        if (entity != null || !loader.getEntityNames().contains(entityName)) {
+            return entity;
+        }
+
+        synchronized (locks[(entityName.hashCode() & 0x7fffffff) % LOCK_STRIPES]) {
+            entity = loaded.get(entityName);
+            if (entity != null) {
+                return entity;
+            }
+            entity = loader.loadEntity(entityName);
+            if (entity == null) {
+                return null;
+            }
+            entity.modelReader = reader;
+            if (!(entity instanceof ModelViewEntity)) {
+                loaded.put(entityName, entity);
+                return entity;
+            }
+        }
+
+        ModelViewEntity viewEntity = (ModelViewEntity) entity;
+        Map<String, ModelEntity> members = new HashMap<String, ModelEntity>();
+
+        for (ModelViewEntity.ModelMemberEntity memberEntity : viewEntity.getAllModelMemberEntities()) {
+            ModelEntity member = getEntity(memberEntity.getEntityName());
+
+            if (member != null) {
+                members.put(memberEntity.getEntityName(), member);
+            }
+        }
+        loader.resolveView(viewEntity, members);
+
+        // another thread may have resolved the same view in the meantime, everybody gets the first one
+        ModelEntity existing = loaded.putIfAbsent(entityName, viewEntity);
+        return existing != null ? existing : viewEntity;
+    }
+
+    @Override
+    public ModelEntity get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        try {
+            return getEntity((String) key);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Could not load entity definition for " + key, module);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return loader.getEntityNames().contains(key);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return loader.getEntityNames();
+    }
+
+    @Override
+    public int size() {
+        return loader.getEntityNames().size();
+    }
+
+    /**
+     * Iterating the entries builds every entity that has not been built yet.
+     */
+    @Override
+    public Set<Map.Entry<String, ModelEntity>> entrySet() {
+        return new AbstractSet<Map.Entry<String, ModelEntity>>() {
+            @Override
+            public Iterator<Map.Entry<String, ModelEntity>> iterator() {
+                final Iterator<String> names = loader.getEntityNames().iterator();
+                return new Iterator<Map.Entry<String, ModelEntity>>() {
+                    public boolean hasNext() {
+                        return names.hasNext();
+                    }
+
+                    public Map.Entry<String, ModelEntity> next() {
+                        String entityName = names.next();
+                        return new SimpleImmutableEntry<String, ModelEntity>(entityName, get(entityName));
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return loader.getEntityNames().size();
+            }
+        };
+    }
+}
@@ -32,6 +32,7 @@ import org.ofbiz.core.util.UtilXml;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -48,7 +49,9 @@ import java.util.Map;
  * @version $Revision: 1.3 $
  * @since 2.0
  */
-public class ModelEntity implements Comparable<ModelEntity> {
+public class ModelEntity implements Comparable<ModelEntity>, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public static final String module = ModelEntity.class.getName();
 
@@ -58,9 +61,9 @@ public class ModelEntity implements Comparable<ModelEntity> {
     public static final String STAMP_FIELD = "lastUpdatedStamp";
 
     /**
-     * The ModelReader that created this Entity
+     * The ModelReader that created this Entity; not serialized, set again by the reader when loaded from a snapshot
      */
-    protected ModelReader modelReader = null;
+    protected transient ModelReader modelReader = null;
 
     /**
      * The entity-name of the Entity
@@ -152,6 +155,12 @@ public class ModelEntity implements Comparable<ModelEntity> {
      */
     protected boolean neverCache = false;
 
+    /**
+     * An indicator to specify if stores of this entity may be held back and written later in batches,
+     * see {@link org.ofbiz.core.entity.WriteBehindBuffer}
+     */
+    protected boolean writeBehind = false;
+
     // ===== CONSTRUCTORS =====
 
     /**
@@ -233,6 +242,7 @@ public class ModelEntity implements Comparable<ModelEntity> {
         this.dependentOn = UtilXml.checkEmpty(entityElement.getAttribute("dependent-on"));
         this.doLock = UtilXml.checkBoolean(entityElement.getAttribute("enable-lock"), false);
         this.neverCache = UtilXml.checkBoolean(entityElement.getAttribute("never-cache"), false);
+        this.writeBehind = UtilXml.checkBoolean(entityElement.getAttribute("write-behind"), false);
 
         if (docElementValues == null) {
             this.title = UtilXml.checkEmpty(entityElement.getAttribute("title"), UtilXml.childElementValue(docElement, "title"), "None");
@@ -430,6 +440,18 @@ public class ModelEntity implements Comparable<ModelEntity> {
         this.neverCache = neverCache;
     }
 
+    /**
+     * An indicator to specify if stores of this entity may be held back and written later in batches,
+     * see {@link org.ofbiz.core.entity.WriteBehindBuffer}
+     */
+    public boolean getWriteBehind() {
+        return this.writeBehind;
+    }
+
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
     /**
      * An indicator to specify if this entity requires locking for updates
      */
@@ -28,6 +28,7 @@ import org.ofbiz.core.util.UtilXml;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -38,7 +39,9 @@ import java.util.List;
  * @version $Revision: 1.1 $
  * @since 2.0
  */
-public class ModelField {
+public class ModelField implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * The name of the Field
@@ -55,6 +58,11 @@ public class ModelField {
      */
     protected String colName = "";
 
+    /**
+     * The alias the column is selected under, or null to select it under its own name
+     */
+    protected String colAlias = null;
+
     /**
      * boolean which specifies whether or not the Field is a Primary Key
      */
@@ -150,6 +158,13 @@ public class ModelField {
         this.colName = colName;
     }
 
+    /**
+     * The alias the column is selected under, or null if it is selected under its own name
+     */
+    public String getColAlias() {
+        return this.colAlias;
+    }
+
     /**
      * boolean which specifies whether or not the Field is a Primary Key
      */
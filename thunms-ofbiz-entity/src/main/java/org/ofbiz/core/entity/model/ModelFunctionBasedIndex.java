@@ -5,6 +5,7 @@ import org.ofbiz.core.util.UtilXml;
 import org.w3c.dom.Element;
 
 import javax.annotation.Nullable;
+import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.util.List;
 import java.util.function.Function;
@@ -17,7 +18,9 @@ import static org.ofbiz.core.util.UtilXml.firstChildElement;
  * Generic Entity - Relation model function-based-index class
  */
 
-public class ModelFunctionBasedIndex {
+public class ModelFunctionBasedIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * reference to the entity this index refers to
@@ -99,6 +102,13 @@ public class ModelFunctionBasedIndex {
         return builder.getFunctionDefinition(dbType);
     }
 
+    /**
+     * the builder of the function definition, whose class is part of the serialized form of this index
+     */
+    FunctionDefinitionBuilder getBuilder() {
+        return builder;
+    }
+
     /**
      * specifies whether or not this index should include the unique constraint
      */
@@ -31,6 +31,9 @@ import org.ofbiz.core.util.UtilXml;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -45,7 +48,9 @@ import java.util.Optional;
  * @version $Revision: 1.1 $
  * @since 2.0
  */
-public class ModelIndex {
+public class ModelIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * reference to the entity this index refers to
@@ -67,7 +72,13 @@ public class ModelIndex {
      */
     protected List<String> fieldNames = new ArrayList<>();
 
-    protected List<IndexAlternativeAction> alternativeActions = new ArrayList<>();
+    /**
+     * the alternative actions are not serialized; they are instantiated again from their class names when an
+     * index is read back from a model snapshot
+     */
+    protected transient List<IndexAlternativeAction> alternativeActions = new ArrayList<>();
+
+    protected List<String> alternativeActionClassNames = new ArrayList<>();
 
     /**
      * Default Constructor
@@ -109,12 +120,26 @@ public class ModelIndex {
                 Element alternativeAction = (Element) alternativeActionList.item(i);
                 String actionClass = alternativeAction.getAttribute("action");
 
-                IndexAlternativeAction indexAlternativeAction =
-                        (IndexAlternativeAction) ClassLoaderUtils
-                                .loadClass(actionClass, ModelIndex.class)
-                                .newInstance();
+                alternativeActions.add(instantiateAlternativeAction(actionClass));
+                alternativeActionClassNames.add(actionClass);
+            } catch (ReflectiveOperationException re) {
+                throw new RuntimeException(re);
+            }
+        }
+    }
+
+    private static IndexAlternativeAction instantiateAlternativeAction(String actionClass) throws ReflectiveOperationException {
+        return (IndexAlternativeAction) ClassLoaderUtils
+                .loadClass(actionClass, ModelIndex.class)
+                .newInstance();
+    }
 
-                alternativeActions.add(indexAlternativeAction);
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        alternativeActions = new ArrayList<>(alternativeActionClassNames.size());
+        for (String actionClass : alternativeActionClassNames) {
+            try {
+                alternativeActions.add(instantiateAlternativeAction(actionClass));
             } catch (ReflectiveOperationException re) {
                 throw new RuntimeException(re);
             }
@@ -196,5 +221,6 @@ public class ModelIndex {
 
     public void addAlternativeAction(IndexAlternativeAction indexAlternativeAction) {
         alternativeActions.add(indexAlternativeAction);
+        alternativeActionClassNames.add(indexAlternativeAction.getClass().getName());
     }
 }
@@ -37,13 +37,17 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import java.io.File;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Generic Entity - Entity Definition Reader
@@ -82,6 +86,16 @@ public class ModelReader {
      */
     protected Map<String, ResourceHandler> entityResourceHandlerMap;
 
+    /**
+     * location of the precompiled model snapshot for this reader, null if snapshots are not used
+     */
+    protected String snapshotLocation;
+
+    /**
+     * if true only an index of the entity names is read at startup and each entity is built on first access
+     */
+    protected boolean lazyLoad;
+
     public static ModelReader getModelReader(String delegatorName) throws GenericEntityException {
         EntityConfigUtil.DelegatorInfo delegatorInfo = EntityConfigUtil.getInstance().getDelegatorInfo(delegatorName);
 
@@ -119,6 +133,8 @@ public class ModelReader {
             throw new GenericEntityConfException("Cound not find an entity-model-reader with the name " + modelName);
         }
 
+        snapshotLocation = entityModelReaderInfo.snapshotLocation;
+        lazyLoad = entityModelReaderInfo.lazyLoad;
         List<Element> resourceElements = entityModelReaderInfo.resourceElements;
 
         for (Element elem : resourceElements) {
@@ -132,6 +148,19 @@ public class ModelReader {
             synchronized (ModelReader.class) {
                 // must check if null again as one of the blocked threads can still enter
                 if (entityCache == null) { // now it's safe
+                    String sourceHash = null;
+
+                    if (snapshotLocation != null) {
+                        sourceHash = ModelSnapshot.computeSourceHash(entityResourceHandlers);
+                        if (loadSnapshot(new File(snapshotLocation), sourceHash)) {
+                            return entityCache;
+                        }
+                    } else if (lazyLoad) {
+                        // a snapshot needs every entity, so only go lazy when there is no snapshot to write
+                        loadIndex();
+                        return entityCache;
+                    }
+
                     numEntities = 0;
                     numViewEntities = 0;
                     numFields = 0;
@@ -251,12 +280,106 @@ public class ModelReader {
 
                     Debug.log("FINISHED LOADING ENTITIES - ALL FILES; #Entities=" + numEntities + " #ViewEntities=" +
                             numViewEntities + " #Fields=" + numFields + " #Relationships=" + numRelations, module);
+
+                    if (sourceHash != null) {
+                        // a missing snapshot only costs the next start its speed-up, so don't fail the load for it
+                        try {
+                            ModelSnapshot.write(new File(snapshotLocation), sourceHash, entityCache, entityResourceHandlerMap);
+                        } catch (GenericEntityException e) {
+                            Debug.logWarning(e, "Could not write entity model snapshot to " + snapshotLocation, module);
+                        }
+                    }
                 }
             }
         }
         return entityCache;
     }
 
+    /**
+     * Serves the entity definitions from the snapshot file if it exists and was written from the current entity
+     * model resources. Only the snapshot index is read here, the entities themselves are read on first access.
+     *
+     * @return true if the snapshot was usable, false if the entity model XML needs to be loaded
+     */
+    private boolean loadSnapshot(File snapshotFile, String sourceHash) {
+        ModelSnapshot snapshot = ModelSnapshot.open(snapshotFile);
+
+        if (snapshot == null) {
+            return false;
+        }
+        if (!sourceHash.equals(snapshot.getSourceHash())) {
+            Debug.logInfo("Entity model snapshot " + snapshotFile + " is out of date, loading the entity model XML", module);
+            return false;
+        }
+
+        for (String entityName : snapshot.getEntityNames()) {
+            ResourceHandler handler = new ResourceHandler(EntityConfigUtil.ENTITY_ENGINE_XML_FILENAME,
+                    snapshot.getLoaderName(entityName), snapshot.getLocation(entityName));
+            Collection<String> resourceHandlerEntityNames = resourceHandlerEntities.get(handler);
+
+            if (resourceHandlerEntityNames == null) {
+                resourceHandlerEntityNames = new LinkedList<String>();
+                resourceHandlerEntities.put(handler, resourceHandlerEntityNames);
+            }
+            resourceHandlerEntityNames.add(entityName);
+            entityResourceHandlerMap.put(entityName, handler);
+        }
+
+        entityCache = new LazyEntityCache(this, new SnapshotLoader(snapshot));
+        Debug.log("LOADED ENTITY MODEL INDEX FROM SNAPSHOT " + snapshotFile + "; #Entities=" +
+                snapshot.getEntityNames().size(), module);
+        return true;
+    }
+
+    /**
+     * Reads only the names and positions of the entities in each resource; the entities are built by the
+     * {@link LazyEntityCache} on first access.
+     */
+    private void loadIndex() throws GenericEntityException {
+        Map<String, ModelResourceIndex> entityIndexes = new LinkedHashMap<String, ModelResourceIndex>();
+        UtilTimer utilTimer = new UtilTimer();
+
+        for (ResourceHandler handler : entityResourceHandlers) {
+            ModelResourceIndex index = ModelResourceIndex.scan(handler);
+            Collection<String> resourceHandlerEntityNames = resourceHandlerEntities.get(handler);
+
+            if (resourceHandlerEntityNames == null) {
+                resourceHandlerEntityNames = new LinkedList<String>();
+                resourceHandlerEntities.put(handler, resourceHandlerEntityNames);
+            }
+
+            for (String entityName : index.getEntityNames()) {
+                resourceHandlerEntityNames.add(entityName);
+                if (entityIndexes.containsKey(entityName)) {
+                    Debug.logWarning("WARNING: Entity " + entityName + " was found in " + handler +
+                            ", but was already defined in " + entityResourceHandlerMap.get(entityName).toString() +
+                            "; most recent will over-write previous definition(s)", module);
+                }
+                entityResourceHandlerMap.put(entityName, handler);
+                entityIndexes.put(entityName, index);
+            }
+            utilTimer.timerString("Indexed " + handler.toString() + " - Total Entities: " + index.getEntityNames().size());
+        }
+
+        entityCache = new LazyEntityCache(this, new IndexedXmlLoader(entityIndexes));
+        Debug.log("FINISHED INDEXING ENTITIES - ALL FILES; #Entities=" + entityIndexes.size(), module);
+    }
+
+    /**
+     * Writes a snapshot of this reader's entity model, for example as a build step; the reader uses it on later
+     * starts if the snapshot-location of its entity-model-reader points at the file.
+     *
+     * @param snapshotFile the file to write
+     */
+    public void writeSnapshot(File snapshotFile) throws GenericEntityException {
+        Map<String, ModelEntity> ec = getEntityCache();
+
+        if (ec == null) {
+            throw new GenericEntityConfException("ERROR: Unable to load Entity Cache");
+        }
+        ModelSnapshot.write(snapshotFile, ModelSnapshot.computeSourceHash(entityResourceHandlers), ec, entityResourceHandlerMap);
+    }
+
     /**
      * rebuilds the resourceHandlerEntities Map of Collections based on the current
      * entityResourceHandlerMap Map, must be done whenever a manual change is made to the
@@ -308,7 +431,13 @@ public class ModelReader {
             throw new GenericEntityConfException("ERROR: Unable to load Entity Cache");
         }
 
-        ModelEntity modelEntity = ec.get(entityName);
+        ModelEntity modelEntity;
+        if (ec instanceof LazyEntityCache) {
+            // go through the checked path so that an entity that fails to load is reported as such
+            modelEntity = ((LazyEntityCache) ec).getEntity(entityName);
+        } else {
+            modelEntity = ec.get(entityName);
+        }
 
         if (modelEntity == null) {
             throw new GenericModelException("Could not find definition for entity name " + entityName);
@@ -385,4 +514,67 @@ public class ModelReader {
 
         return new ModelField(fieldElement);
     }
+
+    /**
+     * Provides the entities of a reader that was loaded from a {@link ModelSnapshot}; the view entities already
+     * carry their alias fields and only need their member entities resolved.
+     */
+    private static class SnapshotLoader implements LazyEntityCache.Loader {
+
+        private final ModelSnapshot snapshot;
+
+        SnapshotLoader(ModelSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        public Set<String> getEntityNames() {
+            return snapshot.getEntityNames();
+        }
+
+        public ModelEntity loadEntity(String entityName) throws GenericEntityException {
+            return snapshot.readEntity(entityName);
+        }
+
+        public void resolveView(ModelViewEntity viewEntity, Map<String, ModelEntity> members) {
+            viewEntity.populateMemberModelEntities(members);
+        }
+    }
+
+    /**
+     * Provides the entities of a lazily loaded reader by parsing the single entity element from its resource.
+     */
+    private class IndexedXmlLoader implements LazyEntityCache.Loader {
+
+        private final Map<String, ModelResourceIndex> entityIndexes;
+
+        IndexedXmlLoader(Map<String, ModelResourceIndex> entityIndexes) {
+            this.entityIndexes = entityIndexes;
+        }
+
+        public Set<String> getEntityNames() {
+            return Collections.unmodifiableSet(entityIndexes.keySet());
+        }
+
+        public ModelEntity loadEntity(String entityName) throws GenericEntityException {
+            ModelResourceIndex index = entityIndexes.get(entityName);
+
+            if (index == null) {
+                return null;
+            }
+
+            Element entityElement = index.readEntityElement(entityName);
+            Element docElement = entityElement.getOwnerDocument().getDocumentElement();
+
+            if (Debug.verboseOn()) Debug.logVerbose("Loading entity " + entityName + " from " + index.getResourceHandler(), module);
+            if ("view-entity".equals(entityElement.getNodeName())) {
+                return createModelViewEntity(entityElement, docElement, null, null);
+            } else {
+                return createModelEntity(entityElement, docElement, null, null);
+            }
+        }
+
+        public void resolveView(ModelViewEntity viewEntity, Map<String, ModelEntity> members) {
+            viewEntity.populateFields(members);
+        }
+    }
 }
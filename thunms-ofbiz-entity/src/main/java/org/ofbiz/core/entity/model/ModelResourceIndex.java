@@ -0,0 +1,336 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity.model;
+
+import org.ofbiz.core.config.GenericConfigException;
+import org.ofbiz.core.config.ResourceHandler;
+import org.ofbiz.core.entity.GenericEntityConfException;
+import org.ofbiz.core.entity.GenericEntityException;
+import org.ofbiz.core.entity.GenericModelException;
+import org.ofbiz.core.util.Debug;
+import org.ofbiz.core.util.UtilXml;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the entity definitions in one entity model resource, used by a lazily loading {@link ModelReader}.
+ * <p>
+ * The index is built with a single streaming pass that keeps only the entity names and the byte range of each
+ * entity element. To build an entity the resource is opened again, the document header is read, the stream is
+ * skipped forward to the entity's range and the end tag of the root element, and just those bytes are parsed, so
+ * the entity sees the same document defaults (title, author, etc.) as it would in a full load. If a range turns
+ * out not to hold the expected element, the whole resource is parsed instead.
+ */
+final class ModelResourceIndex {
+
+    public static final String module = ModelResourceIndex.class.getName();
+
+    private final ResourceHandler handler;
+    private final long headerEnd;
+    private final long[] rootEndRange;
+    private final Map<String, long[]> entityRanges;
+
+    private ModelResourceIndex(ResourceHandler handler, long headerEnd, long[] rootEndRange, Map<String, long[]> entityRanges) {
+        this.handler = handler;
+        this.headerEnd = headerEnd;
+        this.rootEndRange = rootEndRange;
+        this.entityRanges = entityRanges;
+    }
+
+    static ModelResourceIndex scan(ResourceHandler handler) throws GenericEntityException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // the DTD is only needed for validation, which happens when an entity is actually built
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+
+        XMLStreamReader reader = null;
+        try {
+            byte[] content = readAll(handler);
+            Charset charset = getCharset(factory, content);
+            // the parser reports character offsets, which are only reliable when it reads characters; they are
+            // turned into byte offsets by encoding the text between them again
+            String text = new String(content, charset);
+            int bom = text.startsWith("\uFEFF") ? 1 : 0;
+            ByteOffsets byteOffsets = new ByteOffsets(text, charset);
+            Map<String, long[]> entityRanges = new LinkedHashMap<String, long[]>();
+            long headerEnd = -1;
+            long[] rootEndRange = null;
+            int depth = 0;
+            int previousEnd = bom;
+            String currentEntity = null;
+            long currentStart = 0;
+
+            reader = factory.createXMLStreamReader(new StringReader(text.substring(bom)));
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+
+                    if (depth == 2 && ("entity".equals(name) || "view-entity".equals(name))) {
+                        // the element starts where the previous event ended; some parsers have already consumed
+                        // the '<' at that point
+                        currentEntity = UtilXml.checkEmpty(reader.getAttributeValue(null, "entity-name"));
+                        currentStart = byteOffsets.of(text.lastIndexOf('<', previousEnd));
+                        if (headerEnd < 0) {
+                            headerEnd = currentStart;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    int end = text.indexOf('>', bom + reader.getLocation().getCharacterOffset() - 1) + 1;
+
+                    if (depth == 2 && currentEntity != null) {
+                        entityRanges.put(currentEntity, new long[]{currentStart, byteOffsets.of(end)});
+                        currentEntity = null;
+                    } else if (depth == 1) {
+                        rootEndRange = new long[]{byteOffsets.of(text.lastIndexOf('<', previousEnd)), byteOffsets.of(end)};
+                    }
+                    depth--;
+                }
+                previousEnd = bom + reader.getLocation().getCharacterOffset();
+            }
+
+            if (rootEndRange == null) {
+                throw new GenericEntityConfException("Entity model resource " + handler + " has no root element");
+            }
+            return new ModelResourceIndex(handler, headerEnd < 0 ? rootEndRange[0] : headerEnd, rootEndRange, entityRanges);
+        } catch (GenericConfigException e) {
+            throw new GenericEntityConfException("Error getting stream from resource handler " + handler, e);
+        } catch (XMLStreamException e) {
+            throw new GenericEntityConfException("Error indexing entity model resource " + handler, e);
+        } catch (IOException e) {
+            throw new GenericEntityConfException("Error reading entity model resource " + handler, e);
+        } finally {
+            closeQuietly(reader, null);
+        }
+    }
+
+    private static byte[] readAll(ResourceHandler handler) throws GenericConfigException, IOException {
+        InputStream stream = handler.getStream();
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+
+            while ((count = stream.read(buffer)) >= 0) {
+                content.write(buffer, 0, count);
+            }
+            return content.toByteArray();
+        } finally {
+            closeQuietly(null, stream);
+        }
+    }
+
+    /**
+     * @return the charset of the resource, as detected by the parser from its byte order mark and declaration
+     */
+    private static Charset getCharset(XMLInputFactory factory, byte[] content) throws XMLStreamException {
+        XMLStreamReader reader = factory.createXMLStreamReader(new ByteArrayInputStream(content));
+        try {
+            String encoding = reader.getEncoding();
+            return encoding != null && Charset.isSupported(encoding) ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        } finally {
+            closeQuietly(reader, null);
+        }
+    }
+
+    ResourceHandler getResourceHandler() {
+        return handler;
+    }
+
+    /**
+     * @return the names of the entities in this resource, in document order
+     */
+    Set<String> getEntityNames() {
+        return Collections.unmodifiableSet(entityRanges.keySet());
+    }
+
+    /**
+     * Parses the definition of one entity.
+     *
+     * @return the entity or view-entity element; its owner document's root element carries the document defaults
+     */
+    Element readEntityElement(String entityName) throws GenericEntityException {
+        long[] range = entityRanges.get(entityName);
+
+        if (range == null) {
+            throw new GenericModelException("Entity " + entityName + " is not defined in " + handler);
+        }
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        InputStream stream = null;
+        try {
+            stream = handler.getStream();
+            // the ranges are in document order, so the stream only ever skips forward
+            readBytes(stream, headerEnd, content);
+            skipBytes(stream, range[0] - headerEnd);
+            readBytes(stream, range[1] - range[0], content);
+            skipBytes(stream, rootEndRange[0] - range[1]);
+            readBytes(stream, rootEndRange[1] - rootEndRange[0], content);
+        } catch (GenericConfigException e) {
+            throw new GenericEntityConfException("Error getting stream from resource handler " + handler, e);
+        } catch (IOException e) {
+            throw new GenericEntityConfException("Error reading entity " + entityName + " from " + handler, e);
+        } finally {
+            closeQuietly(null, stream);
+        }
+
+        try {
+            Document document = UtilXml.readXmlDocument(new ByteArrayInputStream(content.toByteArray()), true,
+                    handler + "#" + entityName);
+            Element entityElement = findEntityElement(document, entityName);
+
+            if (entityElement != null) {
+                return entityElement;
+            }
+        } catch (Exception e) {
+            Debug.logWarning(e, "Could not parse the definition of entity " + entityName + " on its own", module);
+        }
+
+        Debug.logWarning("Entity " + entityName + " not found at its indexed position in " + handler + ", parsing the whole resource", module);
+        try {
+            Element entityElement = findEntityElement(handler.getDocument(), entityName);
+
+            if (entityElement == null) {
+                throw new GenericModelException("Entity " + entityName + " is not defined in " + handler);
+            }
+            return entityElement;
+        } catch (GenericConfigException e) {
+            throw new GenericEntityConfException("Error getting document from resource handler " + handler, e);
+        }
+    }
+
+    private static Element findEntityElement(Document document, String entityName) {
+        if (document == null || document.getDocumentElement() == null) {
+            return null;
+        }
+
+        Element found = null;
+        for (Node node = document.getDocumentElement().getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE &&
+                    ("entity".equals(node.getNodeName()) || "view-entity".equals(node.getNodeName())) &&
+                    entityName.equals(((Element) node).getAttribute("entity-name"))) {
+                // keep looking, like a full load the last definition wins
+                found = (Element) node;
+            }
+        }
+        return found;
+    }
+
+    private static void readBytes(InputStream stream, long length, ByteArrayOutputStream content) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(length, 8192)];
+
+        while (length > 0) {
+            int count = stream.read(buffer, 0, (int) Math.min(length, buffer.length));
+            if (count < 0) {
+                throw new EOFException();
+            }
+            content.write(buffer, 0, count);
+            length -= count;
+        }
+    }
+
+    private static void skipBytes(InputStream stream, long length) throws IOException {
+        while (length > 0) {
+            long skipped = stream.skip(length);
+            if (skipped <= 0) {
+                // some streams only skip what they have buffered; read a byte to tell a pause from the end
+                if (stream.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private static void closeQuietly(XMLStreamReader reader, java.io.Closeable closeable) {
+        try {
+            if (reader != null) {
+                reader.close();
+            }
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (Exception e) {
+            Debug.logWarning(e, "Error closing entity model resource", module);
+        }
+    }
+
+    /**
+     * Turns increasing character offsets in the decoded text of a resource into byte offsets in the resource.
+     */
+    private static final class ByteOffsets {
+
+        private final String text;
+        private final CharsetEncoder encoder;
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        private int charOffset;
+        private long byteOffset;
+
+        ByteOffsets(String text, Charset charset) {
+            this.text = text;
+            this.encoder = charset.newEncoder();
+        }
+
+        long of(int offset) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text, charOffset, offset);
+            CoderResult result;
+
+            do {
+                // one encoder for the whole text, so a byte order mark is only counted at its start
+                result = encoder.encode(chars, buffer, false);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                byteOffset += buffer.position();
+                buffer.clear();
+            } while (result.isOverflow());
+            charOffset = offset - chars.remaining();
+            return byteOffset;
+        }
+    }
+}
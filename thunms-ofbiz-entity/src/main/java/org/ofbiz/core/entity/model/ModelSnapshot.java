@@ -0,0 +1,430 @@
+/*
+ * $Id$
+ *
+ *  Copyright (c) 2001, 2002 The Open For Business Project - www.ofbiz.org
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included
+ *  in all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ *  OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ *  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ *  CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ *  OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ *  THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ofbiz.core.entity.model;
+
+import org.ofbiz.core.config.GenericConfigException;
+import org.ofbiz.core.config.ResourceHandler;
+import org.ofbiz.core.entity.GenericEntityConfException;
+import org.ofbiz.core.entity.GenericEntityException;
+import org.ofbiz.core.entity.GenericModelException;
+import org.ofbiz.core.entity.jdbc.alternative.IndexAlternativeAction;
+import org.ofbiz.core.entity.util.ClassLoaderUtils;
+import org.ofbiz.core.util.Debug;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generic Entity - Precompiled entity model snapshot
+ * <p>
+ * A snapshot holds the resolved {@link ModelEntity} and {@link ModelViewEntity} definitions of a
+ * {@link ModelReader} in a binary file so that later starts do not need to parse and build the entity model XML.
+ * The file starts with a small index (entity name, source resource and position of the definition) followed by
+ * one independently serialized block per entity; the file is memory mapped and each block is only deserialized
+ * when the entity is first asked for.
+ * <p>
+ * A snapshot is only valid for the model it was written from: the {@link #computeSourceHash(Collection) source hash}
+ * covers the content of every entity model resource and the class files of the model classes, and a snapshot whose
+ * hash does not match is ignored. The function definition builders and index alternative actions named by the
+ * resources are not known until they are read, so the snapshot lists them with a hash of their class files, and is
+ * ignored when it is opened if any of them has changed since.
+ *
+ * @since 2.0
+ */
+public class ModelSnapshot {
+
+    public static final String module = ModelSnapshot.class.getName();
+
+    private static final int MAGIC = 0x4F464D53;
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * the classes whose serialized form ends up in a snapshot; a change to any of them invalidates existing snapshots
+     */
+    private static final Class<?>[] SNAPSHOT_CLASSES = {
+            ModelEntity.class, ModelViewEntity.class, ModelField.class, ModelRelation.class, ModelKeyMap.class,
+            ModelIndex.class, ModelFunctionBasedIndex.class, FunctionDefinitionBuilder.class,
+            ModelViewEntity.ModelMemberEntity.class, ModelViewEntity.ModelAlias.class, ModelViewEntity.ModelViewLink.class
+    };
+
+    private final File file;
+    private final String sourceHash;
+    private final Map<String, IndexEntry> index;
+    private final ByteBuffer data;
+
+    private ModelSnapshot(File file, String sourceHash, Map<String, IndexEntry> index, ByteBuffer data) {
+        this.file = file;
+        this.sourceHash = sourceHash;
+        this.index = index;
+        this.data = data;
+    }
+
+    /**
+     * Computes the hash used to decide whether a snapshot still matches its source entity model resources.
+     *
+     * @param resourceHandlers the entity model resources, in load order
+     * @return a hex encoded digest of the resources, of the model classes and of the snapshot format
+     * @throws GenericEntityException if one of the resources can not be read
+     */
+    public static String computeSourceHash(Collection<ResourceHandler> resourceHandlers) throws GenericEntityException {
+        MessageDigest digest = newDigest();
+        digest.update(Integer.toString(FORMAT_VERSION).getBytes(StandardCharsets.UTF_8));
+        for (Class<?> snapshotClass : SNAPSHOT_CLASSES) {
+            digestClass(digest, snapshotClass);
+        }
+
+        byte[] buffer = new byte[8192];
+        for (ResourceHandler handler : resourceHandlers) {
+            digest.update((handler.getLoaderName() + ':' + handler.getLocation()).getBytes(StandardCharsets.UTF_8));
+            try (InputStream stream = handler.getStream()) {
+                digestStream(digest, stream, buffer);
+            } catch (GenericConfigException e) {
+                throw new GenericEntityConfException("Error getting stream from resource handler " + handler, e);
+            } catch (IOException e) {
+                throw new GenericEntityConfException("Error reading entity model resource " + handler, e);
+            }
+        }
+        return toHex(digest);
+    }
+
+    /**
+     * Computes the hash of the given classes named by the entity model resources, see the class comment.
+     *
+     * @param classNames the names of the classes
+     * @return a hex encoded digest of the class files of the classes and of their superclasses
+     * @throws ClassNotFoundException if one of the classes can no longer be loaded
+     */
+    static String computeClassesHash(Collection<String> classNames) throws GenericEntityException, ClassNotFoundException {
+        MessageDigest digest = newDigest();
+        for (String className : classNames) {
+            digestClass(digest, ClassLoaderUtils.loadClass(className, ModelSnapshot.class));
+        }
+        return toHex(digest);
+    }
+
+    private static MessageDigest newDigest() throws GenericEntityConfException {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new GenericEntityConfException("SHA-1 digest not available for entity model snapshot", e);
+        }
+    }
+
+    /**
+     * Digests the class file of the given class and of each of its superclasses, as any change to them may change
+     * their serialized form, or what they do with it; a class whose class file can't be read is digested by the
+     * fields of its serialized form.
+     */
+    private static void digestClass(MessageDigest digest, Class<?> type) throws GenericEntityConfException {
+        byte[] buffer = new byte[8192];
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            digest.update(current.getName().getBytes(StandardCharsets.UTF_8));
+            String classFile = current.getName().substring(current.getName().lastIndexOf('.') + 1) + ".class";
+            try (InputStream stream = current.getResourceAsStream(classFile)) {
+                if (stream != null) {
+                    digestStream(digest, stream, buffer);
+                    continue;
+                }
+            } catch (IOException e) {
+                throw new GenericEntityConfException("Error reading the class file of " + current.getName(), e);
+            }
+            ObjectStreamClass streamClass = ObjectStreamClass.lookup(current);
+            if (streamClass != null) {
+                digest.update(Long.toString(streamClass.getSerialVersionUID()).getBytes(StandardCharsets.UTF_8));
+                for (ObjectStreamField field : streamClass.getFields()) {
+                    digest.update((field.getName() + ':' + field.getTypeCode() + field.getTypeString()).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    private static void digestStream(MessageDigest digest, InputStream stream, byte[] buffer) throws IOException {
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+    }
+
+    private static String toHex(MessageDigest digest) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return the names of the function definition builders and index alternative actions of the given entities
+     */
+    private static Set<String> getModelClassNames(Collection<ModelEntity> entities) {
+        Set<String> classNames = new TreeSet<String>();
+        for (ModelEntity entity : entities) {
+            for (ModelFunctionBasedIndex index : entity.functionBasedIndexes) {
+                classNames.add(index.getBuilder().getClass().getName());
+            }
+            for (ModelIndex index : entity.indexes) {
+                for (IndexAlternativeAction action : index.alternativeActions) {
+                    classNames.add(action.getClass().getName());
+                }
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * Writes a snapshot of the given entity definitions. The file is written next to its final location and then
+     * moved into place, so a reader never sees a partially written snapshot.
+     *
+     * @param file                     the snapshot file
+     * @param sourceHash               the hash of the source resources, see {@link #computeSourceHash(Collection)}
+     * @param entities                 the fully populated entity definitions, keyed by entity name
+     * @param entityResourceHandlerMap the resource each entity was read from, keyed by entity name
+     * @throws GenericEntityException if the snapshot can not be written
+     */
+    public static void write(File file, String sourceHash, Map<String, ModelEntity> entities,
+                             Map<String, ResourceHandler> entityResourceHandlerMap) throws GenericEntityException {
+        try {
+            ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+            Map<String, IndexEntry> index = new LinkedHashMap<String, IndexEntry>();
+
+            for (Map.Entry<String, ModelEntity> entry : entities.entrySet()) {
+                int offset = blocks.size();
+                ObjectOutputStream out = new ObjectOutputStream(blocks);
+                out.writeObject(entry.getValue());
+                out.close();
+
+                ResourceHandler handler = entityResourceHandlerMap.get(entry.getKey());
+                index.put(entry.getKey(), new IndexEntry(handler == null ? "" : handler.getLoaderName(),
+                        handler == null ? "" : handler.getLocation(), offset, blocks.size() - offset));
+            }
+
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new GenericEntityConfException("Could not create directory for entity model snapshot " + file);
+            }
+
+            File tempFile = new File(file.getPath() + ".tmp");
+            try (OutputStream fileOut = new FileOutputStream(tempFile)) {
+                DataOutputStream out = new DataOutputStream(fileOut);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(sourceHash);
+                Set<String> classNames = getModelClassNames(entities.values());
+                out.writeUTF(computeClassesHash(classNames));
+                out.writeInt(classNames.size());
+                for (String className : classNames) {
+                    out.writeUTF(className);
+                }
+                out.writeInt(index.size());
+                for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                    IndexEntry indexEntry = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(indexEntry.loaderName);
+                    out.writeUTF(indexEntry.location);
+                    out.writeInt(indexEntry.offset);
+                    out.writeInt(indexEntry.length);
+                }
+                blocks.writeTo(out);
+                out.flush();
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new GenericEntityConfException("Error writing entity model snapshot " + file, e);
+        } catch (ClassNotFoundException e) {
+            throw new GenericEntityConfException("Error writing entity model snapshot " + file, e);
+        }
+        if (Debug.infoOn()) Debug.logInfo("Wrote entity model snapshot with " + entities.size() + " entities to " + file, module);
+    }
+
+    /**
+     * Opens and maps an existing snapshot; only the index is read, the entity definitions are read on demand.
+     *
+     * @param file the snapshot file
+     * @return the snapshot, or null if the file does not exist or is not a snapshot this version can read
+     */
+    public static ModelSnapshot open(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed; the buffer is used as a ByteBuffer, and positioned
+            // as a Buffer, so that the calls don't bind to the covariant overrides of newer JDKs that Java 8 lacks
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(mapped.duplicate()));
+
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                Debug.logWarning("Ignoring entity model snapshot " + file + " written in an unknown format", module);
+                return null;
+            }
+            String sourceHash = in.readUTF();
+            String classesHash = in.readUTF();
+            int classCount = in.readInt();
+            Set<String> classNames = new TreeSet<String>();
+            for (int i = 0; i < classCount; i++) {
+                classNames.add(in.readUTF());
+            }
+            if (!classesHash.equals(computeClassesHash(classNames))) {
+                Debug.logInfo("Ignoring entity model snapshot " + file + ", the builder or action classes it names have changed", module);
+                return null;
+            }
+            int count = in.readInt();
+            Map<String, IndexEntry> index = new LinkedHashMap<String, IndexEntry>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String entityName = in.readUTF();
+                index.put(entityName, new IndexEntry(in.readUTF(), in.readUTF(), in.readInt(), in.readInt()));
+            }
+
+            // everything after the index is entity data, offsets are relative to its start
+            int dataStart = mapped.capacity() - in.available();
+            ((Buffer) mapped).position(dataStart);
+            return new ModelSnapshot(file, sourceHash, index, mapped.slice());
+        } catch (IOException | GenericEntityException | ClassNotFoundException e) {
+            Debug.logWarning(e, "Could not read entity model snapshot " + file + ", ignoring it", module);
+            return null;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    /**
+     * @return the names of all entities in this snapshot, in the order they were read from the model resources
+     */
+    public Set<String> getEntityNames() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    public boolean containsEntity(String entityName) {
+        return index.containsKey(entityName);
+    }
+
+    public String getLoaderName(String entityName) {
+        IndexEntry entry = index.get(entityName);
+        return entry == null ? null : entry.loaderName;
+    }
+
+    public String getLocation(String entityName) {
+        IndexEntry entry = index.get(entityName);
+        return entry == null ? null : entry.location;
+    }
+
+    /**
+     * Deserializes a single entity definition. The returned entity has no ModelReader set, and for a view entity
+     * the member entities are not resolved yet; both are up to the calling reader.
+     *
+     * @param entityName the entity to read
+     * @return the entity definition, or null if the snapshot does not contain the entity
+     * @throws GenericEntityException if the definition can not be read
+     */
+    public ModelEntity readEntity(String entityName) throws GenericEntityException {
+        IndexEntry entry = index.get(entityName);
+        if (entry == null) {
+            return null;
+        }
+
+        ByteBuffer block = data.duplicate();
+        ((Buffer) block).position(entry.offset);
+        ((Buffer) block).limit(entry.offset + entry.length);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteBufferInputStream(block))) {
+            return (ModelEntity) in.readObject();
+        } catch (IOException e) {
+            throw new GenericModelException("Error reading entity " + entityName + " from model snapshot " + file, e);
+        } catch (ClassNotFoundException e) {
+            throw new GenericModelException("Error reading entity " + entityName + " from model snapshot " + file, e);
+        }
+    }
+
+    private static class IndexEntry {
+        final String loaderName;
+        final String location;
+        final int offset;
+        final int length;
+
+        IndexEntry(String loaderName, String location, int offset, int length) {
+            this.loaderName = loaderName;
+            this.location = location;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.ofbiz.core.util.UtilXml;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -48,6 +49,8 @@ import java.util.Map;
  * @since 2.0
  */
 public class ModelViewEntity extends ModelEntity {
+    private static final long serialVersionUID = 1L;
+
     public static final String module = ModelViewEntity.class.getName();
 
     /**
@@ -61,9 +64,10 @@ public class ModelViewEntity extends ModelEntity {
     protected List<ModelMemberEntity> allModelMemberEntities = new LinkedList<ModelMemberEntity>();
 
     /**
-     * Contains member-entity ModelEntities: key is alias, value is ModelEntity; populated with fields
+     * Contains member-entity ModelEntities: key is alias, value is ModelEntity; populated with fields.
+     * Not serialized, the reader resolves the members again when loading from a snapshot.
      */
-    protected Map<String, ModelEntity> memberModelEntities = null;
+    protected transient Map<String, ModelEntity> memberModelEntities = null;
 
     /**
      * List of aliases with information in addition to what is in the standard field list
@@ -205,11 +209,32 @@ public class ModelViewEntity extends ModelEntity {
         return new ArrayList<ModelViewLink>(this.viewLinks);
     }
 
+    /**
+     * Creates a view entity that is put together in code rather than read from an entity model file: add its member
+     * entities, aliases and view links, then call {@link #populateFields(Map)}.
+     *
+     * @param reader     the reader of the member entities
+     * @param entityName the name of the view entity, which need not be in the model
+     */
+    public ModelViewEntity(ModelReader reader, String entityName) {
+        this.modelReader = reader;
+        this.entityName = entityName;
+        this.tableName = null;
+    }
+
     public void addViewLink(ModelViewLink viewLink) {
         this.viewLinks.add(viewLink);
     }
 
-    public void populateFields(Map<String, ModelEntity> entityCache) {
+    public void addAlias(ModelAlias alias) {
+        this.aliases.add(alias);
+    }
+
+    /**
+     * Resolves the member-entity ModelEntities without touching the alias fields; used on its own when the
+     * fields have already been populated, as is the case for a view entity read back from a model snapshot.
+     */
+    public void populateMemberModelEntities(Map<String, ModelEntity> entityCache) {
         if (this.memberModelEntities == null) {
             this.memberModelEntities = new HashMap<String, ModelEntity>();
         }
@@ -226,6 +251,10 @@ public class ModelViewEntity extends ModelEntity {
             }
             memberModelEntities.put(entry.getKey(), aliasedEntity);
         }
+    }
+
+    public void populateFields(Map<String, ModelEntity> entityCache) {
+        populateMemberModelEntities(entityCache);
 
         for (ModelAlias alias : aliases) {
             ModelMemberEntity modelMemberEntity = memberModelMemberEntities.get(alias.entityAlias);
@@ -311,11 +340,34 @@ public class ModelViewEntity extends ModelEntity {
                 field.colName = alias.entityAlias + "." + SqlJdbcUtil.filterColName(aliasedField.colName);
             }
 
+            field.colAlias = alias.colAlias;
             field.validators = aliasedField.validators;
         }
     }
 
-    public static class ModelMemberEntity {
+    /**
+     * Makes the select list for the given fields of this view, selecting each column that has an alias of its own
+     * under that alias.
+     */
+    public String selectColNameString(List<ModelField> flds) {
+        StringBuilder returnString = new StringBuilder();
+
+        for (int i = 0; i < flds.size(); i++) {
+            final ModelField field = flds.get(i);
+            if (i > 0) {
+                returnString.append(", ");
+            }
+            returnString.append(field.colName);
+            if (field.colAlias != null) {
+                returnString.append(" AS ").append(field.colAlias);
+            }
+        }
+        return returnString.toString();
+    }
+
+    public static class ModelMemberEntity implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         protected String entityAlias = "";
         protected String entityName = "";
 
@@ -334,7 +386,9 @@ public class ModelViewEntity extends ModelEntity {
     }
 
 
-    public static class ModelAlias {
+    public static class ModelAlias implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         protected String entityAlias = "";
         protected String name = "";
         protected String field = "";
@@ -343,6 +397,8 @@ public class ModelViewEntity extends ModelEntity {
         protected boolean groupBy = false;
         // is specified this alias is a calculated value; can be: min, max, sum, avg, count, count-distinct
         protected String function = null;
+        // if specified the column is selected under this alias rather than its own name
+        protected String colAlias = null;
 
         protected ModelAlias() {
         }
@@ -363,12 +419,17 @@ public class ModelViewEntity extends ModelEntity {
         }
 
         public ModelAlias(String entityAlias, String name, String field, Boolean isPk, boolean groupBy, String function) {
+            this(entityAlias, name, field, isPk, groupBy, function, null);
+        }
+
+        public ModelAlias(String entityAlias, String name, String field, Boolean isPk, boolean groupBy, String function, String colAlias) {
             this.entityAlias = entityAlias;
             this.name = name;
             this.field = field;
             this.isPk = isPk;
             this.groupBy = groupBy;
             this.function = function;
+            this.colAlias = colAlias;
         }
 
         public String getEntityAlias() {
@@ -394,10 +455,16 @@ public class ModelViewEntity extends ModelEntity {
         public String getFunction() {
             return this.function;
         }
+
+        public String getColAlias() {
+            return this.colAlias;
+        }
     }
 
 
-    public static class ModelViewLink {
+    public static class ModelViewLink implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         protected String entityAlias = "";
         protected String relEntityAlias = "";
         protected boolean relOptional = false;
@@ -423,8 +490,13 @@ public class ModelViewEntity extends ModelEntity {
         }
 
         public ModelViewLink(String entityAlias, String relEntityAlias, List<? extends ModelKeyMap> keyMaps) {
+            this(entityAlias, relEntityAlias, false, keyMaps);
+        }
+
+        public ModelViewLink(String entityAlias, String relEntityAlias, boolean relOptional, List<? extends ModelKeyMap> keyMaps) {
             this.entityAlias = entityAlias;
             this.relEntityAlias = relEntityAlias;
+            this.relOptional = relOptional;
             this.keyMaps.addAll(keyMaps);
         }
 
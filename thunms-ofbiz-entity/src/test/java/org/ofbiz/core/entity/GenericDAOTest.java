@@ -124,6 +124,60 @@ public class GenericDAOTest {
         assertThat((EntityExpr) result, entityExpr("test", IN, ImmutableList.of(1, 2, 3, 4, 5)));
     }
 
+    @Test
+    public void paddedListSizeShouldBeTheNextPowerOfTwoUpToTheMaximum() {
+        assertEquals(1, GenericDAO.getPaddedListSize(1, 1000));
+        assertEquals(4, GenericDAO.getPaddedListSize(3, 1000));
+        assertEquals(4, GenericDAO.getPaddedListSize(4, 1000));
+        assertEquals(512, GenericDAO.getPaddedListSize(300, 1000));
+        assertEquals(1000, GenericDAO.getPaddedListSize(600, 1000));
+        assertEquals(1500, GenericDAO.getPaddedListSize(1500, 1000));
+    }
+
+    @Test
+    public void testCorrectlyPadsInClauseListsWithTheirLastValue() throws Exception {
+        EntityCondition condition = new EntityExpr("test", IN, ImmutableList.of(1, 2, 3, 4, 5));
+        assertTrue(GenericDAO.conditionContainsInClauseWithListToPad(condition, 1000));
+
+        EntityCondition result = GenericDAO.transformConditionPaddingInClauseLists(condition, 1000);
+
+        assertThat((EntityExpr) result, entityExpr("test", IN, ImmutableList.of(1, 2, 3, 4, 5, 5, 5, 5)));
+        assertFalse(GenericDAO.conditionContainsInClauseWithListToPad(result, 1000));
+    }
+
+    @Test
+    public void testPaddingKeepsSplitListsWithinTheMaximum() throws Exception {
+        EntityCondition split = GenericDAO.transformConditionSplittingInClauseListsToChunksNoLongerThanMaxSize(
+                new EntityExpr("test", IN, ImmutableList.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11)), 4);
+
+        EntityCondition result = GenericDAO.transformConditionPaddingInClauseLists(split, 4);
+
+        final List<EntityCondition> conditions = ImmutableList.copyOf(((EntityConditionList) result).getConditionIterator());
+        assertThat(conditions.size(), equalTo(3));
+        assertThat((EntityExpr) conditions.get(0), entityExpr("test", IN, ImmutableList.of(1, 2, 3, 4)));
+        assertThat((EntityExpr) conditions.get(2), entityExpr("test", IN, ImmutableList.of(9, 10, 11, 11)));
+    }
+
+    @Test
+    public void paddingShouldOnlyAddAsManyParametersAsTheDatabaseHasToSpare() throws Exception {
+        EntityCondition condition = new EntityConditionList(ImmutableList.<EntityCondition>of(
+                new EntityExpr("first", IN, ImmutableList.of(1, 2, 3)),
+                new EntityExpr("second", IN, ImmutableList.of(1, 2, 3, 4, 5))), AND);
+
+        EntityCondition result = GenericDAO.transformConditionPaddingInClauseLists(condition, Integer.MAX_VALUE, 2);
+
+        final List<EntityCondition> conditions = ImmutableList.copyOf(((EntityConditionList) result).getConditionIterator());
+        assertThat((EntityExpr) conditions.get(0), entityExpr("first", IN, ImmutableList.of(1, 2, 3, 3)));
+        assertThat((EntityExpr) conditions.get(1), entityExpr("second", IN, ImmutableList.of(1, 2, 3, 4, 5)));
+    }
+
+    @Test
+    public void maxParameterCountShouldBeTheLimitOfTheDatabase() {
+        assertEquals(GenericDAO.MS_SQL_MAX_PARAMETER_COUNT, GenericDAO.getMaxParameterCount(MSSQL));
+        assertEquals(GenericDAO.POSTGRESQL_MAX_PARAMETER_COUNT, GenericDAO.getMaxParameterCount(POSTGRES_7_3));
+        assertEquals(Integer.MAX_VALUE, GenericDAO.getMaxParameterCount(MYSQL));
+    }
+
     private Matcher<EntityExpr> entityExpr(
             final String lhs, final EntityOperator operator, final ImmutableList<Integer> rhs) {
         return new BaseMatcher<EntityExpr>() {
@@ -509,5 +563,39 @@ public class GenericDAOTest {
         assertThat(executeUpdateParameterCleanUp.getValue(), equalTo("drop table #temp1"));
     }
 
+    @Test
+    public void primaryKeyChunkSizeShouldRespectTheParameterLimits() {
+        assertEquals(1000, GenericDAO.getPrimaryKeyChunkSize(ORACLE_10G, 1));
+        assertEquals(1000, GenericDAO.getPrimaryKeyChunkSize(MSSQL, 2));
+        assertEquals(666, GenericDAO.getPrimaryKeyChunkSize(MSSQL, 3));
+        assertEquals(1000, GenericDAO.getPrimaryKeyChunkSize(POSTGRES_7_3, 3));
+    }
+
+    @Test
+    public void primaryKeyConditionForSingleFieldKeyShouldBeAnInList() {
+        final String condition = GenericDAO.makePrimaryKeyInCondition(singletonList(pkField("ID")), 3, true);
+
+        assertEquals("ID IN (?, ?, ?)", condition);
+    }
+
+    @Test
+    public void primaryKeyConditionForCompositeKeyShouldUseRowValuesWhenSupported() {
+        final String condition = GenericDAO.makePrimaryKeyInCondition(asList(pkField("A"), pkField("B")), 2, true);
+
+        assertEquals("(A, B) IN ((?, ?), (?, ?))", condition);
+    }
+
+    @Test
+    public void primaryKeyConditionForCompositeKeyShouldFallBackToDisjunction() {
+        final String condition = GenericDAO.makePrimaryKeyInCondition(asList(pkField("A"), pkField("B")), 2, false);
 
+        assertEquals("(A = ? AND B = ?) OR (A = ? AND B = ?)", condition);
+    }
+
+    private static ModelField pkField(final String colName) {
+        final ModelField field = new ModelField();
+        field.setColName(colName);
+        field.setIsPk(true);
+        return field;
+    }
 }
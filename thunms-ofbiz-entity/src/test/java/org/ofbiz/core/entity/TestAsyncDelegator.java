@@ -0,0 +1,120 @@
+package org.ofbiz.core.entity;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.ofbiz.core.entity.GenericDelegator.getGenericDelegator;
+
+/**
+ * Integration test of AsyncDelegator using an in-memory database.
+ */
+public class TestAsyncDelegator {
+
+    // These names are from the test XML files in src/test/resources
+    private static final String DELEGATOR_NAME = "default";
+    private static final String PROJECT_ENTITY = "Project";
+
+    private GenericDelegator genericDelegator;
+    private AsyncDelegator asyncDelegator;
+
+    @Before
+    public void setUp() throws Exception {
+        GenericDelegator.removeGenericDelegator(DELEGATOR_NAME);
+        GenericDelegator.unlock();
+        genericDelegator = getGenericDelegator(DELEGATOR_NAME);
+        genericDelegator.removeByCondition(PROJECT_ENTITY, null);
+        asyncDelegator = new AsyncDelegator(genericDelegator, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        asyncDelegator.shutdown();
+        asyncDelegator.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void manyFindsShouldAllCompleteWhenMoreAreSubmittedThanTheQueueHolds() throws Exception {
+        // Set up
+        for (long id = 1; id <= 5; id++) {
+            genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", id, "key", "P" + id));
+        }
+
+        // Invoke
+        final List<CompletableFuture<GenericValue>> futures = new ArrayList<CompletableFuture<GenericValue>>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(asyncDelegator.findByPrimaryKeyAsync(PROJECT_ENTITY, ImmutableMap.of("id", (long) (i % 5 + 1))));
+        }
+
+        // Check
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("P" + (i % 5 + 1), futures.get(i).get(10, TimeUnit.SECONDS).getString("key"));
+        }
+    }
+
+    @Test
+    public void operationsShouldRunOnTheCallingThreadWhenItHasATransaction() throws Exception {
+        // Set up
+        final boolean began = TransactionUtil.beginLocalTransaction("defaultDS", -1);
+        final CompletableFuture<Thread> future;
+        try {
+            // Invoke
+            future = asyncDelegator.submit(new AsyncDelegator.Operation<Thread>() {
+                public Thread run(GenericDelegator delegator) {
+                    return Thread.currentThread();
+                }
+            });
+        } finally {
+            TransactionUtil.commitLocalTransaction(began);
+        }
+
+        // Check
+        assertTrue(future.isDone());
+        assertSame(Thread.currentThread(), future.get());
+    }
+
+    @Test
+    public void failuresShouldCompleteTheFutureExceptionally() throws Exception {
+        // Invoke
+        final CompletableFuture<Object> future = asyncDelegator.submit(new AsyncDelegator.Operation<Object>() {
+            public Object run(GenericDelegator delegator) throws GenericEntityException {
+                throw new GenericEntityException("Failed");
+            }
+        });
+
+        // Check
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected an " + ExecutionException.class);
+        } catch (final ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof GenericEntityException);
+        }
+    }
+
+    @Test
+    public void storeAllShouldWriteTheValues() throws Exception {
+        // Set up
+        final GenericValue project = genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", 9L, "key", "OLD"));
+        project.set("key", "NEW");
+
+        // Invoke
+        asyncDelegator.storeAllAsync(Collections.singletonList(project)).get(10, TimeUnit.SECONDS);
+
+        // Check
+        assertEquals("NEW", genericDelegator.findByPrimaryKey(PROJECT_ENTITY, ImmutableMap.of("id", 9L)).getString("key"));
+        assertNull(genericDelegator.findByPrimaryKey(PROJECT_ENTITY, ImmutableMap.of("id", 10L)));
+    }
+}
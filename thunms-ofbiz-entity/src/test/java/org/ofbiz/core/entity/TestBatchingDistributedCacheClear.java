@@ -0,0 +1,130 @@
+package org.ofbiz.core.entity;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.ofbiz.core.entity.GenericDelegator.getGenericDelegator;
+
+/**
+ * Integration test of BatchingDistributedCacheClear using an in-memory database and the loopback transport.
+ */
+public class TestBatchingDistributedCacheClear {
+
+    // These names are from the test XML files in src/test/resources
+    private static final String DELEGATOR_NAME = "default";
+    private static final String PROJECT_ENTITY = "Project";
+    private static final long AN_HOUR = 60 * 60 * 1000L;
+
+    private GenericDelegator genericDelegator;
+    private BatchingDistributedCacheClear localNode;
+    private BatchingDistributedCacheClear remoteNode;
+
+    @Before
+    public void setUp() throws Exception {
+        GenericDelegator.removeGenericDelegator(DELEGATOR_NAME);
+        GenericDelegator.unlock();
+        genericDelegator = getGenericDelegator(DELEGATOR_NAME);
+        genericDelegator.removeByCondition(PROJECT_ENTITY, null);
+        for (long id = 1; id <= 3; id++) {
+            genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", id, "key", "P" + id));
+        }
+        // both nodes clear the caches of the same delegator, as if it were running on two machines
+        final String channel = UUID.randomUUID().toString();
+        localNode = new BatchingDistributedCacheClear(new LoopbackDistributedCacheClearTransport(channel), AN_HOUR, 2);
+        localNode.setDelegator(genericDelegator, "admin");
+        remoteNode = new BatchingDistributedCacheClear(new LoopbackDistributedCacheClearTransport(channel), AN_HOUR, 2);
+        remoteNode.setDelegator(genericDelegator, "admin");
+    }
+
+    @After
+    public void tearDown() {
+        localNode.close();
+        remoteNode.close();
+    }
+
+    private GenericValue findProjectInCache(final long id) throws GenericEntityException {
+        return genericDelegator.findByPrimaryKeyCache(PROJECT_ENTITY, ImmutableMap.of("id", id));
+    }
+
+    private boolean isCached(final GenericValue value) {
+        return genericDelegator.getPrimaryKeyCache().containsKey(EntityCacheKey.of(value.getPrimaryKey()));
+    }
+
+    @Test
+    public void repeatedClearsOfALineShouldBeSentOnceAndAppliedByTheOtherNodes() throws Exception {
+        // Set up
+        final GenericValue project = findProjectInCache(1);
+        assertTrue(isCached(project));
+        for (int i = 0; i < 3; i++) {
+            localNode.distributedClearCacheLine(project);
+        }
+
+        // Invoke
+        final int sent = localNode.flush();
+
+        // Check
+        assertEquals(1, sent);
+        assertEquals(2, localNode.getCoalescedCount());
+        assertEquals(1, localNode.getSentBatchCount());
+        assertEquals(1, remoteNode.getReceivedBatchCount());
+        assertFalse(isCached(project));
+    }
+
+    @Test
+    public void clearingMoreLinesThanTheThresholdShouldClearTheWholeEntity() throws Exception {
+        // Set up
+        final GenericValue one = findProjectInCache(1);
+        final GenericValue two = findProjectInCache(2);
+        final GenericValue three = findProjectInCache(3);
+        localNode.distributedClearCacheLine(one.getPrimaryKey());
+        localNode.distributedClearCacheLine(two.getPrimaryKey());
+        localNode.distributedClearCacheLine(three.getPrimaryKey());
+
+        // Invoke
+        final int sent = localNode.flush();
+
+        // Check
+        assertEquals(1, sent);
+        assertEquals(1, localNode.getSentEntityClearCount());
+        assertFalse(isCached(one));
+        assertFalse(isCached(two));
+        assertFalse(isCached(three));
+    }
+
+    @Test
+    public void clearingAllCachesShouldBeSentRightAway() throws Exception {
+        // Set up
+        final GenericValue project = findProjectInCache(1);
+        localNode.distributedClearCacheLine(findProjectInCache(2));
+
+        // Invoke
+        localNode.clearAllCaches();
+
+        // Check
+        assertFalse(isCached(project));
+        assertEquals(1, remoteNode.getReceivedBatchCount());
+        assertEquals(0, localNode.flush());
+    }
+
+    @Test
+    public void removingTheDelegatorShouldCloseItsDistributedCacheClear() throws Exception {
+        // Set up
+        genericDelegator.distributedCacheClear = remoteNode;
+        final GenericValue project = findProjectInCache(1);
+
+        // Invoke
+        GenericDelegator.removeGenericDelegator(DELEGATOR_NAME);
+
+        // Check
+        localNode.distributedClearCacheLine(project);
+        assertEquals(1, localNode.flush());
+        assertEquals(0, remoteNode.getReceivedBatchCount());
+    }
+}
@@ -0,0 +1,94 @@
+package org.ofbiz.core.entity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ofbiz.core.entity.model.ModelEntity;
+import org.ofbiz.core.entity.model.ModelField;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestEffectiveDateIndex {
+
+    private ModelEntity modelEntity;
+
+    @Before
+    public void setUp() {
+        modelEntity = new ModelEntity();
+        modelEntity.setEntityName("Membership");
+        for (String name : new String[] {"id", "fromDate", "thruDate"}) {
+            final ModelField modelField = new ModelField();
+            modelField.setName(name);
+            modelEntity.addField(modelField);
+        }
+    }
+
+    private GenericValue membership(final long id, final Long fromDate, final Long thruDate) {
+        final GenericValue membership = new GenericValue(modelEntity);
+        membership.set("id", id);
+        membership.set("fromDate", fromDate == null ? null : new Timestamp(fromDate));
+        membership.set("thruDate", thruDate == null ? null : new Timestamp(thruDate));
+        return membership;
+    }
+
+    @Test
+    public void filteringACachedListShouldFindTheValuesActiveAtTheMoment() {
+        // Set up
+        final GenericValue always = membership(1, null, null);
+        final GenericValue expired = membership(2, 10L, 20L);
+        final GenericValue current = membership(3, 20L, 40L);
+        final GenericValue future = membership(4, 40L, null);
+        final List<GenericValue> cached = new EntityCacheList<GenericValue>(Arrays.asList(always, expired, current, future));
+
+        // Invoke and check
+        assertEquals(Arrays.asList(always, current), EntityUtil.filterByDate(cached, new Timestamp(30)));
+        assertEquals(Arrays.asList(always, current), EntityUtil.filterByDate(cached, new Timestamp(35)));
+        assertEquals(Arrays.asList(always), EntityUtil.filterByDate(cached, new Timestamp(40)));
+        assertEquals(Arrays.asList(always, future), EntityUtil.filterByDate(cached, new Timestamp(41)));
+        assertEquals(Arrays.asList(always, expired), EntityUtil.filterByDate(cached, new Timestamp(15)));
+    }
+
+    @Test
+    public void filteringACachedListShouldFindWhatScanningTheListFinds() {
+        // Set up
+        final Random random = new Random(7);
+        final List<GenericValue> values = new ArrayList<GenericValue>();
+        for (long id = 0; id < 200; id++) {
+            final long fromDate = random.nextInt(100);
+            values.add(membership(id, random.nextInt(4) == 0 ? null : fromDate,
+                    random.nextInt(3) == 0 ? null : fromDate + random.nextInt(50)));
+        }
+        final List<GenericValue> cached = new EntityCacheList<GenericValue>(values);
+        final List<GenericValue> scanned = new LinkedList<GenericValue>(values);
+
+        for (int moment = 0; moment < 200; moment++) {
+            // Invoke
+            final List<GenericValue> active = EntityUtil.filterByDate(cached, new Timestamp(moment));
+
+            // Check
+            assertEquals("At " + moment, EntityUtil.filterByDate(scanned, new Timestamp(moment)), active);
+        }
+    }
+
+    @Test
+    public void filteringACachedListShouldSeeDatesSetSinceItWasLastFiltered() {
+        // Set up
+        final GenericValue current = membership(1, 20L, 40L);
+        final GenericValue future = membership(2, 40L, null);
+        final List<GenericValue> cached = new EntityCacheList<GenericValue>(Arrays.asList(current, future));
+        assertEquals(Arrays.asList(current), EntityUtil.filterByDate(cached, new Timestamp(30)));
+
+        // Invoke
+        future.set("fromDate", new Timestamp(25));
+        final List<GenericValue> active = EntityUtil.filterByDate(cached, new Timestamp(30));
+
+        // Check
+        assertEquals(Arrays.asList(current, future), active);
+    }
+}
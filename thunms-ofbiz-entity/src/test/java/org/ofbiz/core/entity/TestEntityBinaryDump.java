@@ -0,0 +1,102 @@
+package org.ofbiz.core.entity;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.ofbiz.core.entity.GenericDelegator.getGenericDelegator;
+
+/**
+ * Integration test of EntityBinaryDump using an in-memory database.
+ */
+public class TestEntityBinaryDump {
+
+    // These names are from the test XML files in src/test/resources
+    private static final String DELEGATOR_NAME = "default";
+    private static final String ISSUE_ENTITY = "Issue";
+    private static final String PROJECT_ENTITY = "Project";
+
+    private GenericDelegator genericDelegator;
+    private File dumpDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        GenericDelegator.removeGenericDelegator(DELEGATOR_NAME);
+        GenericDelegator.unlock();
+        genericDelegator = getGenericDelegator(DELEGATOR_NAME);
+        resetDatabase();
+        dumpDirectory = File.createTempFile("dump", "");
+        dumpDirectory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = dumpDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        dumpDirectory.delete();
+    }
+
+    private void resetDatabase() throws Exception {
+        genericDelegator.removeByCondition(PROJECT_ENTITY, null);
+        genericDelegator.removeByCondition(ISSUE_ENTITY, null);
+    }
+
+    @Test
+    public void restoredRowsShouldMatchTheDumpedRows() throws Exception {
+        // Set up
+        for (long id = 1; id <= 50; id++) {
+            genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", id, "key", "P" + id + "\u00e9\n", "counter", id * 10));
+        }
+        genericDelegator.create(ISSUE_ENTITY, ImmutableMap.<String, Object>of("id", 7L));
+
+        // Invoke
+        final Map<String, Long> dumped = genericDelegator.dumpEntities(Arrays.asList(PROJECT_ENTITY, ISSUE_ENTITY), dumpDirectory);
+        resetDatabase();
+        final Map<String, Long> restored = genericDelegator.restoreEntities(dumpDirectory);
+
+        // Check
+        assertEquals(ImmutableMap.of(PROJECT_ENTITY, 50L, ISSUE_ENTITY, 1L), dumped);
+        assertEquals(dumped, restored);
+        assertTrue(new File(dumpDirectory, EntityBinaryDump.MANIFEST_FILE).isFile());
+        final GenericValue project = genericDelegator.findByPrimaryKey(PROJECT_ENTITY, ImmutableMap.of("id", 42L));
+        assertEquals("P42\u00e9\n", project.getString("key"));
+        assertEquals(420L, project.getLong("counter").longValue());
+        assertNull(genericDelegator.findByPrimaryKey(ISSUE_ENTITY, ImmutableMap.of("id", 7L)).getString("key"));
+    }
+
+    @Test
+    public void restoringAFileThatIsNotADumpShouldFail() throws Exception {
+        // Set up
+        dumpDirectory.mkdirs();
+        final File file = new File(dumpDirectory, "Project.dump");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("<entity-engine-xml/>".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        // Invoke
+        try {
+            new EntityBinaryDump(genericDelegator).restoreEntity(file);
+            fail("Expected a " + GenericEntityException.class);
+        } catch (final GenericEntityException expected) {
+            // Check
+            assertEquals(0, genericDelegator.countAll(PROJECT_ENTITY));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.ofbiz.core.entity;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.ofbiz.core.entity.model.ModelEntity;
+import org.ofbiz.core.entity.model.ModelField;
+import org.ofbiz.core.entity.model.ModelFieldType;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestEntityCacheKey {
+
+    private GenericDelegator delegator;
+    private ModelEntity modelEntity;
+
+    @Before
+    public void setUp() throws Exception {
+        modelEntity = new ModelEntity();
+        modelEntity.setEntityName("Issue");
+        for (String[] field : new String[][] {{"id", "numeric"}, {"project", "numeric"}, {"type", "id"}, {"resolved", "indicator"}, {"archived", "boolean"}}) {
+            final ModelField modelField = new ModelField();
+            modelField.setName(field[0]);
+            modelField.setType(field[1]);
+            modelEntity.addField(modelField);
+        }
+        delegator = mock(GenericDelegator.class);
+        final ModelFieldType indicator = mock(ModelFieldType.class);
+        when(indicator.getJavaType()).thenReturn("String");
+        when(delegator.getEntityFieldType(modelEntity, "indicator")).thenReturn(indicator);
+        final ModelFieldType bool = mock(ModelFieldType.class);
+        when(bool.getJavaType()).thenReturn("Boolean");
+        when(delegator.getEntityFieldType(modelEntity, "boolean")).thenReturn(bool);
+    }
+
+    @Test
+    public void keysOfTheSameFieldsShouldBeEqualWhateverTheOrderTheyAreGivenIn() {
+        // Invoke
+        final EntityCacheKey key = EntityCacheKey.of(delegator, modelEntity, ImmutableMap.of("project", 10L, "type", "BUG"));
+        final EntityCacheKey sameKey = EntityCacheKey.of(delegator, modelEntity, ImmutableMap.of("type", "BUG", "project", 10L));
+
+        // Check
+        assertEquals(key, sameKey);
+        assertEquals(key.hashCode(), sameKey.hashCode());
+        assertEquals("Issue", key.getEntityName());
+        assertEquals(2, key.size());
+    }
+
+    @Test
+    public void keysOfOtherFieldsOrValuesShouldNotBeEqual() {
+        // Set up
+        final EntityCacheKey key = EntityCacheKey.of(delegator, modelEntity, ImmutableMap.of("project", 10L));
+
+        // Invoke and check
+        assertNotEquals(key, EntityCacheKey.of(delegator, modelEntity, ImmutableMap.of("project", 11L)));
+        assertNotEquals(key, EntityCacheKey.of(delegator, modelEntity, ImmutableMap.of("id", 10L)));
+        assertNotEquals(key, EntityCacheKey.of(delegator, modelEntity, ImmutableMap.of("project", 10L, "type", "BUG")));
+    }
+
+    @Test
+    public void booleansShouldBeKeyedAsTheEntityHoldsThem() {
+        // Invoke
+        final EntityCacheKey key = EntityCacheKey.of(delegator, modelEntity, ImmutableMap.of("resolved", true, "archived", false));
+
+        // Check
+        assertEquals(EntityCacheKey.of(delegator, modelEntity, ImmutableMap.of("resolved", "Y", "archived", false)), key);
+        assertNotEquals(EntityCacheKey.of(delegator, modelEntity, ImmutableMap.of("resolved", "N", "archived", false)), key);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aFieldNotInTheEntityShouldBeRejected() {
+        // Invoke
+        EntityCacheKey.of(delegator, modelEntity, ImmutableMap.of("project", 10L, "nonsense", "X"));
+    }
+
+    @Test
+    public void consecutiveIdsShouldSpreadEvenlyOverTheBucketsOfAHashTable() {
+        // Set up
+        final int keys = 1 << 16;
+        final int buckets = 1 << 10;
+        final int[] bucketSizes = new int[buckets];
+        final Set<Integer> hashes = new HashSet<Integer>();
+
+        // Invoke
+        for (long id = 1; id <= keys; id++) {
+            final int hash = EntityCacheKey.of(delegator, modelEntity, ImmutableMap.of("id", id)).hashCode();
+            hashes.add(hash);
+            bucketSizes[hash & (buckets - 1)]++;
+        }
+
+        // Check
+        assertTrue("Too many colliding hash codes: " + (keys - hashes.size()), hashes.size() > keys - 8);
+        for (int bucketSize : bucketSizes) {
+            // 64 keys per bucket on average
+            assertTrue("Uneven bucket of " + bucketSize + " keys", bucketSize > 24 && bucketSize < 104);
+        }
+    }
+}
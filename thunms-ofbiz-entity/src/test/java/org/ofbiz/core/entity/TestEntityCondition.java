@@ -6,10 +6,12 @@ import org.junit.Test;
 import org.ofbiz.core.entity.model.ModelEntity;
 import org.ofbiz.core.entity.model.ModelField;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 public class TestEntityCondition {
     @Test
@@ -93,6 +95,62 @@ public class TestEntityCondition {
         assertEquals("Wrong parameter count.", 0, ec.getParameterCount(modelEntity));
     }
 
+    @Test
+    public void testWhereStringOfConditionTree() {
+        ModelEntity modelEntity = newModelEntity();
+        EntityCondition ec = new EntityConditionList(ImmutableList.of(
+                new EntityExpr("myField", EntityOperator.IN, ImmutableList.of("one", "two")),
+                new EntityFieldMap(Collections.singletonMap("myField2", null), EntityOperator.AND),
+                new EntityWhereString("1 = 1")
+        ), EntityOperator.OR);
+        List<EntityConditionParam> params = new ArrayList<EntityConditionParam>();
+        assertEquals("(MY_FIELD IN (?, ?) ) OR (MY_FIELD2 IS NULL) OR (1 = 1)", ec.makeWhereString(modelEntity, params));
+        assertEquals("Wrong parameter count.", 2, params.size());
+        assertEquals("two", params.get(1).getFieldValue());
+    }
+
+    @Test
+    public void testWhereStringOfNestedSubclassOverridingOnlyMakeWhereString() {
+        ModelEntity modelEntity = newModelEntity();
+        EntityExpr custom = new EntityExpr("myField", EntityOperator.EQUALS, "one") {
+            @Override
+            public String makeWhereString(ModelEntity modelEntity, List<? super EntityConditionParam> entityConditionParams) {
+                return "CUSTOM(" + super.makeWhereString(modelEntity, entityConditionParams) + ")";
+            }
+        };
+        EntityCondition ec = new EntityConditionList(ImmutableList.of(custom, new EntityWhereString("1 = 1")), EntityOperator.AND);
+        List<EntityConditionParam> params = new ArrayList<EntityConditionParam>();
+        assertEquals("(CUSTOM(MY_FIELD =  ? )) AND (1 = 1)", ec.makeWhereString(modelEntity, params));
+        assertEquals("Wrong parameter count.", 1, params.size());
+    }
+
+    @Test
+    public void testShapeKeyDependsOnTheShapeOfTheConditionButNotItsValues() {
+        ModelEntity modelEntity = newModelEntity();
+        String shapeKey = shapeKey(modelEntity, new EntityFieldMap(ImmutableMap.of("myField", "one", "myField2", "two"), EntityOperator.AND));
+        assertEquals("Entity:myField=? AND myField2=?", shapeKey);
+        assertEquals(shapeKey, shapeKey(modelEntity, new EntityFieldMap(ImmutableMap.of("myField", "three", "myField2", "four"), EntityOperator.AND)));
+        assertNotEquals(shapeKey, shapeKey(modelEntity, new EntityFieldMap(ImmutableMap.of("myField", "three"), EntityOperator.AND)));
+    }
+
+    private static String shapeKey(ModelEntity modelEntity, EntityCondition condition) {
+        return new EntityConditionWriter(modelEntity, new ArrayList<EntityConditionParam>()).withShapeKey().write(condition).getShapeKey();
+    }
+
+    private static ModelEntity newModelEntity() {
+        ModelEntity modelEntity = new ModelEntity();
+        modelEntity.setEntityName("Entity");
+        ModelField modelField = new ModelField();
+        modelField.setName("myField");
+        modelField.setColName("MY_FIELD");
+        modelEntity.addField(modelField);
+        ModelField modelField2 = new ModelField();
+        modelField2.setName("myField2");
+        modelField2.setColName("MY_FIELD2");
+        modelEntity.addField(modelField2);
+        return modelEntity;
+    }
+
     /**
      * Fake entity condition implementation that has a specific parameter count.
      */
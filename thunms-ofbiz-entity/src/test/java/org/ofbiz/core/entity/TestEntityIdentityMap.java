@@ -0,0 +1,135 @@
+package org.ofbiz.core.entity;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.ofbiz.core.entity.GenericDelegator.getGenericDelegator;
+
+/**
+ * Integration test of EntityIdentityMap using an in-memory database.
+ */
+public class TestEntityIdentityMap {
+
+    // These names are from the test XML files in src/test/resources
+    private static final String DELEGATOR_NAME = "default";
+    private static final String HELPER_NAME = "defaultDS";
+    private static final String PROJECT_ENTITY = "Project";
+
+    private GenericDelegator genericDelegator;
+    private boolean began;
+
+    @Before
+    public void setUp() throws Exception {
+        GenericDelegator.removeGenericDelegator(DELEGATOR_NAME);
+        GenericDelegator.unlock();
+        genericDelegator = getGenericDelegator(DELEGATOR_NAME);
+        genericDelegator.removeByCondition(PROJECT_ENTITY, null);
+        genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", 1L, "key", "ONE"));
+        began = EntityIdentityMap.begin();
+    }
+
+    @After
+    public void tearDown() {
+        EntityIdentityMap.end(began);
+    }
+
+    private GenericValue findProject(final long id) throws GenericEntityException {
+        return genericDelegator.findByPrimaryKey(PROJECT_ENTITY, ImmutableMap.of("id", id));
+    }
+
+    @Test
+    public void findingTheSameKeyTwiceShouldGiveTheSameValue() throws Exception {
+        // Invoke
+        final GenericValue first = findProject(1);
+        final GenericValue second = findProject(1);
+
+        // Check
+        assertTrue(began);
+        assertNotNull(first);
+        assertSame(first, second);
+        EntityIdentityMap.end(began);
+        began = false;
+        assertNotSame(first, findProject(1));
+    }
+
+    @Test
+    public void valuesReadByAQueryShouldBeFoundByTheirKey() throws Exception {
+        // Set up
+        final List<GenericValue> projects = genericDelegator.findAll(PROJECT_ENTITY);
+
+        // Invoke
+        final GenericValue project = findProject(1);
+
+        // Check
+        assertEquals(1, projects.size());
+        assertSame(projects.get(0), project);
+    }
+
+    @Test
+    public void storingAValueShouldMakeTheNextFindReadItAgain() throws Exception {
+        // Set up
+        final GenericValue project = findProject(1);
+        final GenericValue copy = (GenericValue) project.clone();
+        copy.set("key", "UNO");
+
+        // Invoke
+        genericDelegator.store(copy);
+
+        // Check
+        assertEquals("UNO", findProject(1).getString("key"));
+    }
+
+    @Test
+    public void aKeyNotFoundShouldBeFoundOnceCreated() throws Exception {
+        // Set up
+        assertNull(findProject(2));
+
+        // Invoke
+        genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", 2L, "key", "TWO"));
+
+        // Check
+        assertEquals("TWO", findProject(2).getString("key"));
+    }
+
+    @Test
+    public void endingATransactionShouldForgetTheValuesReadInIt() throws Exception {
+        // Set up
+        final boolean beganTransaction = TransactionUtil.beginLocalTransaction(HELPER_NAME, -1);
+        final GenericValue project = findProject(1);
+
+        // Invoke
+        TransactionUtil.commitLocalTransaction(beganTransaction);
+
+        // Check
+        assertNotSame(project, findProject(1));
+    }
+
+    @Test
+    public void findAllByPrimaryKeysShouldOnlyReadTheKeysNotKnown() throws Exception {
+        // Set up
+        genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", 2L, "key", "TWO"));
+        final GenericValue first = findProject(1);
+
+        // Invoke
+        final List<GenericValue> projects = genericDelegator.findAllByPrimaryKeys(Arrays.asList(
+                genericDelegator.makePK(PROJECT_ENTITY, ImmutableMap.of("id", 2L)),
+                genericDelegator.makePK(PROJECT_ENTITY, ImmutableMap.of("id", 1L))));
+
+        // Check
+        assertEquals(2, projects.size());
+        assertEquals("TWO", projects.get(0).getString("key"));
+        assertSame(first, projects.get(1));
+        assertSame(projects.get(0), findProject(2));
+    }
+}
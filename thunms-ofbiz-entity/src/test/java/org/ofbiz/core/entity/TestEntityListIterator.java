@@ -0,0 +1,117 @@
+package org.ofbiz.core.entity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ofbiz.core.entity.jdbc.SQLProcessor;
+import org.ofbiz.core.entity.model.ModelEntity;
+import org.ofbiz.core.entity.model.ModelField;
+import org.ofbiz.core.entity.model.ModelFieldTypeReader;
+
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test of EntityListIterator over a forward only ResultSet.
+ */
+public class TestEntityListIterator {
+
+    @Mock
+    private ModelEntity mockModelEntity;
+    @Mock
+    private ModelFieldTypeReader mockModelFieldTypeReader;
+    @Mock
+    private ResultSet mockResultSet;
+    @Mock
+    private SQLProcessor mockSqlProcessor;
+    private EntityListIterator iterator;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mockModelEntity.getEntityName()).thenReturn("Issue");
+        when(mockSqlProcessor.getResultSet()).thenReturn(mockResultSet);
+        when(mockResultSet.getType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+        iterator = new EntityListIterator(mockSqlProcessor, mockModelEntity, Collections.<ModelField>emptyList(), mockModelFieldTypeReader);
+    }
+
+    @Test
+    public void hasNextShouldReadAheadInsteadOfProbingTheCursorPosition() throws Exception {
+        // Set up
+        when(mockResultSet.next()).thenReturn(true, true, false);
+
+        // Invoke and check
+        assertTrue(iterator.hasNext());
+        assertTrue(iterator.hasNext());
+        assertNotNull(iterator.next());
+        assertEquals(1, iterator.currentIndex());
+        assertNotNull(iterator.next());
+        assertFalse(iterator.hasNext());
+        assertNull(iterator.next());
+        assertEquals(2, iterator.currentIndex());
+        verify(mockResultSet, times(3)).next();
+        verify(mockResultSet, never()).isLast();
+        verify(mockResultSet, never()).isAfterLast();
+        verify(mockResultSet, never()).isBeforeFirst();
+        verify(mockResultSet, never()).isFirst();
+    }
+
+    @Test
+    public void completeListShouldHoldTheRowsNotYetReadWithoutRewinding() throws Exception {
+        // Set up
+        when(mockResultSet.next()).thenReturn(true, true, true, false);
+        iterator.next();
+        iterator.hasNext();
+
+        // Invoke
+        final List<GenericValue> values = iterator.getCompleteList();
+
+        // Check
+        assertEquals(2, values.size());
+        verify(mockResultSet, never()).beforeFirst();
+    }
+
+    @Test
+    public void partialListShouldSkipForwardToTheStart() throws Exception {
+        // Set up
+        when(mockResultSet.next()).thenReturn(true, true, true, true, false);
+
+        // Invoke
+        final List<GenericValue> values = iterator.getPartialList(3, 5);
+
+        // Check
+        assertEquals(2, values.size());
+        assertEquals(4, iterator.currentIndex());
+        verify(mockResultSet, never()).absolute(3);
+    }
+
+    @Test
+    public void partialListShouldNotMoveBackwards() throws Exception {
+        // Set up
+        when(mockResultSet.next()).thenReturn(true, true, false);
+        iterator.next();
+        iterator.next();
+
+        // Invoke
+        try {
+            iterator.getPartialList(1, 1);
+            fail("Expected a " + GenericEntityException.class);
+        } catch (final GenericEntityException expected) {
+            // Check
+            verify(mockResultSet, never()).beforeFirst();
+        }
+    }
+}
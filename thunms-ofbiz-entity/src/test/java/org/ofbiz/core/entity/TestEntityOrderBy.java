@@ -0,0 +1,88 @@
+package org.ofbiz.core.entity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ofbiz.core.entity.model.ModelEntity;
+import org.ofbiz.core.entity.model.ModelField;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TestEntityOrderBy {
+
+    private ModelEntity modelEntity;
+
+    @Before
+    public void setUp() {
+        modelEntity = new ModelEntity();
+        modelEntity.setEntityName("Issue");
+        for (String name : new String[] {"id", "priority", "name", "created"}) {
+            final ModelField modelField = new ModelField();
+            modelField.setName(name);
+            modelEntity.addField(modelField);
+        }
+    }
+
+    private GenericValue issue(final long id, final Long priority, final String name, final Timestamp created) {
+        final GenericValue issue = new GenericValue(modelEntity);
+        issue.set("id", id);
+        issue.set("priority", priority);
+        issue.set("name", name);
+        issue.set("created", created);
+        return issue;
+    }
+
+    @Test
+    public void valuesShouldBeOrderedByEachFieldInTurnWithNullsGreatest() {
+        // Set up
+        final GenericValue first = issue(1, 2L, "b", null);
+        final GenericValue second = issue(2, 2L, null, null);
+        final GenericValue third = issue(3, 1L, "a", null);
+        final GenericValue fourth = issue(4, null, "a", null);
+
+        // Invoke
+        final List<GenericValue> ordered = EntityUtil.orderBy(Arrays.asList(fourth, third, second, first), Arrays.asList("priority DESC", "name ASC"));
+
+        // Check
+        assertEquals(Arrays.asList(fourth, first, second, third), ordered);
+    }
+
+    @Test
+    public void sortingManyValuesShouldGiveTheSameOrderAsComparingThemDirectly() {
+        // Set up
+        final Random random = new Random(42);
+        final List<GenericValue> values = new ArrayList<GenericValue>();
+        for (long id = 0; id < EntityOrderBy.DECORATE_THRESHOLD * 4; id++) {
+            values.add(issue(id,
+                    random.nextInt(5) == 0 ? null : (long) random.nextInt(10),
+                    random.nextInt(7) == 0 ? null : "name" + random.nextInt(50),
+                    random.nextInt(3) == 0 ? null : new Timestamp(random.nextInt(100))));
+        }
+        final EntityOrderBy orderBy = EntityOrderBy.compile(modelEntity, Arrays.asList("priority DESC", "name", "created"));
+        final List<GenericValue> expected = new ArrayList<GenericValue>(values);
+        expected.sort(orderBy);
+
+        // Invoke
+        final List<GenericValue> ordered = new ArrayList<GenericValue>(values);
+        orderBy.sort(ordered);
+
+        // Check
+        assertNull(ordered.get(0).get("priority"));
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame("Value " + i, expected.get(i), ordered.get(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void orderingByAFieldNotInTheEntityShouldBeRejected() {
+        // Invoke
+        EntityOrderBy.compile(modelEntity, Arrays.asList("nonsense DESC"));
+    }
+}
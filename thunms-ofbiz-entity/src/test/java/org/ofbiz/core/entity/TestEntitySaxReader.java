@@ -0,0 +1,196 @@
+package org.ofbiz.core.entity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ofbiz.core.util.UtilMisc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.ofbiz.core.entity.GenericDelegator.getGenericDelegator;
+
+/**
+ * Integration test of EntitySaxReader using an in-memory database.
+ */
+public class TestEntitySaxReader {
+
+    // These names are from the test XML files in src/test/resources
+    private static final String DELEGATOR_NAME = "default";
+    private static final String ISSUE_ENTITY = "Issue";
+    private static final String PROJECT_ENTITY = "Project";
+    private static final String TEST_ENTITIES = "test-entities.xml";
+
+    private GenericDelegator genericDelegator;
+    private File checkpointFile;
+
+    @Before
+    public void setUp() throws Exception {
+        GenericDelegator.removeGenericDelegator(DELEGATOR_NAME);
+        GenericDelegator.unlock();
+        genericDelegator = getGenericDelegator(DELEGATOR_NAME);
+        genericDelegator.removeByCondition(PROJECT_ENTITY, null);
+        genericDelegator.removeByCondition(ISSUE_ENTITY, null);
+        checkpointFile = File.createTempFile("import", ".checkpoint");
+        checkpointFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        checkpointFile.delete();
+    }
+
+    @Test
+    public void singleTransactionImportShouldStoreAllValues() throws Exception {
+        // Set up
+        final EntitySaxReader reader = new EntitySaxReader(genericDelegator);
+
+        // Invoke
+        final long numberRead = parse(reader);
+
+        // Check
+        assertEquals(4, numberRead);
+        assertEquals(4, reader.getNumberWritten());
+        assertEquals(3, genericDelegator.countAll(PROJECT_ENTITY));
+        assertEquals("BAR-123", genericDelegator.findByPrimaryKey(ISSUE_ENTITY, UtilMisc.toMap("id", 25L)).getString("key"));
+    }
+
+    @Test
+    public void importWithWriterThreadsShouldBatchInsertAllValues() throws Exception {
+        // Set up
+        final EntitySaxReader reader = new EntitySaxReader(genericDelegator);
+        reader.setValuesPerWrite(1);
+        reader.setValuesPerCommit(2);
+        reader.setWriterThreads(3);
+        reader.setUseBatchInsert(true);
+        reader.setCheckpointFile(checkpointFile);
+
+        // Invoke
+        final long numberRead = parse(reader);
+
+        // Check
+        assertEquals(4, numberRead);
+        assertEquals(4, reader.getNumberWritten());
+        assertEquals(3, genericDelegator.countAll(PROJECT_ENTITY));
+        assertEquals(1, genericDelegator.countAll(ISSUE_ENTITY));
+        assertFalse("Checkpoint should be removed after a complete import", checkpointFile.exists());
+    }
+
+    @Test
+    public void importShouldResumeAfterTheCheckpointedValues() throws Exception {
+        // Set up
+        writeCheckpoint(TEST_ENTITIES, "0-2");
+        final EntitySaxReader reader = new EntitySaxReader(genericDelegator);
+        reader.setValuesPerCommit(10);
+        reader.setCheckpointFile(checkpointFile);
+
+        // Invoke
+        final long numberRead = parse(reader);
+
+        // Check
+        assertEquals(4, numberRead);
+        assertEquals(3, reader.getNumberSkipped());
+        assertEquals(1, reader.getNumberWritten());
+        assertEquals(0, genericDelegator.countAll(PROJECT_ENTITY));
+        assertEquals(1, genericDelegator.countAll(ISSUE_ENTITY));
+    }
+
+    @Test
+    public void importShouldOnlySkipTheCheckpointedBatches() throws Exception {
+        // Set up
+        writeCheckpoint(TEST_ENTITIES, "0,2");
+        final EntitySaxReader reader = new EntitySaxReader(genericDelegator);
+        reader.setValuesPerCommit(10);
+        reader.setWriterThreads(2);
+        reader.setCheckpointFile(checkpointFile);
+
+        // Invoke
+        parse(reader);
+
+        // Check
+        assertEquals(2, reader.getNumberSkipped());
+        assertEquals(2, reader.getNumberWritten());
+        assertEquals(1, genericDelegator.countAll(PROJECT_ENTITY));
+        assertNotNull(genericDelegator.findByPrimaryKey(PROJECT_ENTITY, UtilMisc.toMap("id", 24L)));
+        assertEquals(1, genericDelegator.countAll(ISSUE_ENTITY));
+    }
+
+    @Test
+    public void valuesShouldBeWrittenAfterTheValuesTheyHaveForeignKeysTo() throws Exception {
+        // Set up
+        final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+        final EntitySaxReader reader = new EntitySaxReader(genericDelegator) {
+            @Override
+            protected void writeValues(final List<GenericValue> values) throws GenericEntityException {
+                if (PROJECT_ENTITY.equals(values.get(0).getEntityName())) {
+                    // give the writer of the issue time to overtake
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        throw new GenericEntityException("Interrupted", e);
+                    }
+                }
+                super.writeValues(values);
+                written.add(values.get(0).getEntityName());
+            }
+        };
+        reader.setValuesPerWrite(1);
+        reader.setValuesPerCommit(1);
+        reader.setWriterThreads(4);
+
+        // Invoke
+        parse(reader);
+
+        // Check
+        assertEquals(Arrays.asList(PROJECT_ENTITY, PROJECT_ENTITY, PROJECT_ENTITY, ISSUE_ENTITY), written);
+    }
+
+    @Test
+    public void checkpointOfAnotherDocumentShouldBeIgnored() throws Exception {
+        // Set up
+        writeCheckpoint("some-other-file.xml", "0-2");
+        final EntitySaxReader reader = new EntitySaxReader(genericDelegator);
+        reader.setValuesPerCommit(10);
+        reader.setCheckpointFile(checkpointFile);
+
+        // Invoke
+        parse(reader);
+
+        // Check
+        assertEquals(0, reader.getNumberSkipped());
+        assertEquals(3, genericDelegator.countAll(PROJECT_ENTITY));
+    }
+
+    private void writeCheckpoint(final String document, final String batches) throws Exception {
+        final Properties checkpoint = new Properties();
+        checkpoint.setProperty("document", document);
+        checkpoint.setProperty("valuesPerWrite", "1");
+        checkpoint.setProperty("batches", batches);
+        final OutputStream out = new FileOutputStream(checkpointFile);
+        try {
+            checkpoint.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private long parse(final EntitySaxReader reader) throws Exception {
+        final InputStream in = getClass().getResourceAsStream(TEST_ENTITIES);
+        assertNotNull("Couldn't find " + TEST_ENTITIES, in);
+        try {
+            return reader.parse(in, TEST_ENTITIES);
+        } finally {
+            in.close();
+        }
+    }
+}
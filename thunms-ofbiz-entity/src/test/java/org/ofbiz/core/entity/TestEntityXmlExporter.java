@@ -0,0 +1,130 @@
+package org.ofbiz.core.entity;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ofbiz.core.entity.jdbc.SerializationUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.ofbiz.core.entity.GenericDelegator.getGenericDelegator;
+
+/**
+ * Integration test of EntityXmlExporter using an in-memory database.
+ */
+public class TestEntityXmlExporter {
+
+    // These names are from the test XML files in src/test/resources
+    private static final String DELEGATOR_NAME = "default";
+    private static final String ISSUE_ENTITY = "Issue";
+    private static final String PROJECT_ENTITY = "Project";
+    private static final String ATTACHMENT_ENTITY = "Attachment";
+
+    private GenericDelegator genericDelegator;
+    private File exportDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        GenericDelegator.removeGenericDelegator(DELEGATOR_NAME);
+        GenericDelegator.unlock();
+        genericDelegator = getGenericDelegator(DELEGATOR_NAME);
+        resetDatabase();
+        exportDirectory = File.createTempFile("export", "");
+        exportDirectory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = exportDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        exportDirectory.delete();
+    }
+
+    private void resetDatabase() throws Exception {
+        genericDelegator.removeByCondition(PROJECT_ENTITY, null);
+        genericDelegator.removeByCondition(ISSUE_ENTITY, null);
+        genericDelegator.removeByCondition(ATTACHMENT_ENTITY, null);
+    }
+
+    @Test
+    public void exportedValuesShouldBeReadBackUnchanged() throws Exception {
+        // Set up
+        genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", 1L, "key", "A&B <\"quoted\">", "counter", 10L));
+        genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", 2L, "key", "two\nlines ]]> here", "counter", 20L));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Invoke
+        final long count = new EntityXmlExporter(genericDelegator).exportEntities(singletonList(PROJECT_ENTITY), out);
+
+        // Check
+        assertEquals(2, count);
+        resetDatabase();
+        new EntitySaxReader(genericDelegator).parse(new ByteArrayInputStream(out.toByteArray()), "export");
+        assertEquals("A&B <\"quoted\">", genericDelegator.findByPrimaryKey(PROJECT_ENTITY, ImmutableMap.of("id", 1L)).getString("key"));
+        assertEquals("two\nlines ]]> here", genericDelegator.findByPrimaryKey(PROJECT_ENTITY, ImmutableMap.of("id", 2L)).getString("key"));
+    }
+
+    @Test
+    public void exportToDirectoryShouldWriteOneCompressedFilePerEntity() throws Exception {
+        // Set up
+        genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", 1L, "key", "ONE", "counter", 10L));
+        genericDelegator.create(ISSUE_ENTITY, ImmutableMap.<String, Object>of("id", 5L, "key", "ONE-1"));
+        genericDelegator.create(ISSUE_ENTITY, ImmutableMap.<String, Object>of("id", 6L, "key", "ONE-2"));
+        final EntityXmlExporter exporter = new EntityXmlExporter(genericDelegator);
+        exporter.setCompress(true);
+        exporter.setThreads(2);
+
+        // Invoke
+        final Map<String, Long> counts = exporter.exportEntities(Arrays.asList(PROJECT_ENTITY, ISSUE_ENTITY), exportDirectory);
+
+        // Check
+        assertEquals(ImmutableMap.of(PROJECT_ENTITY, 1L, ISSUE_ENTITY, 2L), counts);
+        final File issueFile = new File(exportDirectory, "Issue.xml.gz");
+        assertTrue(issueFile.isFile());
+        resetDatabase();
+        final InputStream in = new GZIPInputStream(new FileInputStream(issueFile));
+        try {
+            assertEquals(2, new EntitySaxReader(genericDelegator).parse(in, issueFile.getName()));
+        } finally {
+            in.close();
+        }
+        assertEquals(2, genericDelegator.countAll(ISSUE_ENTITY));
+        assertEquals(0, genericDelegator.countAll(PROJECT_ENTITY));
+    }
+
+    @Test
+    public void blobFieldsShouldBeExportedBase64Encoded() throws Exception {
+        // Set up
+        final byte[] data = "some <binary> ]]> data".getBytes("UTF-8");
+        genericDelegator.create(ATTACHMENT_ENTITY, ImmutableMap.<String, Object>of("id", 1L, "data", data));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Invoke
+        final long count = new EntityXmlExporter(genericDelegator).exportEntities(singletonList(ATTACHMENT_ENTITY), out);
+
+        // Check
+        assertEquals(1, count);
+        assertTrue(out.toString("UTF-8").contains(SerializationUtil.encodeBase64(data)));
+        resetDatabase();
+        new EntitySaxReader(genericDelegator).parse(new ByteArrayInputStream(out.toByteArray()), "export");
+        final Blob blob = (Blob) genericDelegator.findByPrimaryKey(ATTACHMENT_ENTITY, ImmutableMap.of("id", 1L)).get("data");
+        assertArrayEquals(data, blob.getBytes(1L, (int) blob.length()));
+    }
+}
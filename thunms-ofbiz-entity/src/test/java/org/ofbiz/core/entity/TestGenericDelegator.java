@@ -8,6 +8,7 @@ import org.hamcrest.TypeSafeMatcher;
 import org.junit.Before;
 import org.junit.Test;
 import org.ofbiz.core.entity.model.ModelEntity;
+import org.ofbiz.core.entity.model.ModelField;
 import org.ofbiz.core.util.Debug;
 import org.xml.sax.SAXException;
 
@@ -70,9 +71,10 @@ public class TestGenericDelegator {
     private static final String PROJECT_KEY_FIELD = "key";
     private static final EntityExpr PROJECT_KEY_LIKE_B_PERCENT = new EntityExpr(PROJECT_KEY_FIELD, LIKE, "B%");
     private static final String SEQUENCE_ENTITY = "SequenceValueItem";
+    private static final String ATTACHMENT_ENTITY = "Attachment";
 
     // Be sure to list all entities in the "default" group here
-    private static final String[] ENTITIES = {ISSUE_ENTITY, SEQUENCE_ENTITY, PROJECT_ENTITY};
+    private static final String[] ENTITIES = {ISSUE_ENTITY, SEQUENCE_ENTITY, PROJECT_ENTITY, ATTACHMENT_ENTITY};
     private static final int PROJECT_ID_1 = 23;
 
     private GenericDelegator genericDelegator;
@@ -168,7 +170,7 @@ public class TestGenericDelegator {
         for (final String entityName : ENTITIES) {
             assertThat(entities, hasEntry(is(entityName), modelEntity(entityName)));
         }
-        assertEquals(3, entities.size());
+        assertEquals(ENTITIES.length, entities.size());
     }
 
     @Test
@@ -401,6 +403,114 @@ public class TestGenericDelegator {
         return ImmutableMap.of(ID_FIELD, id, ISSUE_KEY_FIELD, key);
     }
 
+    @Test
+    public void getRelatedForAllShouldMapEachValueToItsRelatedValues() throws Exception {
+        // Set up
+        final GenericValue project1 = genericDelegator.create(PROJECT_ENTITY, getProjectFields(1, "ONE", 0));
+        final GenericValue project2 = genericDelegator.create(PROJECT_ENTITY, getProjectFields(2, "TWO", 0));
+        final GenericValue project3 = genericDelegator.create(PROJECT_ENTITY, getProjectFields(3, "THREE", 0));
+        final GenericValue issue1 = genericDelegator.create(ISSUE_ENTITY, getIssueFields(11, "ONE-1", 1));
+        final GenericValue issue2 = genericDelegator.create(ISSUE_ENTITY, getIssueFields(12, "ONE-2", 1));
+        final GenericValue issue3 = genericDelegator.create(ISSUE_ENTITY, getIssueFields(31, "THREE-1", 3));
+
+        // Invoke
+        final List<List<GenericValue>> related =
+                genericDelegator.getRelatedForAll("ChildIssue", asList(project3, project2, project1));
+
+        // Check
+        assertEquals(3, related.size());
+        assertEquals(singletonList(issue3), related.get(0));
+        assertEquals(Collections.<GenericValue>emptyList(), related.get(1));
+        assertThat(related.get(2), containsInAnyOrder(issue1, issue2));
+    }
+
+    @Test
+    public void getRelatedForAllShouldNotConfuseValuesWithTheSamePrimaryKey() throws Exception {
+        // Set up
+        final GenericValue project1 = genericDelegator.create(PROJECT_ENTITY, getProjectFields(1, "ONE", 0));
+        final GenericValue project2 = genericDelegator.create(PROJECT_ENTITY, getProjectFields(2, "TWO", 0));
+        final GenericValue issue = genericDelegator.create(ISSUE_ENTITY, getIssueFields(11, "ONE-1", 1));
+        final GenericValue movedIssue = new GenericValue(issue);
+        movedIssue.set("project", 2L);
+        final GenericValue orphanIssue = new GenericValue(issue);
+        orphanIssue.set("project", null);
+
+        // Invoke
+        final List<List<GenericValue>> related =
+                genericDelegator.getRelatedForAll("ParentProject", asList(issue, movedIssue, orphanIssue));
+
+        // Check
+        assertEquals(asList(singletonList(project1), singletonList(project2), Collections.<GenericValue>emptyList()), related);
+    }
+
+    @Test
+    public void prefetchedRelationsShouldBeInTheEmbeddedCache() throws Exception {
+        // Set up
+        final GenericValue project = genericDelegator.create(PROJECT_ENTITY, getProjectFields(1, "ONE", 0));
+        genericDelegator.create(ISSUE_ENTITY, getIssueFields(11, "ONE-1", 1));
+        genericDelegator.create(ISSUE_ENTITY, getIssueFields(12, "ONE-2", 1));
+
+        // Invoke
+        final List<GenericValue> issues = genericDelegator.findByCondition(ISSUE_ENTITY, null, null, null,
+                EntityFindOptions.findOptions().prefetch("ParentProject"));
+
+        // Check
+        assertEquals(2, issues.size());
+        for (final GenericValue issue : issues) {
+            assertEquals(project, issue.relatedOneCache.get("ParentProject"));
+        }
+    }
+
+    @Test
+    public void joinedRelationsShouldBeReadInTheSameQuery() throws Exception {
+        // Set up
+        final GenericValue project = genericDelegator.create(PROJECT_ENTITY, getProjectFields(1, "ONE", 0));
+        genericDelegator.create(ISSUE_ENTITY, getIssueFields(11, "ONE-1", 1));
+        genericDelegator.create(ISSUE_ENTITY, getIssueFields(12, "NONE-1", 99));
+
+        // Invoke
+        final List<GenericValue> issues;
+        final EntityListIterator iterator = genericDelegator.findListIteratorByCondition(ISSUE_ENTITY,
+                new EntityExpr(ISSUE_KEY_FIELD, LIKE, "%-1"), null, null, singletonList(ID_FIELD),
+                EntityFindOptions.findOptions().join("ParentProject"));
+        try {
+            issues = iterator.getCompleteList();
+        } finally {
+            iterator.close();
+        }
+
+        // Check
+        assertEquals(2, issues.size());
+        assertEquals(ISSUE_ENTITY, issues.get(0).getEntityName());
+        assertEquals("ONE-1", issues.get(0).getString(ISSUE_KEY_FIELD));
+        assertEquals(project, issues.get(0).relatedOneCache.get("ParentProject"));
+        assertEquals(project, issues.get(0).getRelatedOneEmbeddedCache("ParentProject"));
+        assertEquals(Long.valueOf(99), issues.get(1).getLong("project"));
+        assertNull(issues.get(1).relatedOneCache);
+    }
+
+    @Test
+    public void joinsShouldBePutTogetherOncePerRelationsAndFields() throws Exception {
+        // Set up
+        final ModelEntity issueEntity = genericDelegator.getModelEntity(ISSUE_ENTITY);
+        final List<ModelField> idField = singletonList(issueEntity.getField(ID_FIELD));
+        final List<String> parentProject = singletonList("ParentProject");
+
+        // Invoke
+        final RelationJoin join = RelationJoin.get(issueEntity, idField, parentProject);
+
+        // Check
+        assertSame(join, RelationJoin.get(issueEntity, idField, parentProject));
+        assertNotSame(join, RelationJoin.get(issueEntity, issueEntity.getFieldsCopy(), parentProject));
+        final ModelField relatedId = join.getSelectFields().get(1);
+        assertEquals("J1_0", relatedId.getColAlias());
+        assertFalse(relatedId.getColName().contains(" AS "));
+    }
+
+    private Map<String, ?> getIssueFields(final long id, final String key, final long projectId) {
+        return ImmutableMap.of(ID_FIELD, id, ISSUE_KEY_FIELD, key, "project", projectId);
+    }
+
     @Test
     public void clearAllCacheLinesByDummyPKShouldAcceptNullArgument() {
         genericDelegator.clearAllCacheLinesByDummyPK(null);
@@ -587,6 +697,65 @@ public class TestGenericDelegator {
         }
     }
 
+    @Test
+    public void transformShouldOnlyReapplyTheTransformationToRowsChangedBetweenSelectAndUpdate() throws Exception {
+        // Set up
+        genericDelegator.storeAll(loadTestEntitiesFromXml("test-entities.xml"));
+        final GenericDAO genericDAO = GenericDAO.getGenericDAO(genericDelegator.getEntityHelperName(PROJECT_ENTITY));
+        final long retriesBefore = genericDAO.getTransformRetryCount();
+        final List<String> transformedKeys = new ArrayList<String>();
+        final Transformation transformation = new Transformation() {
+            @Override
+            public void transform(final GenericValue project) {
+                transformedKeys.add(project.getString(PROJECT_KEY_FIELD));
+                if (transformedKeys.size() == 1) {
+                    // Someone else updates the first project before we do
+                    try {
+                        final GenericValue concurrentCopy = genericDelegator.findByPrimaryKey(project.getPrimaryKey());
+                        concurrentCopy.set(ISSUE_COUNT_FIELD, concurrentCopy.getLong(ISSUE_COUNT_FIELD) + 10);
+                        genericDelegator.store(concurrentCopy);
+                    } catch (GenericEntityException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                new IncrementIssueCount().transform(project);
+            }
+        };
+
+        // Invoke
+        final List<GenericValue> transformedProjects = genericDelegator.transform(
+                PROJECT_ENTITY, PROJECT_KEY_LIKE_B_PERCENT, singletonList("key ASC"), ISSUE_COUNT_FIELD, transformation);
+
+        // Check
+        assertEquals(asList("BAR", "BAZ", "BAR"), transformedKeys);
+        assertEquals(1, genericDAO.getTransformRetryCount() - retriesBefore);
+        assertProject(24, "BAR", 579, transformedProjects.get(0));
+        assertProject(PROJECT_ID_1, "BAZ", 568, transformedProjects.get(1));
+        for (final GenericValue transformedProject : transformedProjects) {
+            assertEquals(transformedProject, genericDelegator.findByPrimaryKey(transformedProject.getPrimaryKey()));
+        }
+    }
+
+    @Test
+    public void transformShouldUpdateRowsOnceWhenTheTransformationLeavesTheLockFieldUnchanged() throws Exception {
+        // Set up
+        genericDelegator.storeAll(loadTestEntitiesFromXml("test-entities.xml"));
+        final GenericDAO genericDAO = GenericDAO.getGenericDAO(genericDelegator.getEntityHelperName(PROJECT_ENTITY));
+        final long retriesBefore = genericDAO.getTransformRetryCount();
+
+        // Invoke
+        final List<GenericValue> transformedProjects = genericDelegator.transform(
+                PROJECT_ENTITY, PROJECT_KEY_LIKE_B_PERCENT, singletonList("key ASC"), PROJECT_KEY_FIELD, new IncrementIssueCount());
+
+        // Check
+        assertEquals(0, genericDAO.getTransformRetryCount() - retriesBefore);
+        assertProject(24, "BAR", 569, transformedProjects.get(0));
+        assertProject(PROJECT_ID_1, "BAZ", 568, transformedProjects.get(1));
+        for (final GenericValue transformedProject : transformedProjects) {
+            assertEquals(transformedProject, genericDelegator.findByPrimaryKey(transformedProject.getPrimaryKey()));
+        }
+    }
+
     @Test
     public void transformingNonExistentEntityShouldReturnEmptyList() throws Exception {
         // Set up
@@ -628,6 +797,65 @@ public class TestGenericDelegator {
         doTestSequenceValueItemWithConcurrentThreads(sequencer);
     }
 
+    @Test
+    public void testSequenceValueItemWithConcurrentThreadsUsingHiLo() {
+        String helperName = genericDelegator.getEntityHelperName("SequenceValueItem");
+        ModelEntity seqEntity = genericDelegator.getModelEntity("SequenceValueItem");
+
+        final SequenceUtil sequencer = new SequenceUtil(helperName, seqEntity, "seqName", "seqId", false);
+        sequencer.setDefaultStrategy(SequenceUtil.Strategy.HILO);
+
+        doTestSequenceValueItemWithConcurrentThreads(sequencer);
+    }
+
+    @Test
+    public void testSequenceValueItemWithConcurrentThreadsUsingNativeSequence() {
+        String helperName = genericDelegator.getEntityHelperName("SequenceValueItem");
+        ModelEntity seqEntity = genericDelegator.getModelEntity("SequenceValueItem");
+
+        final SequenceUtil sequencer = new SequenceUtil(helperName, seqEntity, "seqName", "seqId", false);
+        sequencer.setDefaultStrategy(SequenceUtil.Strategy.NATIVE);
+
+        doTestSequenceValueItemWithConcurrentThreads(sequencer);
+    }
+
+    @Test
+    public void sequencesShouldDefaultToNativeSequencesWhereTheDatabaseHasThem() {
+        // Set up
+        String helperName = genericDelegator.getEntityHelperName("SequenceValueItem");
+        ModelEntity seqEntity = genericDelegator.getModelEntity("SequenceValueItem");
+        final SequenceUtil sequencer = new SequenceUtil(helperName, seqEntity, "seqName", "seqId", false);
+        System.setProperty("entity.sequence.strategy.TableSequence", "table");
+        try {
+            // Invoke and check
+            assertEquals(SequenceUtil.Strategy.NATIVE, sequencer.getStrategy("AnySequence"));
+            assertEquals(SequenceUtil.Strategy.TABLE, sequencer.getStrategy("TableSequence"));
+            sequencer.setDefaultStrategy(SequenceUtil.Strategy.HILO);
+            assertEquals(SequenceUtil.Strategy.HILO, sequencer.getStrategy("AnySequence"));
+        } finally {
+            System.clearProperty("entity.sequence.strategy.TableSequence");
+        }
+    }
+
+    @Test
+    public void nativeSequenceShouldCarryOnFromTheIdsHandedOutByTheSequenceTable() {
+        // Set up
+        String helperName = genericDelegator.getEntityHelperName("SequenceValueItem");
+        ModelEntity seqEntity = genericDelegator.getModelEntity("SequenceValueItem");
+        final String sequenceName = "SwitchedSequence" + UUID.randomUUID().toString().substring(0, 8);
+        final SequenceUtil tableSequencer = new SequenceUtil(helperName, seqEntity, "seqName", "seqId", false);
+        final long lastTableId = tableSequencer.getNextSeqId(sequenceName);
+        final SequenceUtil nativeSequencer = new SequenceUtil(helperName, seqEntity, "seqName", "seqId", false);
+        nativeSequencer.setStrategy(sequenceName, SequenceUtil.Strategy.NATIVE);
+
+        // Invoke
+        final Long firstNativeId = nativeSequencer.getNextSeqId(sequenceName);
+
+        // Check
+        assertNotNull(firstNativeId);
+        assertTrue("Expected an id after " + lastTableId + " but got " + firstNativeId, firstNativeId > lastTableId);
+    }
+
     private void doTestSequenceValueItemWithConcurrentThreads(SequenceUtil sequenceUtil) {
         UUID id = UUID.randomUUID();
         final String sequenceName = "BogusSequence" + id.toString();
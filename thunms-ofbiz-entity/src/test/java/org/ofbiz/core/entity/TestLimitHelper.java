@@ -101,6 +101,19 @@ public class TestLimitHelper {
         Assert.assertEquals("SELECT sq_.a,sq_.b,sq_.c,sq_.D FROM (SELECT abc.a, A12.b, ABC.c, a12.D FROM jira ORDER BY a) sq_ WHERE ROWNUM <= 5", helper.addLimitClause(sql, modelFields, 5));
     }
 
+    @Test
+    public void testAliasedColumnsAreSelectedByTheirAliasFromTheSubQuery() {
+        String sql = "SELECT T0.ID, T1.ID AS J1_0 FROM jiraissue T0 LEFT JOIN project T1 ON T0.PROJECT = T1.ID ORDER BY T0.ID";
+        LimitHelper helper = new LimitHelper("oracle");
+        ModelField field1 = mock(ModelField.class);
+        ModelField field2 = mock(ModelField.class);
+        when(field1.getColName()).thenReturn("T0.ID");
+        when(field2.getColName()).thenReturn("T1.ID");
+        when(field2.getColAlias()).thenReturn("J1_0");
+        List<ModelField> modelFields = Arrays.asList(field1, field2);
+        Assert.assertEquals("SELECT sq_.ID,sq_.J1_0 FROM (" + sql + ") sq_ WHERE ROWNUM <= 5", helper.addLimitClause(sql, modelFields, 5));
+    }
+
     @Test
     public void TestOracleProducesSensibleResultsWithNoFieldsProvided() {
         String sql = "SELECT abc.a, A12.b, ABC.c, a12.D FROM jira ORDER BY a";
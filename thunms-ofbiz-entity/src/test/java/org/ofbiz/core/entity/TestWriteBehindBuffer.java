@@ -0,0 +1,232 @@
+package org.ofbiz.core.entity;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.ofbiz.core.entity.GenericDelegator.getGenericDelegator;
+
+/**
+ * Integration test of WriteBehindBuffer using an in-memory database.
+ */
+public class TestWriteBehindBuffer {
+
+    // These names are from the test XML files in src/test/resources
+    private static final String DELEGATOR_NAME = "default";
+    private static final String HELPER_NAME = "defaultDS";
+    private static final String PROJECT_ENTITY = "Project";
+    private static final long AN_HOUR = 60 * 60 * 1000L;
+
+    private GenericDelegator genericDelegator;
+    private WriteBehindBuffer buffer;
+
+    @Before
+    public void setUp() throws Exception {
+        GenericDelegator.removeGenericDelegator(DELEGATOR_NAME);
+        GenericDelegator.unlock();
+        genericDelegator = getGenericDelegator(DELEGATOR_NAME);
+        genericDelegator.removeByCondition(PROJECT_ENTITY, null);
+        genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", 1L, "key", "ONE", "counter", 0L));
+        genericDelegator.create(PROJECT_ENTITY, ImmutableMap.<String, Object>of("id", 2L, "key", "TWO", "counter", 0L));
+        buffer = new WriteBehindBuffer(genericDelegator, 100, AN_HOUR);
+    }
+
+    @After
+    public void tearDown() {
+        buffer.close();
+        genericDelegator.getModelEntity(PROJECT_ENTITY).setWriteBehind(false);
+        // closes the delegator's own buffer
+        GenericDelegator.removeGenericDelegator(DELEGATOR_NAME);
+    }
+
+    private GenericValue findProject(final long id) throws GenericEntityException {
+        return genericDelegator.findByPrimaryKey(PROJECT_ENTITY, ImmutableMap.of("id", id));
+    }
+
+    @Test
+    public void repeatedStoresOfAKeyShouldBeWrittenOnce() throws Exception {
+        // Set up
+        final GenericValue project = findProject(1);
+        for (long counter = 1; counter <= 3; counter++) {
+            project.set("counter", counter);
+            buffer.add(project);
+        }
+        final GenericValue other = findProject(2);
+        other.set("counter", 7L);
+        buffer.add(other);
+
+        // Invoke
+        final int written = buffer.flush();
+
+        // Check
+        assertEquals(2, written);
+        assertEquals(4, buffer.getStoreCount());
+        assertEquals(2, buffer.getCoalescedCount());
+        assertEquals(0, buffer.getPendingCount());
+        assertEquals(0, buffer.getDroppedCount());
+        assertEquals(3L, findProject(1).getLong("counter").longValue());
+        assertEquals(7L, findProject(2).getLong("counter").longValue());
+    }
+
+    @Test
+    public void aFullBufferShouldBeFlushedByTheStoringThread() throws Exception {
+        // Set up
+        final WriteBehindBuffer smallBuffer = new WriteBehindBuffer(genericDelegator, 2, AN_HOUR);
+        try {
+            final GenericValue one = findProject(1);
+            one.set("counter", 5L);
+            final GenericValue two = findProject(2);
+            two.set("counter", 6L);
+
+            // Invoke
+            smallBuffer.add(one);
+            smallBuffer.add(two);
+
+            // Check
+            assertEquals(0, smallBuffer.getPendingCount());
+            assertEquals(1, smallBuffer.getFlushCount());
+            assertEquals(6L, findProject(2).getLong("counter").longValue());
+        } finally {
+            smallBuffer.close();
+        }
+    }
+
+    @Test
+    public void flushingAKeyShouldWriteOnlyTheValueHeldForIt() throws Exception {
+        // Set up
+        final GenericValue one = findProject(1);
+        one.set("counter", 9L);
+        buffer.add(one);
+        final GenericValue two = findProject(2);
+        two.set("counter", 10L);
+        buffer.add(two);
+
+        // Invoke
+        final int written = buffer.flush(one.getPrimaryKey());
+
+        // Check
+        assertEquals(1, written);
+        assertEquals(1, buffer.getPendingCount());
+        assertEquals(9L, findProject(1).getLong("counter").longValue());
+        assertEquals(0L, findProject(2).getLong("counter").longValue());
+    }
+
+    @Test
+    public void storesOfAWriteBehindEntityShouldBeVisibleInTheCacheAndWrittenOnFlush() throws Exception {
+        // Set up
+        genericDelegator.getModelEntity(PROJECT_ENTITY).setWriteBehind(true);
+        final GenericValue project = findProject(1);
+        project.set("counter", 42L);
+
+        // Invoke
+        genericDelegator.store(project);
+
+        // Check
+        assertEquals(42L, genericDelegator.findByPrimaryKeyCache(PROJECT_ENTITY, ImmutableMap.of("id", 1L)).getLong("counter").longValue());
+        genericDelegator.getWriteBehindBuffer().flush();
+        assertEquals(42L, findProject(1).getLong("counter").longValue());
+    }
+
+    @Test
+    public void storesInATransactionShouldBeWrittenRightAway() throws Exception {
+        // Set up
+        genericDelegator.getModelEntity(PROJECT_ENTITY).setWriteBehind(true);
+        final GenericValue project = findProject(1);
+        project.set("counter", 11L);
+
+        // Invoke
+        final boolean began = TransactionUtil.beginLocalTransaction(HELPER_NAME, -1);
+        try {
+            genericDelegator.store(project);
+        } finally {
+            TransactionUtil.commitLocalTransaction(began);
+        }
+
+        // Check
+        assertEquals(0, genericDelegator.getWriteBehindBuffer().getPendingCount());
+        assertEquals(11L, findProject(1).getLong("counter").longValue());
+    }
+
+    @Test
+    public void aValueHeldBackShouldBeWrittenEvenIfAStoreOfItsKeyInATransactionIsRolledBack() throws Exception {
+        // Set up
+        genericDelegator.getModelEntity(PROJECT_ENTITY).setWriteBehind(true);
+        final GenericValue project = findProject(1);
+        project.set("counter", 12L);
+        genericDelegator.store(project);
+
+        // Invoke
+        final boolean began = TransactionUtil.beginLocalTransaction(HELPER_NAME, -1);
+        try {
+            final GenericValue keyOnly = genericDelegator.makeValue(PROJECT_ENTITY, ImmutableMap.of("id", 1L, "key", "ROLLED BACK"));
+            genericDelegator.store(keyOnly);
+        } finally {
+            TransactionUtil.rollbackLocalTransaction(began);
+        }
+
+        // Check
+        assertEquals(0, genericDelegator.getWriteBehindBuffer().getPendingCount());
+        final GenericValue stored = findProject(1);
+        assertEquals(12L, stored.getLong("counter").longValue());
+        assertEquals("ONE", stored.getString("key"));
+    }
+
+    @Test
+    public void removingRowsByConditionShouldWriteTheValuesHeldBackFirst() throws Exception {
+        // Set up
+        genericDelegator.getModelEntity(PROJECT_ENTITY).setWriteBehind(true);
+        final GenericValue project = findProject(2);
+        project.set("key", "GONE");
+        genericDelegator.store(project);
+
+        // Invoke
+        genericDelegator.removeByAnd(PROJECT_ENTITY, ImmutableMap.of("key", "GONE"));
+
+        // Check
+        assertNull(findProject(2));
+        assertEquals(0, genericDelegator.getWriteBehindBuffer().getPendingCount());
+    }
+
+    @Test
+    public void valuesWhoseRowsWereRemovedShouldBeCountedAsDropped() throws Exception {
+        // Set up
+        final GenericValue one = findProject(1);
+        one.set("counter", 3L);
+        buffer.add(one);
+        final GenericValue two = findProject(2);
+        two.set("counter", 4L);
+        buffer.add(two);
+        genericDelegator.getEntityHelper(PROJECT_ENTITY).removeByPrimaryKey(two.getPrimaryKey());
+
+        // Invoke
+        final int written = buffer.flush();
+
+        // Check
+        assertEquals(1, written);
+        assertEquals(1, buffer.getWrittenCount());
+        assertEquals(1, buffer.getDroppedCount());
+        assertEquals(3L, findProject(1).getLong("counter").longValue());
+    }
+
+    @Test
+    public void removingTheDelegatorShouldCloseItsBuffer() throws Exception {
+        // Set up
+        genericDelegator.getModelEntity(PROJECT_ENTITY).setWriteBehind(true);
+        final GenericValue project = findProject(1);
+        project.set("counter", 8L);
+        genericDelegator.store(project);
+        final WriteBehindBuffer delegatorBuffer = genericDelegator.getWriteBehindBuffer();
+
+        // Invoke
+        GenericDelegator.removeGenericDelegator(DELEGATOR_NAME);
+
+        // Check
+        assertEquals(0, delegatorBuffer.getPendingCount());
+        assertEquals(1, delegatorBuffer.getWrittenCount());
+        assertEquals(8L, getGenericDelegator(DELEGATOR_NAME).findByPrimaryKey(PROJECT_ENTITY, ImmutableMap.of("id", 1L))
+                .getLong("counter").longValue());
+    }
+}
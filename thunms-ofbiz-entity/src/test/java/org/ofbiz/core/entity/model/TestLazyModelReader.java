@@ -0,0 +1,71 @@
+package org.ofbiz.core.entity.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of a ModelReader configured with lazy-load="true".
+ */
+public class TestLazyModelReader {
+
+    private ModelReader eagerReader;
+    private ModelReader lazyReader;
+
+    @Before
+    public void setUp() throws Exception {
+        eagerReader = new ModelReader("main");
+        lazyReader = new ModelReader("lazy");
+    }
+
+    @Test
+    public void startupShouldOnlyIndexTheEntities() throws Exception {
+        // Invoke
+        final LazyEntityCache entityCache = (LazyEntityCache) lazyReader.getEntityCache();
+
+        // Check
+        assertEquals(eagerReader.getEntityNames(), lazyReader.getEntityNames());
+        assertEquals(0, entityCache.getLoadedCount());
+        assertEquals(eagerReader.getEntityResourceHandler("Issue"), lazyReader.getEntityResourceHandler("Issue"));
+    }
+
+    @Test
+    public void entityShouldBeBuiltOnceOnFirstAccess() throws Exception {
+        // Set up
+        final LazyEntityCache entityCache = (LazyEntityCache) lazyReader.getEntityCache();
+
+        // Invoke
+        final ModelEntity issue = lazyReader.getModelEntity("Issue");
+
+        // Check
+        assertEquals(1, entityCache.getLoadedCount());
+        assertSame(issue, lazyReader.getModelEntity("Issue"));
+        assertSame(lazyReader, issue.getModelReader());
+    }
+
+    @Test
+    public void lazilyBuiltEntitiesShouldMatchEagerlyBuiltOnes() throws Exception {
+        for (String entityName : eagerReader.getEntityNames()) {
+            // Invoke
+            final ModelEntity eager = eagerReader.getModelEntity(entityName);
+            final ModelEntity lazy = lazyReader.getModelEntity(entityName);
+
+            // Check
+            assertEquals(eager.getPlainTableName(), lazy.getPlainTableName());
+            assertEquals(eager.getTitle(), lazy.getTitle());
+            assertEquals(eager.getAuthor(), lazy.getAuthor());
+            assertEquals(eager.getFieldsSize(), lazy.getFieldsSize());
+            for (int i = 0; i < eager.getFieldsSize(); i++) {
+                assertEquals(eager.getField(i).getName(), lazy.getField(i).getName());
+                assertEquals(eager.getField(i).getColName(), lazy.getField(i).getColName());
+                assertEquals(eager.getField(i).getIsPk(), lazy.getField(i).getIsPk());
+            }
+            assertEquals(eager.getRelationsSize(), lazy.getRelationsSize());
+            assertEquals(eager.getIndexesSize(), lazy.getIndexesSize());
+        }
+        assertTrue(lazyReader.getEntityCache() instanceof LazyEntityCache);
+    }
+}
@@ -0,0 +1,53 @@
+package org.ofbiz.core.entity.model;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ofbiz.core.config.ResourceHandler;
+import org.ofbiz.core.util.UtilXml;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of ModelResourceIndex.
+ */
+public class TestModelResourceIndex {
+
+    private ResourceHandler handler;
+
+    @Before
+    public void setUp() {
+        handler = new ResourceHandler("entityengine.xml", "maincp", "entitydefs/entitymodel-multibyte.xml") {
+            @Override
+            public Document getDocument() {
+                throw new AssertionError("The whole resource should not be parsed");
+            }
+        };
+    }
+
+    @Test
+    public void entitiesShouldBeFoundAtTheirIndexedPositionsAfterMultiByteCharacters() throws Exception {
+        // Set up
+        final ModelResourceIndex index = ModelResourceIndex.scan(handler);
+
+        // Invoke
+        final Element first = index.readEntityElement("Première");
+        final Element second = index.readEntityElement("Second");
+        final Element third = index.readEntityElement("Third");
+
+        // Check
+        assertEquals(Arrays.asList("Première", "Second", "Third"), new ArrayList<String>(index.getEntityNames()));
+        assertEquals("premiere", first.getAttribute("table-name"));
+        assertEquals("Première entité", first.getAttribute("title"));
+        assertEquals("Überschrift 🚀 – first", UtilXml.childElementValue(first, "description"));
+        assertEquals("二番目の エンティティ", UtilXml.childElementValue(second, "description"));
+        assertEquals(2, UtilXml.childElementList(second, "field").size());
+        assertEquals("third", third.getAttribute("table-name"));
+        assertEquals("Modèle d'entités – 試験",
+                UtilXml.childElementValue(second.getOwnerDocument().getDocumentElement(), "title"));
+    }
+}
@@ -0,0 +1,143 @@
+package org.ofbiz.core.entity.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ofbiz.core.config.ResourceHandler;
+import org.ofbiz.core.entity.config.EntityConfigUtil;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of ModelSnapshot.
+ */
+public class TestModelSnapshot {
+
+    private ModelReader reader;
+    private File snapshotFile;
+
+    @Before
+    public void setUp() throws Exception {
+        reader = ModelReader.getModelReader("default");
+        snapshotFile = File.createTempFile("entitymodel", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        snapshotFile.delete();
+    }
+
+    @Test
+    public void entitiesReadFromSnapshotShouldMatchTheSourceModel() throws Exception {
+        // Set up
+        ModelSnapshot.write(snapshotFile, "hash", reader.getEntityCache(), reader.entityResourceHandlerMap);
+
+        // Invoke
+        final ModelSnapshot snapshot = ModelSnapshot.open(snapshotFile);
+
+        // Check
+        assertNotNull(snapshot);
+        assertEquals("hash", snapshot.getSourceHash());
+        assertEquals(reader.getEntityCache().keySet(), snapshot.getEntityNames());
+        final ModelEntity original = reader.getModelEntity("Project");
+        final ModelEntity copy = snapshot.readEntity("Project");
+        assertEquals(original.getPlainTableName(), copy.getPlainTableName());
+        assertEquals(original.getFieldsSize(), copy.getFieldsSize());
+        assertEquals(original.getPksSize(), copy.getPksSize());
+        assertEquals(original.getField("key").getColName(), copy.getField("key").getColName());
+        assertEquals(original.getRelationsSize(), copy.getRelationsSize());
+        assertEquals(original.getRelation(0).getRelEntityName(), copy.getRelation(0).getRelEntityName());
+        assertEquals(original.getIndexesSize(), copy.getIndexesSize());
+        assertEquals(reader.getEntityResourceHandler("Project").getLocation(), snapshot.getLocation("Project"));
+    }
+
+    @Test
+    public void readingAnUnknownEntityShouldReturnNull() throws Exception {
+        // Set up
+        ModelSnapshot.write(snapshotFile, "hash", reader.getEntityCache(), reader.entityResourceHandlerMap);
+
+        // Invoke and check
+        assertNull(ModelSnapshot.open(snapshotFile).readEntity("NoSuchEntity"));
+    }
+
+    @Test
+    public void openingAMissingOrForeignFileShouldReturnNull() throws Exception {
+        // Invoke and check
+        assertNull(ModelSnapshot.open(snapshotFile));
+        assertTrue(snapshotFile.delete());
+        assertNull(ModelSnapshot.open(snapshotFile));
+    }
+
+    @Test
+    public void sourceHashShouldDependOnTheResources() throws Exception {
+        // Set up
+        final ResourceHandler model = new ResourceHandler(EntityConfigUtil.ENTITY_ENGINE_XML_FILENAME, "maincp", "entitydefs/entitymodel.xml");
+        final ResourceHandler group = new ResourceHandler(EntityConfigUtil.ENTITY_ENGINE_XML_FILENAME, "maincp", "entitydefs/entitygroup.xml");
+
+        // Invoke
+        final String modelHash = ModelSnapshot.computeSourceHash(Collections.singletonList(model));
+
+        // Check
+        assertEquals(modelHash, ModelSnapshot.computeSourceHash(Collections.singletonList(model)));
+        assertFalse(modelHash.equals(ModelSnapshot.computeSourceHash(Collections.singletonList(group))));
+    }
+
+    @Test
+    public void classesHashShouldDependOnTheClassesNamed() throws Exception {
+        // Set up
+        final String suspending = "org.ofbiz.core.entity.jdbc.alternative.SuspendingAlternativeAction";
+        final String shouldNotRun = "org.ofbiz.core.entity.jdbc.alternative.ShouldNotRunIndexAlternativeAction";
+
+        // Invoke
+        final String hash = ModelSnapshot.computeClassesHash(Collections.singletonList(suspending));
+
+        // Check
+        assertEquals(hash, ModelSnapshot.computeClassesHash(Collections.singletonList(suspending)));
+        assertFalse(hash.equals(ModelSnapshot.computeClassesHash(Collections.singletonList(shouldNotRun))));
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void classesHashOfAClassThatIsGoneShouldFail() throws Exception {
+        // Invoke
+        ModelSnapshot.computeClassesHash(Collections.singletonList("org.ofbiz.core.entity.NoSuchAction"));
+    }
+
+    @Test
+    public void readerShouldWriteItsSnapshotAndServeTheEntitiesFromItOnTheNextStart() throws Exception {
+        // Set up
+        final ModelReader firstReader = new ModelReader("snapshot");
+        final File readerSnapshot = new File(firstReader.snapshotLocation);
+        readerSnapshot.delete();
+        try {
+            firstReader.getEntityCache();
+            assertTrue(readerSnapshot.isFile());
+
+            // Invoke
+            final ModelReader secondReader = new ModelReader("snapshot");
+            final ModelEntity issue = secondReader.getModelEntity("Issue");
+
+            // Check
+            assertTrue(secondReader.getEntityCache() instanceof LazyEntityCache);
+            assertEquals(firstReader.getEntityNames(), secondReader.getEntityNames());
+            assertSame(secondReader, issue.getModelReader());
+            final ModelEntity original = firstReader.getModelEntity("Issue");
+            assertEquals(original.getPlainTableName(), issue.getPlainTableName());
+            assertEquals(original.getFieldsSize(), issue.getFieldsSize());
+            for (int i = 0; i < original.getFieldsSize(); i++) {
+                assertEquals(original.getField(i).getName(), issue.getField(i).getName());
+                assertEquals(original.getField(i).getColName(), issue.getField(i).getColName());
+            }
+            assertEquals(firstReader.getEntityResourceHandler("Issue"), secondReader.getEntityResourceHandler("Issue"));
+        } finally {
+            readerSnapshot.delete();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.ofbiz.core.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test of CachedClassLoader.
+ */
+@SuppressWarnings("deprecation")
+public class TestCachedClassLoader {
+
+    private static final String MISSING_CLASS = "com.example.cachedclassloader.Missing";
+    private static final String MISSING_RESOURCE = "com/example/cachedclassloader/missing.properties";
+
+    private CachedClassLoader loader;
+
+    @Before
+    public void setUp() {
+        loader = new CachedClassLoader(getClass().getClassLoader(), "test");
+    }
+
+    @Test
+    public void aMissingClassShouldBeCachedAsMissing() {
+        // Invoke
+        assertClassNotFound();
+        assertClassNotFound();
+
+        // Check
+        assertEquals(1, loader.getClassMissCount());
+        assertEquals(1, loader.getBadClassHitCount());
+        assertTrue(loader.localBadClassNames.contains(MISSING_CLASS));
+        synchronized (loader.localBadClassNameSet) {
+            assertTrue(loader.localBadClassNameSet.contains(MISSING_CLASS));
+        }
+        assertFalse(CachedClassLoader.globalBadClassNames.contains(MISSING_CLASS));
+    }
+
+    @Test
+    public void aMissingGlobalClassShouldBeCachedAsMissingForAllLoaders() {
+        // Set up
+        final String missingGlobalClass = "org.ofbiz.core.util.TestCachedClassLoaderMissing";
+
+        // Invoke
+        try {
+            loader.loadClass(missingGlobalClass);
+            fail("Expected a ClassNotFoundException");
+        } catch (ClassNotFoundException expected) {
+            // expected
+        }
+
+        // Check
+        assertTrue(CachedClassLoader.globalBadClassNames.contains(missingGlobalClass));
+        synchronized (CachedClassLoader.globalBadClassNameSet) {
+            assertTrue(CachedClassLoader.globalBadClassNameSet.contains(missingGlobalClass));
+        }
+        assertFalse(loader.localBadClassNames.contains(missingGlobalClass));
+    }
+
+    @Test
+    public void aFoundClassShouldBeCached() throws Exception {
+        // Invoke
+        final Class<?> loaded = loader.loadClass(TestMapComparator.class.getName());
+
+        // Check
+        assertSame(TestMapComparator.class, loaded);
+        assertSame(loaded, loader.loadClass(TestMapComparator.class.getName()));
+        assertEquals(1, loader.getClassMissCount());
+        assertEquals(1, loader.getClassHitCount());
+    }
+
+    @Test
+    public void aMissingResourceShouldBeCachedAsMissing() {
+        // Invoke
+        assertNull(loader.getResource(MISSING_RESOURCE));
+        assertNull(loader.getResource(MISSING_RESOURCE));
+
+        // Check
+        assertEquals(1, loader.getResourceMissCount());
+        assertEquals(1, loader.getBadResourceHitCount());
+        assertTrue(loader.localBadResourceNames.contains(MISSING_RESOURCE));
+        synchronized (loader.localBadResourceNameSet) {
+            assertTrue(loader.localBadResourceNameSet.contains(MISSING_RESOURCE));
+        }
+    }
+
+    @Test
+    public void aFoundResourceShouldBeCached() {
+        // Invoke
+        final URL found = loader.getResource("entityengine.xml");
+
+        // Check
+        assertSame(found, loader.getResource("entityengine.xml"));
+        assertEquals(1, loader.getResourceMissCount());
+        assertEquals(1, loader.getResourceHitCount());
+        assertFalse(loader.localBadResourceNames.contains("entityengine.xml"));
+    }
+
+    private void assertClassNotFound() {
+        try {
+            loader.loadClass(MISSING_CLASS);
+            fail("Expected a ClassNotFoundException");
+        } catch (ClassNotFoundException expected) {
+            // expected
+        }
+    }
+}
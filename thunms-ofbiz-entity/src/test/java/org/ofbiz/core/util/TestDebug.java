@@ -0,0 +1,123 @@
+package org.ofbiz.core.util;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of Debug, against the levels configured in the debug.properties of the tests: verbose, timing, info and
+ * important are off; warning, error and fatal are on.
+ */
+public class TestDebug {
+
+    private static final String MODULE = TestDebug.class.getName();
+
+    private final List<LoggingEvent> events = new ArrayList<LoggingEvent>();
+    private final AppenderSkeleton appender = new AppenderSkeleton() {
+        @Override
+        protected void append(final LoggingEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        final Logger logger = Logger.getLogger(MODULE);
+        logger.setLevel(Level.ALL);
+        logger.addAppender(appender);
+    }
+
+    @After
+    public void tearDown() {
+        final Logger logger = Logger.getLogger(MODULE);
+        logger.removeAppender(appender);
+        logger.setLevel(null);
+    }
+
+    @Test
+    public void levelsShouldBeOnAsConfigured() {
+        // Check
+        assertTrue(Debug.isOn(Debug.ALWAYS));
+        assertFalse(Debug.verboseOn());
+        assertFalse(Debug.timingOn());
+        assertFalse(Debug.infoOn());
+        assertFalse(Debug.importantOn());
+        assertTrue(Debug.warningOn());
+        assertTrue(Debug.errorOn());
+        assertTrue(Debug.fatalOn());
+    }
+
+    @Test
+    public void messagesOfLevelsThatAreOffShouldBeSuppressed() {
+        // Invoke
+        Debug.logVerbose("verbose", MODULE);
+        Debug.logTiming("timing", MODULE);
+        Debug.logInfo("info", MODULE);
+        Debug.logImportant("important", MODULE);
+
+        // Check
+        assertEquals(0, events.size());
+    }
+
+    @Test
+    public void messagesOfLevelsThatAreOnShouldBeEmittedAtTheirLog4JLevels() {
+        // Set up
+        final Throwable cause = new IllegalStateException();
+
+        // Invoke
+        Debug.log(Debug.ALWAYS, null, "always", MODULE);
+        Debug.logWarning("warning", MODULE);
+        Debug.logError(cause, "error", MODULE);
+        Debug.logFatal("fatal", MODULE);
+
+        // Check
+        assertEquals(4, events.size());
+        assertEvent("always", Level.INFO, events.get(0));
+        assertEvent("warning", Level.WARN, events.get(1));
+        assertEvent("error", Level.ERROR, events.get(2));
+        assertEquals(cause, events.get(2).getThrowableInformation().getThrowable());
+        assertEvent("fatal", Level.FATAL, events.get(3));
+    }
+
+    @Test
+    public void suppliedMessagesShouldOnlyBeBuiltForLevelsThatAreOn() {
+        // Set up
+        final AtomicInteger built = new AtomicInteger();
+
+        // Invoke
+        Debug.logVerbose(() -> "verbose " + built.incrementAndGet(), MODULE);
+        Debug.logInfo(() -> "info " + built.incrementAndGet(), MODULE);
+        Debug.logWarning(() -> "warning " + built.incrementAndGet(), MODULE);
+
+        // Check
+        assertEquals(1, built.get());
+        assertEquals(1, events.size());
+        assertEvent("warning 1", Level.WARN, events.get(0));
+    }
+
+    private static void assertEvent(final String message, final Level level, final LoggingEvent event) {
+        assertEquals(message, event.getMessage());
+        assertEquals(level, event.getLevel());
+    }
+}
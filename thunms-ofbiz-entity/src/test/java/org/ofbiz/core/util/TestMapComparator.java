@@ -0,0 +1,121 @@
+package org.ofbiz.core.util;
+
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of MapComparator, as used by UtilMisc.sortMaps.
+ */
+public class TestMapComparator {
+
+    @Test
+    public void mapsShouldBeSortedOnTheFirstKeyThenTheNext() {
+        // Set up
+        final List<Map<String, Object>> maps = Arrays.asList(
+                map("name", "b", "rank", 2),
+                map("name", "a", "rank", 3),
+                map("name", "b", "rank", 1),
+                map("name", "a", "rank", 1));
+
+        // Invoke
+        final List<Map<String, Object>> sorted = UtilMisc.sortMaps(maps, Arrays.asList("name", "rank"));
+
+        // Check
+        assertEquals(Arrays.asList(maps.get(3), maps.get(1), maps.get(2), maps.get(0)), sorted);
+        assertEquals("The list passed should be left as it was", "b", maps.get(0).get("name"));
+    }
+
+    @Test
+    public void theOrderOfTheKeysShouldDecideWhichOneSortsFirst() {
+        // Set up
+        final List<Map<String, Object>> maps = Arrays.asList(
+                map("name", "a", "rank", 2),
+                map("name", "b", "rank", 1));
+
+        // Invoke
+        final List<Map<String, Object>> byName = UtilMisc.sortMaps(maps, Arrays.asList("name", "rank"));
+        final List<Map<String, Object>> byRank = UtilMisc.sortMaps(maps, Arrays.asList("rank", "name"));
+
+        // Check
+        assertEquals(Arrays.asList(maps.get(0), maps.get(1)), byName);
+        assertEquals(Arrays.asList(maps.get(1), maps.get(0)), byRank);
+    }
+
+    @Test
+    public void mapsInDescendingOrderShouldBeSortedAscending() {
+        // Set up
+        final List<Map<String, Object>> maps = new ArrayList<Map<String, Object>>();
+        for (int i = 5; i > 0; i--) {
+            maps.add(map("amount", (double) i, "when", new Timestamp(i * 1000L)));
+        }
+
+        // Invoke
+        final List<Map<String, Object>> byAmount = UtilMisc.sortMaps(maps, Collections.singletonList("amount"));
+        final List<Map<String, Object>> byWhen = UtilMisc.sortMaps(maps, Collections.singletonList("when"));
+
+        // Check
+        final List<Map<String, Object>> reversed = new ArrayList<Map<String, Object>>(maps);
+        Collections.reverse(reversed);
+        assertEquals(reversed, byAmount);
+        assertEquals(reversed, byWhen);
+    }
+
+    @Test
+    public void nullAndMissingValuesShouldSortAfterAllOthers() {
+        // Set up
+        final Map<String, Object> missing = map("rank", 1);
+        final Map<String, Object> nullName = map("name", null, "rank", 2);
+        final Map<String, Object> named = map("name", "z", "rank", 3);
+        final MapComparator<String> comparator = new MapComparator<String>(Arrays.asList("name", "rank"));
+
+        // Invoke
+        final List<Map<String, Object>> sorted = UtilMisc.sortMaps(Arrays.asList(missing, nullName, named), Arrays.asList("name", "rank"));
+
+        // Check
+        assertEquals(Arrays.asList(named, missing, nullName), sorted);
+        assertTrue(comparator.compare(named, nullName) < 0);
+        assertTrue(comparator.compare(nullName, named) > 0);
+        assertEquals("A null value should compare the same as a missing one", 0,
+                comparator.compare(map("name", null), new HashMap<String, Object>()));
+    }
+
+    @Test
+    public void valuesOfClassesThatAreNotComparedShouldCompareEqual() {
+        // Set up
+        final MapComparator<String> comparator = new MapComparator<String>(Collections.singletonList("value"));
+
+        // Invoke
+        final int result = comparator.compare(map("value", new Object()), map("value", new Object()));
+
+        // Check
+        assertEquals(0, result);
+    }
+
+    @Test
+    public void sortingWithoutKeysShouldReturnNull() {
+        // Invoke
+        final List<Map<String, Object>> sorted = UtilMisc.sortMaps(Arrays.asList(map("name", "b"), map("name", "a")), Collections.<String>emptyList());
+
+        // Check
+        assertNull(sorted);
+    }
+
+    private static Map<String, Object> map(final Object... keysAndValues) {
+        final Map<String, Object> map = new HashMap<String, Object>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+}
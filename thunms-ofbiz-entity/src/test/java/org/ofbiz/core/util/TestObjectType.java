@@ -0,0 +1,222 @@
+package org.ofbiz.core.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.ofbiz.core.util.ObjectType.simpleTypeConvert;
+
+/**
+ * Unit test of ObjectType.simpleTypeConvert, over each source class, target type, format and locale.
+ */
+public class TestObjectType {
+
+    private static final String[][] TYPE_NAMES = {
+            {"String", "java.lang.String"},
+            {"Boolean", "java.lang.Boolean"},
+            {"Locale", "java.util.Locale"},
+            {"Double", "java.lang.Double"},
+            {"Float", "java.lang.Float"},
+            {"Long", "java.lang.Long"},
+            {"Integer", "java.lang.Integer"},
+            {"Date", "java.sql.Date"},
+            {"Time", "java.sql.Time"},
+            {"Timestamp", "java.sql.Timestamp"}
+    };
+
+    private Locale defaultLocale;
+    private TimeZone defaultTimeZone;
+
+    @Before
+    public void setUp() {
+        defaultLocale = Locale.getDefault();
+        defaultTimeZone = TimeZone.getDefault();
+        Locale.setDefault(Locale.US);
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(defaultLocale);
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    private static void assertConverts(final Object expected, final Object obj, final String type, final String format,
+                                       final Locale locale) throws Exception {
+        assertEquals(obj + " to " + type + " with " + format + " and " + locale, expected, simpleTypeConvert(obj, type, format, locale));
+    }
+
+    private static void assertNotConverted(final String message, final Object obj, final String type) {
+        try {
+            simpleTypeConvert(obj, type, null, null);
+            fail("Expected " + obj + " not to convert to " + type);
+        } catch (GeneralException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    @Test
+    public void stringsShouldBeParsedWithTheFormatOrLocale() throws Exception {
+        assertConverts("1,234.5", "1,234.5", "String", null, null);
+        assertConverts(true, "TRUE", "Boolean", null, null);
+        assertConverts(false, "yes", "Boolean", null, null);
+        assertConverts(Locale.CANADA_FRENCH, "fr_CA", "Locale", null, null);
+        assertConverts(1234.5, "1,234.5", "Double", null, null);
+        assertConverts(1234.5, "1.234,5", "Double", null, Locale.GERMANY);
+        assertConverts(1234.5f, "1,234.5", "Float", null, Locale.US);
+        assertConverts(1234L, "1,234.7", "Long", null, null);
+        assertConverts(1234, "1.234", "Integer", null, Locale.GERMANY);
+        assertConverts(Date.valueOf("2024-02-29"), "2024-02-29", "Date", null, null);
+        assertConverts(Date.valueOf("2024-02-29"), "2/29/24", "Date", null, null);
+        assertConverts(Date.valueOf("2024-02-29"), "29.02.24", "Date", null, Locale.GERMANY);
+        assertConverts(Date.valueOf("2024-02-29"), "29/02/2024", "Date", "dd/MM/yyyy", null);
+        assertConverts(Time.valueOf("13:45:30"), "13:45:30", "Time", null, null);
+        assertConverts(Time.valueOf("13:45:00"), "1:45 PM", "Time", null, null);
+        assertConverts(Time.valueOf("13:45:00"), "13.45", "Time", "HH.mm", null);
+        assertConverts(Timestamp.valueOf("2024-02-29 13:45:30.5"), "2024-02-29 13:45:30.5", "Timestamp", null, null);
+        assertConverts(Timestamp.valueOf("2024-02-29 13:45:00"), "2/29/24 1:45 PM", "Timestamp", null, null);
+        assertConverts(Timestamp.valueOf("2024-02-29 13:45:00"), "2024-02-29T13:45", "Timestamp", "yyyy-MM-dd'T'HH:mm", null);
+    }
+
+    @Test
+    public void anEmptyStringShouldOnlyBeAStringAsItself() throws Exception {
+        assertConverts("", "", "String", null, null);
+        assertConverts("", "", "PlainString", null, null);
+        for (final String[] names : TYPE_NAMES) {
+            if (!"String".equals(names[0])) {
+                assertNull(simpleTypeConvert("", names[0], null, null));
+            }
+        }
+    }
+
+    @Test
+    public void numbersShouldBeFormattedForTheLocaleAndRounded() throws Exception {
+        assertConverts("1,234.5", 1234.5, "String", null, null);
+        assertConverts("1.234,5", 1234.5, "String", null, Locale.GERMANY);
+        assertConverts(1234.5f, 1234.5, "Float", null, null);
+        assertConverts(1235L, 1234.5, "Long", null, null);
+        assertConverts(1235, 1234.5, "Integer", null, null);
+
+        assertConverts("2.5", 2.5f, "String", null, null);
+        assertConverts(2.5, 2.5f, "Double", null, null);
+        assertConverts(3L, 2.5f, "Long", null, null);
+        assertConverts(3, 2.5f, "Integer", null, null);
+
+        assertConverts("1,234,567", 1234567L, "String", null, null);
+        assertConverts("1.234.567", 1234567L, "String", null, Locale.GERMANY);
+        assertConverts(1234567.0, 1234567L, "Double", null, null);
+        assertConverts(1234567.0f, 1234567L, "Float", null, null);
+        assertConverts(1234567, 1234567L, "Integer", null, null);
+
+        assertConverts("1,234", 1234, "String", null, null);
+        assertConverts(1234.0, 1234, "Double", null, null);
+        assertConverts(1234.0f, 1234, "Float", null, null);
+        assertConverts(1234L, 1234, "Long", null, null);
+    }
+
+    @Test
+    public void floatsShouldConvertToTheFullyQualifiedTypeNamesToo() throws Exception {
+        assertConverts("2.5", 2.5f, "java.lang.String", null, null);
+        assertConverts(2.5, 2.5f, "java.lang.Double", null, null);
+        assertConverts(2.5f, 2.5f, "java.lang.Float", null, null);
+        assertConverts(3L, 2.5f, "java.lang.Long", null, null);
+        assertConverts(3, 2.5f, "java.lang.Integer", null, null);
+    }
+
+    @Test
+    public void datesShouldBeFormattedWithTheFormat() throws Exception {
+        final Date date = Date.valueOf("2024-02-29");
+        final Time time = Time.valueOf("13:45:30");
+        final Timestamp timestamp = Timestamp.valueOf("2024-02-29 13:45:30.5");
+
+        assertConverts("2024-02-29", date, "String", null, null);
+        assertConverts("29.02.2024", date, "String", "dd.MM.yyyy", null);
+        assertConverts(new Timestamp(date.getTime()), date, "Timestamp", null, null);
+
+        assertConverts("13:45:30", time, "String", null, null);
+        assertConverts("13h45", time, "String", "HH'h'mm", null);
+        assertConverts(new Timestamp(time.getTime()), time, "Timestamp", null, null);
+
+        assertConverts("2024-02-29 13:45:30.5", timestamp, "String", null, null);
+        assertConverts("2024-02-29 13:45", timestamp, "String", "yyyy-MM-dd HH:mm", null);
+        assertConverts(new Date(timestamp.getTime()), timestamp, "Date", null, null);
+        assertConverts(new Time(timestamp.getTime()), timestamp, "Time", null, null);
+    }
+
+    @Test
+    public void formatsShouldFollowTheDefaultTimeZone() throws Exception {
+        final Timestamp timestamp = Timestamp.valueOf("2024-02-29 13:45:00");
+        assertConverts("13:45", timestamp, "String", "HH:mm", null);
+
+        // Invoke
+        TimeZone.setDefault(TimeZone.getTimeZone("GMT+02:00"));
+
+        // Check
+        assertConverts("15:45", timestamp, "String", "HH:mm", null);
+    }
+
+    @Test
+    public void booleansAndLocalesShouldConvertToTheirOwnTypesAndString() throws Exception {
+        assertConverts("true", Boolean.TRUE, "String", null, null);
+        assertConverts(1, Boolean.TRUE, "Integer", null, null);
+        assertConverts(0, Boolean.FALSE, "Integer", null, null);
+        assertConverts(Boolean.FALSE, Boolean.FALSE, "Boolean", null, null);
+        assertConverts("fr_CA", Locale.CANADA_FRENCH, "String", null, null);
+        assertConverts(Locale.CANADA_FRENCH, Locale.CANADA_FRENCH, "Locale", null, null);
+    }
+
+    @Test
+    public void plainStringAndObjectShouldConvertAnything() throws Exception {
+        final Object obj = new StringBuilder("anything");
+        assertConverts("anything", obj, "PlainString", null, null);
+        assertSame(obj, simpleTypeConvert(obj, "Object", null, null));
+        assertNull(simpleTypeConvert(null, "Integer", null, null));
+    }
+
+    @Test
+    public void subclassesShouldConvertLikeTheirSuperclass() throws Exception {
+        final Date date = new Date(Date.valueOf("2024-02-29").getTime()) {};
+        assertConverts("2024-02-29", date, "String", null, null);
+        assertConverts("29.02.2024", date, "String", "dd.MM.yyyy", null);
+    }
+
+    @Test
+    public void unsupportedConversionsShouldBeReported() throws Exception {
+        assertNotConverted("Conversion from Boolean to Double not currently supported", Boolean.TRUE, "Double");
+        assertNotConverted("Conversion from Date to Long not currently supported", Date.valueOf("2024-02-29"), "Long");
+        assertNotConverted("Conversion from String to Foo not currently supported", "x", "Foo");
+        assertNotConverted("Conversion from java.lang.StringBuilder to String not currently supported", new StringBuilder(), "String");
+        assertNotConverted("Could not convert x to Double: ", "x", "Double");
+        assertNotConverted("Could not convert xx_YY_ZZ_1 to Locale: ", "xx_YY_ZZ_1", "Locale");
+    }
+
+    @Test
+    public void theShortAndFullTypeNamesShouldConvertAlike() throws Exception {
+        final Object[] sources = {"1,234.5", "true", "2024-02-29", 1234.5, 2.5f, 1234L, 1234, Boolean.TRUE, Locale.US,
+                Date.valueOf("2024-02-29"), Time.valueOf("13:45:30"), Timestamp.valueOf("2024-02-29 13:45:30.5")};
+        for (final Object source : sources) {
+            for (final String[] names : TYPE_NAMES) {
+                assertEquals(source + " to " + names[0], convertOrFail(source, names[0]), convertOrFail(source, names[1]));
+            }
+        }
+    }
+
+    private static Object convertOrFail(final Object obj, final String type) {
+        try {
+            return simpleTypeConvert(obj, type, null, null);
+        } catch (GeneralException e) {
+            return GeneralException.class;
+        }
+    }
+}
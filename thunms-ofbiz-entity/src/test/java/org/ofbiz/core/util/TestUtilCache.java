@@ -0,0 +1,34 @@
+package org.ofbiz.core.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of UtilCache.
+ */
+public class TestUtilCache {
+
+    @Test
+    public void removeIfShouldRemoveOnlyTheLinesWhoseKeysMatch() {
+        // Set up
+        final UtilCache<String, String> cache = new UtilCache<String, String>(10, 0);
+        cache.put("Entity:1", "one");
+        cache.put("Other:2", "two");
+        cache.put("Entity:3", "three");
+
+        // Invoke
+        final int removed = cache.removeIf(key -> key.startsWith("Entity:"));
+
+        // Check
+        assertEquals(2, removed);
+        assertEquals(1, cache.size());
+        assertFalse(cache.containsKey("Entity:1"));
+        assertTrue(cache.containsKey("Other:2"));
+        assertFalse(cache.containsKey("Entity:3"));
+        assertEquals(1, cache.keyLRUList.size());
+        assertEquals("Other:2", cache.keyLRUList.getFirst());
+    }
+}
@@ -0,0 +1,117 @@
+package org.ofbiz.core.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit test of the caching of properties files by UtilProperties.
+ */
+public class TestUtilProperties {
+
+    private static final String BUNDLE = "utilproperties-test";
+    private static final String OTHER_BUNDLE = "utilproperties-test_extra";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private String resource;
+    private long lastModified;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.newFile("reloaded.properties");
+        lastModified = file.lastModified();
+        resource = file.getPath();
+        write("value=one");
+        UtilProperties.clearCache();
+    }
+
+    @After
+    public void tearDown() {
+        UtilProperties.setReloadCheckMillis(UtilProperties.RELOAD_CHECK_MILLIS);
+        UtilProperties.clearCache();
+    }
+
+    @Test
+    public void aModifiedFileShouldBeReloaded() throws Exception {
+        // Set up
+        UtilProperties.setReloadCheckMillis(1);
+        assertEquals("one", UtilProperties.getPropertyValue(resource, "value"));
+        write("value=two");
+        Thread.sleep(10);
+
+        // Invoke
+        final String value = UtilProperties.getPropertyValue(resource, "value");
+
+        // Check
+        assertEquals("two", value);
+    }
+
+    @Test
+    public void aModifiedFileShouldNotBeReloadedWhenItIsNotChecked() throws Exception {
+        // Set up
+        UtilProperties.setReloadCheckMillis(0);
+        assertEquals("one", UtilProperties.getPropertyValue(resource, "value"));
+        write("value=two");
+
+        // Invoke
+        final String beforeClear = UtilProperties.getPropertyValue(resource, "value");
+        UtilProperties.clearCache(resource);
+        final String afterClear = UtilProperties.getPropertyValue(resource, "value");
+
+        // Check
+        assertEquals("one", beforeClear);
+        assertEquals("two", afterClear);
+    }
+
+    @Test
+    public void clearingABundleShouldEvictExactlyItsOwnLocaleFiles() {
+        // Set up
+        final Properties bundle = UtilProperties.getProperties(BUNDLE);
+        final Properties french = UtilProperties.getProperties(BUNDLE, Locale.FRENCH);
+        final Properties german = UtilProperties.getProperties(BUNDLE, Locale.GERMAN);
+        final Properties otherBundle = UtilProperties.getProperties(OTHER_BUNDLE);
+        final Properties otherFrench = UtilProperties.getProperties(OTHER_BUNDLE, Locale.FRENCH);
+        assertEquals("bonjour", french.getProperty("greeting"));
+        assertSame("A locale without a file should use the bundle's own file", bundle, german);
+
+        // Invoke
+        UtilProperties.clearCache(BUNDLE);
+
+        // Check
+        assertNotSame(bundle, UtilProperties.getProperties(BUNDLE));
+        assertNotSame(french, UtilProperties.getProperties(BUNDLE, Locale.FRENCH));
+        assertNotSame(german, UtilProperties.getProperties(BUNDLE, Locale.GERMAN));
+        assertSame(otherBundle, UtilProperties.getProperties(OTHER_BUNDLE));
+        assertSame(otherFrench, UtilProperties.getProperties(OTHER_BUNDLE, Locale.FRENCH));
+        assertEquals("hi", otherFrench.getProperty("greeting"));
+    }
+
+    private void write(final String content) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        } finally {
+            out.close();
+        }
+        // make sure each write can be told apart from the previous one on file systems with coarse timestamps
+        lastModified += 2000;
+        file.setLastModified(lastModified);
+    }
+}
@@ -26,12 +26,17 @@ package org.ofbiz.core.util;
 
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Caching Class Loader
+ * <p>
+ * The caches are concurrent maps, so that lookups from many threads neither block each other nor corrupt the caches,
+ * and the loader is registered as parallel capable, so that loading one class doesn't block the loading of others.
  *
  * @author <a href="mailto:jonesde@ofbiz.org">David E. Jones</a>
  * @version $Revision: 1.1 $
@@ -40,19 +45,56 @@ import java.util.Map;
 public class CachedClassLoader extends URLClassLoader {
     private String contextName;
 
-    public static Map<String, Class<?>> globalClassNameClassMap = new HashMap<String, Class<?>>();
+    public static Map<String, Class<?>> globalClassNameClassMap = new ConcurrentHashMap<String, Class<?>>();
+    public static Set<String> globalBadClassNames = ConcurrentHashMap.newKeySet();
+
+    public Map<String, Class<?>> localClassNameClassMap = new ConcurrentHashMap<String, Class<?>>();
+    public Set<String> localBadClassNames = ConcurrentHashMap.newKeySet();
+
+    public static Map<String, URL> globalResourceMap = new ConcurrentHashMap<String, URL>();
+    public static Set<String> globalBadResourceNames = ConcurrentHashMap.newKeySet();
+
+    public Map<String, URL> localResourceMap = new ConcurrentHashMap<String, URL>();
+    public Set<String> localBadResourceNames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @deprecated use {@link #globalBadClassNames}; this set isn't thread safe, but is kept up to date for callers that still
+     * read it while synchronized on it
+     */
+    @Deprecated
     public static HashSet<String> globalBadClassNameSet = new HashSet<String>();
 
-    public Map<String, Class<?>> localClassNameClassMap = new HashMap<String, Class<?>>();
+    /**
+     * @deprecated use {@link #localBadClassNames}; this set isn't thread safe, but is kept up to date for callers that still
+     * read it while synchronized on it
+     */
+    @Deprecated
     public HashSet<String> localBadClassNameSet = new HashSet<String>();
 
-    public static Map<String, URL> globalResourceMap = new HashMap<String, URL>();
+    /**
+     * @deprecated use {@link #globalBadResourceNames}; this set isn't thread safe, but is kept up to date for callers that still
+     * read it while synchronized on it
+     */
+    @Deprecated
     public static HashSet<String> globalBadResourceNameSet = new HashSet<String>();
 
-    public Map<String, URL> localResourceMap = new HashMap<String, URL>();
+    /**
+     * @deprecated use {@link #localBadResourceNames}; this set isn't thread safe, but is kept up to date for callers that still
+     * read it while synchronized on it
+     */
+    @Deprecated
     public HashSet<String> localBadResourceNameSet = new HashSet<String>();
 
+    private final LongAdder classHits = new LongAdder();
+    private final LongAdder classMisses = new LongAdder();
+    private final LongAdder badClassHits = new LongAdder();
+    private final LongAdder resourceHits = new LongAdder();
+    private final LongAdder resourceMisses = new LongAdder();
+    private final LongAdder badResourceHits = new LongAdder();
+
     static {
+        registerAsParallelCapable();
+
         // setup some commonly used classes...
         globalClassNameClassMap.put("Object", java.lang.Object.class);
         globalClassNameClassMap.put("java.lang.Object", java.lang.Object.class);
@@ -129,37 +171,41 @@ public class CachedClassLoader extends URLClassLoader {
         //check local classes, ie for this instance
         if (theClass == null) theClass = localClassNameClassMap.get(name);
 
+        if (theClass != null) {
+            classHits.increment();
+            return theClass;
+        }
+
         //make sure it is not a known bad class name
-        if (theClass == null) {
-            if (localBadClassNameSet.contains(name) || globalBadClassNameSet.contains(name)) {
-                if (Debug.verboseOn()) Debug.logVerbose("Cached loader got a known bad class name: [" + name + "]");
-                throw new ClassNotFoundException("Cached loader got a known bad class name: " + name);
-            }
+        if (localBadClassNames.contains(name) || globalBadClassNames.contains(name)) {
+            badClassHits.increment();
+            if (Debug.verboseOn()) Debug.logVerbose("Cached loader got a known bad class name: [" + name + "]");
+            throw new ClassNotFoundException("Cached loader got a known bad class name: " + name);
         }
 
-        if (theClass == null) {
-            if (Debug.verboseOn()) Debug.logVerbose("Cached loader cache miss for class name: [" + name + "]");
-
-            synchronized (this) {
-                theClass = localClassNameClassMap.get(name);
-                if (theClass == null) {
-                    try {
-                        theClass = super.loadClass(name, resolve);
-                        if (isGlobalPath(name)) {
-                            globalClassNameClassMap.put(name, theClass);
-                        } else {
-                            localClassNameClassMap.put(name, theClass);
-                        }
-                    } catch (ClassNotFoundException e) {
-                        //Debug.logInfo(e);
-                        if (Debug.verboseOn()) Debug.logVerbose("Remembering invalid class name: [" + name + "]");
-                        if (isGlobalPath(name)) {
-                            globalBadClassNameSet.add(name);
-                        } else {
-                            localBadClassNameSet.add(name);
-                        }
-                        throw e;
+        classMisses.increment();
+        if (Debug.verboseOn()) Debug.logVerbose("Cached loader cache miss for class name: [" + name + "]");
+
+        // only the loads of the same name wait for each other
+        synchronized (getClassLoadingLock(name)) {
+            theClass = localClassNameClassMap.get(name);
+            if (theClass == null) {
+                try {
+                    theClass = super.loadClass(name, resolve);
+                    if (isGlobalPath(name)) {
+                        globalClassNameClassMap.put(name, theClass);
+                    } else {
+                        localClassNameClassMap.put(name, theClass);
+                    }
+                } catch (ClassNotFoundException e) {
+                    //Debug.logInfo(e);
+                    if (Debug.verboseOn()) Debug.logVerbose("Remembering invalid class name: [" + name + "]");
+                    if (isGlobalPath(name)) {
+                        rememberBadName(globalBadClassNames, globalBadClassNameSet, name);
+                    } else {
+                        rememberBadName(localBadClassNames, localBadClassNameSet, name);
                     }
+                    throw e;
                 }
             }
         }
@@ -173,43 +219,92 @@ public class CachedClassLoader extends URLClassLoader {
         //check local resources, ie for this instance
         if (theResource == null) theResource = localResourceMap.get(name);
 
+        if (theResource != null) {
+            resourceHits.increment();
+            return theResource;
+        }
+
         //make sure it is not a known bad resource name
-        if (theResource == null) {
-            if (localBadResourceNameSet.contains(name) || globalBadResourceNameSet.contains(name)) {
-                if (Debug.verboseOn()) Debug.logVerbose("Cached loader got a known bad resource name: [" + name + "]");
-                return null;
-            }
+        if (localBadResourceNames.contains(name) || globalBadResourceNames.contains(name)) {
+            badResourceHits.increment();
+            if (Debug.verboseOn()) Debug.logVerbose("Cached loader got a known bad resource name: [" + name + "]");
+            return null;
         }
 
+        resourceMisses.increment();
+        //if (Debug.verboseOn()) Debug.logVerbose("Cached loader cache miss for resource name: [" + name + "]");
+        Debug.logInfo("Cached loader cache miss for resource name: [" + name + "]");
+
+        // two threads may look up the same name at once, but both find the same URL
+        theResource = super.getResource(name);
         if (theResource == null) {
-            //if (Debug.verboseOn()) Debug.logVerbose("Cached loader cache miss for resource name: [" + name + "]");
-            Debug.logInfo("Cached loader cache miss for resource name: [" + name + "]");
-
-            synchronized (this) {
-                theResource = localResourceMap.get(name);
-                if (theResource == null) {
-                    theResource = super.getResource(name);
-                    if (theResource == null) {
-                        //if (Debug.verboseOn()) Debug.logVerbose("Remembering invalid resource name: [" + name + "]");
-                        Debug.logInfo("Remembering invalid resource name: [" + name + "]");
-                        if (isGlobalPath(name)) {
-                            globalBadResourceNameSet.add(name);
-                        } else {
-                            localBadResourceNameSet.add(name);
-                        }
-                    } else {
-                        if (isGlobalPath(name)) {
-                            globalResourceMap.put(name, theResource);
-                        } else {
-                            localResourceMap.put(name, theResource);
-                        }
-                    }
-                }
+            //if (Debug.verboseOn()) Debug.logVerbose("Remembering invalid resource name: [" + name + "]");
+            Debug.logInfo("Remembering invalid resource name: [" + name + "]");
+            if (isGlobalPath(name)) {
+                rememberBadName(globalBadResourceNames, globalBadResourceNameSet, name);
+            } else {
+                rememberBadName(localBadResourceNames, localBadResourceNameSet, name);
+            }
+        } else {
+            if (isGlobalPath(name)) {
+                globalResourceMap.put(name, theResource);
+            } else {
+                localResourceMap.put(name, theResource);
             }
         }
         return theResource;
     }
 
+    @SuppressWarnings("deprecation")
+    private static void rememberBadName(Set<String> badNames, HashSet<String> badNameSet, String name) {
+        badNames.add(name);
+        synchronized (badNameSet) {
+            badNameSet.add(name);
+        }
+    }
+
+    /**
+     * @return the number of classes found in the caches
+     */
+    public long getClassHitCount() {
+        return classHits.sum();
+    }
+
+    /**
+     * @return the number of classes that were not in the caches and had to be loaded
+     */
+    public long getClassMissCount() {
+        return classMisses.sum();
+    }
+
+    /**
+     * @return the number of class names turned away because they were known not to exist
+     */
+    public long getBadClassHitCount() {
+        return badClassHits.sum();
+    }
+
+    /**
+     * @return the number of resources found in the caches
+     */
+    public long getResourceHitCount() {
+        return resourceHits.sum();
+    }
+
+    /**
+     * @return the number of resources that were not in the caches and had to be looked up
+     */
+    public long getResourceMissCount() {
+        return resourceMisses.sum();
+    }
+
+    /**
+     * @return the number of resource names turned away because they were known not to exist
+     */
+    public long getBadResourceHitCount() {
+        return badResourceHits.sum();
+    }
+
     protected boolean isGlobalPath(String name) {
         if (name.startsWith("java.") || name.startsWith("java/") || name.startsWith("/java/")) return true;
         if (name.startsWith("javax.") || name.startsWith("javax/") || name.startsWith("/javax/")) return true;
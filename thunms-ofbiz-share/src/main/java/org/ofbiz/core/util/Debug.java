@@ -23,6 +23,8 @@
  */
 package org.ofbiz.core.util;
 
+import org.apache.log4j.Appender;
+import org.apache.log4j.AsyncAppender;
 import org.apache.log4j.Category;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -31,11 +33,28 @@ import org.apache.log4j.PropertyConfigurator;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Configurable Debug logging wrapper class
+ * <p>
+ * Each level has overloads taking a {@link Supplier} of the message, which is only called if the level is on, so that
+ * a call site doesn't build a message that is thrown away and doesn't need an <code>if (Debug.verboseOn())</code>
+ * guard of its own.
+ * <p>
+ * With <code>async.enabled=true</code> in debug.properties, the appenders of the root logger are moved behind a
+ * log4j AsyncAppender, so that the calling thread only puts the event in a bounded buffer of
+ * <code>async.buffer.size</code> events, and events are dropped and counted rather than waited for when the buffer is
+ * full. The levels are read from debug.properties again by {@link #refreshLevels()}, and every
+ * <code>debug.levels.refresh.seconds</code> seconds if that system property is set.
  *
  * @author <a href="mailto:jonesde@ofbiz.org">David E. Jones</a>
  * @author <a href="mailto:jaz@ofbiz.org">Andy Zeneski</a>
@@ -64,9 +83,16 @@ public final class Debug {
     protected static PrintStream printStream = System.out;
     protected static PrintWriter printWriter = new PrintWriter(printStream);
 
-    protected static boolean levelOnCache[] = new boolean[8];
+    /** Replaced as a whole when a level changes, so that readers see all of the levels as they were at one time */
+    protected static volatile boolean levelOnCache[] = new boolean[8];
     protected static final boolean useLevelOnCache = true;
 
+    /** The number of events the asynchronous appender holds by default */
+    public static final int DEFAULT_ASYNC_BUFFER_SIZE = 8192;
+
+    /** How often the levels are read from debug.properties again, or 0 for never */
+    public static final int LEVELS_REFRESH_SECONDS = Integer.getInteger("debug.levels.refresh.seconds", 0);
+
     static {
         levelStringMap.put("verbose", Debug.VERBOSE);
         levelStringMap.put("timing", Debug.TIMING);
@@ -81,13 +107,65 @@ public final class Debug {
         PropertyConfigurator.configure(FlexibleProperties.makeFlexibleProperties(UtilURL.fromResource("debug")));
 
         // initialize levelOnCache
-        for (int i = 0; i < 8; i++) {
-            levelOnCache[i] = (i == Debug.ALWAYS || UtilProperties.propertyValueEqualsIgnoreCase("debug", levelProps[i], "true"));
+        levelOnCache = readLevels();
+
+        if (UtilProperties.propertyValueEqualsIgnoreCase("debug", "async.enabled", "true")) {
+            makeRootAppendersAsync();
+        }
+
+        if (LEVELS_REFRESH_SECONDS > 0) {
+            ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Debug-levels-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(Debug::refreshLevels, LEVELS_REFRESH_SECONDS, LEVELS_REFRESH_SECONDS, TimeUnit.SECONDS);
         }
     }
 
     static Logger root = Logger.getRootLogger();
 
+    private static boolean[] readLevels() {
+        boolean[] levelsOn = new boolean[8];
+        for (int i = 0; i < 8; i++) {
+            levelsOn[i] = (i == Debug.ALWAYS || UtilProperties.propertyValueEqualsIgnoreCase("debug", levelProps[i], "true"));
+        }
+        return levelsOn;
+    }
+
+    /**
+     * Reads the levels from debug.properties again, so that a level can be turned on or off without a restart.
+     */
+    public static void refreshLevels() {
+        UtilProperties.clearCache("debug");
+        levelOnCache = readLevels();
+    }
+
+    private static void makeRootAppendersAsync() {
+        Logger rootLogger = Logger.getRootLogger();
+        List<Appender> appenders = new ArrayList<Appender>();
+        for (Enumeration<?> e = rootLogger.getAllAppenders(); e.hasMoreElements(); ) {
+            appenders.add((Appender) e.nextElement());
+        }
+        if (appenders.isEmpty()) {
+            return;
+        }
+
+        AsyncAppender asyncAppender = new AsyncAppender();
+        asyncAppender.setName("DebugAsync");
+        int bufferSize = (int) UtilProperties.getPropertyNumber("debug", "async.buffer.size");
+        asyncAppender.setBufferSize(bufferSize > 0 ? bufferSize : DEFAULT_ASYNC_BUFFER_SIZE);
+        // never hold up the logging thread; the appender logs a summary of the events it had to drop
+        asyncAppender.setBlocking(false);
+        asyncAppender.setLocationInfo(UtilProperties.propertyValueEqualsIgnoreCase("debug", "async.location.info", "true"));
+        for (Appender appender : appenders) {
+            // removeAllAppenders would close them
+            rootLogger.removeAppender(appender);
+            asyncAppender.addAppender(appender);
+        }
+        rootLogger.addAppender(asyncAppender);
+    }
+
     public static PrintStream getPrintStream() {
         return printStream;
     }
@@ -165,6 +243,12 @@ public final class Debug {
         }
     }
 
+    private static void logSupplied(int level, Throwable t, Supplier<String> msg, String module) {
+        if (isOn(level)) {
+            log(level, t, msg == null ? null : msg.get(), module, "org.ofbiz.core.util.Debug");
+        }
+    }
+
     public static boolean isOn(int level) {
         if (useLevelOnCache) {
             return levelOnCache[level];
@@ -217,6 +301,14 @@ public final class Debug {
         log(Debug.VERBOSE, t, msg, module);
     }
 
+    public static void logVerbose(Supplier<String> msg, String module) {
+        logSupplied(Debug.VERBOSE, null, msg, module);
+    }
+
+    public static void logVerbose(Throwable t, Supplier<String> msg, String module) {
+        logSupplied(Debug.VERBOSE, t, msg, module);
+    }
+
     public static boolean timingOn() {
         return isOn(Debug.TIMING);
     }
@@ -241,6 +333,14 @@ public final class Debug {
         log(Debug.TIMING, t, msg, module);
     }
 
+    public static void logTiming(Supplier<String> msg, String module) {
+        logSupplied(Debug.TIMING, null, msg, module);
+    }
+
+    public static void logTiming(Throwable t, Supplier<String> msg, String module) {
+        logSupplied(Debug.TIMING, t, msg, module);
+    }
+
     public static boolean infoOn() {
         return isOn(Debug.INFO);
     }
@@ -265,6 +365,14 @@ public final class Debug {
         log(Debug.INFO, t, msg, module);
     }
 
+    public static void logInfo(Supplier<String> msg, String module) {
+        logSupplied(Debug.INFO, null, msg, module);
+    }
+
+    public static void logInfo(Throwable t, Supplier<String> msg, String module) {
+        logSupplied(Debug.INFO, t, msg, module);
+    }
+
     public static boolean importantOn() {
         return isOn(Debug.IMPORTANT);
     }
@@ -289,6 +397,14 @@ public final class Debug {
         log(Debug.IMPORTANT, t, msg, module);
     }
 
+    public static void logImportant(Supplier<String> msg, String module) {
+        logSupplied(Debug.IMPORTANT, null, msg, module);
+    }
+
+    public static void logImportant(Throwable t, Supplier<String> msg, String module) {
+        logSupplied(Debug.IMPORTANT, t, msg, module);
+    }
+
     public static boolean warningOn() {
         return isOn(Debug.WARNING);
     }
@@ -313,6 +429,14 @@ public final class Debug {
         log(Debug.WARNING, t, msg, module);
     }
 
+    public static void logWarning(Supplier<String> msg, String module) {
+        logSupplied(Debug.WARNING, null, msg, module);
+    }
+
+    public static void logWarning(Throwable t, Supplier<String> msg, String module) {
+        logSupplied(Debug.WARNING, t, msg, module);
+    }
+
     public static boolean errorOn() {
         return isOn(Debug.ERROR);
     }
@@ -337,6 +461,14 @@ public final class Debug {
         log(Debug.ERROR, t, msg, module);
     }
 
+    public static void logError(Supplier<String> msg, String module) {
+        logSupplied(Debug.ERROR, null, msg, module);
+    }
+
+    public static void logError(Throwable t, Supplier<String> msg, String module) {
+        logSupplied(Debug.ERROR, t, msg, module);
+    }
+
     public static boolean fatalOn() {
         return isOn(Debug.FATAL);
     }
@@ -361,9 +493,21 @@ public final class Debug {
         log(Debug.FATAL, t, msg, module);
     }
 
+    public static void logFatal(Supplier<String> msg, String module) {
+        logSupplied(Debug.FATAL, null, msg, module);
+    }
+
+    public static void logFatal(Throwable t, Supplier<String> msg, String module) {
+        logSupplied(Debug.FATAL, t, msg, module);
+    }
+
     public static void set(int level, boolean on) {
         if (!useLevelOnCache)
             return;
-        levelOnCache[level] = on;
+        synchronized (Debug.class) {
+            boolean[] levelsOn = levelOnCache.clone();
+            levelsOn[level] = on;
+            levelOnCache = levelsOn;
+        }
     }
 }
@@ -39,6 +39,24 @@ import java.util.Map;
  */
 public class MapComparator<K> implements Comparator<Map<K, ?>> {
 
+    /** The classes whose values are compared, in the order they are tested; values of other classes compare equal */
+    private static final Class<?>[] comparedClasses = {String.class, Integer.class, Double.class, Float.class, Timestamp.class, Date.class};
+
+    /**
+     * The compared class that the values of each runtime class are compared as, or Object if they aren't compared;
+     * worked out once per class, so that sorting doesn't look classes up by name
+     */
+    private static final ClassValue<Class<?>> comparedClassOf = new ClassValue<Class<?>>() {
+        protected Class<?> computeValue(Class<?> type) {
+            for (Class<?> comparedClass : comparedClasses) {
+                if (comparedClass.isAssignableFrom(type)) {
+                    return comparedClass;
+                }
+            }
+            return Object.class;
+        }
+    };
+
     private List<? extends K> keys;
 
     /**
@@ -50,53 +68,31 @@ public class MapComparator<K> implements Comparator<Map<K, ?>> {
         this.keys = keys;
     }
 
+    @SuppressWarnings("unchecked")
     public int compare(Map<K, ?> map1, Map<K, ?> map2) {
 
         if (keys == null || keys.size() < 1)
             throw new IllegalArgumentException("No sort fields defined");
 
         for (K key : keys) {
-            if (testValue(map1, key) && !testValue(map2, key))
-                return -1;
-            if (!testValue(map1, key) && testValue(map2, key))
-                return 1;
-            if (!testValue(map1, key) && !testValue(map2, key))
-                continue;
-
+            // a key that is missing sorts the same as a null value, after all other values
             Object o1 = map1.get(key);
             Object o2 = map2.get(key);
+            if (o1 == null) {
+                if (o2 == null)
+                    continue;
+                return 1;
+            }
+            if (o2 == null)
+                return -1;
+
             try {
                 if (!o1.equals(o2)) {
-                    if (ObjectType.instanceOf(o1, "java.lang.String")) {
-                        String s1 = (String) o1;
-                        String s2 = (String) o2;
-                        if (!s1.equals(s2))
-                            return s1.compareTo(s2);
-                    } else if (ObjectType.instanceOf(o1, "java.lang.Integer")) {
-                        Integer i1 = (Integer) o1;
-                        Integer i2 = (Integer) o2;
-                        if (!i1.equals(i2))
-                            return i1.compareTo(i2);
-                    } else if (ObjectType.instanceOf(o1, "java.lang.Double")) {
-                        Double d1 = (Double) o1;
-                        Double d2 = (Double) o2;
-                        if (!d1.equals(d2))
-                            return d1.compareTo(d2);
-                    } else if (ObjectType.instanceOf(o1, "java.lang.Float")) {
-                        Float f1 = (Float) o1;
-                        Float f2 = (Float) o2;
-                        if (!f1.equals(f2))
-                            return f1.compareTo(f2);
-                    } else if (ObjectType.instanceOf(o1, "java.sql.Timestamp")) {
-                        Timestamp t1 = (Timestamp) o1;
-                        Timestamp t2 = (Timestamp) o2;
-                        if (!t1.equals(t2))
-                            return t1.compareTo(t2);
-                    } else if (ObjectType.instanceOf(o1, "java.util.Date")) {
-                        Date d1 = (Date) o1;
-                        Date d2 = (Date) o2;
-                        if (!d1.equals(d2))
-                            return d1.compareTo(d2);
+                    Class<?> comparedClass = comparedClassOf.get(o1.getClass());
+                    if (comparedClass != Object.class) {
+                        int result = ((Comparable<Object>) o1).compareTo(comparedClass.cast(o2));
+                        if (result != 0)
+                            return result;
                     }
                 }
             } catch (Exception e) {
@@ -113,12 +109,4 @@ public class MapComparator<K> implements Comparator<Map<K, ?>> {
     public boolean equals(Object obj) {
         return obj.equals(this);
     }
-
-    private boolean testValue(Map<K, ?> map, K key) {
-        if (!map.containsKey(key))
-            return false;
-        if (map.get(key) == null)
-            return false;
-        return true;
-    }
 }
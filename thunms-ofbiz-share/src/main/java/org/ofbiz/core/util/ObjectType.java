@@ -24,14 +24,20 @@
 package org.ofbiz.core.util;
 
 import java.text.DateFormat;
+import java.text.Format;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Utilities for analyzing and converting Object types in Java - takes advantage of a lot of reflection and other stuff
@@ -46,7 +52,10 @@ public class ObjectType {
 
     public static final String module = ObjectType.class.getName();
 
-    protected static Map<String, Class<?>> classCache = new HashMap<String, Class<?>>();
+    protected static Map<String, Class<?>> classCache = new ConcurrentHashMap<String, Class<?>>();
+
+    /** The JDK classes found by instanceOf by the type name it was given, which may lack the package */
+    private static final ConcurrentMap<String, Class<?>> typeClassCache = new ConcurrentHashMap<String, Class<?>>();
 
     public static final String LANG_PACKAGE = "java.lang."; // We will test both the raw value and this + raw value
     public static final String SQL_PACKAGE = "java.sql.";   // We will test both the raw value and this + raw value
@@ -225,7 +234,10 @@ public class ObjectType {
      * @param typeObject Object to test against
      */
     public static boolean instanceOf(Object obj, String typeName, ClassLoader loader) {
-        Class<?> infoClass = null;
+        Class<?> infoClass = typeClassCache.get(typeName);
+        if (infoClass != null) {
+            return instanceOf(obj, infoClass);
+        }
 
         try {
             infoClass = ObjectType.loadClass(typeName, loader);
@@ -255,6 +267,10 @@ public class ObjectType {
         if (infoClass == null)
             throw new IllegalArgumentException("Illegal type found in info map (could not load class for specified type)");
 
+        if (infoClass.getClassLoader() == null) {
+            // a JDK class is the same class whichever loader is used, so its name never needs resolving again
+            typeClassCache.putIfAbsent(typeName, infoClass);
+        }
         return instanceOf(obj, infoClass);
     }
 
@@ -266,388 +282,330 @@ public class ObjectType {
      */
     public static boolean instanceOf(Object obj, Class<?> typeClass) {
         if (obj == null) return true;
-        Class<?> objectClass = obj.getClass();
+        return typeClass.isInstance(obj);
+    }
 
-        if (typeClass.isInterface()) {
-            return interfaceOf(obj, typeClass);
-        } else {
-            return isOrSubOf(obj, typeClass);
+    /**
+     * The types that simpleTypeConvert converts to, each known by its short and its fully qualified name
+     */
+    private enum SimpleType {
+        STRING("String", "java.lang.String"),
+        BOOLEAN("Boolean", "java.lang.Boolean"),
+        LOCALE("Locale", "java.util.Locale"),
+        DOUBLE("Double", "java.lang.Double"),
+        FLOAT("Float", "java.lang.Float"),
+        LONG("Long", "java.lang.Long"),
+        INTEGER("Integer", "java.lang.Integer"),
+        DATE("Date", "java.sql.Date"),
+        TIME("Time", "java.sql.Time"),
+        TIMESTAMP("Timestamp", "java.sql.Timestamp");
+
+        private final String shortName;
+        private final String fullName;
+
+        SimpleType(String shortName, String fullName) {
+            this.shortName = shortName;
+            this.fullName = fullName;
         }
     }
 
     /**
-     * Converts the passed object to the named simple type; supported types
-     * include: String, Boolean, Double, Float, Long, Integer, Date (java.sql.Date),
-     * Time, Timestamp;
-     *
-     * @param obj    Object to convert
-     * @param type   Name of type to convert to
-     * @param format Optional (can be null) format string for Date, Time, Timestamp
-     * @param locale Optional (can be null) Locale for formatting and parsing Double, Float, Long, Integer
+     * Converts a value of one class to one of the simple types
      */
-    public static Object simpleTypeConvert(Object obj, String type, String format, Locale locale) throws GeneralException {
-        if (obj == null)
-            return null;
+    private interface Converter {
+        Object convert(Object obj, String type, String format, Locale locale) throws GeneralException;
+    }
 
-        if ("PlainString".equals(type)) {
-            return obj.toString();
-        }
-        if ("Object".equals(type)) {
-            return obj;
+    /**
+     * The conversions from the values of one class, and the name used for that class in error messages
+     */
+    private static final class SourceType {
+        private final String name;
+        private final Map<SimpleType, Converter> converters = new EnumMap<SimpleType, Converter>(SimpleType.class);
+
+        SourceType(String name) {
+            this.name = name;
         }
+    }
 
-        String fromType = null;
+    /** The simple types by both of their names */
+    private static final Map<String, SimpleType> simpleTypes = new HashMap<String, SimpleType>();
 
-        if (obj instanceof java.lang.String) {
-            fromType = "String";
-            String str = (String) obj;
-            if ("String".equals(type) || "java.lang.String".equals(type)) {
-                return obj;
-            }
-            if (str.length() == 0) {
-                return null;
-            }
+    /** The classes simpleTypeConvert converts from, in the order they are tested with instanceof */
+    private static final Map<Class<?>, SourceType> sourceTypes = new LinkedHashMap<Class<?>, SourceType>();
 
-            if ("Boolean".equals(type) || "java.lang.Boolean".equals(type)) {
-                return str.equalsIgnoreCase("TRUE");
-            } else if ("Locale".equals(type) || "java.util.Locale".equals(type)) {
-                Locale loc = UtilMisc.parseLocale(str);
-                if (loc != null) {
-                    return loc;
-                } else {
-                    throw new GeneralException("Could not convert " + str + " to " + type + ": ");
-                }
-            } else if ("Double".equals(type) || "java.lang.Double".equals(type)) {
-                try {
-                    NumberFormat nf = null;
+    /** The source type of every class seen so far, including the subclasses of those in sourceTypes */
+    private static final ConcurrentMap<Class<?>, SourceType> sourceTypesByClass = new ConcurrentHashMap<Class<?>, SourceType>();
 
-                    if (locale == null)
-                        nf = NumberFormat.getNumberInstance();
-                    else
-                        nf = NumberFormat.getNumberInstance(locale);
-                    Number tempNum = nf.parse(str);
+    /** The formats used by simpleTypeConvert by kind, locale or pattern; one set per thread as formats aren't thread safe */
+    private static final ThreadLocal<Map<String, Format>> formats = new ThreadLocal<Map<String, Format>>() {
+        protected Map<String, Format> initialValue() {
+            return new HashMap<String, Format>();
+        }
+    };
 
-                    return tempNum.doubleValue();
-                } catch (ParseException e) {
-                    throw new GeneralException("Could not convert " + str + " to " + type + ": ", e);
-                }
-            } else if ("Float".equals(type) || "java.lang.Float".equals(type)) {
-                try {
-                    NumberFormat nf = null;
+    /** The number of formats a thread keeps before they are all dropped, so that passing many patterns can't leak */
+    private static final int MAX_CACHED_FORMATS = 64;
 
-                    if (locale == null)
-                        nf = NumberFormat.getNumberInstance();
-                    else
-                        nf = NumberFormat.getNumberInstance(locale);
-                    Number tempNum = nf.parse(str);
+    static {
+        for (SimpleType simpleType : SimpleType.values()) {
+            simpleTypes.put(simpleType.shortName, simpleType);
+            simpleTypes.put(simpleType.fullName, simpleType);
+        }
 
-                    return tempNum.floatValue();
-                } catch (ParseException e) {
-                    throw new GeneralException("Could not convert " + str + " to " + type + ": ", e);
-                }
-            } else if ("Long".equals(type) || "java.lang.Long".equals(type)) {
+        SourceType source = sourceType(String.class, "String");
+        source.converters.put(SimpleType.BOOLEAN, (obj, type, format, locale) -> ((String) obj).equalsIgnoreCase("TRUE"));
+        source.converters.put(SimpleType.LOCALE, (obj, type, format, locale) -> {
+            Locale loc = UtilMisc.parseLocale((String) obj);
+            if (loc == null) {
+                throw new GeneralException("Could not convert " + obj + " to " + type + ": ");
+            }
+            return loc;
+        });
+        source.converters.put(SimpleType.DOUBLE, (obj, type, format, locale) -> parseNumber(obj, type, locale, false).doubleValue());
+        source.converters.put(SimpleType.FLOAT, (obj, type, format, locale) -> parseNumber(obj, type, locale, false).floatValue());
+        source.converters.put(SimpleType.LONG, (obj, type, format, locale) -> parseNumber(obj, type, locale, true).longValue());
+        source.converters.put(SimpleType.INTEGER, (obj, type, format, locale) -> parseNumber(obj, type, locale, true).intValue());
+        source.converters.put(SimpleType.DATE, (obj, type, format, locale) -> {
+            if (format == null || format.length() == 0) {
                 try {
-                    NumberFormat nf = null;
-
-                    if (locale == null)
-                        nf = NumberFormat.getNumberInstance();
-                    else
-                        nf = NumberFormat.getNumberInstance(locale);
-                    nf.setMaximumFractionDigits(0);
-                    Number tempNum = nf.parse(str);
-
-                    return tempNum.longValue();
-                } catch (ParseException e) {
-                    throw new GeneralException("Could not convert " + str + " to " + type + ": ", e);
+                    return java.sql.Date.valueOf((String) obj);
+                } catch (Exception e) {
+                    return new java.sql.Date(parseDate(obj, type, getDateFormat("date", locale), e).getTime());
                 }
-            } else if ("Integer".equals(type) || "java.lang.Integer".equals(type)) {
+            }
+            return new java.sql.Date(parseDate(obj, type, getSimpleDateFormat(format), null).getTime());
+        });
+        source.converters.put(SimpleType.TIME, (obj, type, format, locale) -> {
+            if (format == null || format.length() == 0) {
                 try {
-                    NumberFormat nf = null;
-
-                    if (locale == null)
-                        nf = NumberFormat.getNumberInstance();
-                    else
-                        nf = NumberFormat.getNumberInstance(locale);
-                    nf.setMaximumFractionDigits(0);
-                    Number tempNum = nf.parse(str);
-
-                    return tempNum.intValue();
-                } catch (ParseException e) {
-                    throw new GeneralException("Could not convert " + str + " to " + type + ": ", e);
+                    return java.sql.Time.valueOf((String) obj);
+                } catch (Exception e) {
+                    return new java.sql.Time(parseDate(obj, type, getDateFormat("time", locale), e).getTime());
                 }
-            } else if ("Date".equals(type) || "java.sql.Date".equals(type)) {
-                if (format == null || format.length() == 0) {
-                    try {
-                        return java.sql.Date.valueOf(str);
-                    } catch (Exception e) {
-                        try {
-                            DateFormat df = null;
-                            if (locale != null) {
-                                df = DateFormat.getDateInstance(DateFormat.SHORT, locale);
-                            } else {
-                                df = DateFormat.getDateInstance(DateFormat.SHORT);
-                            }
-                            Date fieldDate = df.parse(str);
-
-                            return new java.sql.Date(fieldDate.getTime());
-                        } catch (ParseException e1) {
-                            throw new GeneralException("Could not convert " + str + " to " + type + ": ", e);
-                        }
-                    }
-                } else {
-                    try {
-                        SimpleDateFormat sdf = new SimpleDateFormat(format);
-                        java.util.Date fieldDate = sdf.parse(str);
-
-                        return new java.sql.Date(fieldDate.getTime());
-                    } catch (ParseException e) {
-                        throw new GeneralException("Could not convert " + str + " to " + type + ": ", e);
-                    }
-                }
-            } else if ("Time".equals(type) || "java.sql.Time".equals(type)) {
-                if (format == null || format.length() == 0) {
-                    try {
-                        return java.sql.Time.valueOf(str);
-                    } catch (Exception e) {
-                        try {
-                            DateFormat df = null;
-                            if (locale != null) {
-                                df = DateFormat.getTimeInstance(DateFormat.SHORT, locale);
-                            } else {
-                                df = DateFormat.getTimeInstance(DateFormat.SHORT);
-                            }
-                            Date fieldDate = df.parse(str);
-
-                            return new java.sql.Time(fieldDate.getTime());
-                        } catch (ParseException e1) {
-                            throw new GeneralException("Could not convert " + str + " to " + type + ": ", e);
-                        }
-                    }
-                } else {
-                    try {
-                        SimpleDateFormat sdf = new SimpleDateFormat(format);
-                        java.util.Date fieldDate = sdf.parse(str);
-
-                        return new java.sql.Time(fieldDate.getTime());
-                    } catch (ParseException e) {
-                        throw new GeneralException("Could not convert " + str + " to " + type + ": ", e);
-                    }
-                }
-            } else if ("Timestamp".equals(type) || "java.sql.Timestamp".equals(type)) {
-                if (format == null || format.length() == 0) {
-                    try {
-                        return java.sql.Timestamp.valueOf(str);
-                    } catch (Exception e) {
-                        try {
-                            DateFormat df = null;
-                            if (locale != null) {
-                                df = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale);
-                            } else {
-                                df = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
-                            }
-                            Date fieldDate = df.parse(str);
-
-                            return new java.sql.Timestamp(fieldDate.getTime());
-                        } catch (ParseException e1) {
-                            throw new GeneralException("Could not convert " + str + " to " + type + ": ", e);
-                        }
-                    }
-                } else {
-                    try {
-                        SimpleDateFormat sdf = new SimpleDateFormat(format);
-                        java.util.Date fieldDate = sdf.parse(str);
-
-                        return new java.sql.Timestamp(fieldDate.getTime());
-                    } catch (ParseException e) {
-                        throw new GeneralException("Could not convert " + str + " to " + type + ": ", e);
-                    }
+            }
+            return new java.sql.Time(parseDate(obj, type, getSimpleDateFormat(format), null).getTime());
+        });
+        source.converters.put(SimpleType.TIMESTAMP, (obj, type, format, locale) -> {
+            if (format == null || format.length() == 0) {
+                try {
+                    return java.sql.Timestamp.valueOf((String) obj);
+                } catch (Exception e) {
+                    return new java.sql.Timestamp(parseDate(obj, type, getDateFormat("datetime", locale), e).getTime());
                 }
-            } else {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
             }
-        } else if (obj instanceof java.lang.Double) {
-            fromType = "Double";
-            Double dbl = (Double) obj;
+            return new java.sql.Timestamp(parseDate(obj, type, getSimpleDateFormat(format), null).getTime());
+        });
+
+        source = sourceType(Double.class, "Double");
+        source.converters.put(SimpleType.STRING, (obj, type, format, locale) -> getNumberFormat(locale, false).format(((Double) obj).doubleValue()));
+        source.converters.put(SimpleType.DOUBLE, (obj, type, format, locale) -> obj);
+        source.converters.put(SimpleType.FLOAT, (obj, type, format, locale) -> ((Double) obj).floatValue());
+        source.converters.put(SimpleType.LONG, (obj, type, format, locale) -> Math.round((Double) obj));
+        source.converters.put(SimpleType.INTEGER, (obj, type, format, locale) -> (int) Math.round((Double) obj));
+
+        source = sourceType(Float.class, "Float");
+        source.converters.put(SimpleType.STRING, (obj, type, format, locale) -> getNumberFormat(locale, false).format(((Float) obj).doubleValue()));
+        source.converters.put(SimpleType.DOUBLE, (obj, type, format, locale) -> ((Float) obj).doubleValue());
+        source.converters.put(SimpleType.FLOAT, (obj, type, format, locale) -> obj);
+        source.converters.put(SimpleType.LONG, (obj, type, format, locale) -> Math.round(((Float) obj).doubleValue()));
+        source.converters.put(SimpleType.INTEGER, (obj, type, format, locale) -> (int) Math.round(((Float) obj).doubleValue()));
+
+        source = sourceType(Long.class, "Long");
+        source.converters.put(SimpleType.STRING, (obj, type, format, locale) -> getNumberFormat(locale, false).format(((Long) obj).longValue()));
+        source.converters.put(SimpleType.DOUBLE, (obj, type, format, locale) -> ((Long) obj).doubleValue());
+        source.converters.put(SimpleType.FLOAT, (obj, type, format, locale) -> ((Long) obj).floatValue());
+        source.converters.put(SimpleType.LONG, (obj, type, format, locale) -> obj);
+        source.converters.put(SimpleType.INTEGER, (obj, type, format, locale) -> ((Long) obj).intValue());
+
+        source = sourceType(Integer.class, "Integer");
+        source.converters.put(SimpleType.STRING, (obj, type, format, locale) -> getNumberFormat(locale, false).format(((Integer) obj).longValue()));
+        source.converters.put(SimpleType.DOUBLE, (obj, type, format, locale) -> ((Integer) obj).doubleValue());
+        source.converters.put(SimpleType.FLOAT, (obj, type, format, locale) -> ((Integer) obj).floatValue());
+        source.converters.put(SimpleType.LONG, (obj, type, format, locale) -> ((Integer) obj).longValue());
+        source.converters.put(SimpleType.INTEGER, (obj, type, format, locale) -> obj);
+
+        source = sourceType(java.sql.Date.class, "Date");
+        source.converters.put(SimpleType.STRING, ObjectType::formatDate);
+        source.converters.put(SimpleType.DATE, (obj, type, format, locale) -> obj);
+        source.converters.put(SimpleType.TIMESTAMP, (obj, type, format, locale) -> new java.sql.Timestamp(((Date) obj).getTime()));
+
+        source = sourceType(java.sql.Time.class, "Time");
+        source.converters.put(SimpleType.STRING, ObjectType::formatDate);
+        source.converters.put(SimpleType.TIME, (obj, type, format, locale) -> obj);
+        source.converters.put(SimpleType.TIMESTAMP, (obj, type, format, locale) -> new java.sql.Timestamp(((Date) obj).getTime()));
+
+        source = sourceType(java.sql.Timestamp.class, "Timestamp");
+        source.converters.put(SimpleType.STRING, ObjectType::formatDate);
+        source.converters.put(SimpleType.DATE, (obj, type, format, locale) -> new java.sql.Date(((Date) obj).getTime()));
+        source.converters.put(SimpleType.TIME, (obj, type, format, locale) -> new java.sql.Time(((Date) obj).getTime()));
+        source.converters.put(SimpleType.TIMESTAMP, (obj, type, format, locale) -> obj);
+
+        source = sourceType(Boolean.class, "Boolean");
+        source.converters.put(SimpleType.BOOLEAN, (obj, type, format, locale) -> obj);
+        source.converters.put(SimpleType.STRING, (obj, type, format, locale) -> obj.toString());
+        source.converters.put(SimpleType.INTEGER, (obj, type, format, locale) -> (Boolean) obj ? 1 : 0);
+
+        source = sourceType(Locale.class, "Locale");
+        source.converters.put(SimpleType.LOCALE, (obj, type, format, locale) -> obj);
+        source.converters.put(SimpleType.STRING, (obj, type, format, locale) -> obj.toString());
+    }
 
-            if ("String".equals(type) || "java.lang.String".equals(type)) {
-                NumberFormat nf = null;
+    private static SourceType sourceType(Class<?> sourceClass, String name) {
+        SourceType sourceType = new SourceType(name);
+        sourceTypes.put(sourceClass, sourceType);
+        sourceTypesByClass.put(sourceClass, sourceType);
+        return sourceType;
+    }
 
-                if (locale == null)
-                    nf = NumberFormat.getNumberInstance();
-                else
-                    nf = NumberFormat.getNumberInstance(locale);
-                return nf.format(dbl.doubleValue());
-            } else if ("Double".equals(type) || "java.lang.Double".equals(type)) {
-                return obj;
-            } else if ("Float".equals(type) || "java.lang.Float".equals(type)) {
-                return dbl.floatValue();
-            } else if ("Long".equals(type) || "java.lang.Long".equals(type)) {
-                return Math.round(dbl);
-            } else if ("Integer".equals(type) || "java.lang.Integer".equals(type)) {
-                return (int) Math.round(dbl);
-            } else {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
+    private static SourceType getSourceType(Class<?> sourceClass) {
+        SourceType sourceType = sourceTypesByClass.get(sourceClass);
+        if (sourceType == null) {
+            // a subclass of one of the classes converted from, or a class that isn't converted at all
+            sourceType = new SourceType(sourceClass.getName());
+            for (Map.Entry<Class<?>, SourceType> entry : sourceTypes.entrySet()) {
+                if (entry.getKey().isAssignableFrom(sourceClass)) {
+                    sourceType = entry.getValue();
+                    break;
+                }
             }
-        } else if (obj instanceof java.lang.Float) {
-            fromType = "Float";
-            Float flt = (Float) obj;
+            sourceTypesByClass.putIfAbsent(sourceClass, sourceType);
+        }
+        return sourceType;
+    }
 
-            if ("String".equals(type)) {
-                NumberFormat nf = null;
+    private static Number parseNumber(Object obj, String type, Locale locale, boolean integer) throws GeneralException {
+        try {
+            return getNumberFormat(locale, integer).parse((String) obj);
+        } catch (ParseException e) {
+            throw new GeneralException("Could not convert " + obj + " to " + type + ": ", e);
+        }
+    }
 
-                if (locale == null)
-                    nf = NumberFormat.getNumberInstance();
-                else
-                    nf = NumberFormat.getNumberInstance(locale);
-                return nf.format(flt.doubleValue());
-            } else if ("Double".equals(type)) {
-                return flt.doubleValue();
-            } else if ("Float".equals(type)) {
-                return obj;
-            } else if ("Long".equals(type)) {
-                return Math.round(flt.doubleValue());
-            } else if ("Integer".equals(type)) {
-                return (int) Math.round(flt.doubleValue());
-            } else {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
-            }
-        } else if (obj instanceof java.lang.Long) {
-            fromType = "Long";
-            Long lng = (Long) obj;
+    /**
+     * @param valueOfException the exception thrown by valueOf before falling back to the given format, reported
+     *                         in place of the parse exception if there is one
+     */
+    private static Date parseDate(Object obj, String type, DateFormat df, Exception valueOfException) throws GeneralException {
+        try {
+            return df.parse((String) obj);
+        } catch (ParseException e) {
+            throw new GeneralException("Could not convert " + obj + " to " + type + ": ", valueOfException != null ? valueOfException : e);
+        }
+    }
 
-            if ("String".equals(type) || "java.lang.String".equals(type)) {
-                NumberFormat nf = null;
+    private static Object formatDate(Object obj, String type, String format, Locale locale) {
+        if (format == null || format.length() == 0) {
+            return obj.toString();
+        }
+        return getSimpleDateFormat(format).format(new java.util.Date(((Date) obj).getTime()));
+    }
 
-                if (locale == null)
-                    nf = NumberFormat.getNumberInstance();
-                else
-                    nf = NumberFormat.getNumberInstance(locale);
-                return nf.format(lng.longValue());
-            } else if ("Double".equals(type) || "java.lang.Double".equals(type)) {
-                return lng.doubleValue();
-            } else if ("Float".equals(type) || "java.lang.Float".equals(type)) {
-                return lng.floatValue();
-            } else if ("Long".equals(type) || "java.lang.Long".equals(type)) {
-                return obj;
-            } else if ("Integer".equals(type) || "java.lang.Integer".equals(type)) {
-                return lng.intValue();
-            } else {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
+    private static NumberFormat getNumberFormat(Locale locale, boolean integer) {
+        if (locale == null) {
+            locale = Locale.getDefault(Locale.Category.FORMAT);
+        }
+        String key = (integer ? "integer:" : "number:") + locale;
+        Map<String, Format> threadFormats = formats.get();
+        NumberFormat nf = (NumberFormat) threadFormats.get(key);
+        if (nf == null) {
+            nf = NumberFormat.getNumberInstance(locale);
+            if (integer) {
+                nf.setMaximumFractionDigits(0);
             }
-        } else if (obj instanceof java.lang.Integer) {
-            fromType = "Integer";
-            Integer intgr = (Integer) obj;
-
-            if ("String".equals(type) || "java.lang.String".equals(type)) {
-                NumberFormat nf = null;
+            cacheFormat(threadFormats, key, nf);
+        }
+        return nf;
+    }
 
-                if (locale == null)
-                    nf = NumberFormat.getNumberInstance();
-                else
-                    nf = NumberFormat.getNumberInstance(locale);
-                return nf.format(intgr.longValue());
-            } else if ("Double".equals(type) || "java.lang.Double".equals(type)) {
-                return intgr.doubleValue();
-            } else if ("Float".equals(type) || "java.lang.Float".equals(type)) {
-                return intgr.floatValue();
-            } else if ("Long".equals(type) || "java.lang.Long".equals(type)) {
-                return intgr.longValue();
-            } else if ("Integer".equals(type) || "java.lang.Integer".equals(type)) {
-                return obj;
+    /**
+     * @param kind date, time or datetime, for the SHORT format of that kind
+     */
+    private static DateFormat getDateFormat(String kind, Locale locale) {
+        if (locale == null) {
+            locale = Locale.getDefault(Locale.Category.FORMAT);
+        }
+        String key = kind + ':' + locale;
+        Map<String, Format> threadFormats = formats.get();
+        DateFormat df = (DateFormat) threadFormats.get(key);
+        if (df == null) {
+            if ("date".equals(kind)) {
+                df = DateFormat.getDateInstance(DateFormat.SHORT, locale);
+            } else if ("time".equals(kind)) {
+                df = DateFormat.getTimeInstance(DateFormat.SHORT, locale);
             } else {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
+                df = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale);
             }
-        } else if (obj instanceof java.sql.Date) {
-            fromType = "Date";
-            java.sql.Date dte = (java.sql.Date) obj;
+            cacheFormat(threadFormats, key, df);
+        } else {
+            // a new format would use the default time zone as it is now
+            df.setTimeZone(TimeZone.getDefault());
+        }
+        return df;
+    }
 
-            if ("String".equals(type) || "java.lang.String".equals(type)) {
-                if (format == null || format.length() == 0) {
-                    return dte.toString();
-                } else {
-                    SimpleDateFormat sdf = new SimpleDateFormat(format);
+    private static SimpleDateFormat getSimpleDateFormat(String pattern) {
+        String key = "pattern:" + pattern;
+        Map<String, Format> threadFormats = formats.get();
+        SimpleDateFormat sdf = (SimpleDateFormat) threadFormats.get(key);
+        if (sdf == null) {
+            sdf = new SimpleDateFormat(pattern);
+            cacheFormat(threadFormats, key, sdf);
+        } else {
+            sdf.setTimeZone(TimeZone.getDefault());
+        }
+        return sdf;
+    }
 
-                    return sdf.format(new java.util.Date(dte.getTime()));
-                }
-            } else if ("Date".equals(type) || "java.sql.Date".equals(type)) {
-                return obj;
-            } else if ("Time".equals(type) || "java.sql.Time".equals(type)) {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
-            } else if ("Timestamp".equals(type) || "java.sql.Timestamp".equals(type)) {
-                return new java.sql.Timestamp(dte.getTime());
-            } else {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
-            }
-        } else if (obj instanceof java.sql.Time) {
-            fromType = "Time";
-            java.sql.Time tme = (java.sql.Time) obj;
+    private static void cacheFormat(Map<String, Format> threadFormats, String key, Format format) {
+        if (threadFormats.size() >= MAX_CACHED_FORMATS) {
+            threadFormats.clear();
+        }
+        threadFormats.put(key, format);
+    }
 
-            if ("String".equals(type) || "java.lang.String".equals(type)) {
-                if (format == null || format.length() == 0) {
-                    return tme.toString();
-                } else {
-                    SimpleDateFormat sdf = new SimpleDateFormat(format);
+    /**
+     * Converts the passed object to the named simple type; supported types
+     * include: String, Boolean, Double, Float, Long, Integer, Date (java.sql.Date),
+     * Time, Timestamp;
+     * <p>
+     * The type name and the class of the object are each looked up once in a table of converters, and the number and
+     * date formats are kept by each thread for reuse, since this is called for every field of every value read from
+     * XML.
+     *
+     * @param obj    Object to convert
+     * @param type   Name of type to convert to
+     * @param format Optional (can be null) format string for Date, Time, Timestamp
+     * @param locale Optional (can be null) Locale for formatting and parsing Double, Float, Long, Integer
+     */
+    public static Object simpleTypeConvert(Object obj, String type, String format, Locale locale) throws GeneralException {
+        if (obj == null)
+            return null;
 
-                    return sdf.format(new java.util.Date(tme.getTime()));
-                }
-            } else if ("Date".equals(type) || "java.sql.Date".equals(type)) {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
-            } else if ("Time".equals(type) || "java.sql.Time".equals(type)) {
-                return obj;
-            } else if ("Timestamp".equals(type) || "java.sql.Timestamp".equals(type)) {
-                return new java.sql.Timestamp(tme.getTime());
-            } else {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
-            }
-        } else if (obj instanceof java.sql.Timestamp) {
-            fromType = "Timestamp";
-            java.sql.Timestamp tme = (java.sql.Timestamp) obj;
+        if ("PlainString".equals(type)) {
+            return obj.toString();
+        }
+        if ("Object".equals(type)) {
+            return obj;
+        }
 
-            if ("String".equals(type) || "java.lang.String".equals(type)) {
-                if (format == null || format.length() == 0) {
-                    return tme.toString();
-                } else {
-                    SimpleDateFormat sdf = new SimpleDateFormat(format);
+        SimpleType simpleType = type == null ? null : simpleTypes.get(type);
+        SourceType sourceType = getSourceType(obj.getClass());
 
-                    return sdf.format(new java.util.Date(tme.getTime()));
-                }
-            } else if ("Date".equals(type) || "java.sql.Date".equals(type)) {
-                return new java.sql.Date(tme.getTime());
-            } else if ("Time".equals(type) || "java.sql.Time".equals(type)) {
-                return new java.sql.Time(tme.getTime());
-            } else if ("Timestamp".equals(type) || "java.sql.Timestamp".equals(type)) {
+        if (obj instanceof String) {
+            if (simpleType == SimpleType.STRING) {
                 return obj;
-            } else {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
             }
-        } else if (obj instanceof java.lang.Boolean) {
-            fromType = "Boolean";
-            Boolean bol = (Boolean) obj;
-            if ("Boolean".equals(type) || "java.lang.Boolean".equals(type)) {
-                return bol;
-            } else if ("String".equals(type) || "java.lang.String".equals(type)) {
-                return bol.toString();
-            } else if ("Integer".equals(type) || "java.lang.Integer".equals(type)) {
-                if (bol)
-                    return 1;
-                else
-                    return 0;
-            } else {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
-            }
-        } else if (obj instanceof java.util.Locale) {
-            fromType = "Locale";
-            Locale loc = (Locale) obj;
-            if ("Locale".equals(type) || "java.util.Locale".equals(type)) {
-                return loc;
-            } else if ("String".equals(type) || "java.lang.String".equals(type)) {
-                return loc.toString();
-            } else {
-                throw new GeneralException("Conversion from " + fromType + " to " + type + " not currently supported");
+            if (((String) obj).length() == 0) {
+                return null;
             }
-        } else {
-            throw new GeneralException("Conversion from " + obj.getClass().getName() + " to " + type + " not currently supported");
         }
+
+        Converter converter = simpleType == null ? null : sourceType.converters.get(simpleType);
+        if (converter == null) {
+            throw new GeneralException("Conversion from " + sourceType.name + " to " + type + " not currently supported");
+        }
+        return converter.convert(obj, type, format, locale);
     }
 
     public static Boolean doRealCompare(Object value1, Object value2, String operator, String type, String format,
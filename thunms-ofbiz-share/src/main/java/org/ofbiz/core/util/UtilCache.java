@@ -25,9 +25,11 @@ package org.ofbiz.core.util;
 
 import java.lang.ref.SoftReference;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.function.Predicate;
 
 /**
  * <p> Generalized caching utility. Provides a number of caching features:
@@ -55,6 +57,9 @@ public class UtilCache<K, V> {
      */
     protected static Map<String, Integer> defaultIndices = new HashMap<String, Integer>();
 
+    /** The cache.properties bundle, looked up by the first cache created rather than by each one */
+    private static volatile ResourceBundle cacheBundle;
+
     /**
      * The name of the UtilCache instance, is also the key for the instance in utilCacheTable.
      */
@@ -181,7 +186,11 @@ public class UtilCache<K, V> {
     }
 
     protected void setPropertiesParams(String cacheName) {
-        ResourceBundle res = ResourceBundle.getBundle("cache");
+        ResourceBundle res = cacheBundle;
+        if (res == null) {
+            res = ResourceBundle.getBundle("cache");
+            cacheBundle = res;
+        }
 
         if (res != null) {
             try {
@@ -303,6 +312,24 @@ public class UtilCache<K, V> {
         }
     }
 
+    /**
+     * Removes the elements from the cache whose keys match the specified predicate
+     *
+     * @param keyPredicate Tells which keys to remove; it is called while this cache is locked
+     * @return The number of elements removed
+     */
+    public synchronized int removeIf(Predicate<? super K> keyPredicate) {
+        int removed = 0;
+        for (Iterator<K> keys = cacheLineTable.keySet().iterator(); keys.hasNext();) {
+            if (keyPredicate.test(keys.next())) {
+                keys.remove();
+                removed++;
+            }
+        }
+        if (removed > 0 && maxSize > 0) keyLRUList.removeIf(keyPredicate);
+        return removed;
+    }
+
     /**
      * Removes all elements from this cache
      */
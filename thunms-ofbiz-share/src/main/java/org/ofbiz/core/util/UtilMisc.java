@@ -28,7 +28,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -160,7 +159,7 @@ public class UtilMisc {
     public static <K, V> List<Map<K, V>> sortMaps(List<Map<K, V>> listOfMaps, List<? extends K> sortKeys) {
         if (listOfMaps == null || sortKeys == null)
             return null;
-        List<Map<K, V>> toSort = new LinkedList<Map<K, V>>(listOfMaps);
+        List<Map<K, V>> toSort = new ArrayList<Map<K, V>>(listOfMaps);
         try {
             MapComparator<K> mc = new MapComparator<K>(sortKeys);
             Collections.sort(toSort, mc);
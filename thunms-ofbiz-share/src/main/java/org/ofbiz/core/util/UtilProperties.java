@@ -25,34 +25,155 @@
 package org.ofbiz.core.util;
 
 
+import java.io.File;
 import java.net.URL;
 import java.text.MessageFormat;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.Properties;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
  * Generic Property Accessor with Cache - Utilities for working with properties files
+ * <p>
+ * Each properties file is read once into a snapshot of its trimmed values, so that looking a value up is a single map
+ * read, and the values asked for as numbers are parsed once. If the <code>properties.reload.check.millis</code> system
+ * property is set, a file that is on the file system is checked that often for a new modification time, and read again
+ * if it has one; {@link #clearCache(String)} and {@link #clearCache()} make the files be read again on the next lookup.
+ * <p>
+ * The values are looked up in the snapshot, not in the Properties that the <code>getProperties</code> methods return,
+ * so a change made to those Properties is not seen by the lookups, and is lost when the file is read again.
  *
  * @author <a href="mailto:jonesde@ofbiz.org">David E. Jones</a>
  * @version 1.0
  */
 public class UtilProperties {
 
+    /** How often a properties file on the file system is checked for changes by default, or 0 for never */
+    public static final long RELOAD_CHECK_MILLIS = Long.getLong("properties.reload.check.millis", 0L);
+
+    private static volatile long reloadCheckMillis = RELOAD_CHECK_MILLIS;
+
+    /** Stands in for a value that is not a number in the caches of parsed values */
+    private static final Object NOT_A_NUMBER = new Object();
+
     /**
-     * An instance of the generic cache for storing the FlexibleProperties
-     * corresponding to each properties file keyed by a String for the resource location.
-     * This will be used for both non-locale and locale keyed FexibleProperties instances.
+     * A properties file as it was when it was read
      */
+    private static final class Snapshot {
+        private final URL url;
+        private final FlexibleProperties properties;
+        /** The trimmed values by name, including those of the default properties; never changed once built */
+        private final Map<String, String> values = new HashMap<String, String>();
+        private final ConcurrentMap<String, Object> doubles = new ConcurrentHashMap<String, Object>();
+        private final ConcurrentMap<String, Object> longs = new ConcurrentHashMap<String, Object>();
+        /** The file the properties were read from, or null if they weren't read from the file system */
+        private final File file;
+        private final long lastModified;
+        private volatile long nextCheck;
+
+        Snapshot(URL url, FlexibleProperties properties) {
+            this.url = url;
+            this.properties = properties;
+            for (String name : properties.stringPropertyNames()) {
+                String value = properties.getProperty(name);
+                if (value != null) {
+                    values.put(name, value.trim());
+                }
+            }
+            this.file = toFile(url);
+            this.lastModified = file == null ? 0 : file.lastModified();
+            this.nextCheck = System.currentTimeMillis() + reloadCheckMillis;
+        }
+
+        private static File toFile(URL url) {
+            if (url == null || !"file".equals(url.getProtocol())) {
+                return null;
+            }
+            try {
+                return new File(url.toURI());
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return true if the file has been modified since it was read; checked at most once per reload check interval
+         */
+        boolean isStale() {
+            long checkMillis = reloadCheckMillis;
+            if (file == null || checkMillis <= 0) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (now < nextCheck) {
+                return false;
+            }
+            nextCheck = now + checkMillis;
+            return file.lastModified() != lastModified;
+        }
+
+        String getValue(String name) {
+            String value = values.get(name);
+            return value == null ? "" : value;
+        }
+
+        double getDouble(String name, double defaultValue) {
+            Object number = doubles.get(name);
+            if (number == null) {
+                try {
+                    number = Double.parseDouble(getValue(name));
+                } catch (NumberFormatException e) {
+                    number = NOT_A_NUMBER;
+                }
+                doubles.put(name, number);
+            }
+            return number == NOT_A_NUMBER ? defaultValue : (Double) number;
+        }
+
+        long getLong(String name, long defaultValue) {
+            Object number = longs.get(name);
+            if (number == null) {
+                try {
+                    number = Long.parseLong(getValue(name));
+                } catch (NumberFormatException e) {
+                    number = NOT_A_NUMBER;
+                }
+                longs.put(name, number);
+            }
+            return number == NOT_A_NUMBER ? defaultValue : (Long) number;
+        }
+    }
+
+    /**
+     * The snapshots of the properties files by resource name, or by the external form of their URL for the URL based
+     * methods; the locale based properties are kept by the resource name and the locale.
+     */
+    private static final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<String, Snapshot>();
+
+    /** The resource name of each of the locale based keys of the snapshots, so they can be cleared with the resource */
+    private static final ConcurrentMap<String, String> localeKeyResources = new ConcurrentHashMap<String, String>();
+
+    /**
+     * No longer used: the properties files are kept as snapshots, and clearing this cache has no effect.
+     *
+     * @deprecated use {@link #clearCache(String)} or {@link #clearCache()} to have the files read again
+     */
+    @Deprecated
     public static UtilCache<Object, FlexibleProperties> resourceCache = new UtilCache<Object, FlexibleProperties>("properties.UtilPropertiesResourceCache");
 
     /**
-     * An instance of the generic cache for storing the FlexibleProperties
-     * corresponding to each properties file keyed by a URL object
+     * No longer used: the properties files are kept as snapshots, and clearing this cache has no effect.
+     *
+     * @deprecated use {@link #clearCache(String)} or {@link #clearCache()} to have the files read again
      */
+    @Deprecated
     public static UtilCache<URL, FlexibleProperties> urlCache = new UtilCache<URL, FlexibleProperties>("properties.UtilPropertiesUrlCache");
 
     /**
@@ -111,14 +232,50 @@ public class UtilProperties {
     }
 
     public static double getPropertyNumber(String resource, String name) {
-        String str = getPropertyValue(resource, name);
-        double strValue = 0.00000;
+        if (name == null || name.length() <= 0) return 0;
+        Snapshot snapshot = getSnapshot(resource);
+        return snapshot == null ? 0 : snapshot.getDouble(name, 0);
+    }
 
-        try {
-            strValue = Double.parseDouble(str);
-        } catch (NumberFormatException nfe) {
-        }
-        return strValue;
+    /**
+     * Returns the value of the specified property name from the specified resource/properties file as a long, parsed
+     * once for each time the file is read.
+     *
+     * @param resource     The name of the resource - if the properties file is 'webevent.properties', the resource name is 'webevent'
+     * @param name         The name of the property in the properties file
+     * @param defaultValue The value to return if the property is not found or is not a whole number
+     * @return The value of the property in the properties file, or if not found then the defaultValue
+     */
+    public static long getPropertyAsLong(String resource, String name, long defaultValue) {
+        if (name == null || name.length() <= 0) return defaultValue;
+        Snapshot snapshot = getSnapshot(resource);
+        return snapshot == null ? defaultValue : snapshot.getLong(name, defaultValue);
+    }
+
+    /**
+     * Returns the value of the specified property name from the specified resource/properties file as an int.
+     *
+     * @param resource     The name of the resource - if the properties file is 'webevent.properties', the resource name is 'webevent'
+     * @param name         The name of the property in the properties file
+     * @param defaultValue The value to return if the property is not found or is not a whole number that fits an int
+     * @return The value of the property in the properties file, or if not found then the defaultValue
+     */
+    public static int getPropertyAsInteger(String resource, String name, int defaultValue) {
+        long value = getPropertyAsLong(resource, name, defaultValue);
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? defaultValue : (int) value;
+    }
+
+    /**
+     * Returns the value of the specified property name from the specified resource/properties file as a boolean.
+     *
+     * @param resource     The name of the resource - if the properties file is 'webevent.properties', the resource name is 'webevent'
+     * @param name         The name of the property in the properties file
+     * @param defaultValue The value to return if the property is not found
+     * @return true if the property is "true" ignoring case, false if it is anything else, or if not found then the defaultValue
+     */
+    public static boolean getPropertyAsBoolean(String resource, String name, boolean defaultValue) {
+        String value = getPropertyValue(resource, name);
+        return value.length() == 0 ? defaultValue : "true".equalsIgnoreCase(value);
     }
 
     /**
@@ -129,90 +286,114 @@ public class UtilProperties {
      * @return The value of the property in the properties file
      */
     public static String getPropertyValue(String resource, String name) {
-        if (resource == null || resource.length() <= 0) return "";
         if (name == null || name.length() <= 0) return "";
-        FlexibleProperties properties = resourceCache.get(resource);
-
-        if (properties == null) {
-            try {
-                URL url = UtilURL.fromResource(resource);
-
-                if (url == null) return "";
-                properties = FlexibleProperties.makeFlexibleProperties(url);
-                resourceCache.put(resource, properties);
-            } catch (MissingResourceException e) {
-                Debug.log(e.getMessage());
-            }
-        }
-        if (properties == null) {
-            Debug.log("[UtilProperties.getPropertyValue] could not find resource: " + resource);
-            return "";
-        }
-
-        String value = null;
-
-        try {
-            value = properties.getProperty(name);
-        } catch (Exception e) {
-            Debug.log(e.getMessage());
-        }
-        return value == null ? "" : value.trim();
+        Snapshot snapshot = getSnapshot(resource);
+        return snapshot == null ? "" : snapshot.getValue(name);
     }
 
     /**
-     * Returns the specified resource/properties file
+     * Returns the specified resource/properties file. The values are looked up as they were when the file was read, so
+     * changes made to the returned Properties are not seen by the other methods of this class.
      *
      * @param resource The name of the resource - can be a file, class, or URL
      * @return The properties file
      */
     public static Properties getProperties(String resource) {
-        if (resource == null || resource.length() <= 0)
+        Snapshot snapshot = getSnapshot(resource);
+        if (snapshot == null) {
+            if (resource != null && resource.length() > 0)
+                Debug.log("[UtilProperties.getProperties] could not find resource: " + resource);
             return null;
-        FlexibleProperties properties = resourceCache.get(resource);
-
-        if (properties == null) {
-            try {
-                URL url = UtilURL.fromResource(resource);
-
-                if (url == null)
-                    return null;
-                properties = FlexibleProperties.makeFlexibleProperties(url);
-                resourceCache.put(resource, properties);
-            } catch (MissingResourceException e) {
-                Debug.log(e.getMessage());
-            }
         }
-        if (properties == null) {
-            Debug.log("[UtilProperties.getProperties] could not find resource: " + resource);
-            return null;
-        }
-        return properties;
+        return snapshot.properties;
     }
 
     /**
-     * Returns the specified resource/properties file
+     * Returns the specified resource/properties file. The values are looked up as they were when the file was read, so
+     * changes made to the returned Properties are not seen by the other methods of this class.
      *
-     * @param resource The name of the resource - can be a file, class, or URL
+     * @param url The URL of the resource
      * @return The properties file
      */
     public static Properties getProperties(URL url) {
         if (url == null)
             return null;
-        FlexibleProperties properties = resourceCache.get(url);
+        Snapshot snapshot = getSnapshot(url);
+        if (snapshot == null) {
+            Debug.log("[UtilProperties.getProperties] could not find resource: " + url);
+            return null;
+        }
+        return snapshot.properties;
+    }
 
-        if (properties == null) {
-            try {
-                properties = FlexibleProperties.makeFlexibleProperties(url);
-                resourceCache.put(url, properties);
-            } catch (MissingResourceException e) {
-                Debug.log(e.getMessage());
+    /**
+     * Sets how often the properties files on the file system are checked for changes, in place of
+     * {@link #RELOAD_CHECK_MILLIS}; the files already read are next checked when their current interval is up.
+     *
+     * @param millis The interval between checks, or 0 for never
+     */
+    static void setReloadCheckMillis(long millis) {
+        reloadCheckMillis = millis;
+    }
+
+    /**
+     * Makes the given resource/properties file, and the files for the locales of it, be read again the next time one
+     * of their values is looked up.
+     *
+     * @param resource The name of the resource - can be a file, class, or URL
+     */
+    public static void clearCache(String resource) {
+        if (resource == null) return;
+        snapshots.remove(resource);
+        for (Map.Entry<String, String> entry : localeKeyResources.entrySet()) {
+            if (entry.getValue().equals(resource)) {
+                snapshots.remove(entry.getKey());
+                localeKeyResources.remove(entry.getKey());
             }
         }
-        if (properties == null) {
-            Debug.log("[UtilProperties.getProperties] could not find resource: " + url);
+    }
+
+    /**
+     * Makes all of the properties files be read again the next time one of their values is looked up.
+     */
+    public static void clearCache() {
+        snapshots.clear();
+        localeKeyResources.clear();
+        bundleLocaleCache.clear();
+    }
+
+    private static Snapshot getSnapshot(String resource) {
+        if (resource == null || resource.length() <= 0) return null;
+        Snapshot snapshot = snapshots.get(resource);
+        if (snapshot != null && !snapshot.isStale()) {
+            return snapshot;
+        }
+        URL url = snapshot != null ? snapshot.url : UtilURL.fromResource(resource);
+        if (url == null) return null;
+        return load(resource, url);
+    }
+
+    private static Snapshot getSnapshot(URL url) {
+        String key = url.toExternalForm();
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot != null && !snapshot.isStale()) {
+            return snapshot;
+        }
+        return load(key, url);
+    }
+
+    private static Snapshot load(String key, URL url) {
+        FlexibleProperties properties;
+        try {
+            properties = FlexibleProperties.makeFlexibleProperties(url);
+        } catch (MissingResourceException e) {
+            Debug.log(e.getMessage());
             return null;
         }
-        return properties;
+        Snapshot snapshot = new Snapshot(url, properties);
+        // two threads may read the same file at once; either snapshot will do
+        snapshots.put(key, snapshot);
+        return snapshot;
     }
 
 
@@ -267,14 +448,9 @@ public class UtilProperties {
     }
 
     public static double getPropertyNumber(URL url, String name) {
-        String str = getPropertyValue(url, name);
-        double strValue = 0.00000;
-
-        try {
-            strValue = Double.parseDouble(str);
-        } catch (NumberFormatException nfe) {
-        }
-        return strValue;
+        if (url == null || name == null || name.length() <= 0) return 0;
+        Snapshot snapshot = getSnapshot(url);
+        return snapshot == null ? 0 : snapshot.getDouble(name, 0);
     }
 
     /**
@@ -287,29 +463,12 @@ public class UtilProperties {
     public static String getPropertyValue(URL url, String name) {
         if (url == null) return "";
         if (name == null || name.length() <= 0) return "";
-        FlexibleProperties properties = urlCache.get(url);
-
-        if (properties == null) {
-            try {
-                properties = FlexibleProperties.makeFlexibleProperties(url);
-                urlCache.put(url, properties);
-            } catch (MissingResourceException e) {
-                Debug.log(e.getMessage());
-            }
-        }
-        if (properties == null) {
+        Snapshot snapshot = getSnapshot(url);
+        if (snapshot == null) {
             Debug.log("[UtilProperties.getPropertyValue] could not find resource: " + url);
             return null;
         }
-
-        String value = null;
-
-        try {
-            value = properties.getProperty(name);
-        } catch (Exception e) {
-            Debug.log(e.getMessage());
-        }
-        return value == null ? "" : value.trim();
+        return snapshot.getValue(name);
     }
 
     /**
@@ -326,20 +485,12 @@ public class UtilProperties {
         if (url == null) return "";
         if (name == null || name.length() <= 0) return "";
 
-        FlexibleProperties properties = urlCache.get(url);
-
-        if (properties == null) {
-            try {
-                properties = FlexibleProperties.makeFlexibleProperties(url);
-                urlCache.put(url, properties);
-            } catch (MissingResourceException e) {
-                Debug.log(e.getMessage());
-            }
-        }
-        if (properties == null) {
+        Snapshot snapshot = getSnapshot(url);
+        if (snapshot == null) {
             Debug.log("[UtilProperties.getPropertyValue] could not find resource: " + url);
             return null;
         }
+        FlexibleProperties properties = snapshot.properties;
 
         String value = null;
 
@@ -514,25 +665,22 @@ public class UtilProperties {
 
         String localeString = locale.toString();
         String resourceLocale = resource + "_" + localeString;
-        FlexibleProperties properties = resourceCache.get(resourceLocale);
-
-        if (properties == null) {
-            try {
-                URL url = UtilURL.fromResource(resourceLocale);
-                if (url == null) {
-                    properties = (FlexibleProperties) getProperties(resource);
-                } else {
-                    properties = FlexibleProperties.makeFlexibleProperties(url);
-                }
-            } catch (MissingResourceException e) {
-                Debug.log(e.getMessage());
+        localeKeyResources.put(resourceLocale, resource);
+        Snapshot snapshot = getSnapshot(resourceLocale);
+
+        if (snapshot == null) {
+            // there is no file for the locale, so the file without one stands in for it
+            snapshot = getSnapshot(resource);
+            if (snapshot != null) {
+                snapshots.put(resourceLocale, snapshot);
             }
-            resourceCache.put(resourceLocale, properties);
         }
 
-        if (properties == null)
+        if (snapshot == null) {
             Debug.logInfo("[UtilProperties.getProperties] could not find resource: " + resource + ", locale: " + locale);
+            return null;
+        }
 
-        return properties;
+        return snapshot.properties;
     }
 }